@@ -0,0 +1,274 @@
+package org.stjs.command.line;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.stjs.generator.ClassWithJavascript;
+import org.stjs.generator.Generator;
+import org.stjs.generator.daemon.DaemonProtocol;
+import org.stjs.generator.daemon.GenerationRequest;
+import org.stjs.generator.daemon.GenerationResult;
+
+import com.google.common.base.Charsets;
+
+/**
+ * A long-lived generator process. It keeps a warm {@link Generator} for each project classpath it was asked to
+ * generate, so the next builds of the same project only pay for the classes that changed: the JIT, the plugins, the
+ * javac file managers and the packages of the jars that did not change are kept between builds. The daemon listens on
+ * a local socket and writes its port in an information file (see {@link DaemonProtocol}). The requests are served one at
+ * a time.
+ */
+public class GeneratorDaemon {
+	private static final int MAX_PROJECTS = 8;
+	private static final int TOKEN_BYTES = 16;
+
+	private final ServerSocket serverSocket;
+	private final String token;
+	private final int threads;
+	private boolean stopped;
+
+	private final Map<String, WarmProject> projects = new LinkedHashMap<String, WarmProject>(MAX_PROJECTS, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, WarmProject> eldest) {
+			if (size() > MAX_PROJECTS) {
+				eldest.getValue().close();
+				return true;
+			}
+			return false;
+		}
+	};
+
+	public GeneratorDaemon(int threads) throws IOException {
+		this.threads = threads;
+		this.serverSocket = new ServerSocket(0, 0, InetAddress.getByName(null));
+		byte[] tokenBytes = new byte[TOKEN_BYTES];
+		new SecureRandom().nextBytes(tokenBytes);
+		StringBuilder s = new StringBuilder();
+		for (byte b : tokenBytes) {
+			s.append(String.format("%02x", b));
+		}
+		this.token = s.toString();
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length > 2) {
+			System.err.println("Usage: st-js-daemon [<infoFile> [<threads>]]");
+			return;
+		}
+		File infoFile = args.length > 0 ? new File(args[0]) : DaemonProtocol.getDefaultInfoFile();
+		int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+		GeneratorDaemon daemon = new GeneratorDaemon(threads);
+		daemon.writeInfo(infoFile);
+		System.out.println("STJS generator daemon listening on port " + daemon.serverSocket.getLocalPort() + ", information in " + infoFile);
+		try {
+			daemon.run();
+		}
+		finally {
+			if (!infoFile.delete()) {
+				System.err.println("Cannot delete " + infoFile);
+			}
+		}
+	}
+
+	/**
+	 * writes the port and the token of this daemon in the given file, where the clients find them
+	 */
+	public void writeInfo(File infoFile) throws IOException {
+		DaemonProtocol.writeInfo(infoFile, serverSocket.getLocalPort(), token);
+	}
+
+	public void run() throws IOException {
+		try {
+			while (!stopped) {
+				Socket socket = serverSocket.accept();
+				try {
+					handle(socket);
+				}
+				catch (IOException e) {
+					System.err.println("Cannot handle the request:" + e);
+				}
+				catch (RuntimeException e) {
+					// the client will generate the files itself
+					System.err.println("Cannot handle the request:" + e);
+					e.printStackTrace();
+				}
+				finally {
+					socket.close();
+				}
+			}
+		}
+		finally {
+			serverSocket.close();
+			for (WarmProject project : projects.values()) {
+				project.close();
+			}
+			projects.clear();
+		}
+	}
+
+	private void handle(Socket socket) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+		int version = in.readInt();
+		String requestToken = DaemonProtocol.readString(in);
+		String command = DaemonProtocol.readString(in);
+		if (version != DaemonProtocol.VERSION) {
+			refuse(out, "Unsupported protocol version " + version);
+			return;
+		}
+		if (requestToken == null || !MessageDigest.isEqual(token.getBytes(Charsets.UTF_8), requestToken.getBytes(Charsets.UTF_8))) {
+			refuse(out, "Wrong token");
+			return;
+		}
+
+		if (DaemonProtocol.STOP.equals(command)) {
+			stopped = true;
+			out.writeInt(DaemonProtocol.STATUS_OK);
+			out.flush();
+		} else if (DaemonProtocol.GENERATE.equals(command)) {
+			GenerationRequest request = GenerationRequest.read(in);
+			List<GenerationResult> results = generate(request);
+			out.writeInt(DaemonProtocol.STATUS_OK);
+			out.writeInt(results.size());
+			for (GenerationResult result : results) {
+				result.write(out);
+			}
+			out.flush();
+		} else {
+			refuse(out, "Unknown command " + command);
+		}
+	}
+
+	private static void refuse(DataOutputStream out, String message) throws IOException {
+		out.writeInt(DaemonProtocol.STATUS_ERROR);
+		DaemonProtocol.writeString(out, message);
+		out.flush();
+	}
+
+	private List<GenerationResult> generate(GenerationRequest request) throws IOException {
+		long t1 = System.currentTimeMillis();
+		String key = request.getClasspath() + "|" + request.getConfiguration().getSourceEncoding();
+		WarmProject project = projects.get(key);
+		if (project == null) {
+			project = new WarmProject(request.getClasspath());
+			projects.put(key, project);
+		}
+		ClassLoader builtProjectClassLoader = project.prepare(request.getConfiguration().getSourceEncoding(), threads);
+
+		List<Future<ClassWithJavascript>> futures = project.generator.submitJavascriptGeneration(builtProjectClassLoader,
+				request.getClassNames(), request.getSourceFolder(), request.getGenerationFolder(), request.getTargetFolder(),
+				request.getConfiguration());
+		List<GenerationResult> results = new ArrayList<GenerationResult>(futures.size());
+		for (Future<ClassWithJavascript> future : futures) {
+			try {
+				results.add(GenerationResult.success(future.get()));
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while generating JavaScript");
+			}
+			catch (ExecutionException e) {
+				results.add(GenerationResult.failure(e.getCause()));
+			}
+		}
+		long t2 = System.currentTimeMillis();
+		System.out.println("Generated " + results.size() + " classes from " + request.getSourceFolder() + " in " + (t2 - t1) + " ms");
+		return results;
+	}
+
+	/**
+	 * the generator of a project classpath, with the state of each classpath element at the last generation
+	 */
+	static final class WarmProject {
+		private final List<File> classpath = new ArrayList<File>();
+		private final Generator generator = new Generator();
+		private final Map<File, Long> stamps = new HashMap<File, Long>();
+		private ClassLoader classLoader;
+
+		WarmProject(List<String> classpath) {
+			for (String element : classpath) {
+				this.classpath.add(new File(element).getAbsoluteFile());
+			}
+		}
+
+		/**
+		 * @return the class loader for the next generation. It's a new one if any element of the classpath changed. Only
+		 *         the caches of the changed elements are dropped.
+		 */
+		ClassLoader prepare(String sourceEncoding, int threads) throws IOException {
+			List<File> changed = new ArrayList<File>();
+			for (File element : classpath) {
+				long stamp = getStamp(element);
+				Long previous = stamps.put(element, stamp);
+				if (previous == null || previous != stamp) {
+					changed.add(element);
+				}
+			}
+			if (classLoader == null) {
+				classLoader = newClassLoader();
+				generator.init(classLoader, sourceEncoding, threads);
+			} else if (!changed.isEmpty()) {
+				classLoader = newClassLoader();
+				generator.reload(classLoader, changed);
+			}
+			return classLoader;
+		}
+
+		private ClassLoader newClassLoader() throws IOException {
+			URL[] urls = new URL[classpath.size()];
+			for (int i = 0; i < urls.length; ++i) {
+				urls[i] = classpath.get(i).toURI().toURL();
+			}
+			// the classes of the daemon must not be visible to the project, as in the maven plugin
+			return new URLClassLoader(urls, Thread.currentThread().getContextClassLoader().getParent());
+		}
+
+		void close() {
+			generator.close();
+		}
+
+		/**
+		 * @return a value that changes when a file is added, removed or modified in the given jar or folder. A jar costs
+		 *         one file system call. A folder costs one call per file and per folder it contains, as a modified class
+		 *         file does not change the date of its folder: for the output folder of a project with a few thousands
+		 *         of classes this is a few milliseconds for each request, that is still less than the generation of a
+		 *         single changed class.
+		 */
+		static long getStamp(File element) {
+			if (!element.isDirectory()) {
+				return element.lastModified() * 31 + element.length();
+			}
+			// the stamps of the children are added, so they don't need to be sorted
+			long stamp = element.lastModified();
+			File[] children = element.listFiles();
+			if (children != null) {
+				for (File child : children) {
+					stamp += child.getName().hashCode() * 31L + getStamp(child);
+				}
+			}
+			return stamp;
+		}
+	}
+}
@@ -0,0 +1,7 @@
+package org.stjs.command.line;
+
+public class DaemonFixture {
+	public int add(int a, int b) {
+		return a + b;
+	}
+}
@@ -0,0 +1,107 @@
+package org.stjs.command.line;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.stjs.generator.ClassWithJavascript;
+import org.stjs.generator.GenerationDirectory;
+import org.stjs.generator.Generator;
+import org.stjs.generator.GeneratorConfigurationBuilder;
+import org.stjs.generator.STJSClass;
+import org.stjs.generator.daemon.DaemonClient;
+import org.stjs.generator.daemon.GenerationRequest;
+import org.stjs.javascript.annotation.UsePlugin;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+public class GeneratorDaemonTest {
+	private static final File OUTPUT_DIR = new File("target/daemon-test");
+
+	@Test
+	public void testGenerateThroughTheDaemon() throws IOException, InterruptedException, ExecutionException {
+		final GeneratorDaemon daemon = new GeneratorDaemon(1);
+		File infoFile = new File(OUTPUT_DIR, "daemon.properties");
+		daemon.writeInfo(infoFile);
+		Thread daemonThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					daemon.run();
+				}
+				catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		});
+		daemonThread.start();
+
+		DaemonClient client = DaemonClient.find(infoFile);
+		assertNotNull(client);
+		try {
+			List<String> classpath = Arrays.asList(new File("target/test-classes").getAbsolutePath(), new File(UsePlugin.class
+					.getProtectionDomain().getCodeSource().getLocation().getPath()).getAbsolutePath());
+			GenerationDirectory generationFolder = new GenerationDirectory(new File(OUTPUT_DIR, "js"), new File("js"), new File(""));
+			GenerationRequest request = new GenerationRequest(classpath, Collections.singletonList(DaemonFixture.class.getName()),
+					new File("src/test/java"), generationFolder, new File(OUTPUT_DIR, "classes"), new GeneratorConfigurationBuilder()
+							.allowedPackage("org.stjs.javascript").allowedPackage("org.stjs.command.line").sourceEncoding(Charsets.UTF_8.name()).build());
+
+			List<Future<ClassWithJavascript>> results = client.submitJavascriptGeneration(new Generator(), Thread.currentThread()
+					.getContextClassLoader(), request);
+
+			assertEquals(1, results.size());
+			STJSClass generated = (STJSClass) results.get(0).get();
+			assertEquals(DaemonFixture.class.getName(), generated.getClassName());
+			String js = Files.toString(new File(generationFolder.getAbsolutePath(), "org/stjs/command/line/DaemonFixture.js"),
+					Charsets.UTF_8);
+			assertTrue(js, js.contains("return a + b"));
+		}
+		finally {
+			client.stop();
+			daemonThread.join();
+		}
+	}
+
+	@Test
+	public void testClassLoaderChangesWithTheClasspath() throws IOException {
+		File folder = new File(OUTPUT_DIR, "classpath/classes");
+		File jar = new File(OUTPUT_DIR, "classpath/lib.jar");
+		File classFile = new File(folder, "org/Test.class");
+		Files.createParentDirs(classFile);
+		Files.write("v1", classFile, Charsets.UTF_8);
+		Files.write("jar1", jar, Charsets.UTF_8);
+
+		GeneratorDaemon.WarmProject project = new GeneratorDaemon.WarmProject(Arrays.asList(folder.getPath(), jar.getPath()));
+		try {
+			ClassLoader classLoader = project.prepare(Charsets.UTF_8.name(), 1);
+			assertSame(classLoader, project.prepare(Charsets.UTF_8.name(), 1));
+
+			// a modified file does not change the date of its folder
+			Files.write("v2-modified", classFile, Charsets.UTF_8);
+			ClassLoader modifiedClassLoader = project.prepare(Charsets.UTF_8.name(), 1);
+			assertNotSame(classLoader, modifiedClassLoader);
+
+			Files.write("v2", new File(folder, "org/Other.class"), Charsets.UTF_8);
+			ClassLoader addedClassLoader = project.prepare(Charsets.UTF_8.name(), 1);
+			assertNotSame(modifiedClassLoader, addedClassLoader);
+
+			Files.write("jar2-modified", jar, Charsets.UTF_8);
+			assertNotSame(addedClassLoader, project.prepare(Charsets.UTF_8.name(), 1));
+		}
+		finally {
+			project.close();
+		}
+	}
+}
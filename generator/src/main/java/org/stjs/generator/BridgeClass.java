@@ -25,7 +25,6 @@ import javax.annotation.concurrent.Immutable;
 
 import org.stjs.generator.utils.ClassUtils;
 import org.stjs.generator.utils.PreConditions;
-import org.stjs.javascript.annotation.STJSBridge;
 
 /**
  * This class represents a bridge class. As javascript files it has the corresponding source files from the javascript
@@ -48,19 +47,15 @@ public class BridgeClass implements ClassWithJavascript {
 		return clazz.getName();
 	}
 
-	private boolean hasSourceAnnotation(STJSBridge bridgeAnnotation) {
-		return bridgeAnnotation != null && bridgeAnnotation.sources() != null && bridgeAnnotation.sources().length > 0;
-	}
-
 	@Override
 	public List<URI> getJavascriptFiles() {
-		STJSBridge bridgeAnnotation = ClassUtils.getAnnotation(clazz, STJSBridge.class);
-		if (!hasSourceAnnotation(bridgeAnnotation)) {
+		String[] sources = ClassUtils.getBridgeSources(clazz);
+		if (sources.length == 0) {
 			return Collections.emptyList();
 		}
 
 		List<URI> files = new ArrayList<URI>();
-		for (String src : bridgeAnnotation.sources()) {
+		for (String src : sources) {
 			try {
 				if (src.length() > 0) {
 					files.add(new URI(src));
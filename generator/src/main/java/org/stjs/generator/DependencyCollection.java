@@ -17,23 +17,43 @@ package org.stjs.generator;
 
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import com.google.common.collect.ImmutableList;
-
-import edu.umd.cs.findbugs.annotations.SuppressWarnings;
+import com.google.common.collect.Maps;
 
 /**
  * This class is used to arrange the list of all dependencies coming from the root classes, such that classes depend on
  * other classes found in the dependency list before they appear. This can be used for example to build the include list
  * of the scripts for a given html page. As in Java cyclic dependency is possible the list may be incorrect.
+ * <p>
+ * The inheritance relations needed to order the classes are computed once for each class and the orders are kept for
+ * each class loader, as the same classes are ordered again for each test method.
  * 
  * @author acraciun
  */
 public class DependencyCollection {
+	private static final int ADDING = 1;
+	private static final int ADDED = 2;
+
+	/**
+	 * the maximum number of orders kept for a class loader. A test run orders the same few lists of classes again and
+	 * again, so when there are more lists they are simply computed again.
+	 */
+	private static final int MAX_ORDERS = 1000;
+
+	/**
+	 * the ordering caches by class loader. The class loaders are weakly referenced.
+	 */
+	private static final Map<ClassLoader, OrderCache> ORDER_CACHES = new WeakHashMap<ClassLoader, OrderCache>();
+
 	private final List<ClassWithJavascript> roots;
 
 	public static final Comparator<Class<?>> DEPENDENCY_COMPARATOR = new Comparator<Class<?>>() {
@@ -115,18 +135,6 @@ public class DependencyCollection {
 		this.roots = ImmutableList.of(root);
 	}
 
-	private int compareDeps(int withIndex, List<ClassWithJavascript> deps, Comparator<ClassWithJavascript> comparator) {
-		for (int j = 0; j < deps.size(); ++j) {
-			if (withIndex != j) {
-				int cmp = comparator.compare(deps.get(withIndex), deps.get(j));
-				if (cmp > 0) {
-					return cmp;
-				}
-			}
-		}
-		return -1;
-	}
-
 	public List<ClassWithJavascript> orderAllDependencies(ClassLoader classLoader) {
 		List<ClassWithJavascript> deps = new ArrayList<ClassWithJavascript>();
 		Set<ClassWithJavascript> visited = new HashSet<ClassWithJavascript>();
@@ -134,23 +142,32 @@ public class DependencyCollection {
 			visit(visited, new LinkedHashSet<ClassWithJavascript>(), deps, root);
 		}
 
-		Comparator<ClassWithJavascript> comparator = new ClassWithJavascriptComparator(classLoader);
-		List<ClassWithJavascript> orderedDeps = new ArrayList<ClassWithJavascript>();
-		while (!deps.isEmpty()) {
-			// add to orderedDeps only the classes that have no "extends" dependency to any of the other from the
-			// remaining list.
-			// i.e. the result of the comparison is <= 0
-			for (int i = 0; i < deps.size(); ++i) {
-				if (compareDeps(i, deps, comparator) <= 0) {
-					orderedDeps.add(deps.remove(i));
-					i--;
-				}
-			}
+		Map<String, ClassWithJavascript> depsByName = new HashMap<String, ClassWithJavascript>();
+		List<String> depNames = new ArrayList<String>(deps.size());
+		for (ClassWithJavascript dep : deps) {
+			depsByName.put(dep.getClassName(), dep);
+			depNames.add(dep.getClassName());
 		}
 
+		List<String> orderedNames = getOrderCache(classLoader).getOrder(classLoader, depNames);
+		List<ClassWithJavascript> orderedDeps = new ArrayList<ClassWithJavascript>(orderedNames.size());
+		for (String className : orderedNames) {
+			orderedDeps.add(depsByName.get(className));
+		}
 		return orderedDeps;
 	}
 
+	private static OrderCache getOrderCache(ClassLoader classLoader) {
+		synchronized (ORDER_CACHES) {
+			OrderCache cache = ORDER_CACHES.get(classLoader);
+			if (cache == null) {
+				cache = new OrderCache();
+				ORDER_CACHES.put(classLoader, cache);
+			}
+			return cache;
+		}
+	}
+
 	/**
 	 * use topological sort to find the order of processing cells
 	 */
@@ -173,28 +190,137 @@ public class DependencyCollection {
 		}
 	}
 
-	@SuppressWarnings(
-			value = "SE_COMPARATOR_SHOULD_BE_SERIALIZABLE", justification = "This comparator will not be used with Serializable lists")
-	private static class ClassWithJavascriptComparator implements Comparator<ClassWithJavascript> {
+	/**
+	 * The types of a class needed to place it in the dependency order, by name: the class with its direct inner classes
+	 * (a class extending one of them comes after the class) and the supertypes of the class and of its inner classes at
+	 * any level (the class comes after the classes declaring one of them). These are the checks done by
+	 * {@link #DEPENDENCY_COMPARATOR} for each pair of classes.
+	 */
+	private static final class TypeClosure {
+		private final Set<String> declaredTypes = new HashSet<String>();
+		private final Set<String> superTypes = new HashSet<String>();
 
-		private final ClassLoader classLoader;
+		public TypeClosure(Class<?> clazz) {
+			declaredTypes.add(clazz.getName());
+			for (Class<?> child : clazz.getDeclaredClasses()) {
+				declaredTypes.add(child.getName());
+			}
+			addSuperTypesOfTypeAndChildTypes(clazz);
+		}
 
-		public ClassWithJavascriptComparator(ClassLoader classLoader) {
-			this.classLoader = classLoader;
+		private void addSuperTypesOfTypeAndChildTypes(Class<?> clazz) {
+			addSuperTypes(clazz);
+			for (Class<?> child : clazz.getDeclaredClasses()) {
+				addSuperTypesOfTypeAndChildTypes(child);
+			}
 		}
 
-		@Override
-		public int compare(ClassWithJavascript o1, ClassWithJavascript o2) {
+		private void addSuperTypes(Class<?> clazz) {
+			if (clazz == null || !superTypes.add(clazz.getName())) {
+				return;
+			}
+			addSuperTypes(clazz.getSuperclass());
+			for (Class<?> iface : clazz.getInterfaces()) {
+				addSuperTypes(iface);
+			}
+		}
+	}
+
+	/**
+	 * The closures of the classes of a class loader and the orders already computed with them. Only the names of the
+	 * classes are kept, so the cache does not prevent the class loader from being collected. At most {@link #MAX_ORDERS}
+	 * orders are kept.
+	 */
+	private static final class OrderCache {
+		private final ConcurrentMap<String, TypeClosure> closures = Maps.newConcurrentMap();
+		private final ConcurrentMap<List<String>, List<String>> orders = Maps.newConcurrentMap();
+
+		/**
+		 * @return the given classes (in the order they were visited) ordered such that each class comes after the classes
+		 *         it extends or whose inner classes it extends
+		 */
+		public List<String> getOrder(ClassLoader classLoader, List<String> classNames) {
+			List<String> order = orders.get(classNames);
+			if (order == null) {
+				order = ImmutableList.copyOf(computeOrder(classLoader, classNames));
+				if (orders.size() >= MAX_ORDERS) {
+					orders.clear();
+				}
+				orders.putIfAbsent(ImmutableList.copyOf(classNames), order);
+			}
+			return order;
+		}
+
+		private TypeClosure getClosure(ClassLoader classLoader, String className) {
+			TypeClosure closure = closures.get(className);
+			if (closure == null) {
+				try {
+					closure = new TypeClosure(classLoader.loadClass(className));
+				}
+				catch (ClassNotFoundException e) {
+					throw new STJSRuntimeException(e);
+				}
+				closures.putIfAbsent(className, closure);
+			}
+			return closure;
+		}
 
-			try {
-				Class<?> c1 = classLoader.loadClass(o1.getClassName());
-				Class<?> c2 = classLoader.loadClass(o2.getClassName());
-				return DEPENDENCY_COMPARATOR.compare(c1, c2);
+		private List<String> computeOrder(ClassLoader classLoader, List<String> classNames) {
+			int count = classNames.size();
+			List<TypeClosure> typeClosures = new ArrayList<TypeClosure>(count);
+			Map<String, List<Integer>> declaringClasses = new HashMap<String, List<Integer>>();
+			for (int i = 0; i < count; ++i) {
+				TypeClosure closure = getClosure(classLoader, classNames.get(i));
+				typeClosures.add(closure);
+				for (String declaredType : closure.declaredTypes) {
+					List<Integer> declaring = declaringClasses.get(declaredType);
+					if (declaring == null) {
+						declaring = new ArrayList<Integer>(1);
+						declaringClasses.put(declaredType, declaring);
+					}
+					declaring.add(i);
+				}
+			}
+
+			// the classes that must come before each class
+			List<Set<Integer>> predecessors = new ArrayList<Set<Integer>>(count);
+			for (int i = 0; i < count; ++i) {
+				Set<Integer> before = new LinkedHashSet<Integer>();
+				for (String superType : typeClosures.get(i).superTypes) {
+					List<Integer> declaring = declaringClasses.get(superType);
+					if (declaring != null) {
+						before.addAll(declaring);
+					}
+				}
+				before.remove(i);
+				predecessors.add(before);
 			}
-			catch (ClassNotFoundException e) {
-				throw new STJSRuntimeException(e);
+
+			List<String> order = new ArrayList<String>(count);
+			int[] states = new int[count];
+			for (int i = 0; i < count; ++i) {
+				addInOrder(i, classNames, predecessors, states, order);
 			}
+			return order;
 		}
 
+		/**
+		 * adds the class after the classes that must come before it, keeping the visit order otherwise
+		 */
+		private void addInOrder(int index, List<String> classNames, List<Set<Integer>> predecessors, int[] states, List<String> order) {
+			if (states[index] == ADDED) {
+				return;
+			}
+			states[index] = ADDING;
+			for (int before : predecessors.get(index)) {
+				if (states[before] == ADDING) {
+					throw new IllegalArgumentException("Cannot decide the dependency order between the types:" + classNames.get(before)
+							+ " and " + classNames.get(index));
+				}
+				addInOrder(before, classNames, predecessors, states, order);
+			}
+			states[index] = ADDED;
+			order.add(classNames.get(index));
+		}
 	}
 }
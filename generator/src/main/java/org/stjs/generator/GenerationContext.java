@@ -26,18 +26,25 @@ import javax.lang.model.util.Elements;
 import javax.lang.model.util.Types;
 
 import org.stjs.generator.check.Checks;
+import org.stjs.generator.check.FusedChecks;
 import org.stjs.generator.javac.AnnotationHelper;
 import org.stjs.generator.javac.TreeWrapper;
 import org.stjs.generator.javascript.JavaScriptBuilder;
 import org.stjs.generator.name.JavaScriptNameProvider;
 import org.stjs.generator.visitor.TreePathHolder;
 
+import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.Maps;
+import com.google.common.collect.Multimap;
 import com.google.debugging.sourcemap.SourceMapGenerator;
+import com.sun.source.tree.ClassTree;
 import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.MethodTree;
 import com.sun.source.tree.Tree;
 import com.sun.source.tree.TreeVisitor;
+import com.sun.source.tree.VariableTree;
 import com.sun.source.util.TreePath;
+import com.sun.source.util.TreeScanner;
 import com.sun.source.util.Trees;
 
 /**
@@ -64,8 +71,12 @@ public class GenerationContext<JS> implements TreePathHolder {
 
 	private TreePath currentPath;
 
+	private long visitedNodes;
+
 	private final Checks checks;
 
+	private FusedChecks fusedChecks;
+
 	private CompilationUnitTree compilationUnit;
 
 	private final JavaScriptBuilder<JS> javaScriptBuilder;
@@ -77,6 +88,7 @@ public class GenerationContext<JS> implements TreePathHolder {
 	private final Map<AnnotationCacheKey, Object> cacheAnnotations;
 	private final Map<Tree, TreeWrapper<?, JS>> cacheWrappers = Maps.newIdentityHashMap();
 	private final Map<Element, TreeWrapper<?, JS>> cacheWrappersByElement = Maps.newIdentityHashMap();
+	private final Map<MethodTree, Multimap<String, VariableTree>> cacheMethodVariables = Maps.newIdentityHashMap();
 
 	public GenerationContext(File inputFile, GeneratorConfiguration configuration, JavaScriptNameProvider names, Trees trees,
 			ClassLoader builtProjectClassLoader, Map<AnnotationCacheKey, Object> cacheAnnotations, JavaScriptBuilder<JS> javaScriptBuilder) {
@@ -117,9 +129,20 @@ public class GenerationContext<JS> implements TreePathHolder {
 
 	@Override
 	public void setCurrentPath(TreePath currentPath) {
+		if (currentPath != null && currentPath.getParentPath() == this.currentPath) {
+			// the scanners enter a node
+			++visitedNodes;
+		}
 		this.currentPath = currentPath;
 	}
 
+	/**
+	 * @return the number of nodes visited so far by the visitors using this context
+	 */
+	public long getVisitedNodes() {
+		return visitedNodes;
+	}
+
 	public Elements getElements() {
 		return elements;
 	}
@@ -140,6 +163,18 @@ public class GenerationContext<JS> implements TreePathHolder {
 		return checks;
 	}
 
+	/**
+	 * @return the checks to run while the JavaScript code is written, or null if the checks are done in a separate
+	 *         traversal
+	 */
+	public FusedChecks getFusedChecks() {
+		return fusedChecks;
+	}
+
+	public void setFusedChecks(FusedChecks fusedChecks) {
+		this.fusedChecks = fusedChecks;
+	}
+
 	public CompilationUnitTree getCompilationUnit() {
 		return compilationUnit;
 	}
@@ -221,8 +256,10 @@ public class GenerationContext<JS> implements TreePathHolder {
 
 	private TreePath getTreePath(Element enclosingElement) {
 		TreePath path = trees.getPath(enclosingElement);
-		if (path == null) {
-			Tree tree = trees.getTree(enclosingElement);
+		if (path == null || path.getCompilationUnit() != compilationUnit) {
+			// when several files are analyzed by the same javac task, the element may be declared in another file. It's
+			// then treated like an element coming from a compiled class
+			Tree tree = path == null ? trees.getTree(enclosingElement) : null;
 			if (tree == null) {
 				tree = new DummyTree();
 			}
@@ -243,6 +280,21 @@ public class GenerationContext<JS> implements TreePathHolder {
 		return tw;
 	}
 
+	/**
+	 * @return the variables and parameters declared in the given method, by name, whatever the block declaring them. The
+	 *         method is scanned only once. As in the scan done before this index, the scan stops at the first type
+	 *         declared inside the method: the variables declared after it are not returned.
+	 */
+	public Multimap<String, VariableTree> getDeclaredVariables(MethodTree method) {
+		Multimap<String, VariableTree> variables = cacheMethodVariables.get(method);
+		if (variables == null) {
+			variables = ArrayListMultimap.create();
+			method.accept(new DeclaredVariablesScanner(variables), null);
+			cacheMethodVariables.put(method, variables);
+		}
+		return variables;
+	}
+
 	public ClassLoader getBuiltProjectClassLoader() {
 		return builtProjectClassLoader;
 	}
@@ -263,6 +315,30 @@ public class GenerationContext<JS> implements TreePathHolder {
 		return (T) ret;
 	}
 
+	private static final class DeclaredVariablesScanner extends TreeScanner<Void, Void> {
+		private final Multimap<String, VariableTree> variables;
+		private boolean scanStopped;
+
+		public DeclaredVariablesScanner(Multimap<String, VariableTree> variables) {
+			this.variables = variables;
+		}
+
+		@Override
+		public Void visitClass(ClassTree tree, Void p) {
+			// stop the scan if a new type is encountered
+			scanStopped = true;
+			return super.visitClass(tree, p);
+		}
+
+		@Override
+		public Void visitVariable(VariableTree var, Void p) {
+			if (!scanStopped) {
+				variables.put(var.getName().toString(), var);
+			}
+			return super.visitVariable(var, p);
+		}
+	}
+
 	public static class AnnotationCacheKey {
 		private final Class<? extends Annotation> annotationType;
 		private final Element element;
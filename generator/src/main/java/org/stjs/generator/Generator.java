@@ -22,35 +22,51 @@ import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.charset.Charset;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Logger;
 
 import javax.tools.JavaCompiler;
-import javax.tools.JavaFileManager;
 import javax.tools.JavaFileObject;
 import javax.tools.StandardJavaFileManager;
 
 import org.stjs.generator.GenerationContext.AnnotationCacheKey;
+import org.stjs.generator.check.FusedChecks;
 import org.stjs.generator.javac.CustomClassloaderJavaFileManager;
 import org.stjs.generator.javascript.JavaScriptBuilder;
 import org.stjs.generator.javascript.rhino.RhinoJavaScriptBuilder;
+import org.stjs.generator.javascript.text.TextJavaScriptBuilder;
+import org.stjs.generator.metrics.GenerationListener;
+import org.stjs.generator.metrics.GenerationPhase;
 import org.stjs.generator.name.DefaultJavaScriptNameProvider;
 import org.stjs.generator.name.JavaScriptNameProvider;
+import org.stjs.generator.name.TypeNameCache;
 import org.stjs.generator.plugin.GenerationPlugins;
+import org.stjs.generator.utils.CacheListener;
 import org.stjs.generator.utils.ClassUtils;
-import org.stjs.generator.utils.Timers;
 
+import com.google.common.base.Throwables;
 import com.google.common.collect.Maps;
 import com.google.common.io.Closeables;
 import com.google.common.io.Files;
 import com.google.common.io.InputSupplier;
+import com.google.common.util.concurrent.SettableFuture;
 import com.sun.source.tree.CompilationUnitTree;
 import com.sun.source.util.JavacTask;
 import com.sun.source.util.Trees;
@@ -62,30 +78,68 @@ import com.sun.tools.javac.api.JavacTool;
  * @author acraciun
  */
 public class Generator {
+	private static final Logger LOG = Logger.getLogger(Generator.class.getName());
 	private static final int EXECUTOR_TERMINAL_TIMEOUT = 10;
 	private static final String STJS_FILE = "stjs.js";
 	private final GenerationPlugins<Object> plugins;
-	private StandardJavaFileManager fileManager;
-	private JavaFileManager classLoaderFileManager;
-	private final Map<AnnotationCacheKey, Object> cacheAnnotations = Maps.newHashMap();
+	/**
+	 * the javac file managers are not thread-safe, so each generation worker has its own pair
+	 */
+	private final ThreadLocal<FileManagers> fileManagers = new ThreadLocal<FileManagers>();
+	private final List<FileManagers> allFileManagers = Collections.synchronizedList(new ArrayList<FileManagers>());
+	private final Map<AnnotationCacheKey, Object> cacheAnnotations = Maps.newConcurrentMap();
+	/**
+	 * the type names and allowed types shared by all the classes generated with the same class loader and configuration
+	 */
+	private final AtomicReference<TypeNameCache> typeNameCache = new AtomicReference<TypeNameCache>();
+	/**
+	 * the classes being generated, so a class needed at the same time by several workers (as a class to generate or as a
+	 * dependency) is generated, and its files are written, by a single worker
+	 */
+	private final ConcurrentMap<String, Future<ClassWithJavascript>> runningGenerations = Maps.newConcurrentMap();
+	private final List<GenerationListener> listeners = new CopyOnWriteArrayList<GenerationListener>();
+	/**
+	 * tells the listeners about the bridge lookups of this generator only, the bridge caches being shared
+	 */
+	private final CacheListener bridgeCacheListener = new CacheListener() {
+		@Override
+		public void lookedUp(boolean cacheHit) {
+			for (GenerationListener listener : listeners) {
+				listener.bridgeLookedUp(cacheHit);
+			}
+		}
+	};
 	private Executor taskExecutor;
+	private ExecutorService generationExecutor;
 	private String sourceEncoding;
 
 	public Generator() {
 		plugins = new GenerationPlugins<Object>();
 	}
 
-	@SuppressWarnings("PMD.DoNotUseThreads")
 	public void init(ClassLoader builtProjectClassLoader, String sourceEncoding) {
-		// nothing to do
+		init(builtProjectClassLoader, sourceEncoding, 1);
+	}
+
+	/**
+	 * @param threads
+	 *            - the number of workers used by {@link #submitJavascriptGeneration}. With one thread the generation is
+	 *            done directly in the calling thread.
+	 */
+	@SuppressWarnings("PMD.DoNotUseThreads")
+	public void init(ClassLoader builtProjectClassLoader, String sourceEncoding, int threads) {
 		cacheAnnotations.clear();
-		// taskExecutor = Executors.newFixedThreadPool(4);
+		typeNameCache.set(null);
+		// the files of a class are written by the worker that generated the class
 		taskExecutor = new Executor() {
 			@Override
 			public void execute(Runnable command) {
 				command.run();
 			}
 		};
+		if (threads > 1) {
+			generationExecutor = Executors.newFixedThreadPool(threads);
+		}
 		if (sourceEncoding == null) {
 			this.sourceEncoding = Charset.defaultCharset().name();
 		} else {
@@ -93,17 +147,113 @@ public class Generator {
 		}
 	}
 
-	@edu.umd.cs.findbugs.annotations.SuppressWarnings("BC_UNCONFIRMED_CAST")
+	/**
+	 * waits for the running generations and closes the javac file managers. The generations that are still waiting for a
+	 * worker after a few seconds are cancelled. If some generations are still running after a few more seconds, they are
+	 * logged and left running, with their file managers.
+	 */
 	public void close() {
-		Closeables.closeQuietly(fileManager);
-		if (taskExecutor instanceof ExecutorService) {
-			ExecutorService es = (ExecutorService) taskExecutor;
-			es.shutdown();
-			try {
-				es.awaitTermination(EXECUTOR_TERMINAL_TIMEOUT, TimeUnit.SECONDS);
+		boolean terminated = true;
+		if (generationExecutor != null) {
+			terminated = shutdown(generationExecutor);
+			generationExecutor = null;
+		}
+		synchronized (allFileManagers) {
+			// if the calling thread was interrupted or a worker is stuck, some workers may still use their file managers
+			if (terminated) {
+				for (FileManagers managers : allFileManagers) {
+					Closeables.closeQuietly(managers.fileManager);
+				}
 			}
-			catch (InterruptedException e) {
-				return;
+			allFileManagers.clear();
+		}
+		fileManagers.remove();
+	}
+
+	/**
+	 * @return true if all the workers finished, false if the calling thread was interrupted before or if some workers
+	 *         are stuck
+	 */
+	@SuppressWarnings("PMD.DoNotUseThreads")
+	private boolean shutdown(ExecutorService executor) {
+		executor.shutdown();
+		try {
+			if (!executor.awaitTermination(EXECUTOR_TERMINAL_TIMEOUT, TimeUnit.SECONDS)) {
+				cancel(executor.shutdownNow());
+				// javac ignores the interruptions: give the running generations some more time to end
+				if (!executor.awaitTermination(EXECUTOR_TERMINAL_TIMEOUT, TimeUnit.SECONDS)) {
+					LOG.warning("The generation workers did not stop after " + 2 * EXECUTOR_TERMINAL_TIMEOUT
+							+ " seconds, these classes are still being generated: " + runningGenerations.keySet());
+					return false;
+				}
+			}
+			return true;
+		}
+		catch (InterruptedException e) {
+			cancel(executor.shutdownNow());
+			Thread.currentThread().interrupt();
+			return executor.isTerminated();
+		}
+	}
+
+	@SuppressWarnings("PMD.DoNotUseThreads")
+	private static void cancel(List<Runnable> notStartedTasks) {
+		for (Runnable task : notStartedTasks) {
+			if (task instanceof BatchGeneration) {
+				((BatchGeneration) task).cancel();
+			}
+		}
+	}
+
+	/**
+	 * prepares this generator, used for a previous generation of the same project, for a new generation. This allows a
+	 * long-lived process to keep the generator (and the javac file managers) warm between builds. It must not be called
+	 * while a generation is running.
+	 * 
+	 * @param builtProjectClassLoader
+	 *            - the new class loader of the project. It must have the same classpath as the previous one.
+	 * @param changedClassPath
+	 *            - the jars and folders of the classpath that changed since the previous generation. The packages found
+	 *            in the other ones are not listed again.
+	 */
+	public void reload(ClassLoader builtProjectClassLoader, Collection<File> changedClassPath) {
+		cacheAnnotations.clear();
+		typeNameCache.set(null);
+		synchronized (allFileManagers) {
+			for (FileManagers managers : allFileManagers) {
+				try {
+					managers.classLoaderFileManager.update(builtProjectClassLoader, changedClassPath);
+				}
+				catch (IOException e) {
+					throw new STJSRuntimeException("Cannot read the changed classpath " + changedClassPath + ":" + e, e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * adds a listener receiving the measures of the next generations
+	 */
+	public void addListener(GenerationListener listener) {
+		listeners.add(listener);
+	}
+
+	public void removeListener(GenerationListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * @return the current time if some listener needs it
+	 */
+	private long startPhase() {
+		return listeners.isEmpty() ? 0 : System.nanoTime();
+	}
+
+	private void endPhase(GenerationPhase phase, List<String> classNames, long start) {
+		if (!listeners.isEmpty()) {
+			long nanos = System.nanoTime() - start;
+			for (GenerationListener listener : listeners) {
+				listener.phaseEnded(phase, classNames, nanos);
 			}
 		}
 	}
@@ -118,7 +268,7 @@ public class Generator {
 
 	public File getOutputFile(File generationFolder, String className, boolean generateDirectory) {
 		File output = new File(generationFolder, className.replace('.', File.separatorChar) + ".js");
-		if (generateDirectory && !output.getParentFile().exists() && !output.getParentFile().mkdirs()) {
+		if (generateDirectory && !output.getParentFile().mkdirs() && !output.getParentFile().isDirectory()) {
 			throw new STJSRuntimeException("Unable to create parent folder for the output file:" + output);
 		}
 		return output;
@@ -128,12 +278,216 @@ public class Generator {
 		return new File(sourceFolder, className.replace('.', File.separatorChar) + ".java");
 	}
 
+	private TypeNameCache getTypeNameCache(ClassLoader builtProjectClassLoader, GeneratorConfiguration configuration) {
+		TypeNameCache cache = typeNameCache.get();
+		if (cache == null || !cache.isFor(builtProjectClassLoader, configuration)) {
+			cache = new TypeNameCache(builtProjectClassLoader, configuration, bridgeCacheListener);
+			typeNameCache.set(cache);
+		}
+		return cache;
+	}
+
 	@SuppressWarnings({ "unchecked", "rawtypes" })
-	private JavaScriptBuilder<Object> getJavaScriptBuilder() {
-		// TODO: here we my return SourceJavaScript builder as well.
+	private JavaScriptBuilder<Object> getJavaScriptBuilder(GeneratorConfiguration configuration) {
+		if (configuration.isTextBuilder()) {
+			return (JavaScriptBuilder) new TextJavaScriptBuilder();
+		}
 		return (JavaScriptBuilder) new RhinoJavaScriptBuilder();
 	}
 
+	/**
+	 * Schedules the generation of the given class on the generation workers (see {@link #init(ClassLoader, String, int)}
+	 * ). If the generator was initialized with a single thread, the class is generated before this method returns. Any
+	 * generation error is reported by the returned future as the cause of an
+	 * {@link java.util.concurrent.ExecutionException}.
+	 */
+	public Future<ClassWithJavascript> submitJavascriptGeneration(ClassLoader builtProjectClassLoader, String className,
+			File sourceFolder, GenerationDirectory generationFolder, File targetFolder, GeneratorConfiguration configuration) {
+		return submitJavascriptGeneration(builtProjectClassLoader, Collections.singletonList(className), sourceFolder, generationFolder,
+				targetFolder, configuration).get(0);
+	}
+
+	/**
+	 * Schedules the generation of the given classes. The classes are split in batches of
+	 * {@link GeneratorConfiguration#getBatchSize()} classes, each batch being parsed and analyzed by a single javac task.
+	 * 
+	 * @return one future for each class, in the same order as the class names.
+	 */
+	@SuppressWarnings("PMD.DoNotUseThreads")
+	public List<Future<ClassWithJavascript>> submitJavascriptGeneration(final ClassLoader builtProjectClassLoader,
+			List<String> classNames, final File sourceFolder, final GenerationDirectory generationFolder, final File targetFolder,
+			final GeneratorConfiguration configuration) {
+		List<Future<ClassWithJavascript>> results = new ArrayList<Future<ClassWithJavascript>>(classNames.size());
+		int batchSize = Math.max(1, configuration.getBatchSize());
+		for (int i = 0; i < classNames.size(); i += batchSize) {
+			final List<String> batch = classNames.subList(i, Math.min(classNames.size(), i + batchSize));
+			final List<SettableFuture<ClassWithJavascript>> batchResults = new ArrayList<SettableFuture<ClassWithJavascript>>(batch.size());
+			for (int j = 0; j < batch.size(); ++j) {
+				batchResults.add(SettableFuture.<ClassWithJavascript>create());
+			}
+			results.addAll(batchResults);
+
+			Runnable generation = new BatchGeneration(batchResults) {
+				@Override
+				public void run() {
+					generateBatch(builtProjectClassLoader, batch, sourceFolder, generationFolder, targetFolder, configuration, batchResults);
+				}
+			};
+			if (generationExecutor != null) {
+				generationExecutor.execute(generation);
+			} else {
+				generation.run();
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Generates the JavaScript for all the given classes, parsing and analyzing the corresponding Java files with a single
+	 * javac task, whatever the configured batch size. The generation is done in the calling thread.
+	 * 
+	 * @return the generated classes, in the same order as the class names
+	 * @throws JavascriptFileGenerationException
+	 *             the error of the first class (in the given order) that could not be generated
+	 */
+	public List<ClassWithJavascript> generateJavascript(ClassLoader builtProjectClassLoader, Collection<String> classNames,
+			File sourceFolder, GenerationDirectory generationFolder, File targetFolder, GeneratorConfiguration configuration)
+			throws JavascriptFileGenerationException {
+		List<String> batch = new ArrayList<String>(classNames);
+		List<SettableFuture<ClassWithJavascript>> batchResults = new ArrayList<SettableFuture<ClassWithJavascript>>(batch.size());
+		for (int j = 0; j < batch.size(); ++j) {
+			batchResults.add(SettableFuture.<ClassWithJavascript>create());
+		}
+		generateBatch(builtProjectClassLoader, batch, sourceFolder, generationFolder, targetFolder, configuration, batchResults);
+
+		List<ClassWithJavascript> generated = new ArrayList<ClassWithJavascript>(batch.size());
+		for (SettableFuture<ClassWithJavascript> result : batchResults) {
+			try {
+				generated.add(result.get());
+			}
+			catch (InterruptedException e) {
+				// cannot happen, all the futures are already set
+				Thread.currentThread().interrupt();
+				throw new STJSRuntimeException(e);
+			}
+			catch (ExecutionException e) {
+				throw Throwables.propagate(e.getCause());
+			}
+		}
+		return generated;
+	}
+
+	/**
+	 * generates the given classes, setting the result (or the error) of each class in the corresponding future.
+	 */
+	@SuppressWarnings("PMD.AvoidCatchingThrowable")
+	private void generateBatch(final ClassLoader builtProjectClassLoader, List<String> classNames, File sourceFolder,
+			final GenerationDirectory generationFolder, final File targetFolder, final GeneratorConfiguration configuration,
+			List<SettableFuture<ClassWithJavascript>> results) {
+		final DependencyResolver dependencyResolver = new GeneratorDependencyResolver(builtProjectClassLoader, sourceFolder, generationFolder,
+				targetFolder, configuration);
+
+		// the bridges are not parsed
+		List<Class<?>> classes = new ArrayList<Class<?>>();
+		List<String> parsedClassNames = new ArrayList<String>();
+		List<File> inputFiles = new ArrayList<File>();
+		List<SettableFuture<ClassWithJavascript>> classResults = new ArrayList<SettableFuture<ClassWithJavascript>>();
+		for (int i = 0; i < classNames.size(); ++i) {
+			try {
+				Class<?> clazz = ClassUtils.getClazz(builtProjectClassLoader, classNames.get(i));
+				if (ClassUtils.isBridge(builtProjectClassLoader, clazz, bridgeCacheListener)) {
+					results.get(i).set(new BridgeClass(dependencyResolver, clazz));
+				} else {
+					classes.add(clazz);
+					parsedClassNames.add(classNames.get(i));
+					inputFiles.add(getInputFile(sourceFolder, classNames.get(i)));
+					classResults.add(results.get(i));
+				}
+			}
+			catch (Throwable e) {
+				results.get(i).setException(e);
+			}
+		}
+		if (classes.isEmpty()) {
+			return;
+		}
+
+		ParsedSources batchSources = null;
+		try {
+			batchSources = parseAndResolve(inputFiles, parsedClassNames, builtProjectClassLoader, configuration.getSourceEncoding());
+		}
+		catch (Throwable e) {
+			if (classes.size() == 1) {
+				classResults.get(0).setException(e);
+				return;
+			}
+			// the error of one file fails the whole javac task: each file is parsed again alone, so the error is only
+			// reported for the file that caused it
+		}
+
+		for (int i = 0; i < classes.size(); ++i) {
+			final Class<?> clazz = classes.get(i);
+			final File inputFile = inputFiles.get(i);
+			try {
+				final ParsedSources parsedSources;
+				final int index;
+				if (batchSources != null) {
+					parsedSources = batchSources;
+					index = i;
+				} else {
+					parsedSources = parseAndResolve(Collections.singletonList(inputFile), Collections.singletonList(parsedClassNames.get(i)),
+							builtProjectClassLoader, configuration.getSourceEncoding());
+					index = 0;
+				}
+				classResults.get(i).set(generateOnce(clazz.getName(), new Callable<ClassWithJavascript>() {
+					@Override
+					public ClassWithJavascript call() {
+						return generateJavascript(builtProjectClassLoader, clazz, inputFile, parsedSources, index, dependencyResolver,
+								generationFolder, targetFolder, configuration);
+					}
+				}));
+			}
+			catch (Throwable e) {
+				classResults.get(i).setException(e);
+			}
+		}
+	}
+
+	/**
+	 * generates a class, unless another worker is already generating the same class. In this case the result of the
+	 * other worker is returned.
+	 */
+	@SuppressWarnings("PMD.AvoidCatchingThrowable")
+	private ClassWithJavascript generateOnce(String className, Callable<ClassWithJavascript> generation) {
+		SettableFuture<ClassWithJavascript> result = SettableFuture.create();
+		Future<ClassWithJavascript> running = runningGenerations.putIfAbsent(className, result);
+		if (running != null) {
+			try {
+				return running.get();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new STJSRuntimeException("Interrupted while waiting for the generation of " + className, e);
+			}
+			catch (ExecutionException e) {
+				throw Throwables.propagate(e.getCause());
+			}
+		}
+		try {
+			ClassWithJavascript generated = generation.call();
+			result.set(generated);
+			return generated;
+		}
+		catch (Throwable e) {
+			result.setException(e);
+			throw Throwables.propagate(e);
+		}
+		finally {
+			// the files are written: the next resolutions find them
+			runningGenerations.remove(className, result);
+		}
+	}
+
 	/**
 	 * @param builtProjectClassLoader
 	 * @param inputFile
@@ -141,7 +495,6 @@ public class Generator {
 	 * @param configuration
 	 * @return the list of imports needed by the generated class
 	 */
-	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public ClassWithJavascript generateJavascript(ClassLoader builtProjectClassLoader, String className, File sourceFolder,
 			GenerationDirectory generationFolder, File targetFolder, GeneratorConfiguration configuration)
 			throws JavascriptFileGenerationException {
@@ -150,32 +503,50 @@ public class Generator {
 				targetFolder, configuration);
 
 		Class<?> clazz = ClassUtils.getClazz(builtProjectClassLoader, className);
-		if (ClassUtils.isBridge(builtProjectClassLoader, clazz)) {
+		if (ClassUtils.isBridge(builtProjectClassLoader, clazz, bridgeCacheListener)) {
 			return new BridgeClass(dependencyResolver, clazz);
 		}
 
 		File inputFile = getInputFile(sourceFolder, className);
+		ParsedSources parsedSources = parseAndResolve(Collections.singletonList(inputFile), Collections.singletonList(className),
+				builtProjectClassLoader, configuration.getSourceEncoding());
+		return generateJavascript(builtProjectClassLoader, clazz, inputFile, parsedSources, 0, dependencyResolver, generationFolder,
+				targetFolder, configuration);
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private ClassWithJavascript generateJavascript(ClassLoader builtProjectClassLoader, Class<?> clazz, File inputFile,
+			ParsedSources parsedSources, int index, DependencyResolver dependencyResolver, GenerationDirectory generationFolder, File targetFolder,
+			GeneratorConfiguration configuration) {
+		String className = clazz.getName();
 		File outputFile = getOutputFile(generationFolder.getAbsolutePath(), className);
-		JavaScriptNameProvider names = new DefaultJavaScriptNameProvider();
+		JavaScriptNameProvider names = new DefaultJavaScriptNameProvider(getTypeNameCache(builtProjectClassLoader, configuration));
 		GenerationPlugins<Object> currentClassPlugins = plugins.forClass(clazz);
 
 		GenerationContext<Object> context = new GenerationContext<Object>(inputFile, configuration, names, null, builtProjectClassLoader,
-				cacheAnnotations, getJavaScriptBuilder());
+				cacheAnnotations, getJavaScriptBuilder(configuration));
 
-		CompilationUnitTree cu = parseAndResolve(inputFile, context, builtProjectClassLoader, configuration.getSourceEncoding());
+		CompilationUnitTree cu = parsedSources.setup(context, index);
 
-		// check the code
-		Timers.start("check-java");
-		currentClassPlugins.getCheckVisitor().scan(cu, (GenerationContext) context);
-		context.getChecks().check();
-		Timers.end("check-java");
+		List<String> classNames = Collections.singletonList(className);
 
-		// generate the javascript code
-		Timers.start("write-js-ast");
-		Object javascriptRoot = currentClassPlugins.getWriterVisitor().scan(cu, context);
-		// check for any error arriving during writing
-		context.getChecks().check();
-		Timers.end("write-js-ast");
+		Object javascriptRoot;
+		if (configuration.isSinglePass()) {
+			javascriptRoot = checkAndWrite(currentClassPlugins, cu, context, classNames);
+		} else {
+			// check the code
+			long start = startPhase();
+			currentClassPlugins.getCheckVisitor().scan(cu, (GenerationContext) context);
+			context.getChecks().check();
+			endPhase(GenerationPhase.CHECK_JAVA, classNames, start);
+
+			// generate the javascript code
+			start = startPhase();
+			javascriptRoot = currentClassPlugins.getWriterVisitor().scan(cu, context);
+			// check for any error arriving during writing
+			context.getChecks().check();
+			endPhase(GenerationPhase.WRITE_JS_AST, classNames, start);
+		}
 
 		STJSClass stjsClass = new STJSClass(dependencyResolver, targetFolder, className);
 		Set<String> resolvedClasses = new LinkedHashSet<String>(names.getResolvedTypes());
@@ -190,6 +561,30 @@ public class Generator {
 		return stjsClass;
 	}
 
+	/**
+	 * checks the code and generates the javascript code in a single traversal of the compilation unit
+	 */
+	private Object checkAndWrite(GenerationPlugins<Object> currentClassPlugins, CompilationUnitTree cu, GenerationContext<Object> context,
+			List<String> classNames) {
+		long start = startPhase();
+		context.setFusedChecks(new FusedChecks(currentClassPlugins.getCheckVisitor(), context));
+		Object javascriptRoot;
+		try {
+			javascriptRoot = currentClassPlugins.getWriterVisitor().scan(cu, context);
+		}
+		catch (RuntimeException e) {
+			// the writers may fail on the code that did not pass the checks: the errors of the checks are more useful
+			context.getChecks().check();
+			throw e;
+		}
+		finally {
+			context.setFusedChecks(null);
+		}
+		context.getChecks().check();
+		endPhase(GenerationPhase.CHECK_AND_WRITE_JS_AST, classNames, start);
+		return javascriptRoot;
+	}
+
 	private URI relative(GenerationDirectory generationFolder, String className) {
 		// FIXME temporary have to remove the full path from the file name.
 		// it should be different depending on whether the final artifact is a war or a jar.
@@ -215,49 +610,56 @@ public class Generator {
 		}
 	}
 
-	private JavaCompiler getCompiler(ClassLoader builtProjectClassLoader, String sourceEncoding) {
+	private JavaCompiler getCompiler() {
 		// create it directly to avoid ClassLoader problems
 		JavaCompiler compiler = JavacTool.create();
 		if (compiler == null) {
 			throw new STJSRuntimeException(
 					"A Java compiler is not available for this project. You may have configured your environment to run with JRE instead of a JDK");
 		}
-		if (fileManager == null) {
-			fileManager = compiler.getStandardFileManager(null, null, Charset.forName(sourceEncoding));
-			classLoaderFileManager = new CustomClassloaderJavaFileManager(builtProjectClassLoader, fileManager);
-		}
 		return compiler;
 	}
 
-	private <JS> CompilationUnitTree parseAndResolve(File inputFile, GenerationContext<JS> context, ClassLoader builtProjectClassLoader,
+	private FileManagers getFileManagers(JavaCompiler compiler, ClassLoader builtProjectClassLoader, String sourceEncoding) {
+		FileManagers managers = fileManagers.get();
+		if (managers == null) {
+			StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, Charset.forName(sourceEncoding));
+			managers = new FileManagers(fileManager, new CustomClassloaderJavaFileManager(builtProjectClassLoader, fileManager));
+			allFileManagers.add(managers);
+			fileManagers.set(managers);
+		}
+		return managers;
+	}
+
+	private ParsedSources parseAndResolve(List<File> inputFiles, List<String> classNames, ClassLoader builtProjectClassLoader,
 			String sourceEncoding) {
 		JavaCompiler.CompilationTask task = null;
 		JavacTask javacTask = null;
 		try {
-			JavaCompiler compiler = getCompiler(builtProjectClassLoader, sourceEncoding);
-			Iterable<? extends JavaFileObject> fileObjects = fileManager.getJavaFileObjectsFromFiles(Collections.singleton(inputFile));
+			JavaCompiler compiler = getCompiler();
+			FileManagers managers = getFileManagers(compiler, builtProjectClassLoader, sourceEncoding);
+			Iterable<? extends JavaFileObject> fileObjects = managers.fileManager.getJavaFileObjectsFromFiles(inputFiles);
 			List<String> options = Arrays.asList("-proc:none");
-			task = compiler.getTask(null, classLoaderFileManager, null, options, null, fileObjects);
+			task = compiler.getTask(null, managers.classLoaderFileManager, null, options, null, fileObjects);
 			javacTask = (JavacTask) task;
 
-			context.setTrees(Trees.instance(javacTask));
-			context.setElements(javacTask.getElements());
-			context.setTypes(javacTask.getTypes());
-
-			Timers.start("parse-java");
-			CompilationUnitTree cu = javacTask.parse().iterator().next();
-			Timers.end("parse-java");
+			long start = startPhase();
+			// the compilation units are returned in the same order as the files
+			List<CompilationUnitTree> compilationUnits = new ArrayList<CompilationUnitTree>(inputFiles.size());
+			for (CompilationUnitTree cu : javacTask.parse()) {
+				compilationUnits.add(cu);
+			}
+			endPhase(GenerationPhase.PARSE_JAVA, classNames, start);
 
-			Timers.start("analyze-java");
+			start = startPhase();
 			javacTask.analyze();
-			Timers.end("analyze-java");
+			endPhase(GenerationPhase.ANALYZE_JAVA, classNames, start);
 
-			context.setCompilationUnit(cu);
-
-			return cu;
+			return new ParsedSources(javacTask, compilationUnits);
 		}
 		catch (IOException e) {
-			throw new JavascriptFileGenerationException(new SourcePosition(context.getInputFile(), 0, 0), "Cannot parse the Java file:" + e);
+			// when a batch fails, its files are parsed again one by one, so the error is finally reported for a single file
+			throw new JavascriptFileGenerationException(new SourcePosition(inputFiles.get(0), 0, 0), "Cannot parse the Java file:" + e);
 		}
 
 	}
@@ -285,6 +687,38 @@ public class Generator {
 		}
 	}
 
+	/**
+	 * the compilation units parsed and analyzed by the same javac task
+	 */
+	private static final class ParsedSources {
+		private final JavacTask javacTask;
+		private final List<CompilationUnitTree> compilationUnits;
+
+		public ParsedSources(JavacTask javacTask, List<CompilationUnitTree> compilationUnits) {
+			this.javacTask = javacTask;
+			this.compilationUnits = compilationUnits;
+		}
+
+		public <JS> CompilationUnitTree setup(GenerationContext<JS> context, int index) {
+			CompilationUnitTree cu = compilationUnits.get(index);
+			context.setTrees(Trees.instance(javacTask));
+			context.setElements(javacTask.getElements());
+			context.setTypes(javacTask.getTypes());
+			context.setCompilationUnit(cu);
+			return cu;
+		}
+	}
+
+	private static final class FileManagers {
+		private final StandardJavaFileManager fileManager;
+		private final CustomClassloaderJavaFileManager classLoaderFileManager;
+
+		public FileManagers(StandardJavaFileManager fileManager, CustomClassloaderJavaFileManager classLoaderFileManager) {
+			this.fileManager = fileManager;
+			this.classLoaderFileManager = classLoaderFileManager;
+		}
+	}
+
 	private static final class InputStreamSupplier implements InputSupplier<InputStream> {
 		private final InputStream input;
 
@@ -340,7 +774,7 @@ public class Generator {
 			catch (ClassNotFoundException e) {
 				throw new STJSRuntimeException(e);
 			}
-			if (ClassUtils.isBridge(builtProjectClassLoader, clazz)) {
+			if (ClassUtils.isBridge(builtProjectClassLoader, clazz, bridgeCacheListener)) {
 				return new BridgeClass(this, clazz);
 			}
 
@@ -348,8 +782,19 @@ public class Generator {
 			STJSClass stjsClass = new STJSClass(this, builtProjectClassLoader, parentClassName);
 			if (stjsClass.getJavascriptFiles().isEmpty()) {
 				checkFolders(parentClassName);
-				stjsClass = (STJSClass) generateJavascript(builtProjectClassLoader, parentClassName, sourceFolder, generationFolder,
-						targetFolder, configuration);
+				final String generatedClassName = parentClassName;
+				final DependencyResolver resolver = this;
+				return generateOnce(parentClassName, new Callable<ClassWithJavascript>() {
+					@Override
+					public ClassWithJavascript call() {
+						// another worker may have written the class between the first check and this generation
+						if (builtProjectClassLoader.getResource(ClassUtils.getPropertiesFileName(generatedClassName)) != null) {
+							return new STJSClass(resolver, builtProjectClassLoader, generatedClassName);
+						}
+						return generateJavascript(builtProjectClassLoader, generatedClassName, sourceFolder, generationFolder, targetFolder,
+								configuration);
+					}
+				});
 			}
 			return stjsClass;
 		}
@@ -365,6 +810,25 @@ public class Generator {
 		return new GeneratorDependencyResolver(classLoader, null, null, null, null).resolve(testClass.getName());
 	}
 
+	/**
+	 * the generation of a batch of classes, run by a worker. If it's cancelled before it starts, the generation of all its
+	 * classes fails.
+	 */
+	@SuppressWarnings("PMD.DoNotUseThreads")
+	private abstract static class BatchGeneration implements Runnable {
+		private final List<SettableFuture<ClassWithJavascript>> results;
+
+		public BatchGeneration(List<SettableFuture<ClassWithJavascript>> results) {
+			this.results = results;
+		}
+
+		public void cancel() {
+			for (SettableFuture<ClassWithJavascript> result : results) {
+				result.cancel(false);
+			}
+		}
+	}
+
 	@SuppressWarnings("PMD.DoNotUseThreads")
 	private class DumpFilesTask<JS> implements Runnable {
 		private final File outputFile;
@@ -386,19 +850,35 @@ public class Generator {
 
 		@Override
 		public void run() {
+			List<String> classNames = Collections.singletonList(stjsClass.getClassName());
+			long start = startPhase();
 			writeJavaScript();
+			endPhase(GenerationPhase.DUMP_JS, classNames, start);
+
+			start = startPhase();
 			writePropertiesFile();
-			writeSourceMap();
+			endPhase(GenerationPhase.WRITE_PROPS, classNames, start);
+
+			if (generateSourceMap) {
+				start = startPhase();
+				writeSourceMap();
+				endPhase(GenerationPhase.WRITE_SOURCE_MAP, classNames, start);
+			}
+
+			if (!listeners.isEmpty()) {
+				long writtenBytes = outputFile.length();
+				for (GenerationListener listener : listeners) {
+					listener.classGenerated(stjsClass.getClassName(), context.getVisitedNodes(), writtenBytes);
+				}
+			}
 		}
 
 		private void writeJavaScript() {
 			BufferedWriter writer = null;
 			try {
-				Timers.start("dump-js");
 				writer = Files.newWriter(outputFile, Charset.forName(sourceEncoding));
 				context.writeJavaScript(javascriptRoot, writer);
 				writer.flush();
-				Timers.end("dump-js");
 			}
 			catch (IOException e) {
 				throw new STJSRuntimeException("Could not open output file " + outputFile + ":" + e, e);
@@ -411,9 +891,7 @@ public class Generator {
 		// write properties
 
 		private void writePropertiesFile() {
-			Timers.start("write-props");
 			stjsClass.store();
-			Timers.end("write-props");
 		}
 
 		private void writeSourceMap() {
@@ -24,14 +24,21 @@ public class GeneratorConfiguration {
 	private final boolean generateArrayHasOwnProperty;
 	private final boolean generateSourceMap;
 	private final String sourceEncoding;
+	private final int batchSize;
+	private final boolean singlePass;
+	private final boolean textBuilder;
 
 	GeneratorConfiguration(Collection<String> allowedPackages, Set<String> allowedJavaLangClasses, boolean generateArrayHasOwnProperty,
-			boolean generateSourceMap, String sourceEncoding) {
+			boolean generateSourceMap, String sourceEncoding, int batchSize, boolean singlePass,
+			boolean textBuilder) {
 		this.allowedPackages = allowedPackages;
 		this.allowedJavaLangClasses = allowedJavaLangClasses;
 		this.generateArrayHasOwnProperty = generateArrayHasOwnProperty;
 		this.generateSourceMap = generateSourceMap;
 		this.sourceEncoding = sourceEncoding;
+		this.batchSize = batchSize;
+		this.singlePass = singlePass;
+		this.textBuilder = textBuilder;
 	}
 
 	/**
@@ -58,4 +65,27 @@ public class GeneratorConfiguration {
 		return sourceEncoding;
 	}
 
+	/**
+	 * @return the maximum number of Java files that are parsed and analyzed together by the same javac task. Batches of
+	 *         more than one file are experimental: the classes of a batch see each other as source code.
+	 */
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * @return true if the checks are run during the traversal of the writers, instead of a separate traversal before
+	 */
+	public boolean isSinglePass() {
+		return singlePass;
+	}
+
+	/**
+	 * @return true if the JavaScript code is built as text fragments written directly to the output, instead of a Rhino
+	 *         synthax tree. The generated code is the same.
+	 */
+	public boolean isTextBuilder() {
+		return textBuilder;
+	}
+
 }
@@ -31,6 +31,9 @@ public class GeneratorConfigurationBuilder {
 	private boolean generateArrayHasOwnProperty = true;
 	private boolean generateSourceMap;
 	private String sourceEncoding = Charset.defaultCharset().name();
+	private int batchSize = 1;
+	private boolean singlePass;
+	private boolean textBuilder;
 
 	public GeneratorConfigurationBuilder allowedPackage(String packageName) {
 		allowedPackages.add(packageName);
@@ -67,6 +70,21 @@ public class GeneratorConfigurationBuilder {
 		return this;
 	}
 
+	public GeneratorConfigurationBuilder batchSize(int batchSize) {
+		this.batchSize = batchSize;
+		return this;
+	}
+
+	public GeneratorConfigurationBuilder singlePass(boolean singlePass) {
+		this.singlePass = singlePass;
+		return this;
+	}
+
+	public GeneratorConfigurationBuilder textBuilder(boolean textBuilder) {
+		this.textBuilder = textBuilder;
+		return this;
+	}
+
 	public GeneratorConfiguration build() {
 		allowedJavaLangClasses.add("Object");
 		allowedJavaLangClasses.add("Class");
@@ -90,7 +108,7 @@ public class GeneratorConfigurationBuilder {
 		allowedPackages.add("java.lang");
 
 		return new GeneratorConfiguration(allowedPackages, allowedJavaLangClasses, generateArrayHasOwnProperty, generateSourceMap,
-				sourceEncoding);
+				sourceEncoding, batchSize, singlePass, textBuilder);
 	}
 
 }
@@ -0,0 +1,322 @@
+/**
+ *  Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.stjs.generator;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Closeables;
+import com.google.common.io.Files;
+
+/**
+ * This class is a compact replacement for the .stjs properties files of a whole module: a single binary file (
+ * {@link #MANIFEST_FILE}) holding, for each generated class, the generated JavaScript file and the dependencies. The
+ * entries are sorted by class name, so a class is found by a binary search in the index and only the entry that is
+ * found is decoded. The manifests are read in memory, so the files can be replaced while they are used. <br>
+ * Only the manifests found in jars are used to look up the classes of a class loader. The manifest found in a folder
+ * (like the build output folder of the project being generated) may be older than the .stjs files of this folder.<br>
+ * The layout is: a header (magic, version, number of entries), the index (for each entry the offset of the class name
+ * and the offset of the data), then the class names and the data. The strings are stored as their UTF-8 length followed
+ * by the UTF-8 bytes.
+ */
+public final class ModuleManifest {
+	public static final String MANIFEST_FILE = "META-INF/stjs.manifest";
+
+	private static final int MAGIC = 0x53544A53;
+	private static final int VERSION = 1;
+	private static final int HEADER_SIZE = 12;
+	private static final int INDEX_ENTRY_SIZE = 8;
+	private static final int NO_JS = -1;
+	private static final String JAR_PROTOCOL = "jar";
+
+	private static final Map<ClassLoader, List<ModuleManifest>> MANIFESTS_BY_CLASSLOADER = new WeakHashMap<ClassLoader, List<ModuleManifest>>();
+
+	private final ByteBuffer buffer;
+	private final int count;
+
+	private ModuleManifest(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer;
+		if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+			throw new IOException("Unknown STJS manifest format");
+		}
+		this.count = buffer.getInt(8);
+	}
+
+	/**
+	 * reads the manifest found at the given URL in memory
+	 */
+	public static ModuleManifest open(URL url) throws IOException {
+		InputStream input = url.openStream();
+		try {
+			return new ModuleManifest(ByteBuffer.wrap(ByteStreams.toByteArray(input)));
+		}
+		finally {
+			Closeables.closeQuietly(input);
+		}
+	}
+
+	/**
+	 * reads the given manifest file in memory. The file can be replaced afterwards.
+	 */
+	public static ModuleManifest open(File file) throws IOException {
+		return new ModuleManifest(ByteBuffer.wrap(Files.toByteArray(file)));
+	}
+
+	/**
+	 * @return the manifests found in the jars of the given class loader. The manifests are read once for each class
+	 *         loader.
+	 */
+	public static List<ModuleManifest> getManifests(ClassLoader classLoader) {
+		synchronized (MANIFESTS_BY_CLASSLOADER) {
+			List<ModuleManifest> manifests = MANIFESTS_BY_CLASSLOADER.get(classLoader);
+			if (manifests == null) {
+				manifests = new ArrayList<ModuleManifest>();
+				try {
+					Enumeration<URL> urls = classLoader.getResources(MANIFEST_FILE);
+					while (urls.hasMoreElements()) {
+						URL url = urls.nextElement();
+						// the .stjs files of a folder may have been generated again after its manifest
+						if (JAR_PROTOCOL.equals(url.getProtocol())) {
+							manifests.add(open(url));
+						}
+					}
+				}
+				catch (IOException e) {
+					throw new STJSRuntimeException("Cannot read the STJS manifests:" + e, e);
+				}
+				MANIFESTS_BY_CLASSLOADER.put(classLoader, manifests);
+			}
+			return manifests;
+		}
+	}
+
+	/**
+	 * @return the entry of the given class in any of the manifests of the class loader, or null if no manifest
+	 *         contains the class
+	 */
+	public static Entry find(ClassLoader classLoader, String className) {
+		List<ModuleManifest> manifests = getManifests(classLoader);
+		if (manifests.isEmpty()) {
+			return null;
+		}
+		byte[] name = className.getBytes(Charsets.UTF_8);
+		for (ModuleManifest manifest : manifests) {
+			Entry entry = manifest.find(name);
+			if (entry != null) {
+				return entry;
+			}
+		}
+		return null;
+	}
+
+	public Entry find(String className) {
+		return find(className.getBytes(Charsets.UTF_8));
+	}
+
+	private Entry find(byte[] name) {
+		int low = 0;
+		int high = count - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			int indexPos = HEADER_SIZE + mid * INDEX_ENTRY_SIZE;
+			int cmp = compareName(buffer.getInt(indexPos), name);
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				return readEntry(new String(name, Charsets.UTF_8), buffer.getInt(indexPos + 4));
+			}
+		}
+		return null;
+	}
+
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * @return all the entries. All the entries are decoded by this method.
+	 */
+	public List<Entry> getEntries() {
+		List<Entry> entries = new ArrayList<Entry>(count);
+		for (int i = 0; i < count; ++i) {
+			int indexPos = HEADER_SIZE + i * INDEX_ENTRY_SIZE;
+			entries.add(readEntry(readString(buffer.getInt(indexPos)), buffer.getInt(indexPos + 4)));
+		}
+		return entries;
+	}
+
+	private int compareName(int namePos, byte[] name) {
+		int length = buffer.getInt(namePos);
+		int start = namePos + 4;
+		int n = Math.min(length, name.length);
+		for (int i = 0; i < n; ++i) {
+			int cmp = (buffer.get(start + i) & 0xff) - (name[i] & 0xff);
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		return length - name.length;
+	}
+
+	private String readString(int pos) {
+		int length = buffer.getInt(pos);
+		byte[] bytes = new byte[length];
+		// absolute bulk gets are not available, so work on a copy of the buffer to stay thread-safe
+		ByteBuffer view = buffer.duplicate();
+		view.position(pos + 4);
+		view.get(bytes);
+		return new String(bytes, Charsets.UTF_8);
+	}
+
+	private Entry readEntry(String className, int pos) {
+		int current = pos;
+		String javascriptFile = null;
+		if (buffer.getInt(current) == NO_JS) {
+			current += 4;
+		} else {
+			javascriptFile = readString(current);
+			current += 4 + buffer.getInt(current);
+		}
+		int depCount = buffer.getInt(current);
+		current += 4;
+		List<String> dependencies = new ArrayList<String>(depCount);
+		for (int i = 0; i < depCount; ++i) {
+			dependencies.add(readString(current));
+			current += 4 + buffer.getInt(current);
+		}
+		return new Entry(className, javascriptFile, dependencies);
+	}
+
+	/**
+	 * writes the manifest with the given entries in the given file
+	 */
+	public static void write(File file, Collection<Entry> entries) throws IOException {
+		List<Entry> sortedEntries = new ArrayList<Entry>(entries);
+		Collections.sort(sortedEntries, new Comparator<Entry>() {
+			@Override
+			public int compare(Entry o1, Entry o2) {
+				return compareBytes(o1.getClassName().getBytes(Charsets.UTF_8), o2.getClassName().getBytes(Charsets.UTF_8));
+			}
+		});
+
+		// first the data to know the offsets
+		ByteArrayOutputStream data = new ByteArrayOutputStream();
+		DataOutputStream dataOut = new DataOutputStream(data);
+		int dataStart = HEADER_SIZE + sortedEntries.size() * INDEX_ENTRY_SIZE;
+		int[] nameOffsets = new int[sortedEntries.size()];
+		int[] entryOffsets = new int[sortedEntries.size()];
+		for (int i = 0; i < sortedEntries.size(); ++i) {
+			Entry entry = sortedEntries.get(i);
+			nameOffsets[i] = dataStart + dataOut.size();
+			writeBytes(dataOut, entry.getClassName().getBytes(Charsets.UTF_8));
+
+			entryOffsets[i] = dataStart + dataOut.size();
+			if (entry.getJavascriptFile() == null) {
+				dataOut.writeInt(NO_JS);
+			} else {
+				writeBytes(dataOut, entry.getJavascriptFile().getBytes(Charsets.UTF_8));
+			}
+			dataOut.writeInt(entry.getDependencies().size());
+			for (String dep : entry.getDependencies()) {
+				writeBytes(dataOut, dep.getBytes(Charsets.UTF_8));
+			}
+		}
+		dataOut.flush();
+
+		if (!file.getParentFile().mkdirs() && !file.getParentFile().isDirectory()) {
+			throw new IOException("Unable to create parent folder for the manifest file:" + file);
+		}
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeInt(sortedEntries.size());
+			for (int i = 0; i < sortedEntries.size(); ++i) {
+				out.writeInt(nameOffsets[i]);
+				out.writeInt(entryOffsets[i]);
+			}
+			data.writeTo(out);
+		}
+		finally {
+			Closeables.closeQuietly(out);
+		}
+	}
+
+	private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static int compareBytes(byte[] a, byte[] b) {
+		int n = Math.min(a.length, b.length);
+		for (int i = 0; i < n; ++i) {
+			int cmp = (a[i] & 0xff) - (b[i] & 0xff);
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		return a.length - b.length;
+	}
+
+	/**
+	 * the information stored for a class
+	 */
+	public static final class Entry {
+		private final String className;
+		private final String javascriptFile;
+		private final List<String> dependencies;
+
+		public Entry(String className, String javascriptFile, List<String> dependencies) {
+			this.className = className;
+			this.javascriptFile = javascriptFile;
+			this.dependencies = Collections.unmodifiableList(dependencies);
+		}
+
+		public String getClassName() {
+			return className;
+		}
+
+		/**
+		 * @return the URI of the generated JavaScript file, as stored in the .stjs files
+		 */
+		public String getJavascriptFile() {
+			return javascriptFile;
+		}
+
+		public List<String> getDependencies() {
+			return dependencies;
+		}
+	}
+}
@@ -90,6 +90,16 @@ public class STJSClass implements ClassWithJavascript {
 		this.className = className;
 		this.targetFolder = null;
 		this.dependencyResolver = dependencyResolver;
+
+		// the module manifests of the jars are faster to look up than the .stjs files
+		ModuleManifest.Entry manifestEntry = ModuleManifest.find(classLoader, className);
+		if (manifestEntry != null) {
+			properties = new Properties();
+			dependencies = manifestEntry.getDependencies();
+			generatedJavascriptFile = toURI(manifestEntry.getJavascriptFile());
+			return;
+		}
+
 		properties = loadProperties(classLoader);
 
 		// deps
@@ -121,13 +131,37 @@ public class STJSClass implements ClassWithJavascript {
 		return props;
 	}
 
+	/**
+	 * reads the given .stjs file
+	 * 
+	 * @return the information from the file, as stored in a {@link ModuleManifest}
+	 */
+	public static ModuleManifest.Entry loadManifestEntry(File stjsFile, String className) throws IOException {
+		Properties props = new Properties();
+		InputStream inputStream = Files.newInputStreamSupplier(stjsFile).getInput();
+		try {
+			props.load(inputStream);
+		}
+		finally {
+			Closeables.closeQuietly(inputStream);
+		}
+		return new ModuleManifest.Entry(className, props.getProperty(GENERATED_JS_FILE_PROP), readDependencies(props));
+	}
+
 	private List<String> readDependeciesProperty() {
+		return readDependencies(properties);
+	}
+
+	private static List<String> readDependencies(Properties properties) {
 		String depProp = properties.getProperty(DEPENDENCIES_PROP);
 		if (depProp != null) {
 			// remove []
 			depProp = depProp.trim();
 			if (depProp.length() > 2) {
 				String deps[] = depProp.substring(1, depProp.length() - 1).split(",");
+				for (int i = 0; i < deps.length; ++i) {
+					deps[i] = deps[i].trim();
+				}
 				return Arrays.asList(deps);
 			}
 		}
@@ -135,7 +169,10 @@ public class STJSClass implements ClassWithJavascript {
 	}
 
 	private URI readGeneratedJavascriptFileProperty() {
-		String jsFile = properties.getProperty(GENERATED_JS_FILE_PROP);
+		return toURI(properties.getProperty(GENERATED_JS_FILE_PROP));
+	}
+
+	private URI toURI(String jsFile) {
 		if (jsFile != null) {
 			try {
 				return new URI(jsFile);
@@ -149,7 +186,7 @@ public class STJSClass implements ClassWithJavascript {
 
 	public File getStjsPropertiesFile() {
 		File propFile = new File(targetFolder, ClassUtils.getPropertiesFileName(className));
-		if (!propFile.getParentFile().exists() && !propFile.getParentFile().mkdirs()) {
+		if (!propFile.getParentFile().mkdirs() && !propFile.getParentFile().isDirectory()) {
 			throw new JavascriptClassGenerationException(className, "Unable to create parent folder for the properties file:" + propFile);
 		}
 		return propFile;
@@ -190,6 +227,21 @@ public class STJSClass implements ClassWithJavascript {
 		}
 	}
 
+	/**
+	 * @return the names of the classes this class depends on, without resolving them
+	 */
+	public List<String> getDependencies() {
+		return Collections.unmodifiableList(dependencies);
+	}
+
+	/**
+	 * @return the information about this class as stored in a {@link ModuleManifest}
+	 */
+	public ModuleManifest.Entry toManifestEntry() {
+		return new ModuleManifest.Entry(className, generatedJavascriptFile == null ? null : generatedJavascriptFile.toString(),
+				dependencies);
+	}
+
 	public void setGeneratedJavascriptFile(URI generatedJavascriptFile) {
 		this.generatedJavascriptFile = generatedJavascriptFile;
 		if (generatedJavascriptFile == null) {
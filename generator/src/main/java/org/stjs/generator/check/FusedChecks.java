@@ -0,0 +1,85 @@
+package org.stjs.generator.check;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+import org.stjs.generator.GenerationContext;
+import org.stjs.generator.writer.WriterVisitor;
+
+import com.sun.source.tree.Tree;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.TreeScanner;
+
+/**
+ * Runs the checks of a compilation unit during the traversal of the {@link WriterVisitor}, instead of a separate
+ * traversal with the {@link CheckVisitor}: the checks of a node are done just before its writer. The writers do not
+ * visit all the nodes (the annotations, the types of the variables etc), so when the writer of a node is done, the
+ * children it did not visit are checked with a regular scan. Each node is checked once. The errors are added to the
+ * {@link Checks} of the context, like in a separate traversal.
+ */
+public class FusedChecks {
+	private final CheckVisitor checkVisitor;
+	private final GenerationContext<Void> context;
+	private final Set<Tree> checkedNodes = Collections.newSetFromMap(new IdentityHashMap<Tree, Boolean>());
+	private final UncheckedChildrenScanner uncheckedChildrenScanner = new UncheckedChildrenScanner();
+	private final RemainingNodesScanner remainingNodesScanner = new RemainingNodesScanner();
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public FusedChecks(CheckVisitor checkVisitor, GenerationContext<?> context) {
+		this.checkVisitor = checkVisitor;
+		this.context = (GenerationContext) context;
+	}
+
+	/**
+	 * checks the given node, that is the leaf of the current path
+	 */
+	public void beforeWrite(Tree node) {
+		if (checkedNodes.add(node)) {
+			checkVisitor.visitNode(node, context);
+		}
+	}
+
+	/**
+	 * checks the children of the given node (the leaf of the current path) that were not visited by its writer
+	 */
+	public void afterWrite(Tree node) {
+		node.accept(uncheckedChildrenScanner, null);
+	}
+
+	/**
+	 * goes through the direct children of a node, without collecting them, and checks the ones that were not checked yet
+	 */
+	private class UncheckedChildrenScanner extends TreeScanner<Void, Void> {
+		@Override
+		public Void scan(Tree tree, Void p) {
+			if (tree != null && !checkedNodes.contains(tree)) {
+				remainingNodesScanner.scan(tree, context);
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * checks the nodes that were not visited by the writers, like the {@link CheckVisitor} does
+	 */
+	private class RemainingNodesScanner extends TreeScanner<Void, GenerationContext<Void>> {
+		@Override
+		public Void scan(Tree tree, GenerationContext<Void> p) {
+			if (tree == null) {
+				return null;
+			}
+			TreePath prev = p.getCurrentPath();
+			p.setCurrentPath(new TreePath(prev, tree));
+			try {
+				if (checkedNodes.add(tree)) {
+					checkVisitor.visitNode(tree, p);
+				}
+				return tree.accept(this, p);
+			}
+			finally {
+				p.setCurrentPath(prev);
+			}
+		}
+	}
+}
@@ -0,0 +1,177 @@
+/**
+ *  Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.stjs.generator.daemon;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Future;
+
+import org.stjs.generator.BridgeClass;
+import org.stjs.generator.ClassWithJavascript;
+import org.stjs.generator.DependencyResolver;
+import org.stjs.generator.Generator;
+import org.stjs.generator.STJSClass;
+import org.stjs.generator.STJSRuntimeException;
+
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * This class sends the generation of classes to a generator daemon running on the same machine. The daemon keeps the
+ * generator warm between builds.
+ */
+public class DaemonClient {
+	private static final int CONNECT_TIMEOUT_MILLIS = 2000;
+
+	private final int port;
+	private final String token;
+
+	private DaemonClient(int port, String token) {
+		this.port = port;
+		this.token = token;
+	}
+
+	/**
+	 * @return a client for the daemon whose information is written in the given file, or null if there is no such file
+	 */
+	public static DaemonClient find(File infoFile) throws IOException {
+		Properties info = DaemonProtocol.readInfo(infoFile);
+		if (info == null) {
+			return null;
+		}
+		return new DaemonClient(DaemonProtocol.getPort(info), DaemonProtocol.getToken(info));
+	}
+
+	/**
+	 * generates the classes of the request in the daemon and waits for the results. The returned futures are already
+	 * done, they have the same meaning as the ones of {@link Generator#submitJavascriptGeneration}.
+	 *
+	 * @param generator
+	 *            - a local generator used to resolve the dependencies of the generated classes
+	 * @throws IOException
+	 *             if the daemon cannot be reached. The errors of the generation are returned in the futures.
+	 */
+	public List<Future<ClassWithJavascript>> submitJavascriptGeneration(final Generator generator, final ClassLoader builtProjectClassLoader,
+			GenerationRequest request) throws IOException {
+		Socket socket = connect(DaemonProtocol.GENERATE);
+		try {
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			request.write(out);
+			out.flush();
+
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			checkStatus(in);
+			int count = in.readInt();
+			if (count != request.getClassNames().size()) {
+				throw new IOException("The daemon returned " + count + " results for " + request.getClassNames().size() + " classes");
+			}
+
+			DependencyResolver resolver = new DependencyResolver() {
+				@Override
+				public ClassWithJavascript resolve(String className) {
+					return generator.getExistingStjsClass(builtProjectClassLoader, loadClass(builtProjectClassLoader, className));
+				}
+			};
+			List<Future<ClassWithJavascript>> results = new ArrayList<Future<ClassWithJavascript>>(count);
+			for (String className : request.getClassNames()) {
+				GenerationResult result = GenerationResult.read(in);
+				SettableFuture<ClassWithJavascript> future = SettableFuture.create();
+				if (!result.isSuccess()) {
+					future.setException(result.getError());
+				} else if (result.isBridge()) {
+					future.set(new BridgeClass(resolver, loadClass(builtProjectClassLoader, className)));
+				} else {
+					STJSClass stjsClass = new STJSClass(resolver, request.getTargetFolder(), className);
+					stjsClass.setDependencies(result.getDependencies());
+					if (result.getJavascriptFile() != null) {
+						stjsClass.setGeneratedJavascriptFile(toURI(result.getJavascriptFile()));
+					}
+					future.set(stjsClass);
+				}
+				results.add(future);
+			}
+			return results;
+		}
+		finally {
+			socket.close();
+		}
+	}
+
+	/**
+	 * asks the daemon to stop
+	 */
+	public void stop() throws IOException {
+		Socket socket = connect(DaemonProtocol.STOP);
+		try {
+			checkStatus(new DataInputStream(socket.getInputStream()));
+		}
+		finally {
+			socket.close();
+		}
+	}
+
+	private Socket connect(String command) throws IOException {
+		Socket socket = new Socket();
+		try {
+			socket.connect(new InetSocketAddress(InetAddress.getByName(null), port), CONNECT_TIMEOUT_MILLIS);
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			out.writeInt(DaemonProtocol.VERSION);
+			DaemonProtocol.writeString(out, token);
+			DaemonProtocol.writeString(out, command);
+			out.flush();
+			return socket;
+		}
+		catch (IOException e) {
+			socket.close();
+			throw e;
+		}
+	}
+
+	private static void checkStatus(DataInputStream in) throws IOException {
+		if (in.readInt() != DaemonProtocol.STATUS_OK) {
+			throw new IOException("The daemon refused the request:" + DaemonProtocol.readString(in));
+		}
+	}
+
+	private static Class<?> loadClass(ClassLoader classLoader, String className) {
+		try {
+			return classLoader.loadClass(className);
+		}
+		catch (ClassNotFoundException e) {
+			throw new STJSRuntimeException("Cannot load the class " + className + ":" + e, e);
+		}
+	}
+
+	private static URI toURI(String uri) throws IOException {
+		try {
+			return new URI(uri);
+		}
+		catch (URISyntaxException e) {
+			throw new IOException("Wrong URI returned by the daemon:" + uri);
+		}
+	}
+}
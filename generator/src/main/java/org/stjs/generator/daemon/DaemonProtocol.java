@@ -0,0 +1,162 @@
+/**
+ *  Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.stjs.generator.daemon;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Closeables;
+import com.google.common.io.Files;
+
+/**
+ * The protocol used between the generator daemon and its clients (the Maven plugin, IDE builders). The daemon listens
+ * on a local socket. Its port and a secret token are written in an information file that only the user can read. Each
+ * connection starts with the version of the protocol, the token and a command. The data is written with
+ * {@link DataOutput}, as the daemon must not deserialize objects coming from the socket.
+ */
+public final class DaemonProtocol {
+	public static final int VERSION = 2;
+
+	public static final String GENERATE = "generate";
+	public static final String STOP = "stop";
+
+	public static final int STATUS_OK = 0;
+	public static final int STATUS_ERROR = 1;
+
+	private static final String PORT_PROP = "port";
+	private static final String TOKEN_PROP = "token";
+
+	private DaemonProtocol() {
+		//
+	}
+
+	/**
+	 * @return the file where the daemon of the current user writes its port and token, if no other file is given
+	 */
+	public static File getDefaultInfoFile() {
+		return new File(System.getProperty("user.home"), ".stjs/daemon.properties");
+	}
+
+	/**
+	 * writes the port and the token of the daemon in the given file, readable only by the current user
+	 */
+	public static void writeInfo(File infoFile, int port, String token) throws IOException {
+		if (!infoFile.getParentFile().mkdirs() && !infoFile.getParentFile().isDirectory()) {
+			throw new IOException("Cannot create the folder of the file " + infoFile);
+		}
+		if (!infoFile.exists() && !infoFile.createNewFile()) {
+			throw new IOException("Cannot create the file " + infoFile);
+		}
+		// restrict the access before writing the token
+		if (!infoFile.setReadable(false, false) || !infoFile.setReadable(true, true) || !infoFile.setWritable(false, false)
+				|| !infoFile.setWritable(true, true)) {
+			throw new IOException("Cannot restrict the access to the file " + infoFile);
+		}
+		Properties props = new Properties();
+		props.setProperty(PORT_PROP, Integer.toString(port));
+		props.setProperty(TOKEN_PROP, token);
+		OutputStream output = Files.newOutputStreamSupplier(infoFile).getOutput();
+		try {
+			props.store(output, "STJS generator daemon");
+		}
+		finally {
+			Closeables.closeQuietly(output);
+		}
+	}
+
+	/**
+	 * @return the port and the token of the daemon, as written in the given file, or null if the file does not exist
+	 */
+	public static Properties readInfo(File infoFile) throws IOException {
+		if (!infoFile.exists()) {
+			return null;
+		}
+		Properties props = new Properties();
+		InputStream input = Files.newInputStreamSupplier(infoFile).getInput();
+		try {
+			props.load(input);
+		}
+		finally {
+			Closeables.closeQuietly(input);
+		}
+		return props;
+	}
+
+	public static int getPort(Properties info) {
+		return Integer.parseInt(info.getProperty(PORT_PROP));
+	}
+
+	public static String getToken(Properties info) {
+		return info.getProperty(TOKEN_PROP);
+	}
+
+	/**
+	 * writes a string that can be null and longer than the limit of {@link DataOutput#writeUTF(String)}
+	 */
+	public static void writeString(DataOutput out, String s) throws IOException {
+		if (s == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = s.getBytes(Charsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	public static String readString(DataInput in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, Charsets.UTF_8);
+	}
+
+	public static void writeStrings(DataOutput out, Collection<String> strings) throws IOException {
+		out.writeInt(strings.size());
+		for (String s : strings) {
+			writeString(out, s);
+		}
+	}
+
+	public static List<String> readStrings(DataInput in) throws IOException {
+		int count = in.readInt();
+		List<String> strings = new ArrayList<String>(count);
+		for (int i = 0; i < count; ++i) {
+			strings.add(readString(in));
+		}
+		return strings;
+	}
+
+	public static void writeFile(DataOutput out, File file) throws IOException {
+		writeString(out, file == null ? null : file.getPath());
+	}
+
+	public static File readFile(DataInput in) throws IOException {
+		String path = readString(in);
+		return path == null ? null : new File(path);
+	}
+}
@@ -0,0 +1,125 @@
+/**
+ *  Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.stjs.generator.daemon;
+
+import static org.stjs.generator.daemon.DaemonProtocol.readFile;
+import static org.stjs.generator.daemon.DaemonProtocol.readString;
+import static org.stjs.generator.daemon.DaemonProtocol.readStrings;
+import static org.stjs.generator.daemon.DaemonProtocol.writeFile;
+import static org.stjs.generator.daemon.DaemonProtocol.writeString;
+import static org.stjs.generator.daemon.DaemonProtocol.writeStrings;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.stjs.generator.GenerationDirectory;
+import org.stjs.generator.GeneratorConfiguration;
+import org.stjs.generator.GeneratorConfigurationBuilder;
+
+/**
+ * The generation of a list of classes of the same source folder, as sent to the generator daemon. It has the same
+ * parameters as {@link org.stjs.generator.Generator#submitJavascriptGeneration}, the class loader being replaced by the
+ * classpath of the project.
+ */
+public class GenerationRequest {
+	private final List<String> classpath;
+	private final List<String> classNames;
+	private final File sourceFolder;
+	private final GenerationDirectory generationFolder;
+	private final File targetFolder;
+	private final GeneratorConfiguration configuration;
+
+	public GenerationRequest(List<String> classpath, List<String> classNames, File sourceFolder, GenerationDirectory generationFolder,
+			File targetFolder, GeneratorConfiguration configuration) {
+		this.classpath = Collections.unmodifiableList(new ArrayList<String>(classpath));
+		this.classNames = Collections.unmodifiableList(new ArrayList<String>(classNames));
+		this.sourceFolder = sourceFolder;
+		this.generationFolder = generationFolder;
+		this.targetFolder = targetFolder;
+		this.configuration = configuration;
+	}
+
+	public List<String> getClasspath() {
+		return classpath;
+	}
+
+	public List<String> getClassNames() {
+		return classNames;
+	}
+
+	public File getSourceFolder() {
+		return sourceFolder;
+	}
+
+	public GenerationDirectory getGenerationFolder() {
+		return generationFolder;
+	}
+
+	public File getTargetFolder() {
+		return targetFolder;
+	}
+
+	public GeneratorConfiguration getConfiguration() {
+		return configuration;
+	}
+
+	public void write(DataOutput out) throws IOException {
+		writeStrings(out, classpath);
+		writeStrings(out, classNames);
+		writeFile(out, sourceFolder);
+		writeFile(out, generationFolder.getAbsolutePath());
+		writeFile(out, generationFolder.getClasspath());
+		writeFile(out, generationFolder.getRelativeToClasspath());
+		writeFile(out, targetFolder);
+
+		writeStrings(out, configuration.getAllowedPackages());
+		writeStrings(out, configuration.getAllowedJavaLangClasses());
+		out.writeBoolean(configuration.isGenerateArrayHasOwnProperty());
+		out.writeBoolean(configuration.isGenerateSourceMap());
+		writeString(out, configuration.getSourceEncoding());
+		out.writeInt(configuration.getBatchSize());
+		out.writeBoolean(configuration.isSinglePass());
+		out.writeBoolean(configuration.isTextBuilder());
+	}
+
+	public static GenerationRequest read(DataInput in) throws IOException {
+		List<String> classpath = readStrings(in);
+		List<String> classNames = readStrings(in);
+		File sourceFolder = readFile(in);
+		GenerationDirectory generationFolder = new GenerationDirectory(readFile(in), readFile(in), readFile(in));
+		File targetFolder = readFile(in);
+
+		GeneratorConfigurationBuilder configBuilder = new GeneratorConfigurationBuilder();
+		configBuilder.allowedPackages(readStrings(in));
+		configBuilder.allowedJavaLangClasses(readStrings(in));
+		configBuilder.generateArrayHasOwnProperty(in.readBoolean());
+		configBuilder.generateSourceMap(in.readBoolean());
+		String sourceEncoding = readString(in);
+		if (sourceEncoding != null) {
+			configBuilder.sourceEncoding(sourceEncoding);
+		}
+		configBuilder.batchSize(in.readInt());
+		configBuilder.singlePass(in.readBoolean());
+		configBuilder.textBuilder(in.readBoolean());
+
+		return new GenerationRequest(classpath, classNames, sourceFolder, generationFolder, targetFolder, configBuilder.build());
+	}
+}
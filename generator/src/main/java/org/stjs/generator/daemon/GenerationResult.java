@@ -0,0 +1,161 @@
+/**
+ *  Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.stjs.generator.daemon;
+
+import static org.stjs.generator.daemon.DaemonProtocol.readFile;
+import static org.stjs.generator.daemon.DaemonProtocol.readString;
+import static org.stjs.generator.daemon.DaemonProtocol.readStrings;
+import static org.stjs.generator.daemon.DaemonProtocol.writeFile;
+import static org.stjs.generator.daemon.DaemonProtocol.writeString;
+import static org.stjs.generator.daemon.DaemonProtocol.writeStrings;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.stjs.generator.ClassWithJavascript;
+import org.stjs.generator.JavascriptFileGenerationException;
+import org.stjs.generator.MultipleFileGenerationException;
+import org.stjs.generator.STJSClass;
+import org.stjs.generator.STJSRuntimeException;
+import org.stjs.generator.SourcePosition;
+
+/**
+ * The result of the generation of a class by the daemon: either the information stored in the .stjs file of the class,
+ * or the errors found in the source files.
+ */
+public final class GenerationResult {
+	private static final int GENERATED = 0;
+	private static final int BRIDGE = 1;
+	private static final int FILE_ERRORS = 2;
+	private static final int ERROR = 3;
+
+	private final int kind;
+	private final String javascriptFile;
+	private final List<String> dependencies;
+	private final List<JavascriptFileGenerationException> fileErrors;
+	private final String errorMessage;
+
+	private GenerationResult(int kind, String javascriptFile, List<String> dependencies, List<JavascriptFileGenerationException> fileErrors,
+			String errorMessage) {
+		this.kind = kind;
+		this.javascriptFile = javascriptFile;
+		this.dependencies = dependencies;
+		this.fileErrors = fileErrors;
+		this.errorMessage = errorMessage;
+	}
+
+	public static GenerationResult success(ClassWithJavascript generated) {
+		if (generated instanceof STJSClass) {
+			STJSClass stjsClass = (STJSClass) generated;
+			List<URI> files = stjsClass.getJavascriptFiles();
+			return new GenerationResult(GENERATED, files.isEmpty() ? null : files.get(0).toString(), stjsClass.getDependencies(), null, null);
+		}
+		return new GenerationResult(BRIDGE, null, Collections.<String>emptyList(), null, null);
+	}
+
+	public static GenerationResult failure(Throwable error) {
+		if (error instanceof MultipleFileGenerationException) {
+			return new GenerationResult(FILE_ERRORS, null, null, ((MultipleFileGenerationException) error).getExceptions(), null);
+		}
+		if (error instanceof JavascriptFileGenerationException) {
+			return new GenerationResult(FILE_ERRORS, null, null, Collections.singletonList((JavascriptFileGenerationException) error), null);
+		}
+		return new GenerationResult(ERROR, null, null, null, error.toString());
+	}
+
+	public boolean isSuccess() {
+		return kind == GENERATED || kind == BRIDGE;
+	}
+
+	public boolean isBridge() {
+		return kind == BRIDGE;
+	}
+
+	/**
+	 * @return the URI of the generated JavaScript file, as stored in the .stjs file
+	 */
+	public String getJavascriptFile() {
+		return javascriptFile;
+	}
+
+	public List<String> getDependencies() {
+		return dependencies;
+	}
+
+	/**
+	 * @return the error, as thrown by the generator in the daemon. Only the positions and the messages are kept.
+	 */
+	public STJSRuntimeException getError() {
+		if (kind == ERROR) {
+			return new STJSRuntimeException(errorMessage);
+		}
+		if (kind != FILE_ERRORS) {
+			return null;
+		}
+		if (fileErrors.size() == 1) {
+			return fileErrors.get(0);
+		}
+		return new MultipleFileGenerationException(fileErrors);
+	}
+
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(kind);
+		switch (kind) {
+		case GENERATED:
+		case BRIDGE:
+			writeString(out, javascriptFile);
+			writeStrings(out, dependencies);
+			break;
+		case FILE_ERRORS:
+			out.writeInt(fileErrors.size());
+			for (JavascriptFileGenerationException e : fileErrors) {
+				writeFile(out, e.getSourcePosition().getFile());
+				out.writeInt(e.getSourcePosition().getLine());
+				out.writeInt(e.getSourcePosition().getColumn());
+				writeString(out, e.getMessage());
+			}
+			break;
+		default:
+			writeString(out, errorMessage);
+		}
+	}
+
+	public static GenerationResult read(DataInput in) throws IOException {
+		int kind = in.readInt();
+		switch (kind) {
+		case GENERATED:
+		case BRIDGE:
+			return new GenerationResult(kind, readString(in), readStrings(in), null, null);
+		case FILE_ERRORS:
+			int count = in.readInt();
+			List<JavascriptFileGenerationException> fileErrors = new ArrayList<JavascriptFileGenerationException>(count);
+			for (int i = 0; i < count; ++i) {
+				SourcePosition position = new SourcePosition(readFile(in), in.readInt(), in.readInt());
+				fileErrors.add(new JavascriptFileGenerationException(position, readString(in)));
+			}
+			return new GenerationResult(kind, null, null, fileErrors, null);
+		case ERROR:
+			return new GenerationResult(kind, null, null, null, readString(in));
+		default:
+			throw new IOException("Unknown result type:" + kind);
+		}
+	}
+}
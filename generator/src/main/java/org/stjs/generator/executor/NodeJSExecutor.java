@@ -15,26 +15,78 @@
  */
 package org.stjs.generator.executor;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
 import org.stjs.generator.STJSRuntimeException;
 
+import com.google.common.base.Charsets;
+import com.google.common.io.CharStreams;
+import com.google.common.io.Closeables;
+
 import edu.umd.cs.findbugs.annotations.SuppressWarnings;
 
+/**
+ * Executes JavaScript files with node.js. By default the files are sent to long-lived node processes (see
+ * node-worker.js), kept in a pool, that execute each file in a new context after stjs.js. When the system property
+ * "stjs.node.worker" is false, or when the worker cannot be started, a new node process is started for each file: it
+ * executes stjs.js and then the file in its global context (see node-run.js), so the files see the same globals in both
+ * modes.
+ */
 public class NodeJSExecutor {
+	public static final long DEFAULT_TIMEOUT_MILLIS = 60000;
+	/**
+	 * the exit value of the files that took more than the timeout
+	 */
+	public static final int TIMEOUT_EXIT_VALUE = -1;
+
 	private static final String NODE_JS = "node";
+	private static final String WORKER_PROPERTY = "stjs.node.worker";
+
+	private static final Queue<NodeWorker> IDLE_WORKERS = new ConcurrentLinkedQueue<NodeWorker>();
+	private static volatile boolean workerDisabled = !Boolean.parseBoolean(System.getProperty(WORKER_PROPERTY, "true"));
+
+	private final long timeoutMillis;
+	private final boolean useWorker;
+
+	public NodeJSExecutor() {
+		this(DEFAULT_TIMEOUT_MILLIS);
+	}
+
+	/**
+	 * @param timeoutMillis
+	 *            the longest time a file can take, 0 for no limit
+	 */
+	public NodeJSExecutor(long timeoutMillis) {
+		this(timeoutMillis, true);
+	}
+
+	/**
+	 * @param useWorker
+	 *            false to start a new node process for each file, even if the worker can be used
+	 */
+	NodeJSExecutor(long timeoutMillis, boolean useWorker) {
+		this.timeoutMillis = timeoutMillis;
+		this.useWorker = useWorker;
+	}
 
 	@SuppressWarnings(
 			value = "REC_CATCH_EXCEPTION")
 	public ExecutionResult run(File srcFile) {
 		try {
-			Process p = Runtime.getRuntime().exec(new String[]{ NODE_JS, srcFile.getAbsolutePath() });
-			int exitValue = p.waitFor();
-			return new ExecutionResult(null, readStream(p.getInputStream()), readStream(p.getErrorStream()), exitValue);
+			if (useWorker && !workerDisabled) {
+				ExecutionResult result = runInWorker(srcFile);
+				if (result != null) {
+					return result;
+				}
+			}
+			return runInNewProcess(srcFile);
 		}
 		catch (IOException e) {
 			// TODO : this is not really going to be working on all OS!
@@ -49,14 +101,105 @@ public class NodeJSExecutor {
 		}
 	}
 
-	private String readStream(InputStream errStream) throws IOException {
-		StringBuilder builder = new StringBuilder();
-		// XXX: here i may need to get the charset from configuration
-		BufferedReader in = new BufferedReader(new InputStreamReader(errStream, "UTF-8"));
-		for (String line = in.readLine(); line != null; line = in.readLine()) {
-			builder.append(line);
-			builder.append('\n');
+	/**
+	 * @return the result of the execution, or null if the worker cannot be used
+	 */
+	private ExecutionResult runInWorker(File srcFile) throws IOException {
+		NodeWorker worker = IDLE_WORKERS.poll();
+		boolean started = false;
+		if (worker == null) {
+			worker = startWorker();
+			if (worker == null) {
+				return null;
+			}
+			started = true;
+		}
+		ExecutionResult result;
+		try {
+			result = worker.execute(srcFile, timeoutMillis);
+		}
+		catch (IOException e) {
+			worker.destroy();
+			if (started) {
+				// the worker died before executing anything: probably a version of node that cannot run it
+				workerDisabled = true;
+				return null;
+			}
+			throw e;
+		}
+		if (result.getExitValue() == TIMEOUT_EXIT_VALUE) {
+			// the file may still be running
+			worker.destroy();
+		} else {
+			IDLE_WORKERS.add(worker);
+		}
+		return result;
+	}
+
+	private NodeWorker startWorker() throws IOException {
+		String workerSource = readResource(NodeJSExecutor.class.getResourceAsStream("node-worker.js"));
+		String runtimeSource = readResource(Thread.currentThread().getContextClassLoader().getResourceAsStream("stjs.js"));
+		if (workerSource == null || runtimeSource == null) {
+			workerDisabled = true;
+			return null;
+		}
+		try {
+			return NodeWorker.start(NODE_JS, workerSource, runtimeSource);
+		}
+		catch (IOException e) {
+			if (e.getMessage().contains("Cannot run program")) {
+				throw e;
+			}
+			// probably a version of node that cannot run the worker
+			workerDisabled = true;
+			return null;
+		}
+	}
+
+	private ExecutionResult runInNewProcess(File srcFile) throws IOException, InterruptedException {
+		String runSource = readResource(NodeJSExecutor.class.getResourceAsStream("node-run.js"));
+		String runtimeSource = readResource(Thread.currentThread().getContextClassLoader().getResourceAsStream("stjs.js"));
+		Process p = new ProcessBuilder(NODE_JS, "-e", runSource, srcFile.getAbsolutePath()).start();
+		// both streams are read at the same time, otherwise node blocks when the buffer of the other one is full
+		NodeWorker.StreamCollector out = NodeWorker.StreamCollector.start(p.getInputStream(), "node-stdout");
+		NodeWorker.StreamCollector err = NodeWorker.StreamCollector.start(p.getErrorStream(), "node-stderr");
+		// node-run.js reads stjs.js on its stdin before executing the file
+		Writer input = new OutputStreamWriter(p.getOutputStream(), Charsets.UTF_8);
+		try {
+			if (runtimeSource != null) {
+				input.write(runtimeSource);
+			}
+		}
+		finally {
+			Closeables.closeQuietly(input);
+		}
+		out.join(timeoutMillis);
+		if (out.isAlive()) {
+			p.destroy();
+			out.join();
+			err.join();
+			return timeoutResult(srcFile, timeoutMillis, out.getContent());
+		}
+		int exitValue = p.waitFor();
+		err.join();
+		return new ExecutionResult(null, out.getContent(), err.getContent(), exitValue);
+	}
+
+	static ExecutionResult timeoutResult(File srcFile, long timeoutMillis, String stdOut) {
+		return new ExecutionResult(null, stdOut, "Timeout: the execution of " + srcFile + " took more than " + timeoutMillis
+				+ " ms\n", TIMEOUT_EXIT_VALUE);
+	}
+
+	private static String readResource(InputStream stream) throws IOException {
+		if (stream == null) {
+			return null;
+		}
+		InputStreamReader reader = new InputStreamReader(stream, Charsets.UTF_8);
+		try {
+			return CharStreams.toString(reader);
+		}
+		finally {
+			Closeables.closeQuietly(reader);
 		}
-		return builder.toString();
 	}
 }
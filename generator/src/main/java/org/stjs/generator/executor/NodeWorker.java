@@ -0,0 +1,178 @@
+/**
+ *  Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.stjs.generator.executor;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Timer;
+import java.util.TimerTask;
+
+import com.google.common.base.Charsets;
+
+/**
+ * A long-lived node process executing the files sent by {@link NodeJSExecutor}, one at a time. The protocol is
+ * described in node-worker.js. The worker is not thread-safe: it must be used by one thread at a time.
+ */
+final class NodeWorker {
+	/**
+	 * the time given to the worker, after the timeout of a file, to report the timeout by itself before being killed
+	 */
+	private static final long TIMEOUT_GRACE_MILLIS = 5000;
+
+	private static final Timer WATCHDOG = new Timer("node-worker-watchdog", true);
+
+	private final Process process;
+	private final Writer input;
+	private final BufferedReader output;
+	private final StreamCollector errors;
+	private volatile boolean killed;
+
+	private NodeWorker(Process process) {
+		this.process = process;
+		this.input = new BufferedWriter(new OutputStreamWriter(process.getOutputStream(), Charsets.UTF_8));
+		this.output = new BufferedReader(new InputStreamReader(process.getInputStream(), Charsets.UTF_8));
+		// the worker's own messages, only used to explain its death
+		this.errors = StreamCollector.start(process.getErrorStream(), "node-worker-stderr");
+	}
+
+	/**
+	 * starts a worker that executes the given runtime (i.e. stjs.js) before each file
+	 */
+	public static NodeWorker start(String nodeCommand, String workerSource, String runtimeSource) throws IOException {
+		Process process = new ProcessBuilder(nodeCommand, "-e", workerSource).start();
+		NodeWorker worker = new NodeWorker(process);
+		try {
+			worker.sendFrame("init", 0, runtimeSource);
+		}
+		catch (IOException e) {
+			worker.destroy();
+			throw e;
+		}
+		return worker;
+	}
+
+	/**
+	 * executes the given file. If the file takes more than the given timeout (0 for none), the result has
+	 * {@link NodeJSExecutor#TIMEOUT_EXIT_VALUE} as exit value. After an IOException the worker is not usable anymore.
+	 */
+	public ExecutionResult execute(File srcFile, long timeoutMillis) throws IOException {
+		TimerTask watchdog = null;
+		if (timeoutMillis > 0) {
+			watchdog = new TimerTask() {
+				@Override
+				public void run() {
+					killed = true;
+					process.destroy();
+				}
+			};
+			WATCHDOG.schedule(watchdog, timeoutMillis + TIMEOUT_GRACE_MILLIS);
+		}
+		try {
+			sendFrame("run", timeoutMillis, srcFile.getAbsolutePath());
+			String header = output.readLine();
+			if (header == null) {
+				throw new IOException("The node worker died: " + errors.getContent());
+			}
+			String[] parts = header.split(" ");
+			if (parts.length != 3) {
+				throw new IOException("Unexpected answer from the node worker: " + header);
+			}
+			int exitValue = Integer.parseInt(parts[0]);
+			String stdOut = readChars(Integer.parseInt(parts[1]));
+			String stdErr = readChars(Integer.parseInt(parts[2]));
+			return new ExecutionResult(null, stdOut, stdErr, exitValue);
+		}
+		catch (IOException e) {
+			if (killed) {
+				return NodeJSExecutor.timeoutResult(srcFile, timeoutMillis, "");
+			}
+			throw e;
+		}
+		finally {
+			if (watchdog != null) {
+				watchdog.cancel();
+			}
+		}
+	}
+
+	public void destroy() {
+		process.destroy();
+	}
+
+	private void sendFrame(String kind, long arg, String payload) throws IOException {
+		input.write(kind + " " + arg + " " + payload.length() + "\n");
+		input.write(payload);
+		input.flush();
+	}
+
+	private String readChars(int length) throws IOException {
+		char[] chars = new char[length];
+		int offset = 0;
+		while (offset < length) {
+			int count = output.read(chars, offset, length - offset);
+			if (count < 0) {
+				throw new IOException("The node worker died: " + errors.getContent());
+			}
+			offset += count;
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * reads a stream in its own thread, so the process writing it is never blocked
+	 */
+	static final class StreamCollector extends Thread {
+		private final Reader reader;
+		private final StringBuffer content = new StringBuffer();
+
+		private StreamCollector(Reader reader, String name) {
+			super(name);
+			this.reader = reader;
+			setDaemon(true);
+		}
+
+		public static StreamCollector start(InputStream stream, String name) {
+			// XXX: here i may need to get the charset from configuration
+			StreamCollector collector = new StreamCollector(new InputStreamReader(stream, Charsets.UTF_8), name);
+			collector.start();
+			return collector;
+		}
+
+		@Override
+		public void run() {
+			char[] buffer = new char[4096];
+			try {
+				for (int count = reader.read(buffer); count >= 0; count = reader.read(buffer)) {
+					content.append(buffer, 0, count);
+				}
+			}
+			catch (IOException e) {
+				// the process was destroyed
+			}
+		}
+
+		public String getContent() {
+			return content.toString();
+		}
+	}
+}
@@ -16,58 +16,167 @@
 package org.stjs.generator.executor;
 
 import java.io.File;
-import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
-import java.io.UnsupportedEncodingException;
+import java.net.URISyntaxException;
+import java.net.URL;
 import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
+import javax.script.Bindings;
+import javax.script.Compilable;
+import javax.script.CompiledScript;
+import javax.script.ScriptContext;
 import javax.script.ScriptEngine;
 import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
+import javax.script.SimpleScriptContext;
 
 import com.google.common.base.Charsets;
 import com.google.common.io.Closeables;
 import com.google.common.io.Files;
 
+/**
+ * Executes JavaScript files with the JavaScript engine of the JDK. The engines are created once and kept in a pool,
+ * each with the scripts it already compiled (stjs.js and the files it executed, that are compiled again only when they
+ * change). Each execution is done in a new global scope, so nothing is kept from one execution to the next one.
+ */
 public class RhinoExecutor {
-	private Object addScript(ScriptEngine engine, File scriptFile) throws ScriptException {
-		Reader input = null;
-		try {
-			// XXX: here i may need to get the charset from configuration
-			input = Files.newReader(scriptFile, Charsets.UTF_8);
-			return engine.eval(input);
-		}
-		catch (FileNotFoundException e) {
-			throw new ScriptException(e);
-		}
-		finally {
-			Closeables.closeQuietly(input);
-		}
-	}
+	private static final int MAX_COMPILED_SCRIPTS = 2000;
+
+	private static final Queue<PooledEngine> ENGINES = new ConcurrentLinkedQueue<PooledEngine>();
 
 	public ExecutionResult run(Collection<File> srcFiles, boolean mainClassDisabled) throws ScriptException {
-		ScriptEngineManager factory = new ScriptEngineManager();
-		ScriptEngine engine = factory.getEngineByName("JavaScript");
-		Reader reader = null;
+		PooledEngine engine = ENGINES.poll();
+		if (engine == null) {
+			engine = new PooledEngine();
+		}
 		try {
-			reader = new InputStreamReader(Thread.currentThread().getContextClassLoader().getResourceAsStream("stjs.js"), "UTF-8");
-			engine.eval(reader);
+			ScriptContext context = engine.newContext();
+			engine.eval(getStjsScript(), context);
 			if (mainClassDisabled) {
-				engine.eval("stjs.mainCallDisabled=true;");
+				engine.engine.eval("stjs.mainCallDisabled=true;", context);
 			}
 			Object result = null;
 			for (File srcFile : srcFiles) {
 				// keep the result of last evaluation
-				result = addScript(engine, srcFile);
+				result = engine.eval(srcFile.toURI().toURL(), context);
 			}
 			return new ExecutionResult(result, null, null, 0);
 		}
-		catch (UnsupportedEncodingException e) {
+		catch (IOException e) {
 			throw new ScriptException(e);
 		}
 		finally {
-			Closeables.closeQuietly(reader);
+			// the next execution gets a new scope, so the engine can be reused even after an error
+			ENGINES.add(engine);
+		}
+	}
+
+	private static URL getStjsScript() throws ScriptException {
+		URL url = Thread.currentThread().getContextClassLoader().getResource("stjs.js");
+		if (url == null) {
+			throw new ScriptException("stjs.js was not found in the classpath");
+		}
+		return url;
+	}
+
+	/**
+	 * an engine with the scripts it compiled, by URL. A pooled engine is used by one execution at a time.
+	 */
+	private static final class PooledEngine {
+		private final ScriptEngine engine = new ScriptEngineManager().getEngineByName("JavaScript");
+		private final Map<String, CompiledEntry> compiledScripts = new LinkedHashMap<String, CompiledEntry>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CompiledEntry> eldest) {
+				return size() > MAX_COMPILED_SCRIPTS;
+			}
+		};
+
+		/**
+		 * @return a new context, with an empty global scope
+		 */
+		public ScriptContext newContext() {
+			ScriptContext context = new SimpleScriptContext();
+			Bindings bindings = engine.createBindings();
+			context.setBindings(bindings, ScriptContext.ENGINE_SCOPE);
+			context.setBindings(engine.getContext().getBindings(ScriptContext.GLOBAL_SCOPE), ScriptContext.GLOBAL_SCOPE);
+			return context;
+		}
+
+		public Object eval(URL script, ScriptContext context) throws ScriptException, IOException {
+			if (!(engine instanceof Compilable)) {
+				return evalSource(script, context);
+			}
+			String key = script.toString();
+			long stamp = getStamp(script);
+			CompiledEntry entry = compiledScripts.get(key);
+			if (entry == null || entry.stamp != stamp) {
+				Reader input = openReader(script);
+				try {
+					entry = new CompiledEntry(((Compilable) engine).compile(input), stamp);
+				}
+				finally {
+					Closeables.closeQuietly(input);
+				}
+				compiledScripts.put(key, entry);
+			}
+			return entry.script.eval(context);
+		}
+
+		private Object evalSource(URL script, ScriptContext context) throws ScriptException, IOException {
+			Reader input = openReader(script);
+			try {
+				return engine.eval(input, context);
+			}
+			finally {
+				Closeables.closeQuietly(input);
+			}
+		}
+
+		private static Reader openReader(URL script) throws IOException {
+			if ("file".equals(script.getProtocol())) {
+				// XXX: here i may need to get the charset from configuration
+				return Files.newReader(toFile(script), Charsets.UTF_8);
+			}
+			return new InputStreamReader(script.openStream(), Charsets.UTF_8);
+		}
+
+		/**
+		 * @return a value that changes when the script changes: the modification time and the size of the files, 0 for
+		 *         the resources of the jars, that do not change
+		 */
+		private static long getStamp(URL script) {
+			if (!"file".equals(script.getProtocol())) {
+				return 0;
+			}
+			File file = toFile(script);
+			return file.lastModified() * 31 + file.length();
+		}
+
+		private static File toFile(URL url) {
+			try {
+				return new File(url.toURI());
+			}
+			catch (URISyntaxException e) {
+				return new File(url.getPath());
+			}
+		}
+	}
+
+	private static final class CompiledEntry {
+		private final CompiledScript script;
+		private final long stamp;
+
+		public CompiledEntry(CompiledScript script, long stamp) {
+			this.script = script;
+			this.stamp = stamp;
 		}
 	}
 }
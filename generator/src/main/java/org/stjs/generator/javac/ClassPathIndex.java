@@ -0,0 +1,229 @@
+/**
+ *  Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.stjs.generator.javac;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import com.google.common.collect.MapMaker;
+import com.google.common.io.Closeables;
+
+/**
+ * The index of the classes of a jar, by package. The index is built once for each version of a jar (identified by its
+ * path, size and modification time). It's kept in memory until the JVM needs the memory, as a long-lived process (like
+ * the generator daemon) sees many versions of the same jars. If the {@link #INDEX_FOLDER_PROPERTY} system property is
+ * set, the index is also stored in the given folder, so the next processes do not need to read the jar's entries
+ * either.
+ */
+public final class ClassPathIndex {
+	public static final String INDEX_FOLDER_PROPERTY = "stjs.classpath.index.dir";
+
+	private static final int MAGIC = 0x534A4958;
+	private static final int VERSION = 1;
+	private static final String CLASS_FILE_EXTENSION = ".class";
+
+	private static final ConcurrentMap<String, ClassPathIndex> INDEXES = new MapMaker().softValues().makeMap();
+
+	/**
+	 * the names of the class files (without the .class extension) by package (the package's path in the jar, separated
+	 * with '/'). The packages are sorted, so the sub-packages of a package follow it.
+	 */
+	private final SortedMap<String, List<String>> classesByPackage;
+
+	private ClassPathIndex(SortedMap<String, List<String>> classesByPackage) {
+		this.classesByPackage = classesByPackage;
+	}
+
+	/**
+	 * @return the index of the given jar, built if needed
+	 */
+	public static ClassPathIndex forJar(File jar) throws IOException {
+		String key = getKey(jar);
+		ClassPathIndex index = INDEXES.get(key);
+		if (index == null) {
+			File indexFile = getIndexFile(key);
+			index = indexFile == null ? null : load(indexFile, key);
+			if (index == null) {
+				index = build(jar);
+				if (indexFile != null) {
+					store(index, indexFile, key);
+				}
+			}
+			ClassPathIndex existing = INDEXES.putIfAbsent(key, index);
+			if (existing != null) {
+				index = existing;
+			}
+		}
+		return index;
+	}
+
+	public Set<String> getPackages() {
+		return classesByPackage.keySet();
+	}
+
+	/**
+	 * @return the names of the classes (without the .class extension) of the given package
+	 */
+	public List<String> getClasses(String javaPackageName) {
+		List<String> classes = classesByPackage.get(javaPackageName);
+		return classes == null ? Collections.<String>emptyList() : classes;
+	}
+
+	/**
+	 * @return the given package and its sub-packages, with their classes
+	 */
+	public SortedMap<String, List<String>> getPackagesUnder(String javaPackageName) {
+		if (javaPackageName.length() == 0) {
+			return classesByPackage;
+		}
+		// '0' is the character following '/', so this range contains the package and all its sub-packages
+		SortedMap<String, List<String>> result = new TreeMap<String, List<String>>(classesByPackage.subMap(javaPackageName + "/",
+				javaPackageName + "0"));
+		if (classesByPackage.containsKey(javaPackageName)) {
+			result.put(javaPackageName, classesByPackage.get(javaPackageName));
+		}
+		return result;
+	}
+
+	private static String getKey(File jar) {
+		return jar.getAbsolutePath() + '|' + jar.length() + '|' + jar.lastModified();
+	}
+
+	private static File getIndexFile(String key) {
+		String folder = System.getProperty(INDEX_FOLDER_PROPERTY);
+		if (folder == null) {
+			// the index is only kept in memory
+			return null;
+		}
+		File indexFolder = new File(folder);
+		if (!indexFolder.mkdirs() && !indexFolder.isDirectory()) {
+			// the index is only kept in memory
+			return null;
+		}
+		return new File(indexFolder, Integer.toHexString(key.hashCode()) + "-" + Integer.toHexString(key.length()) + ".idx");
+	}
+
+	static ClassPathIndex build(File jar) throws IOException {
+		SortedMap<String, List<String>> classesByPackage = new TreeMap<String, List<String>>();
+		JarFile jarFile = new JarFile(jar);
+		try {
+			Enumeration<JarEntry> entries = jarFile.entries();
+			while (entries.hasMoreElements()) {
+				String name = entries.nextElement().getName();
+				if (!name.endsWith(CLASS_FILE_EXTENSION)) {
+					continue;
+				}
+				int lastSlash = name.lastIndexOf('/');
+				String javaPackageName = lastSlash < 0 ? "" : name.substring(0, lastSlash);
+				List<String> classes = classesByPackage.get(javaPackageName);
+				if (classes == null) {
+					classes = new ArrayList<String>();
+					classesByPackage.put(javaPackageName, classes);
+				}
+				classes.add(name.substring(lastSlash + 1, name.length() - CLASS_FILE_EXTENSION.length()));
+			}
+		}
+		finally {
+			jarFile.close();
+		}
+		return new ClassPathIndex(classesByPackage);
+	}
+
+	private static ClassPathIndex load(File indexFile, String key) {
+		if (!indexFile.exists()) {
+			return null;
+		}
+		DataInputStream in = null;
+		try {
+			in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+			if (in.readInt() != MAGIC || in.readInt() != VERSION || !key.equals(in.readUTF())) {
+				// another format or another jar with the same hash
+				return null;
+			}
+			SortedMap<String, List<String>> classesByPackage = new TreeMap<String, List<String>>();
+			int packageCount = in.readInt();
+			for (int i = 0; i < packageCount; ++i) {
+				String javaPackageName = in.readUTF();
+				int classCount = in.readInt();
+				List<String> classes = new ArrayList<String>(classCount);
+				for (int c = 0; c < classCount; ++c) {
+					classes.add(in.readUTF());
+				}
+				classesByPackage.put(javaPackageName, classes);
+			}
+			return new ClassPathIndex(classesByPackage);
+		}
+		catch (IOException e) {
+			// corrupted index, build it again
+			return null;
+		}
+		finally {
+			Closeables.closeQuietly(in);
+		}
+	}
+
+	private static void store(ClassPathIndex index, File indexFile, String key) {
+		File tempFile = null;
+		DataOutputStream out = null;
+		try {
+			tempFile = File.createTempFile(indexFile.getName(), ".tmp", indexFile.getParentFile());
+			out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(key);
+			out.writeInt(index.classesByPackage.size());
+			for (Map.Entry<String, List<String>> entry : index.classesByPackage.entrySet()) {
+				out.writeUTF(entry.getKey());
+				out.writeInt(entry.getValue().size());
+				for (String className : entry.getValue()) {
+					out.writeUTF(className);
+				}
+			}
+			out.close();
+			out = null;
+			if (!tempFile.renameTo(indexFile)) {
+				// another process stored it
+				tempFile.delete();
+			}
+		}
+		catch (IOException e) {
+			// the index is only kept in memory
+			if (tempFile != null) {
+				tempFile.delete();
+			}
+		}
+		finally {
+			Closeables.closeQuietly(out);
+		}
+	}
+}
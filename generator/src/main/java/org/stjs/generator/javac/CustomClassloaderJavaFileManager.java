@@ -1,8 +1,10 @@
 package org.stjs.generator.javac;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.Set;
@@ -18,7 +20,7 @@ import javax.tools.StandardLocation;
  * @since 15-Oct-2009
  */
 public class CustomClassloaderJavaFileManager implements JavaFileManager {
-	private final ClassLoader classLoader;
+	private ClassLoader classLoader;
 	private final StandardJavaFileManager standardFileManager;
 	private final PackageInternalsFinder finder;
 
@@ -32,6 +34,17 @@ public class CustomClassloaderJavaFileManager implements JavaFileManager {
 		finder = new PackageInternalsFinder(this.classLoader);
 	}
 
+	/**
+	 * changes the class loader of the project, keeping the packages already listed from the classpath roots that did not
+	 * change.
+	 */
+	@edu.umd.cs.findbugs.annotations.SuppressWarnings(
+			value = "DP_CREATE_CLASSLOADER_INSIDE_DO_PRIVILEGED", justification = "harmless")
+	public void update(ClassLoader newClassLoader, Collection<File> changedRoots) throws IOException {
+		this.classLoader = new URLClassLoader(new URL[0], newClassLoader);
+		finder.update(this.classLoader, changedRoots);
+	}
+
 	@Override
 	public ClassLoader getClassLoader(Location location) {
 		if (location == StandardLocation.CLASS_PATH) {
@@ -2,17 +2,18 @@ package org.stjs.generator.javac;
 
 import java.io.File;
 import java.io.IOException;
-import java.net.JarURLConnection;
 import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
-import java.net.URLConnection;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.jar.JarEntry;
+import java.util.Set;
 
 import javax.tools.JavaFileObject;
 
@@ -21,86 +22,156 @@ import org.stjs.generator.STJSRuntimeException;
 import com.google.common.collect.Maps;
 
 /**
- * this class looks for packages in the classpath
+ * this class looks for packages in the classpath. The content of each package is cached, with the classpath roots (jars
+ * or folders) it was found in, so that when the finder is kept between two generations only the packages of the roots
+ * that changed have to be listed again.
  * 
  * @author acraciun
  * 
  */
 public class PackageInternalsFinder {
-	private final ClassLoader classLoader;
+	private ClassLoader classLoader;
 	private static final String CLASS_FILE_EXTENSION = ".class";
+	private static final String RECURSIVE_SUFFIX = "/**";
 
-	private final Map<String, List<JavaFileObject>> cachePackageEntries = Maps.newHashMap();
+	private final Map<String, PackageEntries> cachePackageEntries = Maps.newHashMap();
 
 	public PackageInternalsFinder(ClassLoader classLoader) {
 		this.classLoader = classLoader;
 	}
 
 	public List<JavaFileObject> find(String packageName, boolean recursive) throws IOException {
-		String javaPackageName = packageName.replaceAll("\\.", "/");
+		String javaPackageName = packageName.replace('.', '/');
 
-		List<JavaFileObject> result = cachePackageEntries.get(javaPackageName);
-		if (result != null) {
-			return result;
+		String cacheKey = recursive ? javaPackageName + RECURSIVE_SUFFIX : javaPackageName;
+		PackageEntries entries = cachePackageEntries.get(cacheKey);
+		if (entries != null) {
+			return entries.files;
 		}
 
-		result = new ArrayList<JavaFileObject>();
-		cachePackageEntries.put(javaPackageName, result);
+		entries = new PackageEntries();
+		cachePackageEntries.put(cacheKey, entries);
 
 		Enumeration<URL> urlEnumeration = classLoader.getResources(javaPackageName);
 		while (urlEnumeration.hasMoreElements()) { // one URL for each jar on the classpath that has the given package
 			URL packageFolderURL = urlEnumeration.nextElement();
-			result.addAll(listUnder(packageName, packageFolderURL, recursive));
+			File root = getRoot(packageFolderURL, javaPackageName);
+			entries.files.addAll(listUnder(packageName, javaPackageName, packageFolderURL, root, recursive));
+			if (root != null) {
+				entries.roots.add(root);
+			}
 		}
 
-		return result;
+		return entries.files;
 	}
 
-	private Collection<JavaFileObject> listUnder(String packageName, URL packageFolderURL, boolean recursive) {
-		File directory = new File(packageFolderURL.getFile());
-		if (directory.isDirectory()) { // browse local .class files - useful for local execution
-			return processDir(packageName, directory, recursive);
-		} else { // browse a jar file
-			return processJar(packageFolderURL, recursive);
-		} // maybe there can be something else for more involved class loaders
+	/**
+	 * changes the class loader used to find the packages (i.e. a new class loader with the same classpath, as the
+	 * classes of the project changed), keeping the cached packages of the classpath roots that did not change.
+	 * 
+	 * @param changedRoots
+	 *            - the jars and folders of the classpath whose content changed since the packages were listed
+	 */
+	public void update(ClassLoader newClassLoader, Collection<File> changedRoots) throws IOException {
+		this.classLoader = newClassLoader;
+		if (changedRoots.isEmpty()) {
+			return;
+		}
+		Set<File> changed = new HashSet<File>();
+		Set<String> changedPackages = new HashSet<String>();
+		for (File root : changedRoots) {
+			changed.add(root.getAbsoluteFile());
+			if (root.isFile()) {
+				changedPackages.addAll(ClassPathIndex.forJar(root).getPackages());
+			}
+		}
+		for (Iterator<Map.Entry<String, PackageEntries>> it = cachePackageEntries.entrySet().iterator(); it.hasNext();) {
+			Map.Entry<String, PackageEntries> entry = it.next();
+			String javaPackageName = entry.getKey();
+			if (javaPackageName.endsWith(RECURSIVE_SUFFIX)) {
+				// the recursive listings are not frequent, they're simply listed again
+				it.remove();
+			} else if (changedPackages.contains(javaPackageName) || !Collections.disjoint(entry.getValue().roots, changed)
+					|| isPackageInFolders(javaPackageName, changed)) {
+				it.remove();
+			}
+		}
 	}
 
-	private void addFileObject(String jarUri, String name, String rootEntryName, int rootEnd, List<JavaFileObject> result, boolean recursive) {
-		boolean acceptCurrentFolder = recursive || name.indexOf('/', rootEnd) == -1;
-		if (acceptCurrentFolder && name.startsWith(rootEntryName) && name.endsWith(CLASS_FILE_EXTENSION)) {
-			URI uri = URI.create(jarUri + "!/" + name);
-			String binaryName = name.replaceAll("/", ".");
-			binaryName = binaryName.replaceAll(CLASS_FILE_EXTENSION + "$", "");
-
-			result.add(new CustomJavaFileObject(binaryName, uri));
+	private static boolean isPackageInFolders(String javaPackageName, Collection<File> roots) {
+		for (File root : roots) {
+			if (new File(root, javaPackageName).isDirectory()) {
+				return true;
+			}
 		}
+		return false;
 	}
 
-	private List<JavaFileObject> processJar(URL packageFolderURL, boolean recursive) {
-		List<JavaFileObject> result = new ArrayList<JavaFileObject>();
-
+	/**
+	 * @return the jar or the folder of the classpath containing the given package folder
+	 */
+	private static File getRoot(URL packageFolderURL, String javaPackageName) {
 		try {
-
-			URLConnection urlConnection = packageFolderURL.openConnection();
-			if (!(urlConnection instanceof JarURLConnection)) {
-				// weird file in the classpath
-				return Collections.emptyList();
+			if ("file".equals(packageFolderURL.getProtocol())) {
+				File root = new File(packageFolderURL.toURI());
+				if (javaPackageName.length() == 0) {
+					return root.getAbsoluteFile();
+				}
+				for (int i = javaPackageName.indexOf('/'); i >= 0; i = javaPackageName.indexOf('/', i + 1)) {
+					root = root.getParentFile();
+				}
+				return root.getParentFile().getAbsoluteFile();
 			}
-			String jarUri = packageFolderURL.toExternalForm().split("!")[0];
-			JarURLConnection jarConn = (JarURLConnection) urlConnection;
-			String rootEntryName = jarConn.getEntryName();
-			int rootEnd = rootEntryName.length() + 1;
-
-			Enumeration<JarEntry> entryEnum = jarConn.getJarFile().entries();
-			while (entryEnum.hasMoreElements()) {
-				JarEntry jarEntry = entryEnum.nextElement();
-				String name = jarEntry.getName();
-				addFileObject(jarUri, name, rootEntryName, rootEnd, result, recursive);
+			if ("jar".equals(packageFolderURL.getProtocol())) {
+				String jarUri = packageFolderURL.toExternalForm().split("!")[0].substring("jar:".length());
+				return new File(new URI(jarUri)).getAbsoluteFile();
 			}
 		}
+		catch (URISyntaxException e) {
+			// not a file
+		}
+		catch (IllegalArgumentException e) {
+			// not a file
+		}
+		return null;
+	}
+
+	private Collection<JavaFileObject> listUnder(String packageName, String javaPackageName, URL packageFolderURL, File root,
+			boolean recursive) throws IOException {
+		File directory = new File(packageFolderURL.getFile());
+		if (directory.isDirectory()) { // browse local .class files - useful for local execution
+			return processDir(packageName, directory, recursive);
+		} else if (root != null && root.isFile()) { // browse a jar file
+			return processJar(packageFolderURL, javaPackageName, root, recursive);
+		} // maybe there can be something else for more involved class loaders
+		return Collections.emptyList();
+	}
+
+	private List<JavaFileObject> processJar(URL packageFolderURL, String javaPackageName, File jar, boolean recursive) {
+		ClassPathIndex index;
+		try {
+			index = ClassPathIndex.forJar(jar);
+		}
 		catch (IOException e) {
 			throw new STJSRuntimeException("Wasn't able to open " + packageFolderURL + " as a jar file", e);
 		}
+		Map<String, List<String>> packages;
+		if (recursive) {
+			packages = index.getPackagesUnder(javaPackageName);
+		} else {
+			packages = Collections.singletonMap(javaPackageName, index.getClasses(javaPackageName));
+		}
+
+		String jarUri = packageFolderURL.toExternalForm().split("!")[0];
+		List<JavaFileObject> result = new ArrayList<JavaFileObject>();
+		for (Map.Entry<String, List<String>> entry : packages.entrySet()) {
+			String entryPrefix = entry.getKey().length() == 0 ? "" : entry.getKey() + "/";
+			String binaryPrefix = entry.getKey().length() == 0 ? "" : entry.getKey().replace('/', '.') + ".";
+			for (String className : entry.getValue()) {
+				URI uri = URI.create(jarUri + "!/" + entryPrefix + className + CLASS_FILE_EXTENSION);
+				result.add(new CustomJavaFileObject(binaryPrefix + className, uri));
+			}
+		}
 		return result;
 	}
 
@@ -111,8 +182,8 @@ public class PackageInternalsFinder {
 		for (File childFile : childFiles) {
 			if (childFile.isFile() && childFile.getName().endsWith(CLASS_FILE_EXTENSION)) {
 				// We only want the .class files.
-				String binaryName = packageName + "." + childFile.getName();
-				binaryName = binaryName.replaceAll(CLASS_FILE_EXTENSION + "$", "");
+				String fileName = childFile.getName();
+				String binaryName = packageName + "." + fileName.substring(0, fileName.length() - CLASS_FILE_EXTENSION.length());
 
 				result.add(new CustomJavaFileObject(binaryName, childFile.toURI()));
 			} else if (recursive && childFile.isDirectory()) {
@@ -122,4 +193,9 @@ public class PackageInternalsFinder {
 
 		return result;
 	}
+
+	private static final class PackageEntries {
+		private final List<JavaFileObject> files = new ArrayList<JavaFileObject>();
+		private final Set<File> roots = new HashSet<File>();
+	}
 }
\ No newline at end of file
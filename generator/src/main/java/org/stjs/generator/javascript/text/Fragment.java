@@ -0,0 +1,734 @@
+package org.stjs.generator.javascript.text;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A piece of JavaScript code built by the {@link TextJavaScriptBuilder}. The leaves (names, literals, raw code) already
+ * hold their final text and the other fragments only hold their children, so the whole tree is written in one pass by
+ * the {@link TextJavaScriptWriter}. Each fragment writes itself exactly like the
+ * {@link org.stjs.generator.javascript.rhino.RhinoJavaScriptWriter} writes the corresponding Rhino node.
+ */
+public abstract class Fragment {
+	private int javaLineNumber = -1;
+	private int javaColumnNumber = -1;
+	private String comment;
+
+	Fragment() {
+		// only the fragments of this package
+	}
+
+	abstract void write(TextJavaScriptWriter w);
+
+	int getJavaLineNumber() {
+		return javaLineNumber;
+	}
+
+	int getJavaColumnNumber() {
+		return javaColumnNumber;
+	}
+
+	void setJavaPosition(int javaLineNumber, int javaColumnNumber) {
+		this.javaLineNumber = javaLineNumber;
+		this.javaColumnNumber = javaColumnNumber;
+	}
+
+	String getComment() {
+		return comment;
+	}
+
+	void setComment(String comment) {
+		this.comment = comment;
+	}
+
+	@Override
+	public String toString() {
+		return TextJavaScriptWriter.toString(this);
+	}
+
+	/**
+	 * names, literals, keywords and raw code
+	 */
+	static final class Text extends Fragment {
+		private final String text;
+
+		Text(String text) {
+			this.text = text;
+		}
+
+		@Override
+		void write(TextJavaScriptWriter w) {
+			if (text != null) {
+				w.print(text);
+			}
+		}
+	}
+
+	static final class EmptyExpression extends Fragment {
+		@Override
+		void write(TextJavaScriptWriter w) {
+			// do nothing
+		}
+	}
+
+	static final class EmptyStatement extends Fragment {
+		@Override
+		void write(TextJavaScriptWriter w) {
+			w.startPosition(this);
+			w.println(";");
+			w.endPosition();
+		}
+	}
+
+	static final class Label extends Fragment {
+		private final String name;
+
+		Label(String name) {
+			this.name = name;
+		}
+
+		@Override
+		void write(TextJavaScriptWriter w) {
+			w.print(name);
+			w.println(":");
+		}
+	}
+
+	static final class ArrayLiteral extends Fragment {
+		private final List<Fragment> elements;
+
+		ArrayLiteral(List<Fragment> elements) {
+			this.elements = elements;
+		}
+
+		@Override
+		void write(TextJavaScriptWriter w) {
+			w.print("[");
+			w.printList(elements);
+			w.print("]");
+		}
+	}
+
+	/**
+	 * a binary operator applied from left to right on all the operands
+	 */
+	static class Infix extends Fragment {
+		private final String operator;
+		private final List<Fragment> operands;
+
+		Infix(String operator, List<Fragment> operands) {
+			this.operator = operator;
+			this.operands = operands;
+		}
+
+		@Override
+		void write(TextJavaScriptWriter w) {
+			for (int i = 0; i < operands.size(); ++i) {
+				if (i > 0) {
+					w.print(" ");
+					w.print(operator);
+					w.print(" ");
+				}
+				w.write(operands.get(i));
+			}
+		}
+	}
+
+	static final class Assignment extends Infix {
+		Assignment(String operator, List<Fragment> operands) {
+			super(operator, operands);
+		}
+
+		@Override
+		void write(TextJavaScriptWriter w) {
+			w.printComments(this);
+			super.write(w);
+		}
+	}
+
+	static final class Unary extends Fragment {
+		private final String operator;
+		private final boolean postfix;
+		private final boolean keyword;
+		private final Fragment operand;
+
+		Unary(String operator, boolean postfix, boolean keyword, Fragment operand) {
+			this.operator = operator;
+			this.postfix = postfix;
+			this.keyword = keyword;
+			this.operand = operand;
+		}
+
+		@Override
+		void write(TextJavaScriptWriter w) {
+			if (!postfix) {
+				w.print(operator);
+				if (keyword) {
+					w.print(" ");
+				}
+			}
+			w.write(operand);
+			if (postfix) {
+				w.print(operator);
+			}
+		}
+	}
+
+	static final class Conditional extends Fragment {
+		private final Fragment test;
+		private final Fragment trueExpr;
+		private final Fragment falseExpr;
+
+		Conditional(Fragment test, Fragment trueExpr, Fragment falseExpr) {
+			this.test = test;
+			this.trueExpr = trueExpr;
+			this.falseExpr = falseExpr;
+		}
+
+		@Override
+		void write(TextJavaScriptWriter w) {
+			w.write(test);
+			w.print(" ? ");
+			w.write(trueExpr);
+			w.print(" : ");
+			w.write(falseExpr);
+		}
+	}
+
+	static final class Paren extends Fragment {
+		private final Fragment expr;
+
+		Paren(Fragment expr) {
+			this.expr = expr;
+		}
+
+		@Override
+		void write(TextJavaScriptWriter w) {
+			w.print("(");
+			w.write(expr);
+			w.print(")");
+		}
+	}
+
+	static final class PropertyGet extends Fragment {
+		private final Fragment target;
+		private final String name;
+
+		PropertyGet(Fragment target, String name) {
+			this.target = target;
+			this.name = name;
+		}
+
+		@Override
+		void write(TextJavaScriptWriter w) {
+			w.write(target);
+			w.print(".");
+			w.print(name);
+		}
+	}
+
+	static final class ElementGet extends Fragment {
+		private final Fragment target;
+		private final Fragment element;
+
+		ElementGet(Fragment target, Fragment element) {
+			this.target = target;
+			this.element = element;
+		}
+
+		@Override
+		void write(TextJavaScriptWriter w) {
+			w.write(target);
+			w.print("[");
+			w.write(element);
+			w.print("]");
+		}
+	}
+
+	/**
+	 * a function call or, with the "new " prefix, a constructor call
+	 */
+	static final class Call extends Fragment {
+		private final String prefix;
+		private final Fragment target;
+		private final List<Fragment> arguments;
+
+		Call(String prefix, Fragment target, List<Fragment> arguments) {
+			this.prefix = prefix;
+			this.target = target;
+			this.arguments = arguments;
+		}
+
+		@Override
+		void write(TextJavaScriptWriter w) {
+			if (prefix != null) {
+				w.print(prefix);
+			}
+			w.write(target);
+			w.print("(");
+			w.printList(arguments);
+			w.print(")");
+		}
+	}
+
+	static final class ObjectLiteral extends Fragment {
+		private final List<ObjectProperty> properties;
+
+		ObjectLiteral(List<ObjectProperty> properties) {
+			this.properties = properties;
+		}
+
+		@Override
+		void write(TextJavaScriptWriter w) {
+			w.print("{");
+			w.printList(properties);
+			w.print("}");
+		}
+	}
+
+	static final class ObjectProperty extends Fragment {
+		private final String name;
+		private final Fragment value;
+
+		ObjectProperty(String name, Fragment value) {
+			this.name = name;
+			this.value = value;
+		}
+
+		@Override
+		void write(TextJavaScriptWriter w) {
+			w.print(name);
+			w.print(": ");
+			w.write(value);
+		}
+	}
+
+	static final class Function extends Fragment {
+		private final String name;
+		private final List<Fragment> params;
+		private final Fragment body;
+
+		Function(String name, List<Fragment> params, Fragment body) {
+			this.name = name;
+			this.params = params;
+			this.body = body;
+		}
+
+		@Override
+		void write(TextJavaScriptWriter w) {
+			w.printComments(this);
+			w.print("function");
+			if (name != null) {
+				w.print(" ");
+				w.print(name);
+			}
+			w.print("(");
+			w.printList(params);
+			w.print(") ");
+			w.write(body);
+		}
+	}
+
+	/**
+	 * the statements of the block can still be added after the block is built
+	 */
+	static final class Block extends Fragment {
+		private final List<Fragment> statements = new ArrayList<Fragment>();
+
+		void add(Fragment statement) {
+			statements.add(statement);
+		}
+
+		void addFirst(Fragment statement) {
+			statements.add(0, statement);
+		}
+
+		@Override
+		void write(TextJavaScriptWriter w) {
+			if (statements.isEmpty()) {
+				// empty blocks
+				w.print("{}");
+				return;
+			}
+			w.println("{");
+			w.indent();
+			for (Fragment stmt : statements) {
+				w.write(stmt);
+			}
+			w.unindent();
+			w.print("}");
+		}
+	}
+
+	/**
+	 * statements that are written one after the other, without braces
+	 */
+	static class Statements extends Fragment {
+		private final List<Fragment> statements;
+
+		Statements(List<Fragment> statements) {
+			this.statements = statements;
+		}
+
+		@Override
+		void write(TextJavaScriptWriter w) {
+			w.printComments(this);
+			for (Fragment stmt : statements) {
+				w.write(stmt);
+			}
+		}
+	}
+
+	static final class Root extends Statements {
+		Root(List<Fragment> children) {
+			super(children);
+		}
+
+		@Override
+		void write(TextJavaScriptWriter w) {
+			for (Fragment child : super.statements) {
+				w.write(child);
+			}
+			w.addSourceMapURL();
+		}
+	}
+
+	static final class ExpressionStatement extends Fragment {
+		private final Fragment expr;
+
+		ExpressionStatement(Fragment expr) {
+			this.expr = expr;
+		}
+
+		@Override
+		void write(TextJavaScriptWriter w) {
+			w.printComments(this);
+			w.startPosition(this);
+			w.write(expr);
+			w.println(";");
+			w.endPosition();
+		}
+	}
+
+	static final class VariableDeclaration extends Fragment {
+		private final boolean statement;
+		private final List<VariableInitializer> variables;
+
+		VariableDeclaration(boolean statement, List<VariableInitializer> variables) {
+			this.statement = statement;
+			this.variables = variables;
+		}
+
+		@Override
+		void write(TextJavaScriptWriter w) {
+			w.printComments(this);
+			if (statement) {
+				w.startPosition(this);
+			}
+			w.print("var ");
+			w.printList(variables);
+			if (statement) {
+				w.println(";");
+				w.endPosition();
+			}
+		}
+	}
+
+	static final class VariableInitializer extends Fragment {
+		private final String name;
+		private final Fragment init;
+
+		VariableInitializer(String name, Fragment init) {
+			this.name = name;
+			this.init = init;
+		}
+
+		@Override
+		void write(TextJavaScriptWriter w) {
+			w.print(name);
+			if (init != null) {
+				w.print(" = ");
+				w.write(init);
+			}
+		}
+	}
+
+	/**
+	 * break, continue and return, with their optional label or value
+	 */
+	static final class Jump extends Fragment {
+		private final String keyword;
+		private final Fragment value;
+
+		Jump(String keyword, Fragment value) {
+			this.keyword = keyword;
+			this.value = value;
+		}
+
+		@Override
+		void write(TextJavaScriptWriter w) {
+			w.startPosition(this);
+			w.print(keyword);
+			if (value != null) {
+				w.print(" ");
+				w.write(value);
+			}
+			w.println(";");
+			w.endPosition();
+		}
+	}
+
+	static final class ThrowStatement extends Fragment {
+		private final Fragment expr;
+
+		ThrowStatement(Fragment expr) {
+			this.expr = expr;
+		}
+
+		@Override
+		void write(TextJavaScriptWriter w) {
+			w.startPosition(this);
+			w.print(" throw ");
+			w.write(expr);
+			w.println(";");
+			w.endPosition();
+		}
+	}
+
+	static final class LabeledStatement extends Fragment {
+		private final Label label;
+		private final Fragment statement;
+
+		LabeledStatement(Label label, Fragment statement) {
+			this.label = label;
+			this.statement = statement;
+		}
+
+		@Override
+		void write(TextJavaScriptWriter w) {
+			w.write(label);
+			w.indent();
+			w.write(statement);
+			w.unindent();
+		}
+	}
+
+	static final class IfStatement extends Fragment {
+		private final Fragment condition;
+		private final Fragment thenPart;
+		private final Fragment elsePart;
+
+		IfStatement(Fragment condition, Fragment thenPart, Fragment elsePart) {
+			this.condition = condition;
+			this.thenPart = thenPart;
+			this.elsePart = elsePart;
+		}
+
+		@Override
+		void write(TextJavaScriptWriter w) {
+			w.startPosition(this);
+			w.print("if (");
+			w.write(condition);
+			w.print(") ");
+			w.printStatementAsBlock(thenPart, elsePart == null);
+			if (elsePart instanceof IfStatement) {
+				w.print(" else ");
+				w.write(elsePart);
+			} else if (elsePart != null) {
+				w.print(" else ");
+				w.printStatementAsBlock(elsePart, true);
+			}
+			w.endPosition();
+		}
+	}
+
+	static final class ForLoop extends Fragment {
+		private final Fragment init;
+		private final Fragment condition;
+		private final Fragment update;
+		private final Fragment body;
+
+		ForLoop(Fragment init, Fragment condition, Fragment update, Fragment body) {
+			this.init = init;
+			this.condition = condition;
+			this.update = update;
+			this.body = body;
+		}
+
+		@Override
+		void write(TextJavaScriptWriter w) {
+			w.startPosition(this);
+			w.print("for (");
+			w.write(init);
+			w.print("; ");
+			w.write(condition);
+			w.print("; ");
+			w.write(update);
+			w.print(") ");
+			w.printStatementAsBlock(body, true);
+			w.endPosition();
+		}
+	}
+
+	static final class ForInLoop extends Fragment {
+		private final Fragment iterator;
+		private final Fragment iterated;
+		private final Fragment body;
+
+		ForInLoop(Fragment iterator, Fragment iterated, Fragment body) {
+			this.iterator = iterator;
+			this.iterated = iterated;
+			this.body = body;
+		}
+
+		@Override
+		void write(TextJavaScriptWriter w) {
+			w.startPosition(this);
+			w.print("for (");
+			w.write(iterator);
+			w.print(" in ");
+			w.write(iterated);
+			w.print(") ");
+			w.printStatementAsBlock(body, true);
+			w.endPosition();
+		}
+	}
+
+	static final class WhileLoop extends Fragment {
+		private final Fragment condition;
+		private final Fragment body;
+
+		WhileLoop(Fragment condition, Fragment body) {
+			this.condition = condition;
+			this.body = body;
+		}
+
+		@Override
+		void write(TextJavaScriptWriter w) {
+			w.startPosition(this);
+			w.print(" while (");
+			w.write(condition);
+			w.print(")");
+			w.printStatementAsBlock(body, true);
+			w.endPosition();
+		}
+	}
+
+	static final class DoLoop extends Fragment {
+		private final Fragment condition;
+		private final Fragment body;
+
+		DoLoop(Fragment condition, Fragment body) {
+			this.condition = condition;
+			this.body = body;
+		}
+
+		@Override
+		void write(TextJavaScriptWriter w) {
+			w.startPosition(this);
+			w.print("do ");
+			w.write(body);
+			w.print(" while (");
+			w.write(condition);
+			w.println(");");
+			w.endPosition();
+		}
+	}
+
+	static final class SwitchStatement extends Fragment {
+		private final Fragment expr;
+		private final List<SwitchCase> cases;
+
+		SwitchStatement(Fragment expr, List<SwitchCase> cases) {
+			this.expr = expr;
+			this.cases = cases;
+		}
+
+		@Override
+		void write(TextJavaScriptWriter w) {
+			w.startPosition(this);
+			w.print("switch (");
+			w.write(expr);
+			w.println(") {");
+			w.indent();
+			for (SwitchCase c : cases) {
+				w.write(c);
+			}
+			w.unindent();
+			w.println("}");
+			w.endPosition();
+		}
+	}
+
+	static final class SwitchCase extends Fragment {
+		private final Fragment expression;
+		private final List<Fragment> statements;
+
+		SwitchCase(Fragment expression, List<Fragment> statements) {
+			this.expression = expression;
+			this.statements = statements;
+		}
+
+		@Override
+		void write(TextJavaScriptWriter w) {
+			if (expression == null) {
+				w.println("default:");
+			} else {
+				w.print("case ");
+				w.write(expression);
+				w.println(":");
+			}
+			w.indent();
+			for (Fragment stmt : statements) {
+				w.write(stmt);
+			}
+			w.unindent();
+		}
+	}
+
+	static final class TryStatement extends Fragment {
+		private final Fragment tryBlock;
+		private final List<CatchClause> catchClauses;
+		private final Fragment finallyBlock;
+
+		TryStatement(Fragment tryBlock, List<CatchClause> catchClauses, Fragment finallyBlock) {
+			this.tryBlock = tryBlock;
+			this.catchClauses = catchClauses;
+			this.finallyBlock = finallyBlock;
+		}
+
+		@Override
+		void write(TextJavaScriptWriter w) {
+			w.startPosition(this);
+			w.print("try ");
+			w.write(tryBlock);
+			for (CatchClause c : catchClauses) {
+				w.write(c);
+			}
+			if (finallyBlock != null) {
+				w.print(" finally ");
+				w.write(finallyBlock);
+			}
+			w.println();
+			w.endPosition();
+		}
+	}
+
+	static final class CatchClause extends Fragment {
+		private final Fragment varName;
+		private final Fragment body;
+
+		CatchClause(Fragment varName, Fragment body) {
+			this.varName = varName;
+			this.body = body;
+		}
+
+		@Override
+		void write(TextJavaScriptWriter w) {
+			w.print("catch (");
+			w.write(varName);
+			w.print(") ");
+			w.write(body);
+		}
+	}
+}
@@ -0,0 +1,519 @@
+package org.stjs.generator.javascript.text;
+
+import java.io.File;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.stjs.generator.STJSRuntimeException;
+import org.stjs.generator.javascript.AssignOperator;
+import org.stjs.generator.javascript.BinaryOperator;
+import org.stjs.generator.javascript.JavaScriptBuilder;
+import org.stjs.generator.javascript.Keyword;
+import org.stjs.generator.javascript.NameValue;
+import org.stjs.generator.javascript.UnaryOperator;
+import org.stjs.generator.javascript.text.Fragment.Block;
+import org.stjs.generator.javascript.text.Fragment.CatchClause;
+import org.stjs.generator.javascript.text.Fragment.Label;
+import org.stjs.generator.javascript.text.Fragment.ObjectProperty;
+import org.stjs.generator.javascript.text.Fragment.Root;
+import org.stjs.generator.javascript.text.Fragment.SwitchCase;
+import org.stjs.generator.javascript.text.Fragment.Text;
+import org.stjs.generator.javascript.text.Fragment.VariableInitializer;
+
+import com.google.debugging.sourcemap.SourceMapGenerator;
+
+/**
+ * This JavaScript builder does not build a full synthax tree: the names and the literals are kept as text and the other
+ * nodes as light {@link Fragment}s, written directly to the output by {@link #writeJavaScript}. The generated code and
+ * the source map are the same as the ones of the {@link org.stjs.generator.javascript.rhino.RhinoJavaScriptBuilder}.
+ */
+@SuppressWarnings("PMD.ExcessivePublicCount")
+public class TextJavaScriptBuilder implements JavaScriptBuilder<Fragment> {
+	private static final Map<AssignOperator, String> ASSIGN_OPERATORS = new EnumMap<AssignOperator, String>(AssignOperator.class);
+	private static final Map<BinaryOperator, String> BINARY_OPERATORS = new EnumMap<BinaryOperator, String>(BinaryOperator.class);
+	private static final Map<UnaryOperator, String> UNARY_OPERATORS = new EnumMap<UnaryOperator, String>(UnaryOperator.class);
+	private static final Map<Keyword, String> KEYWORDS = new EnumMap<Keyword, String>(Keyword.class);
+
+	static {
+		ASSIGN_OPERATORS.put(AssignOperator.ASSIGN, "=");
+		ASSIGN_OPERATORS.put(AssignOperator.MULTIPLY_ASSIGNMENT, "*=");
+		ASSIGN_OPERATORS.put(AssignOperator.DIVIDE_ASSIGNMENT, "/=");
+		ASSIGN_OPERATORS.put(AssignOperator.REMAINDER_ASSIGNMENT, "%=");
+		ASSIGN_OPERATORS.put(AssignOperator.PLUS_ASSIGNMENT, "+=");
+		ASSIGN_OPERATORS.put(AssignOperator.MINUS_ASSIGNMENT, "-=");
+		ASSIGN_OPERATORS.put(AssignOperator.LEFT_SHIFT_ASSIGNMENT, "<<=");
+		ASSIGN_OPERATORS.put(AssignOperator.RIGHT_SHIFT_ASSIGNMENT, ">>=");
+		ASSIGN_OPERATORS.put(AssignOperator.UNSIGNED_RIGHT_SHIFT_ASSIGNMENT, ">>>=");
+		ASSIGN_OPERATORS.put(AssignOperator.AND_ASSIGNMENT, "&=");
+		ASSIGN_OPERATORS.put(AssignOperator.XOR_ASSIGNMENT, "^=");
+		ASSIGN_OPERATORS.put(AssignOperator.OR_ASSIGNMENT, "|=");
+
+		BINARY_OPERATORS.put(BinaryOperator.MULTIPLY, "*");
+		BINARY_OPERATORS.put(BinaryOperator.DIVIDE, "/");
+		BINARY_OPERATORS.put(BinaryOperator.REMAINDER, "%");
+		BINARY_OPERATORS.put(BinaryOperator.PLUS, "+");
+		BINARY_OPERATORS.put(BinaryOperator.MINUS, "-");
+		BINARY_OPERATORS.put(BinaryOperator.LEFT_SHIFT, "<<");
+		BINARY_OPERATORS.put(BinaryOperator.RIGHT_SHIFT, ">>");
+		BINARY_OPERATORS.put(BinaryOperator.UNSIGNED_RIGHT_SHIFT, ">>>");
+		BINARY_OPERATORS.put(BinaryOperator.AND, "&");
+		BINARY_OPERATORS.put(BinaryOperator.XOR, "^");
+		BINARY_OPERATORS.put(BinaryOperator.OR, "|");
+		BINARY_OPERATORS.put(BinaryOperator.LESS_THAN, "<");
+		BINARY_OPERATORS.put(BinaryOperator.LESS_THAN_EQUAL, "<=");
+		BINARY_OPERATORS.put(BinaryOperator.GREATER_THAN, ">");
+		BINARY_OPERATORS.put(BinaryOperator.GREATER_THAN_EQUAL, ">=");
+		BINARY_OPERATORS.put(BinaryOperator.EQUAL_TO, "==");
+		BINARY_OPERATORS.put(BinaryOperator.NOT_EQUAL_TO, "!=");
+		BINARY_OPERATORS.put(BinaryOperator.CONDITIONAL_AND, "&&");
+		BINARY_OPERATORS.put(BinaryOperator.CONDITIONAL_OR, "||");
+		BINARY_OPERATORS.put(BinaryOperator.COMMA, ",");
+
+		UNARY_OPERATORS.put(UnaryOperator.POSTFIX_INCREMENT, "++");
+		UNARY_OPERATORS.put(UnaryOperator.POSTFIX_DECREMENT, "--");
+		UNARY_OPERATORS.put(UnaryOperator.PREFIX_INCREMENT, "++");
+		UNARY_OPERATORS.put(UnaryOperator.PREFIX_DECREMENT, "--");
+		UNARY_OPERATORS.put(UnaryOperator.UNARY_PLUS, "+");
+		UNARY_OPERATORS.put(UnaryOperator.UNARY_MINUS, "-");
+		UNARY_OPERATORS.put(UnaryOperator.BITWISE_COMPLEMENT, "~");
+		UNARY_OPERATORS.put(UnaryOperator.LOGICAL_COMPLEMENT, "!");
+		UNARY_OPERATORS.put(UnaryOperator.TYPEOF, "typeof");
+		UNARY_OPERATORS.put(UnaryOperator.DELETE_PROPERTY, "delete");
+
+		KEYWORDS.put(Keyword.THIS, "this");
+		KEYWORDS.put(Keyword.NULL, "null");
+		KEYWORDS.put(Keyword.TRUE, "true");
+		KEYWORDS.put(Keyword.FALSE, "false");
+	}
+
+	@Override
+	public Fragment name(CharSequence name) {
+		return new Text(name.toString());
+	}
+
+	@Override
+	public Fragment label(CharSequence name) {
+		return new Label(name.toString());
+	}
+
+	@Override
+	public Fragment asExpressionList(Iterable<Fragment> nodes) {
+		return binary(BinaryOperator.COMMA, nodes);
+	}
+
+	@Override
+	public Fragment block(Iterable<Fragment> statements) {
+		Block block = new Block();
+		for (Fragment stmt : statements) {
+			if (stmt != null) {
+				block.add(stmt);
+			}
+		}
+		return block;
+	}
+
+	@Override
+	public Fragment elementGet(Fragment target, Fragment index) {
+		return new Fragment.ElementGet(target, index);
+	}
+
+	@Override
+	public Fragment newExpression(Fragment target, Iterable<Fragment> arguments) {
+		return new Fragment.Call("new ", target, list(arguments));
+	}
+
+	@Override
+	public Fragment array(Iterable<Fragment> values) {
+		return new Fragment.ArrayLiteral(list(values));
+	}
+
+	@Override
+	public Fragment string(String value) {
+		return new Text(quote(value, '"'));
+	}
+
+	@Override
+	public Fragment paren(Fragment expr) {
+		return new Fragment.Paren(expr);
+	}
+
+	@Override
+	public Fragment position(Fragment node, int javaLineNumber, int javaColumnNumber) {
+		node.setJavaPosition(javaLineNumber, javaColumnNumber);
+		return node;
+	}
+
+	@Override
+	public Fragment breakStatement(Fragment label) {
+		return new Fragment.Jump("break", label);
+	}
+
+	@Override
+	public Fragment caseStatement(Fragment expression, Iterable<Fragment> statements) {
+		return new SwitchCase(expression, list(statements));
+	}
+
+	@Override
+	public Fragment catchClause(Fragment varName, Fragment body) {
+		if (body instanceof Block) {
+			return new CatchClause(varName, body);
+		}
+		Block b = new Block();
+		b.add(body);
+		return new CatchClause(varName, b);
+	}
+
+	@Override
+	public Fragment continueStatement(Fragment label) {
+		return new Fragment.Jump("continue", label);
+	}
+
+	@Override
+	public Fragment function(String name, Iterable<Fragment> params, Fragment body) {
+		Fragment functionBody;
+		if (body == null) {
+			functionBody = new Block();
+		} else if (body instanceof Block) {
+			functionBody = body;
+		} else {
+			functionBody = addStatement(null, body);
+		}
+		return new Fragment.Function(name, list(params), functionBody);
+	}
+
+	@Override
+	public Fragment object(Iterable<NameValue<Fragment>> props) {
+		List<ObjectProperty> properties = new ArrayList<ObjectProperty>();
+		for (NameValue<Fragment> prop : props) {
+			properties.add(new ObjectProperty(prop.getName().toString(), prop.getValue()));
+		}
+		return new Fragment.ObjectLiteral(properties);
+	}
+
+	@Override
+	public Fragment doLoop(Fragment condition, Fragment body) {
+		return new Fragment.DoLoop(condition, body);
+	}
+
+	@Override
+	public Fragment emptyStatement() {
+		return new Fragment.EmptyStatement();
+	}
+
+	@Override
+	public Fragment emptyExpression() {
+		return new Fragment.EmptyExpression();
+	}
+
+	@Override
+	public Fragment forInLoop(Fragment iterator, Fragment iterated, Fragment body) {
+		return new Fragment.ForInLoop(iterator, iterated, body);
+	}
+
+	@Override
+	public Fragment forLoop(Fragment init, Fragment condition, Fragment update, Fragment body) {
+		return new Fragment.ForLoop(init, condition, update, body);
+	}
+
+	@Override
+	public Fragment ifStatement(Fragment condition, Fragment thenPart, Fragment elsePart) {
+		return new Fragment.IfStatement(condition, thenPart, elsePart);
+	}
+
+	@Override
+	public Fragment addStatement(Fragment blockOrStatement, Fragment statement) {
+		if (blockOrStatement instanceof Block) {
+			if (statement != null) {
+				((Block) blockOrStatement).add(statement);
+			}
+			return blockOrStatement;
+		}
+		Block block = new Block();
+		if (blockOrStatement != null) {
+			block.add(blockOrStatement);
+		}
+		if (statement != null) {
+			block.add(statement);
+		}
+		return block;
+	}
+
+	@Override
+	public Fragment addStatementBeginning(Fragment blockOrStatement, Fragment statement) {
+		if (blockOrStatement instanceof Block) {
+			if (statement != null) {
+				((Block) blockOrStatement).addFirst(statement);
+			}
+			return blockOrStatement;
+		}
+		Block block = new Block();
+		if (statement != null) {
+			block.add(statement);
+		}
+		if (blockOrStatement != null) {
+			block.add(blockOrStatement);
+		}
+		return block;
+	}
+
+	@Override
+	public Fragment labeledStatement(Fragment label, Fragment statement) {
+		return new Fragment.LabeledStatement(cast(label, Label.class), statement);
+	}
+
+	@Override
+	public Fragment returnStatement(Fragment returnValue) {
+		return new Fragment.Jump("return", returnValue);
+	}
+
+	@Override
+	public Fragment switchStatement(Fragment expr, Iterable<Fragment> cases) {
+		List<SwitchCase> switchCases = new ArrayList<SwitchCase>();
+		for (Fragment c : cases) {
+			switchCases.add(cast(c, SwitchCase.class));
+		}
+		return new Fragment.SwitchStatement(expr, switchCases);
+	}
+
+	@Override
+	public Fragment functionCall(Fragment target, Iterable<Fragment> arguments) {
+		return new Fragment.Call(null, target, list(arguments));
+	}
+
+	@Override
+	public Fragment property(Fragment target, CharSequence name) {
+		if (target == null) {
+			return name(name);
+		}
+		return new Fragment.PropertyGet(target, name.toString());
+	}
+
+	@Override
+	public Fragment variableDeclaration(boolean statement, Iterable<NameValue<Fragment>> vars) {
+		List<VariableInitializer> variables = new ArrayList<VariableInitializer>();
+		for (NameValue<Fragment> v : vars) {
+			variables.add(new VariableInitializer(v.getName().toString(), v.getValue()));
+		}
+		return new Fragment.VariableDeclaration(statement, variables);
+	}
+
+	@Override
+	public Fragment variableDeclaration(boolean statement, CharSequence name, Fragment init) {
+		return new Fragment.VariableDeclaration(statement, Collections.singletonList(new VariableInitializer(name.toString(), init)));
+	}
+
+	@Override
+	public Fragment tryStatement(Fragment tryBlock, Iterable<Fragment> catchClauses, Fragment finallyBlock) {
+		List<CatchClause> clauses = new ArrayList<CatchClause>();
+		for (Fragment c : catchClauses) {
+			clauses.add(cast(c, CatchClause.class));
+		}
+		return new Fragment.TryStatement(tryBlock, clauses, finallyBlock);
+	}
+
+	@Override
+	public Fragment whileLoop(Fragment condition, Fragment body) {
+		return new Fragment.WhileLoop(condition, body);
+	}
+
+	@Override
+	public Fragment root(Iterable<Fragment> children) {
+		return new Root(withoutNulls(children));
+	}
+
+	@Override
+	public Fragment code(String code) {
+		return new Text(code);
+	}
+
+	/**
+	 * for the expressions (the only nodes converted to string by the writers) this gives the same result as Rhino's
+	 * toSource
+	 */
+	@Override
+	public String toString(Fragment node) {
+		return node.toString();
+	}
+
+	@Override
+	public Fragment conditionalExpression(Fragment test, Fragment trueExpr, Fragment falseExpr) {
+		return new Fragment.Conditional(test, trueExpr, falseExpr);
+	}
+
+	@Override
+	public Fragment character(String c) {
+		return new Text(quote(c, '\''));
+	}
+
+	@Override
+	public Fragment number(Number n) {
+		return new Text(n.toString());
+	}
+
+	@Override
+	public Fragment statements(Iterable<Fragment> stmts) {
+		return new Fragment.Statements(withoutNulls(stmts));
+	}
+
+	@Override
+	public Fragment assignment(AssignOperator operator, Fragment left, Fragment right) {
+		List<Fragment> operands = new ArrayList<Fragment>(2);
+		operands.add(left);
+		operands.add(right);
+		return new Fragment.Assignment(ASSIGN_OPERATORS.get(operator), operands);
+	}
+
+	@Override
+	public Fragment binary(BinaryOperator operator, Iterable<Fragment> operands) {
+		// this is to deal with the COMMA operator who can have less than two operands
+		Iterator<Fragment> it = operands.iterator();
+		if (!it.hasNext()) {
+			return new Fragment.EmptyExpression();
+		}
+		Fragment first = it.next();
+		if (!it.hasNext()) {
+			return first;
+		}
+		List<Fragment> list = new ArrayList<Fragment>();
+		list.add(first);
+		while (it.hasNext()) {
+			list.add(it.next());
+		}
+		return new Fragment.Infix(BINARY_OPERATORS.get(operator), list);
+	}
+
+	@Override
+	public Fragment keyword(Keyword token) {
+		return new Text(KEYWORDS.get(token));
+	}
+
+	@Override
+	public Fragment unary(UnaryOperator operator, Fragment operand) {
+		boolean keyword = operator == UnaryOperator.TYPEOF || operator == UnaryOperator.DELETE_PROPERTY;
+		return new Fragment.Unary(UNARY_OPERATORS.get(operator), operator.isPostfix(), keyword, operand);
+	}
+
+	@Override
+	public Fragment expressionStatement(Fragment expr) {
+		return new Fragment.ExpressionStatement(expr);
+	}
+
+	@Override
+	public SourceMapGenerator writeJavaScript(Fragment javascriptRoot, File inputFile, boolean generateSourceMap, Writer writer) {
+		TextJavaScriptWriter jsw = new TextJavaScriptWriter(writer, inputFile, generateSourceMap);
+
+		jsw.write(cast(javascriptRoot, Root.class));
+
+		return jsw.getSourceMapGenerator();
+	}
+
+	@Override
+	public Fragment comment(Fragment node, String comment) {
+		if (node == null) {
+			return null;
+		}
+		if (comment != null) {
+			node.setComment(comment);
+		}
+		return node;
+	}
+
+	@Override
+	public Fragment throwStatement(Fragment expr) {
+		return new Fragment.ThrowStatement(expr);
+	}
+
+	private static <T extends Fragment> T cast(Fragment node, Class<T> clazz) {
+		if (node == null) {
+			return null;
+		}
+		if (!clazz.isInstance(node)) {
+			throw new STJSRuntimeException("Received wrong JavaScript node type:" + node.getClass().getName() + " instead of " + clazz.getName()
+					+ ". This is probably a ST-JS bug. Please report it to our website");
+		}
+		return clazz.cast(node);
+	}
+
+	private static List<Fragment> list(Iterable<Fragment> it) {
+		if (it instanceof List) {
+			return (List<Fragment>) it;
+		}
+		List<Fragment> list = new ArrayList<Fragment>();
+		for (Fragment f : it) {
+			list.add(f);
+		}
+		return list;
+	}
+
+	private static List<Fragment> withoutNulls(Iterable<Fragment> it) {
+		List<Fragment> list = new ArrayList<Fragment>();
+		for (Fragment f : it) {
+			if (f != null) {
+				list.add(f);
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * @return the string between the given quotes, escaped like Rhino's ScriptRuntime.escapeString
+	 */
+	static String quote(String s, char quote) {
+		StringBuilder sb = new StringBuilder(s.length() + 2);
+		sb.append(quote);
+		for (int i = 0; i < s.length(); ++i) {
+			char c = s.charAt(i);
+			if (' ' <= c && c <= '~' && c != quote && c != '\\') {
+				// an ordinary print character (like C isprint()) and not the quote or \
+				sb.append(c);
+				continue;
+			}
+			char escape = escapeCharacter(c);
+			if (escape != 0) {
+				sb.append('\\').append(escape);
+			} else if (c == quote) {
+				sb.append('\\').append(quote);
+			} else {
+				int hexSize;
+				if (c < 256) {
+					sb.append("\\x");
+					hexSize = 2;
+				} else {
+					sb.append("\\u");
+					hexSize = 4;
+				}
+				for (int shift = (hexSize - 1) * 4; shift >= 0; shift -= 4) {
+					sb.append(Character.forDigit(0xf & (c >> shift), 16));
+				}
+			}
+		}
+		sb.append(quote);
+		return sb.toString();
+	}
+
+	private static char escapeCharacter(char c) {
+		switch (c) {
+		case '\b':
+			return 'b';
+		case '\f':
+			return 'f';
+		case '\n':
+			return 'n';
+		case '\r':
+			return 'r';
+		case '\t':
+			return 't';
+		case 0xb:
+			return 'v';
+		case '\\':
+			return '\\';
+		default:
+			return 0;
+		}
+	}
+}
@@ -0,0 +1,173 @@
+package org.stjs.generator.javascript.text;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.List;
+
+import org.stjs.generator.STJSRuntimeException;
+
+import com.google.debugging.sourcemap.FilePosition;
+import com.google.debugging.sourcemap.SourceMapFormat;
+import com.google.debugging.sourcemap.SourceMapGenerator;
+import com.google.debugging.sourcemap.SourceMapGeneratorFactory;
+
+/**
+ * This class writes the {@link Fragment}s built by the {@link TextJavaScriptBuilder} directly to the output, keeping
+ * track of the current line and column for the source map. It uses the same layout as the
+ * {@link org.stjs.generator.javascript.rhino.RhinoJavaScriptWriter}, so both builders generate the same code and the
+ * same source maps.
+ */
+final class TextJavaScriptWriter {
+	private static final String LINE_JAVA_DOC = " * ";
+	private static final String INDENT = "    ";
+	private static final String START_JAVA_DOC = "/**";
+	private static final String END_JAVA_DOC = " */";
+	private int level;
+
+	private boolean indented;
+
+	private final Writer writer;
+
+	private int currentLine;
+	private int currentColumn;
+
+	private final SourceMapGenerator sourceMapGenerator;
+	private final boolean generateSourceMap;
+	private final File inputFile;
+
+	private FilePosition javaPosition;
+	private FilePosition javaScriptPosition;
+
+	TextJavaScriptWriter(Writer writer, File inputFile, boolean generateSourceMap) {
+		this.writer = writer;
+		this.inputFile = inputFile;
+		this.generateSourceMap = generateSourceMap;
+		this.sourceMapGenerator = generateSourceMap ? SourceMapGeneratorFactory.getInstance(SourceMapFormat.V3) : null;
+	}
+
+	/**
+	 * @return the code of the given fragment, without source map
+	 */
+	static String toString(Fragment fragment) {
+		StringWriter out = new StringWriter();
+		new TextJavaScriptWriter(out, null, false).write(fragment);
+		return out.toString();
+	}
+
+	void write(Fragment fragment) {
+		if (fragment != null) {
+			fragment.write(this);
+		}
+	}
+
+	void indent() {
+		level++;
+	}
+
+	void unindent() {
+		level--;
+	}
+
+	private void append(String s) {
+		try {
+			writer.append(s);
+		}
+		catch (IOException e) {
+			throw new STJSRuntimeException("Writing problem:" + e, e);
+		}
+	}
+
+	void print(String arg) {
+		if (!indented) {
+			for (int i = 0; i < level; i++) {
+				append(INDENT);
+			}
+			currentColumn += level * INDENT.length();
+			indented = true;
+		}
+		append(arg);
+		currentColumn += arg.length();
+	}
+
+	void println(String arg) {
+		print(arg);
+		println();
+	}
+
+	void println() {
+		append("\n");
+		indented = false;
+		currentLine++;
+		currentColumn = 0;
+	}
+
+	void printComments(Fragment fragment) {
+		String comment = fragment.getComment();
+		if (comment != null) {
+			println(START_JAVA_DOC);
+			String[] lines = comment.split("\n");
+			for (String line : lines) {
+				print(LINE_JAVA_DOC);
+				println(line);
+			}
+			println(END_JAVA_DOC);
+		}
+	}
+
+	void printList(List<? extends Fragment> items) {
+		int max = items.size();
+		int count = 0;
+		for (Fragment item : items) {
+			write(item);
+			if (count < max - 1) {
+				count++;
+				print(", ");
+			} else if (item instanceof Fragment.EmptyExpression) {
+				print(",");
+			}
+		}
+	}
+
+	void printStatementAsBlock(Fragment stmt, boolean addNewLineAfterBlock) {
+		if (stmt instanceof Fragment.Block) {
+			write(stmt);
+			if (addNewLineAfterBlock) {
+				println();
+			}
+		} else {
+			println();
+			indent();
+			write(stmt);
+			unindent();
+		}
+	}
+
+	void startPosition(Fragment fragment) {
+		if (generateSourceMap) {
+			javaPosition = new FilePosition(fragment.getJavaLineNumber() - 1, fragment.getJavaColumnNumber() - 1);
+			javaScriptPosition = new FilePosition(currentLine, currentColumn);
+		}
+	}
+
+	void endPosition() {
+		if (generateSourceMap) {
+			FilePosition endJavaScriptPosition = new FilePosition(currentLine, currentColumn);
+			if (javaPosition != null && javaPosition.getLine() >= 0 && javaPosition.getColumn() >= 0) {
+				sourceMapGenerator.addMapping(inputFile.getName(), null, javaPosition, javaScriptPosition, endJavaScriptPosition);
+			}
+		}
+	}
+
+	void addSourceMapURL() {
+		if (generateSourceMap) {
+			print("//@ sourceMappingURL=");
+			print(inputFile.getName().replaceAll("\\.java$", ".map"));
+		}
+	}
+
+	SourceMapGenerator getSourceMapGenerator() {
+		return sourceMapGenerator;
+	}
+}
@@ -0,0 +1,52 @@
+/**
+ *  Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.stjs.generator.metrics;
+
+import java.util.List;
+
+/**
+ * Receives the measures taken while generating the classes (see
+ * {@link org.stjs.generator.Generator#addListener(GenerationListener)}). The listeners are called by the generation
+ * workers, so they must be thread-safe when several threads are used.
+ */
+public interface GenerationListener {
+	/**
+	 * @param classNames
+	 *            - the classes the phase was done for: all the classes of the batch for the batch phases (see
+	 *            {@link GenerationPhase#isBatchPhase()}), a single class otherwise
+	 * @param nanos
+	 *            - the time spent in the phase
+	 */
+	void phaseEnded(GenerationPhase phase, List<String> classNames, long nanos);
+
+	/**
+	 * called when all the files of the given class were written
+	 * 
+	 * @param visitedNodes
+	 *            - the number of Java AST nodes visited by the check and the writer visitors
+	 * @param writtenBytes
+	 *            - the size of the generated JavaScript file
+	 */
+	void classGenerated(String className, long visitedNodes, long writtenBytes);
+
+	/**
+	 * called for each lookup of the bridge classes done by the generator
+	 * 
+	 * @param cacheHit
+	 *            - true if the answer was found in the cache, false if the annotations of the class had to be read
+	 */
+	void bridgeLookedUp(boolean cacheHit);
+}
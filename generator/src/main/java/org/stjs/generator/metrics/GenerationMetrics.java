@@ -0,0 +1,260 @@
+/**
+ *  Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.stjs.generator.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+import com.google.common.collect.Maps;
+
+/**
+ * A {@link GenerationListener} keeping a histogram of the durations of each phase, the time spent for each class and
+ * the total number of visited nodes and written bytes. The time of the batch phases is shared evenly between the
+ * classes of the batch. It also counts the hits and misses of the bridge lookup caches of
+ * {@link org.stjs.generator.utils.ClassUtils} for the generators it listens to.
+ */
+public class GenerationMetrics implements GenerationListener {
+	private static final GenerationPhase[] PHASES = GenerationPhase.values();
+	private static final double[] PERCENTILES = { 50, 90, 99 };
+	private static final long NANOS_PER_MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+
+	private final Map<GenerationPhase, Histogram> phases = new EnumMap<GenerationPhase, Histogram>(GenerationPhase.class);
+	private final ConcurrentMap<String, ClassMetrics> classes = Maps.newConcurrentMap();
+	private final AtomicLong visitedNodes = new AtomicLong();
+	private final AtomicLong writtenBytes = new AtomicLong();
+	private final AtomicLong bridgeCacheHits = new AtomicLong();
+	private final AtomicLong bridgeCacheMisses = new AtomicLong();
+
+	public GenerationMetrics() {
+		for (GenerationPhase phase : PHASES) {
+			phases.put(phase, new Histogram());
+		}
+	}
+
+	@Override
+	public void phaseEnded(GenerationPhase phase, List<String> classNames, long nanos) {
+		phases.get(phase).record(nanos);
+		if (!classNames.isEmpty()) {
+			long share = nanos / classNames.size();
+			for (String className : classNames) {
+				getClassMetrics(className).phaseNanos.addAndGet(phase.ordinal(), share);
+			}
+		}
+	}
+
+	@Override
+	public void classGenerated(String className, long classVisitedNodes, long classWrittenBytes) {
+		ClassMetrics metrics = getClassMetrics(className);
+		metrics.visitedNodes.addAndGet(classVisitedNodes);
+		metrics.writtenBytes.addAndGet(classWrittenBytes);
+		visitedNodes.addAndGet(classVisitedNodes);
+		writtenBytes.addAndGet(classWrittenBytes);
+	}
+
+	@Override
+	public void bridgeLookedUp(boolean cacheHit) {
+		(cacheHit ? bridgeCacheHits : bridgeCacheMisses).incrementAndGet();
+	}
+
+	private ClassMetrics getClassMetrics(String className) {
+		ClassMetrics metrics = classes.get(className);
+		if (metrics == null) {
+			ClassMetrics newMetrics = new ClassMetrics(className);
+			metrics = classes.putIfAbsent(className, newMetrics);
+			if (metrics == null) {
+				metrics = newMetrics;
+			}
+		}
+		return metrics;
+	}
+
+	public Histogram getHistogram(GenerationPhase phase) {
+		return phases.get(phase);
+	}
+
+	public Collection<ClassMetrics> getClasses() {
+		return Collections.unmodifiableCollection(classes.values());
+	}
+
+	/**
+	 * @return the given number of classes that took the most time, the slowest first
+	 */
+	public List<ClassMetrics> getSlowestClasses(int count) {
+		List<ClassMetrics> sorted = new ArrayList<ClassMetrics>(classes.values());
+		Collections.sort(sorted, new Comparator<ClassMetrics>() {
+			@Override
+			public int compare(ClassMetrics o1, ClassMetrics o2) {
+				long t1 = o1.getTotalNanos();
+				long t2 = o2.getTotalNanos();
+				return t1 > t2 ? -1 : t1 < t2 ? 1 : o1.getClassName().compareTo(o2.getClassName());
+			}
+		});
+		return sorted.subList(0, Math.min(count, sorted.size()));
+	}
+
+	public long getVisitedNodes() {
+		return visitedNodes.get();
+	}
+
+	public long getWrittenBytes() {
+		return writtenBytes.get();
+	}
+
+	/**
+	 * @return the number of bridge lookups answered by the caches
+	 */
+	public long getBridgeCacheHits() {
+		return bridgeCacheHits.get();
+	}
+
+	/**
+	 * @return the number of bridge lookups that had to read the annotations of the classes
+	 */
+	public long getBridgeCacheMisses() {
+		return bridgeCacheMisses.get();
+	}
+
+	/**
+	 * @return a table with the durations of each phase (in milliseconds) and the given number of slowest classes, one
+	 *         line per element
+	 */
+	public List<String> getSummary(int slowestClasses) {
+		List<String> lines = new ArrayList<String>();
+		lines.add(String.format("%-18s %8s %10s %9s %9s %9s %9s", "phase", "count", "total", "mean", "p50", "p90", "p99"));
+		for (GenerationPhase phase : PHASES) {
+			Histogram h = phases.get(phase);
+			if (h.getCount() == 0) {
+				continue;
+			}
+			lines.add(String.format("%-18s %8d %10s %9s %9s %9s %9s", phase.getName(), h.getCount(), millis(h.getTotal()),
+					millis(h.getMean()), millis(h.getPercentile(PERCENTILES[0])), millis(h.getPercentile(PERCENTILES[1])),
+					millis(h.getPercentile(PERCENTILES[2]))));
+		}
+		lines.add(String.format("%d classes, %d visited nodes, %d bytes written", classes.size(), getVisitedNodes(), getWrittenBytes()));
+		lines.add(String.format("bridge lookups: %d cache hits, %d cache misses", getBridgeCacheHits(), getBridgeCacheMisses()));
+		List<ClassMetrics> slowest = getSlowestClasses(slowestClasses);
+		if (!slowest.isEmpty()) {
+			lines.add("Slowest classes:");
+			for (ClassMetrics c : slowest) {
+				lines.add(String.format("%10s  %s", millis(c.getTotalNanos()), c.getClassName()));
+			}
+		}
+		return lines;
+	}
+
+	private static String millis(long nanos) {
+		return String.format("%.1fms", (double) nanos / NANOS_PER_MILLI);
+	}
+
+	/**
+	 * writes all the measures as a JSON object. The durations are in nanoseconds.
+	 */
+	public void writeJson(Writer writer) throws IOException {
+		writer.write("{\n  \"phases\": {");
+		boolean first = true;
+		for (GenerationPhase phase : PHASES) {
+			Histogram h = phases.get(phase);
+			writer.write(first ? "\n" : ",\n");
+			first = false;
+			writer.write("    " + quote(phase.getName()) + ": {\"count\": " + h.getCount() + ", \"total\": " + h.getTotal() + ", \"min\": "
+					+ h.getMin() + ", \"max\": " + h.getMax() + ", \"mean\": " + h.getMean());
+			for (double percentile : PERCENTILES) {
+				writer.write(", \"p" + (int) percentile + "\": " + h.getPercentile(percentile));
+			}
+			writer.write("}");
+		}
+		writer.write("\n  },\n  \"visitedNodes\": " + getVisitedNodes() + ",\n  \"writtenBytes\": " + getWrittenBytes()
+				+ ",\n  \"bridgeCacheHits\": " + getBridgeCacheHits() + ",\n  \"bridgeCacheMisses\": " + getBridgeCacheMisses()
+				+ ",\n  \"classes\": [");
+		first = true;
+		for (ClassMetrics c : getSlowestClasses(classes.size())) {
+			writer.write(first ? "\n" : ",\n");
+			first = false;
+			writer.write("    {\"class\": " + quote(c.getClassName()) + ", \"total\": " + c.getTotalNanos());
+			for (GenerationPhase phase : PHASES) {
+				writer.write(", " + quote(phase.getName()) + ": " + c.getNanos(phase));
+			}
+			writer.write(", \"visitedNodes\": " + c.getVisitedNodes() + ", \"writtenBytes\": " + c.getWrittenBytes() + "}");
+		}
+		writer.write("\n  ]\n}\n");
+	}
+
+	private static String quote(String s) {
+		StringBuilder quoted = new StringBuilder(s.length() + 2);
+		quoted.append('"');
+		for (int i = 0; i < s.length(); ++i) {
+			char c = s.charAt(i);
+			if (c == '"' || c == '\\') {
+				quoted.append('\\').append(c);
+			} else if (c < ' ') {
+				quoted.append(String.format("\\u%04x", (int) c));
+			} else {
+				quoted.append(c);
+			}
+		}
+		return quoted.append('"').toString();
+	}
+
+	/**
+	 * the measures of a single class
+	 */
+	public static final class ClassMetrics {
+		private final String className;
+		private final AtomicLongArray phaseNanos = new AtomicLongArray(PHASES.length);
+		private final AtomicLong visitedNodes = new AtomicLong();
+		private final AtomicLong writtenBytes = new AtomicLong();
+
+		private ClassMetrics(String className) {
+			this.className = className;
+		}
+
+		public String getClassName() {
+			return className;
+		}
+
+		public long getNanos(GenerationPhase phase) {
+			return phaseNanos.get(phase.ordinal());
+		}
+
+		public long getTotalNanos() {
+			long total = 0;
+			for (int i = 0; i < phaseNanos.length(); ++i) {
+				total += phaseNanos.get(i);
+			}
+			return total;
+		}
+
+		public long getVisitedNodes() {
+			return visitedNodes.get();
+		}
+
+		public long getWrittenBytes() {
+			return writtenBytes.get();
+		}
+	}
+}
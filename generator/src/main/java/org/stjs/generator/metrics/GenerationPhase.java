@@ -0,0 +1,57 @@
+/**
+ *  Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.stjs.generator.metrics;
+
+/**
+ * The phases of the generation of a class, as measured by the {@link GenerationListener}s.
+ */
+public enum GenerationPhase {
+	/**
+	 * the parsing of the Java files of a batch
+	 */
+	PARSE_JAVA("parse-java"),
+	/**
+	 * the analysis (symbol and type resolution) of the Java files of a batch
+	 */
+	ANALYZE_JAVA("analyze-java"),
+	CHECK_JAVA("check-java"),
+	WRITE_JS_AST("write-js-ast"),
+	/**
+	 * the checks and the writing of the JavaScript AST done in a single traversal (see
+	 * {@link org.stjs.generator.GeneratorConfiguration#isSinglePass()})
+	 */
+	CHECK_AND_WRITE_JS_AST("check-and-write-js-ast"),
+	DUMP_JS("dump-js"),
+	WRITE_PROPS("write-props"),
+	WRITE_SOURCE_MAP("write-source-map");
+
+	private final String name;
+
+	private GenerationPhase(String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return true if the phase is done once for all the classes of a batch
+	 */
+	public boolean isBatchPhase() {
+		return this == PARSE_JAVA || this == ANALYZE_JAVA;
+	}
+}
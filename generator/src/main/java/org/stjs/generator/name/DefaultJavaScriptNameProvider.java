@@ -7,14 +7,14 @@ import java.util.Map;
 import java.util.Set;
 
 import javax.lang.model.element.Element;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
 import javax.lang.model.type.DeclaredType;
 import javax.lang.model.type.TypeMirror;
 
 import org.stjs.generator.GenerationContext;
-import org.stjs.generator.GeneratorConfiguration;
 import org.stjs.generator.javac.ElementUtils;
 import org.stjs.generator.javac.InternalUtils;
-import org.stjs.generator.utils.ClassUtils;
 import org.stjs.generator.utils.JavaNodes;
 
 import com.sun.source.tree.IdentifierTree;
@@ -29,11 +29,22 @@ import com.sun.source.util.TreePath;
  * 
  */
 public class DefaultJavaScriptNameProvider implements JavaScriptNameProvider {
-	private static final String JAVA_LANG_PACKAGE = "java.lang.";
-	private static final int JAVA_LANG_LENGTH = JAVA_LANG_PACKAGE.length();
-
 	private final Set<String> resolvedRootTypes = new HashSet<String>();
 	private final Map<TypeMirror, String> resolvedTypes = new HashMap<TypeMirror, String>();
+	private TypeNameCache typeNameCache;
+
+	public DefaultJavaScriptNameProvider() {
+		this(null);
+	}
+
+	/**
+	 * @param typeNameCache
+	 *            - the names and allowed types shared with the other classes of the generation. If null, this provider
+	 *            uses its own cache.
+	 */
+	public DefaultJavaScriptNameProvider(TypeNameCache typeNameCache) {
+		this.typeNameCache = typeNameCache;
+	}
 
 	@Override
 	public String getTypeName(GenerationContext<?> context, TypeMirror type) {
@@ -44,90 +55,76 @@ public class DefaultJavaScriptNameProvider implements JavaScriptNameProvider {
 
 		if (type instanceof DeclaredType) {
 			DeclaredType declaredType = (DeclaredType) type;
-			String name = InternalUtils.getSimpleName(declaredType.asElement());
-			Element rootTypeElement = declaredType.asElement();
-			for (DeclaredType enclosingType = JavaNodes.getEnclosingType(declaredType); enclosingType != null; enclosingType = JavaNodes
-					.getEnclosingType(enclosingType)) {
-				rootTypeElement = enclosingType.asElement();
-				name = InternalUtils.getSimpleName(rootTypeElement) + "." + name;
+			TypeNameCache cache = getTypeNameCache(context);
+			String qualifiedName = null;
+			TypeNameCache.TypeName typeName = null;
+			if (hasStableName(declaredType.asElement())) {
+				qualifiedName = ElementUtils.getQualifiedClassName(declaredType.asElement()).toString();
+				typeName = cache.getTypeName(qualifiedName);
+			}
+			if (typeName == null) {
+				typeName = resolveTypeName(declaredType);
+				if (qualifiedName != null) {
+					typeName = cache.putTypeName(qualifiedName, typeName);
+				}
 			}
 
-			checkAllowedType(rootTypeElement, context);
-			addResolvedType(rootTypeElement);
+			if (!cache.isAllowed(typeName.getRootTypeName())) {
+				typeNotAllowedException(context, typeName.getRootTypeName());
+			}
+			addResolvedType(typeName.getRootTypeName());
 
-			String namespace = JavaNodes.getNamespace(rootTypeElement);
-			fullName = (namespace == null ? "" : namespace + ".") + name;
-			resolvedTypes.put(type, fullName);
-			return fullName;
+			resolvedTypes.put(type, typeName.getFullName());
+			return typeName.getFullName();
 		}
 		return type.toString();
 	}
 
-	private void typeNotAllowedException(GenerationContext<?> context, String name) {
-		context.addError(context.getCurrentPath().getLeaf(), "The usage of the class " + name
-				+ " is not allowed. If it's one of your own bridge types, "
-				+ "please add the annotation @STJSBridge to the class or to its package.");
+	private TypeNameCache getTypeNameCache(GenerationContext<?> context) {
+		if (typeNameCache == null) {
+			typeNameCache = new TypeNameCache(context.getBuiltProjectClassLoader(), context.getConfiguration());
+		}
+		return typeNameCache;
 	}
 
-	private boolean isJavaLangClassAllowed(GenerationContext<?> context, String name) {
-		GeneratorConfiguration configuration = context.getConfiguration();
-		if (name.startsWith(JAVA_LANG_PACKAGE) && configuration.getAllowedJavaLangClasses().contains(name.substring(JAVA_LANG_LENGTH))) {
-			return true;
+	private TypeNameCache.TypeName resolveTypeName(DeclaredType declaredType) {
+		String name = InternalUtils.getSimpleName(declaredType.asElement());
+		Element rootTypeElement = declaredType.asElement();
+		for (DeclaredType enclosingType = JavaNodes.getEnclosingType(declaredType); enclosingType != null; enclosingType = JavaNodes
+				.getEnclosingType(enclosingType)) {
+			rootTypeElement = enclosingType.asElement();
+			name = InternalUtils.getSimpleName(rootTypeElement) + "." + name;
 		}
 
-		return false;
+		String namespace = JavaNodes.getNamespace(rootTypeElement);
+		String fullName = (namespace == null ? "" : namespace + ".") + name;
+		return new TypeNameCache.TypeName(fullName, ElementUtils.getQualifiedClassName(rootTypeElement).toString());
 	}
 
-	private boolean isPackageAllowed(GenerationContext<?> context, String name) {
-		if (name.startsWith(JAVA_LANG_PACKAGE)) {
-			return false;
-		}
-		GeneratorConfiguration configuration = context.getConfiguration();
-		for (String packageName : configuration.getAllowedPackages()) {
-			if (name.startsWith(packageName)) {
+	/**
+	 * the local and anonymous classes (and the types inside them) do not have a qualified name that is unique in the
+	 * project, so their names cannot be shared
+	 */
+	private static boolean hasStableName(Element element) {
+		for (Element e = element; e instanceof TypeElement; e = e.getEnclosingElement()) {
+			NestingKind nestingKind = ((TypeElement) e).getNestingKind();
+			if (nestingKind == NestingKind.TOP_LEVEL) {
 				return true;
 			}
+			if (nestingKind != NestingKind.MEMBER) {
+				return false;
+			}
 		}
 		return false;
 	}
 
-	private boolean isBridge(GenerationContext<?> context, String name) {
-		if (name.startsWith(JAVA_LANG_PACKAGE)) {
-			return false;
-		}
-		return ClassUtils.isBridge(context.getBuiltProjectClassLoader(), ClassUtils.getClazz(context.getBuiltProjectClassLoader(), name));
-	}
-
-	private void checkAllowedType(Element rootTypeElement, GenerationContext<?> context) {
-		String name = ElementUtils.getQualifiedClassName(rootTypeElement).toString();
-
-		if (isJavaLangClassAllowed(context, name)) {
-			return;
-		}
-
-		if (isImportedStjsClass(context, name)) {
-			return;
-		}
-
-		if (isPackageAllowed(context, name)) {
-			return;
-		}
-
-		// ClassUtils.isBridge accepts all java.lang classes, that are actually not allowed
-		if (isBridge(context, name)) {
-			return;
-		}
-
-		typeNotAllowedException(context, name);
-	}
-
-	private boolean isImportedStjsClass(GenerationContext<?> context, String className) {
-		String stjsPropertiesName = ClassUtils.getPropertiesFileName(className);
-		return context.getBuiltProjectClassLoader().getResource(stjsPropertiesName) != null;
+	private void typeNotAllowedException(GenerationContext<?> context, String name) {
+		context.addError(context.getCurrentPath().getLeaf(), "The usage of the class " + name
+				+ " is not allowed. If it's one of your own bridge types, "
+				+ "please add the annotation @STJSBridge to the class or to its package.");
 	}
 
-	private void addResolvedType(Element rootTypeElement) {
-		String name = ElementUtils.getQualifiedClassName(rootTypeElement).toString();
+	private void addResolvedType(String name) {
 		if (!name.startsWith("java.lang.")) {
 			resolvedRootTypes.add(name);
 		}
@@ -0,0 +1,69 @@
+package org.stjs.generator.name;
+
+import java.util.Collection;
+
+/**
+ * A trie of the allowed package names. It finds whether one of the packages is a prefix of a class name by reading the
+ * class name once, instead of comparing it with each package.
+ */
+final class PackageTrie {
+	private final Node root = new Node();
+
+	PackageTrie(Collection<String> packageNames) {
+		for (String packageName : packageNames) {
+			Node node = root;
+			for (int i = 0; i < packageName.length(); ++i) {
+				node = node.getOrAddChild(packageName.charAt(i));
+			}
+			node.end = true;
+		}
+	}
+
+	/**
+	 * @return true if the name starts with one of the packages of the trie
+	 */
+	boolean matchesPrefixOf(String name) {
+		Node node = root;
+		for (int i = 0; !node.end; ++i) {
+			if (i == name.length()) {
+				return false;
+			}
+			node = node.getChild(name.charAt(i));
+			if (node == null) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static final class Node {
+		private char[] chars = new char[0];
+		private Node[] children = new Node[0];
+		private boolean end;
+
+		Node getChild(char c) {
+			for (int i = 0; i < chars.length; ++i) {
+				if (chars[i] == c) {
+					return children[i];
+				}
+			}
+			return null;
+		}
+
+		Node getOrAddChild(char c) {
+			Node child = getChild(c);
+			if (child == null) {
+				child = new Node();
+				char[] newChars = new char[chars.length + 1];
+				System.arraycopy(chars, 0, newChars, 0, chars.length);
+				newChars[chars.length] = c;
+				Node[] newChildren = new Node[children.length + 1];
+				System.arraycopy(children, 0, newChildren, 0, children.length);
+				newChildren[children.length] = child;
+				chars = newChars;
+				children = newChildren;
+			}
+			return child;
+		}
+	}
+}
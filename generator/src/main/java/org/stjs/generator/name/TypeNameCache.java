@@ -0,0 +1,137 @@
+package org.stjs.generator.name;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+
+import org.stjs.generator.GeneratorConfiguration;
+import org.stjs.generator.ModuleManifest;
+import org.stjs.generator.utils.CacheListener;
+import org.stjs.generator.utils.ClassUtils;
+
+import com.google.common.collect.Maps;
+
+/**
+ * The JavaScript names of the types and the types that are allowed, shared by the name providers of all the classes
+ * generated with the same class loader and the same allowed packages and classes. Only the types with a stable
+ * qualified name (top level and member types) are kept. Only the allowed types are kept, so a type that is not allowed
+ * is reported in each file using it. This class is thread-safe.
+ */
+public final class TypeNameCache {
+	private static final String JAVA_LANG_PACKAGE = "java.lang.";
+	private static final int JAVA_LANG_LENGTH = JAVA_LANG_PACKAGE.length();
+
+	private final ClassLoader builtProjectClassLoader;
+	private final Set<String> allowedPackageNames;
+	private final Set<String> allowedJavaLangClasses;
+	private final PackageTrie allowedPackages;
+	private final CacheListener bridgeCacheListener;
+
+	private final ConcurrentMap<String, TypeName> typeNames = Maps.newConcurrentMap();
+	private final Set<String> allowedTypes = Collections.newSetFromMap(Maps.<String, Boolean> newConcurrentMap());
+
+	public TypeNameCache(ClassLoader builtProjectClassLoader, GeneratorConfiguration configuration) {
+		this(builtProjectClassLoader, configuration, null);
+	}
+
+	/**
+	 * @param bridgeCacheListener
+	 *            - told about the bridge lookups done for this cache, may be null (see
+	 *            {@link ClassUtils#isBridge(ClassLoader, Class, CacheListener)})
+	 */
+	public TypeNameCache(ClassLoader builtProjectClassLoader, GeneratorConfiguration configuration,
+			CacheListener bridgeCacheListener) {
+		this.builtProjectClassLoader = builtProjectClassLoader;
+		this.bridgeCacheListener = bridgeCacheListener;
+		this.allowedPackageNames = new HashSet<String>(configuration.getAllowedPackages());
+		this.allowedJavaLangClasses = new HashSet<String>(configuration.getAllowedJavaLangClasses());
+		this.allowedPackages = new PackageTrie(allowedPackageNames);
+	}
+
+	/**
+	 * @return true if this cache can be used to generate classes with the given class loader and configuration
+	 */
+	public boolean isFor(ClassLoader classLoader, GeneratorConfiguration configuration) {
+		return classLoader == builtProjectClassLoader && allowedJavaLangClasses.equals(configuration.getAllowedJavaLangClasses())
+				&& allowedPackageNames.equals(new HashSet<String>(configuration.getAllowedPackages()));
+	}
+
+	/**
+	 * @return the name of the type with the given qualified name, or null if it was not resolved yet
+	 */
+	TypeName getTypeName(String qualifiedName) {
+		return typeNames.get(qualifiedName);
+	}
+
+	/**
+	 * @return the name kept for the type, that is the given one unless another thread resolved the same type meanwhile
+	 */
+	TypeName putTypeName(String qualifiedName, TypeName typeName) {
+		TypeName existing = typeNames.putIfAbsent(qualifiedName, typeName);
+		return existing != null ? existing : typeName;
+	}
+
+	/**
+	 * @return true if the class with the given name can be used from the generated code
+	 */
+	boolean isAllowed(String className) {
+		if (allowedTypes.contains(className)) {
+			return true;
+		}
+		if (isJavaLangClassAllowed(className) || isImportedStjsClass(className) || isPackageAllowed(className) || isBridge(className)) {
+			allowedTypes.add(className);
+			return true;
+		}
+		return false;
+	}
+
+	private boolean isJavaLangClassAllowed(String name) {
+		return name.startsWith(JAVA_LANG_PACKAGE) && allowedJavaLangClasses.contains(name.substring(JAVA_LANG_LENGTH));
+	}
+
+	private boolean isImportedStjsClass(String className) {
+		if (ModuleManifest.find(builtProjectClassLoader, className) != null) {
+			return true;
+		}
+		String stjsPropertiesName = ClassUtils.getPropertiesFileName(className);
+		return builtProjectClassLoader.getResource(stjsPropertiesName) != null;
+	}
+
+	private boolean isPackageAllowed(String name) {
+		if (name.startsWith(JAVA_LANG_PACKAGE)) {
+			return false;
+		}
+		return allowedPackages.matchesPrefixOf(name);
+	}
+
+	private boolean isBridge(String name) {
+		// ClassUtils.isBridge accepts all java.lang classes, that are actually not allowed
+		if (name.startsWith(JAVA_LANG_PACKAGE)) {
+			return false;
+		}
+		return ClassUtils.isBridge(builtProjectClassLoader, ClassUtils.getClazz(builtProjectClassLoader, name), bridgeCacheListener);
+	}
+
+	/**
+	 * the JavaScript name of a type and the qualified name of its top level type, the one the generated class depends
+	 * on
+	 */
+	static final class TypeName {
+		private final String fullName;
+		private final String rootTypeName;
+
+		TypeName(String fullName, String rootTypeName) {
+			this.fullName = fullName;
+			this.rootTypeName = rootTypeName;
+		}
+
+		String getFullName() {
+			return fullName;
+		}
+
+		String getRootTypeName() {
+			return rootTypeName;
+		}
+	}
+}
@@ -3,20 +3,26 @@ package org.stjs.generator.plugin;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ConcurrentMap;
 
 import org.stjs.generator.STJSRuntimeException;
 import org.stjs.generator.check.CheckVisitor;
 import org.stjs.generator.writer.WriterVisitor;
 import org.stjs.javascript.annotation.UsePlugin;
 
+import com.google.common.collect.Maps;
 import com.google.common.io.Closeables;
 
 /**
- * This class contains all the generation plugins defined by the users and the default ones
+ * This class contains all the generation plugins defined by the users and the default ones. The plugins are discovered
+ * once, when the instance is created. The visitors are frozen once built, so an instance (and the instances returned by
+ * {@link #forClass(Class)}) can be shared by several generation threads.
  * 
  * @author acraciun
  * 
@@ -26,13 +32,24 @@ public class GenerationPlugins<JS> {
 
 	private static final String JAVA_VERSION_ENTRY = "java.version";
 
-	private final Map<String, STJSGenerationPlugin<JS>> mandatoryPlugins = new HashMap<String, STJSGenerationPlugin<JS>>();
-	private final Map<String, STJSGenerationPlugin<JS>> optionalPlugins = new HashMap<String, STJSGenerationPlugin<JS>>();
+	private final Map<String, STJSGenerationPlugin<JS>> mandatoryPlugins;
+	private final Map<String, STJSGenerationPlugin<JS>> optionalPlugins;
 
-	private CheckVisitor checkVisitor = new CheckVisitor();
-	private WriterVisitor<JS> writerVisitor = new WriterVisitor<JS>();
+	private final CheckVisitor checkVisitor;
+	private final WriterVisitor<JS> writerVisitor;
+
+	/**
+	 * the visitors built for the classes using optional plugins, by the list of the plugin names in the order of the
+	 * annotation, as the plugins contribute in this order
+	 */
+	private final ConcurrentMap<List<String>, GenerationPlugins<JS>> pluginsByNames;
 
 	public GenerationPlugins() {
+		mandatoryPlugins = new HashMap<String, STJSGenerationPlugin<JS>>();
+		optionalPlugins = new HashMap<String, STJSGenerationPlugin<JS>>();
+		checkVisitor = new CheckVisitor();
+		writerVisitor = new WriterVisitor<JS>();
+		pluginsByNames = Maps.newConcurrentMap();
 
 		MainGenerationPlugin<JS> mainPlugin = new MainGenerationPlugin<JS>();
 		mainPlugin.contributeCheckVisitor(checkVisitor);
@@ -49,6 +66,27 @@ public class GenerationPlugins<JS> {
 		while (configFiles.hasMoreElements()) {
 			loadConfigFile(configFiles.nextElement());
 		}
+		checkVisitor.freeze();
+		writerVisitor.freeze();
+	}
+
+	/**
+	 * builds the plugins used by the classes needing the given optional plugins. The discovered plugins are shared with
+	 * the parent.
+	 */
+	private GenerationPlugins(GenerationPlugins<JS> parent, List<String> pluginNames) {
+		mandatoryPlugins = parent.mandatoryPlugins;
+		optionalPlugins = parent.optionalPlugins;
+		pluginsByNames = parent.pluginsByNames;
+		checkVisitor = new CheckVisitor(parent.checkVisitor);
+		writerVisitor = new WriterVisitor<JS>(parent.writerVisitor);
+		for (String pluginName : pluginNames) {
+			STJSGenerationPlugin<JS> plugin = optionalPlugins.get(pluginName);
+			plugin.contributeCheckVisitor(checkVisitor);
+			plugin.contributeWriteVisitor(writerVisitor);
+		}
+		checkVisitor.freeze();
+		writerVisitor.freeze();
 	}
 
 	private void loadConfigFile(URL configFile) {
@@ -126,7 +164,6 @@ public class GenerationPlugins<JS> {
 		return writerVisitor;
 	}
 
-	@SuppressWarnings("unchecked")
 	public GenerationPlugins<JS> forClass(Class<?> clazz) {
 		UsePlugin usePlugins = clazz.getAnnotation(UsePlugin.class);
 		if (usePlugins == null || usePlugins.value() == null || usePlugins.value().length == 0) {
@@ -134,19 +171,21 @@ public class GenerationPlugins<JS> {
 			return this;
 		}
 
-		// TODO - here I can add a cache using the list of plugin names as key
-		GenerationPlugins<JS> newPlugins = new GenerationPlugins<JS>();
-		newPlugins.checkVisitor = new CheckVisitor(checkVisitor);
-		newPlugins.writerVisitor = new WriterVisitor<JS>(writerVisitor);
-
 		for (String pluginName : usePlugins.value()) {
-			STJSGenerationPlugin<JS> plugin = optionalPlugins.get(pluginName);
-			if (plugin == null) {
+			if (!optionalPlugins.containsKey(pluginName)) {
 				throw new STJSRuntimeException("The class:" + clazz.getName() + " need an unknown Generation Plugin :" + pluginName);
 			}
-			plugin.contributeCheckVisitor(newPlugins.checkVisitor);
-			plugin.contributeWriteVisitor(newPlugins.writerVisitor);
 		}
-		return newPlugins;
+
+		List<String> key = Arrays.asList(usePlugins.value().clone());
+		GenerationPlugins<JS> plugins = pluginsByNames.get(key);
+		if (plugins == null) {
+			GenerationPlugins<JS> newPlugins = new GenerationPlugins<JS>(this, key);
+			plugins = pluginsByNames.putIfAbsent(key, newPlugins);
+			if (plugins == null) {
+				plugins = newPlugins;
+			}
+		}
+		return plugins;
 	}
 }
@@ -16,17 +16,31 @@
 package org.stjs.generator.utils;
 
 import java.lang.annotation.Annotation;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Pattern;
 
 import org.stjs.generator.JavascriptClassGenerationException;
 import org.stjs.javascript.annotation.STJSBridge;
 
+import com.google.common.collect.MapMaker;
+import com.google.common.collect.Maps;
+
 public final class ClassUtils {
 	/**
 	 * these are packages that don't have the annotation but are considered as bridges
 	 */
 	private static final Pattern IMPLICIT_BRIDGE = Pattern.compile("java\\.lang.*|org\\.junit.*");
 
+	private static final String[] NO_SOURCES = new String[0];
+
+	/**
+	 * the results of {@link #isBridge(ClassLoader, Class)} for each class loader, like a ClassValue would keep them. The
+	 * caches only keep booleans and strings and their keys are weak, so they do not keep the class loaders alive.
+	 */
+	private static final ConcurrentMap<ClassLoader, BridgeCache> BRIDGE_CACHES = new MapMaker().weakKeys().makeMap();
+	private static final ConcurrentMap<Class<?>, String[]> BRIDGE_SOURCES = new MapMaker().weakKeys().makeMap();
+
 	// private static Map<Class<?>, String> primitiveArrayId;
 
 	private ClassUtils() {
@@ -42,16 +56,70 @@ public final class ClassUtils {
 		}
 	}
 
-	@SuppressWarnings("unchecked")
 	public static boolean isBridge(ClassLoader builtProjectClassLoader, Class<?> clazz) {
-		boolean ok = hasAnnotation(clazz, (Class<? extends Annotation>) getClazz(builtProjectClassLoader, STJSBridge.class.getName()));
-		if (ok) {
-			return ok;
+		return isBridge(builtProjectClassLoader, clazz, null);
+	}
+
+	/**
+	 * @param cacheListener
+	 *            - if not null, it is told whether the answer came from the cache. The caches are shared by all the
+	 *            generators, the listener lets each one count its own lookups.
+	 */
+	public static boolean isBridge(ClassLoader builtProjectClassLoader, Class<?> clazz, CacheListener cacheListener) {
+		BridgeCache cache = getBridgeCache(builtProjectClassLoader);
+		Boolean bridge = cache.classes.get(clazz);
+		if (cacheListener != null) {
+			cacheListener.lookedUp(bridge != null);
 		}
-		if (IMPLICIT_BRIDGE.matcher(clazz.getName()).matches()) {
-			return true;
+		if (bridge != null) {
+			return bridge;
 		}
-		return false;
+
+		Class<? extends Annotation> bridgeAnnotation = cache.getBridgeAnnotation(builtProjectClassLoader);
+		bridge = clazz.getAnnotation(bridgeAnnotation) != null || isBridgePackage(cache, clazz.getPackage(), bridgeAnnotation)
+				|| IMPLICIT_BRIDGE.matcher(clazz.getName()).matches();
+		cache.classes.put(clazz, bridge);
+		return bridge;
+	}
+
+	private static BridgeCache getBridgeCache(ClassLoader builtProjectClassLoader) {
+		BridgeCache cache = BRIDGE_CACHES.get(builtProjectClassLoader);
+		if (cache == null) {
+			BridgeCache newCache = new BridgeCache();
+			cache = BRIDGE_CACHES.putIfAbsent(builtProjectClassLoader, newCache);
+			if (cache == null) {
+				cache = newCache;
+			}
+		}
+		return cache;
+	}
+
+	private static boolean isBridgePackage(BridgeCache cache, Package pack, Class<? extends Annotation> bridgeAnnotation) {
+		if (pack == null) {
+			return false;
+		}
+		Boolean bridge = cache.packages.get(pack.getName());
+		if (bridge == null) {
+			bridge = pack.getAnnotation(bridgeAnnotation) != null;
+			cache.packages.put(pack.getName(), bridge);
+		}
+		return bridge;
+	}
+
+	/**
+	 * @return the sources of the {@link STJSBridge} annotation of the class or of its package, or an empty array if
+	 *         there is no such annotation
+	 */
+	public static String[] getBridgeSources(Class<?> clazz) {
+		String[] sources = BRIDGE_SOURCES.get(clazz);
+		if (sources != null) {
+			return sources;
+		}
+
+		STJSBridge bridgeAnnotation = getAnnotation(clazz, STJSBridge.class);
+		sources = bridgeAnnotation == null || bridgeAnnotation.sources() == null ? NO_SOURCES : bridgeAnnotation.sources();
+		BRIDGE_SOURCES.put(clazz, sources);
+		return sources;
 	}
 
 	public static boolean hasAnnotation(Class<?> clazz, Class<? extends Annotation> annotationClass) {
@@ -62,7 +130,6 @@ public final class ClassUtils {
 		if (clazz == null) {
 			return null;
 		}
-		// TODO : cache?
 		T ann = clazz.getAnnotation(annotationClass);
 		if (ann != null) {
 			return ann;
@@ -79,4 +146,27 @@ public final class ClassUtils {
 		return className.replace('.', '/') + ".stjs";
 	}
 
+	/**
+	 * the bridge status of the classes and packages seen through a class loader
+	 */
+	private static final class BridgeCache {
+		private final ConcurrentMap<Class<?>, Boolean> classes = new MapMaker().weakKeys().makeMap();
+		private final ConcurrentMap<String, Boolean> packages = Maps.newConcurrentMap();
+		/**
+		 * the STJSBridge annotation as loaded by the class loader, kept weakly as it references the class loader
+		 */
+		private volatile WeakReference<Class<? extends Annotation>> bridgeAnnotation;
+
+		@SuppressWarnings("unchecked")
+		Class<? extends Annotation> getBridgeAnnotation(ClassLoader builtProjectClassLoader) {
+			WeakReference<Class<? extends Annotation>> ref = bridgeAnnotation;
+			Class<? extends Annotation> annotation = ref == null ? null : ref.get();
+			if (annotation == null) {
+				annotation = (Class<? extends Annotation>) getClazz(builtProjectClassLoader, STJSBridge.class.getName());
+				bridgeAnnotation = new WeakReference<Class<? extends Annotation>>(annotation);
+			}
+			return annotation;
+		}
+	}
+
 }
\ No newline at end of file
@@ -30,6 +30,7 @@ import org.stjs.generator.GeneratorConfigurationBuilder;
 import org.stjs.generator.STJSRuntimeException;
 import org.stjs.generator.executor.ExecutionResult;
 import org.stjs.generator.executor.RhinoExecutor;
+import org.stjs.generator.metrics.GenerationMetrics;
 import org.stjs.javascript.Array;
 import org.stjs.javascript.Date;
 import org.stjs.javascript.Map;
@@ -42,10 +43,20 @@ import com.google.common.io.Files;
 @SuppressWarnings("PMD")
 public final class GeneratorTestHelper {
 	private static final String TEMP_GENERATION_PATH = "temp-generated-js";
+	/**
+	 * set this system property to true to run the tests with the checks and the writing done in a single traversal
+	 */
+	private static final String SINGLE_PASS_PROPERTY = "stjs.test.singlePass";
+	/**
+	 * set this system property to true to run the tests with the JavaScript code built as text instead of a Rhino tree
+	 */
+	private static final String TEXT_BUILDER_PROPERTY = "stjs.test.textBuilder";
 	private static Generator gen = new Generator();
+	private static final GenerationMetrics METRICS = new GenerationMetrics();
 
 	static {
 		gen.init(Thread.currentThread().getContextClassLoader(), Charsets.UTF_8.name());
+		gen.addListener(METRICS);
 	}
 
 	private GeneratorTestHelper() {
@@ -197,8 +208,8 @@ public final class GeneratorTestHelper {
 		ClassWithJavascript stjsClass = gen.generateJavascript(Thread.currentThread().getContextClassLoader(), clazz.getName(), new File(
 				sourcePath), generationFolder, new File("target", "test-classes"),
 				new GeneratorConfigurationBuilder().allowedPackage("org.stjs.javascript").allowedPackage("org.stjs.generator")
-						.generateSourceMap(withSourceMap).build());
-		Timers.start("js-exec");
+						.generateSourceMap(withSourceMap).singlePass(Boolean.getBoolean(SINGLE_PASS_PROPERTY))
+						.textBuilder(Boolean.getBoolean(TEXT_BUILDER_PROPERTY)).build());
 		List<File> javascriptFiles = new ArrayList<File>();
 		try {
 			File jsFile = new File(generationPath, stjsClass.getJavascriptFiles().get(0).getPath());
@@ -231,9 +242,13 @@ public final class GeneratorTestHelper {
 			}
 			throw new STJSRuntimeException(ex);
 		}
-		finally {
-			Timers.end("js-exec");
-		}
+	}
+
+	/**
+	 * @return the measures of all the generations done by this helper
+	 */
+	public static GenerationMetrics getMetrics() {
+		return METRICS;
 	}
 
 	public static ClassWithJavascript stjsClass(Class<?> clazz) {
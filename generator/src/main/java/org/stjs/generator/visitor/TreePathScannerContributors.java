@@ -4,6 +4,7 @@ import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import javax.annotation.Nonnull;
 
@@ -21,6 +22,19 @@ public class TreePathScannerContributors<R, P extends TreePathHolder, V extends
 
 	private final Map<DiscriminatorKey, ContributorHolder<? extends Tree>> contributorsWithDiscriminator = Maps.newHashMap();
 
+	/**
+	 * the holders indexed by the kind of the visited node. Once the visitor is frozen, they are resolved (with
+	 * reflection) the first time a node of the given kind is visited, so the dispatch of the next nodes is an array
+	 * lookup. The kinds without contributors point to an empty holder. As no holder can be registered after the freeze,
+	 * the array never has to be cleared. It is safe to fill while the visitor is used by several threads.
+	 */
+	private final AtomicReferenceArray<ContributorHolder<? extends Tree>> holdersByKind = new AtomicReferenceArray<ContributorHolder<? extends Tree>>(
+			Tree.Kind.values().length);
+
+	private final ContributorHolder<Tree> emptyHolder = new ContributorHolder<Tree>();
+
+	private boolean frozen;
+
 	private boolean continueScanning;
 
 	private boolean onlyOneFinalContributor;
@@ -52,6 +66,7 @@ public class TreePathScannerContributors<R, P extends TreePathHolder, V extends
 	}
 
 	public void setContinueScanning(boolean continueScanning) {
+		checkNotFrozen();
 		this.continueScanning = continueScanning;
 	}
 
@@ -60,11 +75,32 @@ public class TreePathScannerContributors<R, P extends TreePathHolder, V extends
 	}
 
 	public void setOnlyOneFinalContributor(boolean onlyOneFinalContributor) {
+		checkNotFrozen();
 		this.onlyOneFinalContributor = onlyOneFinalContributor;
 	}
 
+	/**
+	 * makes this visitor immutable: no contributor or filter can be added afterwards. A frozen visitor can be used by
+	 * several threads at the same time, as long as its contributors and filters do not keep any state. A copy of a
+	 * frozen visitor can be modified.
+	 */
+	public void freeze() {
+		frozen = true;
+	}
+
+	public boolean isFrozen() {
+		return frozen;
+	}
+
+	private void checkNotFrozen() {
+		if (frozen) {
+			throw new IllegalStateException("This visitor is frozen and can no longer be modified. Modify a copy instead");
+		}
+	}
+
 	@SuppressWarnings("unchecked")
 	private <T extends Tree> ContributorHolder<T> getHolder(Class<?> contributorClass) {
+		checkNotFrozen();
 		Class<?> treeNodeClass = getTreeNodeClass(contributorClass);
 		if (treeNodeClass == null) {
 			throw new STJSRuntimeException("Cannot guess the tree node class from the contributor " + contributorClass + ". ");
@@ -103,6 +139,7 @@ public class TreePathScannerContributors<R, P extends TreePathHolder, V extends
 
 	@SuppressWarnings("unchecked")
 	private <T extends Tree> ContributorHolder<T> getHolder(DiscriminatorKey discriminatorKey) {
+		checkNotFrozen();
 		ContributorHolder<T> holder = (ContributorHolder<T>) contributorsWithDiscriminator.get(discriminatorKey);
 		if (holder == null) {
 			holder = new ContributorHolder<T>();
@@ -168,6 +205,23 @@ public class TreePathScannerContributors<R, P extends TreePathHolder, V extends
 		return null;
 	}
 
+	private ContributorHolder<? extends Tree> getHolder(Tree node) {
+		Tree.Kind kind = node.getKind();
+		if (!frozen || kind == Tree.Kind.OTHER) {
+			// the holders may still change, or different node types share this kind
+			return contributors.get(getTreeInteface(node.getClass()));
+		}
+		ContributorHolder<? extends Tree> holder = holdersByKind.get(kind.ordinal());
+		if (holder == null) {
+			holder = contributors.get(getTreeInteface(node.getClass()));
+			if (holder == null) {
+				holder = emptyHolder;
+			}
+			holdersByKind.set(kind.ordinal(), holder);
+		}
+		return holder;
+	}
+
 	@SuppressWarnings("unchecked")
 	public <T extends Tree> R forward(DiscriminatorKey discriminator, T node, P param) {
 		VisitorContributor<? extends Tree, R, P, V> contributor = contributorsWithDiscriminator.get(discriminator);
@@ -178,13 +232,21 @@ public class TreePathScannerContributors<R, P extends TreePathHolder, V extends
 		return null;
 	}
 
+	/**
+	 * calls the filters and the contributors of the given node, without visiting its children. The node must be the
+	 * leaf of the current path of the parameter.
+	 */
 	@SuppressWarnings("unchecked")
+	public <T extends Tree> R visitNode(T node, P p) {
+		ContributorHolder<T> holder = (ContributorHolder<T>) getHolder(node);
+		return holder == null ? null : holder.visit((V) this, node, p);
+	}
+
 	protected <T extends Tree> R visit(T node, P p, R r) {
 		if (node == null) {
 			return r;
 		}
-		ContributorHolder<T> holder = (ContributorHolder<T>) contributors.get(getTreeInteface(node.getClass()));
-		R lastR = holder == null ? null : holder.visit((V) this, node, p);
+		R lastR = visitNode(node, p);
 		if (continueScanning) {
 			lastR = node.accept(this, p);
 		}
@@ -216,6 +278,19 @@ public class TreePathScannerContributors<R, P extends TreePathHolder, V extends
 		private final List<VisitorFilterContributor<T, R, P, V>> filters = Lists.newArrayList();
 		private final List<VisitorContributor<T, R, P, V>> contributors = Lists.newArrayList();
 
+		/**
+		 * the first link of the filter chain, built again each time a filter is added. The links do not keep any state,
+		 * so the same chain can be used by nested visits and by several threads.
+		 */
+		private VisitorContributor<T, R, P, V> chain;
+
+		private final VisitorContributor<T, R, P, V> contributorsCall = new VisitorContributor<T, R, P, V>() {
+			@Override
+			public R visit(V visitor, T tree, P p) {
+				return visitContributors(visitor, tree, p);
+			}
+		};
+
 		public ContributorHolder() {
 			//
 		}
@@ -223,10 +298,12 @@ public class TreePathScannerContributors<R, P extends TreePathHolder, V extends
 		public ContributorHolder(ContributorHolder<T> copy) {
 			filters.addAll(copy.filters);
 			contributors.addAll(copy.contributors);
+			buildChain();
 		}
 
 		public void addFilter(VisitorFilterContributor<T, R, P, V> f) {
 			filters.add(f);
+			buildChain();
 		}
 
 		public void addContributor(VisitorContributor<T, R, P, V> c) {
@@ -238,19 +315,23 @@ public class TreePathScannerContributors<R, P extends TreePathHolder, V extends
 			contributors.add(c);
 		}
 
-		public List<VisitorFilterContributor<T, R, P, V>> getFilters() {
-			return filters;
-		}
-
 		@Override
 		public R visit(V visitor, T tree, P p) {
 			if (!filters.isEmpty()) {
-				// create a chain if there is at least a filter
-				return new FilterChain<T>(this).visit(visitor, tree, p);
+				return chain.visit(visitor, tree, p);
 			}
 			return visitContributors(visitor, tree, p);
 		}
 
+		private void buildChain() {
+			// filters are called before the contributors, one by one
+			VisitorContributor<T, R, P, V> next = contributorsCall;
+			for (int i = filters.size() - 1; i >= 0; --i) {
+				next = new FilterLink<T>(filters.get(i), next);
+			}
+			chain = next;
+		}
+
 		public R visitContributors(V visitor, T tree, P p) {
 			// the contributors are called at the end, but only the result of the last one will be kept
 			R lastR = null;
@@ -264,27 +345,22 @@ public class TreePathScannerContributors<R, P extends TreePathHolder, V extends
 
 	/**
 	 * 
-	 * a filter is created for each visit in a node
+	 * a link of the filter chain: it calls a filter, passing the next link as the rest of the chain
 	 * 
 	 * @param <T>
 	 */
-	private class FilterChain<T extends Tree> implements VisitorContributor<T, R, P, V> {
-		private final ContributorHolder<T> holder;
-		private int nextFilter;
+	private class FilterLink<T extends Tree> implements VisitorContributor<T, R, P, V> {
+		private final VisitorFilterContributor<T, R, P, V> filter;
+		private final VisitorContributor<T, R, P, V> next;
 
-		public FilterChain(ContributorHolder<T> holder) {
-			this.holder = holder;
+		public FilterLink(VisitorFilterContributor<T, R, P, V> filter, VisitorContributor<T, R, P, V> next) {
+			this.filter = filter;
+			this.next = next;
 		}
 
 		@Override
 		public R visit(V visitor, T tree, P p) {
-			// filters are called before, one by one
-			if (nextFilter < holder.getFilters().size()) {
-				VisitorFilterContributor<T, R, P, V> next = holder.getFilters().get(nextFilter);
-				nextFilter++;
-				return next.visit(visitor, tree, p, this);
-			}
-			return holder.visitContributors(visitor, tree, p);
+			return filter.visit(visitor, tree, p, next);
 		}
 	}
 }
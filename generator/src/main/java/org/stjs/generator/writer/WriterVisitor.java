@@ -1,8 +1,11 @@
 package org.stjs.generator.writer;
 
 import org.stjs.generator.GenerationContext;
+import org.stjs.generator.check.FusedChecks;
 import org.stjs.generator.visitor.TreePathScannerContributors;
 
+import com.sun.source.tree.Tree;
+
 /**
  * This class visits the Java AST and calls the corresponding writers to generate JavaScript.
  * 
@@ -18,4 +21,17 @@ public class WriterVisitor<R> extends TreePathScannerContributors<R, GenerationC
 	public WriterVisitor(WriterVisitor<R> writerVisitor) {
 		super(writerVisitor);
 	}
+
+	@Override
+	protected <T extends Tree> R visit(T node, GenerationContext<R> context, R r) {
+		FusedChecks checks = context.getFusedChecks();
+		if (checks == null || node == null) {
+			return super.visit(node, context, r);
+		}
+		// single traversal: the checks of the node are done before its writer
+		checks.beforeWrite(node);
+		R result = super.visit(node, context, r);
+		checks.afterWrite(node);
+		return result;
+	}
 }
@@ -14,6 +14,7 @@ import org.stjs.generator.writer.WriterVisitor;
 
 import com.sun.source.tree.AssignmentTree;
 import com.sun.source.tree.BlockTree;
+import com.sun.source.tree.ClassTree;
 import com.sun.source.tree.ExpressionStatementTree;
 import com.sun.source.tree.ExpressionTree;
 import com.sun.source.tree.IdentifierTree;
@@ -21,6 +22,7 @@ import com.sun.source.tree.MemberSelectTree;
 import com.sun.source.tree.NewClassTree;
 import com.sun.source.tree.StatementTree;
 import com.sun.source.tree.Tree;
+import com.sun.source.util.TreePath;
 
 public class NewClassWriter<JS> implements WriterContributor<NewClassTree, JS> {
 	public static BlockTree getDoubleBracesBlock(NewClassTree tree) {
@@ -97,8 +99,18 @@ public class NewClassWriter<JS> implements WriterContributor<NewClassTree, JS> {
 
 		// the check verifies the existence of a single method (first is the generated
 		// constructor)
-		Tree method = tw.getTree().getClassBody().getMembers().get(1);
-		return visitor.scan(method, tw.getContext());
+		ClassTree classBody = tw.getTree().getClassBody();
+		Tree method = classBody.getMembers().get(1);
+		// the method is scanned with the class body in its path, as the method writer looks for the new class there
+		GenerationContext<JS> context = tw.getContext();
+		TreePath prev = context.getCurrentPath();
+		context.setCurrentPath(new TreePath(prev, classBody));
+		try {
+			return visitor.scan(method, context);
+		}
+		finally {
+			context.setCurrentPath(prev);
+		}
 	}
 
 	private JS getAnonymousClassDeclaration(WriterVisitor<JS> visitor, NewClassTree tree, GenerationContext<JS> context) {
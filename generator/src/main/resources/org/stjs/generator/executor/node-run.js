@@ -0,0 +1,50 @@
+/*
+ *  Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+/**
+ * The script started by NodeJSExecutor for each file when the node worker is not used. It reads the source of stjs.js
+ * on stdin, then executes it and the file given as argument in the global context, as node-worker.js does in a new
+ * context: the two modes see the same globals.
+ */
+var vm = require("vm");
+var fs = require("fs");
+var path = require("path");
+var Module = require("module");
+
+var file = process.argv[1];
+var runtimeSource = "";
+
+process.stdin.setEncoding("utf8");
+process.stdin.on("data", function(data) {
+	runtimeSource += data;
+});
+process.stdin.on("end", function() {
+	global.require = Module.createRequire ? Module.createRequire(file) : require;
+	global.module = {
+		exports : {}
+	};
+	global.exports = global.module.exports;
+	global.__filename = file;
+	global.__dirname = path.dirname(file);
+	if (runtimeSource) {
+		vm.runInThisContext(runtimeSource, {
+			filename : "stjs.js"
+		});
+	}
+	var source = fs.readFileSync(file, "utf8").replace(/^#!/, "//");
+	vm.runInThisContext(source, {
+		filename : file
+	});
+});
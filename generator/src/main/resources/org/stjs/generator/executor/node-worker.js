@@ -0,0 +1,283 @@
+/*
+ *  Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+/**
+ * The long-lived node process used by NodeJSExecutor. The frames exchanged on stdin/stdout are a header line followed
+ * by a payload whose length is given in characters:
+ * <ul>
+ * <li>"init 0 length\n" + the source of stjs.js, sent once when the worker starts</li>
+ * <li>"run timeout length\n" + the path of the file to execute</li>
+ * <li>the answer to each "run": "exitValue outLength errLength\n" + stdout + stderr</li>
+ * </ul>
+ * Each file is executed in a new context where stjs.js was executed first. The execution ends when the file and all
+ * the timers it started are done. The other asynchronous operations (I/O etc) are not waited for.
+ */
+var vm = require("vm");
+var fs = require("fs");
+var path = require("path");
+var Module = require("module");
+
+var TIMEOUT_EXIT_VALUE = -1;
+
+var send = process.stdout.write.bind(process.stdout);
+var log = process.stderr.write.bind(process.stderr);
+var exit = process.exit.bind(process);
+
+var stjsScript = null;
+var currentJob = null;
+var input = "";
+var waitingFrames = [];
+
+function ExitSignal(code) {
+	this.code = code;
+}
+
+// the output of the executed files is captured, the real stdout is only used for the answers
+process.stdout.write = function(chunk, encoding, callback) {
+	capture(chunk, "out", callback);
+	return true;
+};
+process.stderr.write = function(chunk, encoding, callback) {
+	capture(chunk, "err", callback);
+	return true;
+};
+process.exit = function(code) {
+	throw new ExitSignal(code === undefined ? 0 : code);
+};
+process.on("uncaughtException", function(e) {
+	if (currentJob) {
+		currentJob.fail(e);
+	} else {
+		log("Uncaught exception in node worker: " + (e && e.stack || e) + "\n");
+	}
+});
+
+function capture(chunk, channel, callback) {
+	var text = typeof chunk === "string" ? chunk : chunk.toString();
+	if (currentJob) {
+		currentJob[channel].push(text);
+	} else {
+		log(text);
+	}
+	if (typeof callback === "function") {
+		callback();
+	}
+}
+
+function Job(file, timeout) {
+	this.file = file;
+	this.timeoutMillis = timeout;
+	this.out = [];
+	this.err = [];
+	this.exitValue = 0;
+	this.timers = [];
+	this.done = false;
+	var job = this;
+	if (timeout > 0) {
+		this.timeoutTimer = setTimeout(function() {
+			job.timeout(timeout);
+		}, timeout);
+	}
+}
+
+Job.prototype.call = function(fn, args) {
+	if (this.done) {
+		return;
+	}
+	try {
+		fn.apply(null, args);
+	} catch (e) {
+		this.fail(e);
+	}
+};
+
+Job.prototype.fail = function(e) {
+	if (this.done) {
+		return;
+	}
+	if (e instanceof ExitSignal) {
+		this.exitValue = e.code;
+	} else if (e && e.code === "ERR_SCRIPT_EXECUTION_TIMEOUT") {
+		this.timeout(this.timeoutMillis);
+		return;
+	} else {
+		this.exitValue = 1;
+		this.err.push((e && e.stack ? e.stack : String(e)) + "\n");
+	}
+	this.finish();
+};
+
+Job.prototype.timeout = function(timeout) {
+	if (this.done) {
+		return;
+	}
+	this.exitValue = TIMEOUT_EXIT_VALUE;
+	this.err.push("Timeout: the execution of " + this.file + " took more than " + timeout + " ms\n");
+	this.finish();
+};
+
+Job.prototype.addTimer = function(handle) {
+	this.timers.push(handle);
+	return handle;
+};
+
+Job.prototype.removeTimer = function(handle) {
+	var index = this.timers.indexOf(handle);
+	if (index >= 0) {
+		this.timers.splice(index, 1);
+	}
+	this.checkDone();
+};
+
+Job.prototype.checkDone = function() {
+	var job = this;
+	// let the pending promises start their timers before deciding that the file is done
+	setImmediate(function() {
+		if (!job.done && job.timers.length === 0) {
+			job.finish();
+		}
+	});
+};
+
+Job.prototype.finish = function() {
+	this.done = true;
+	for (var i = 0; i < this.timers.length; ++i) {
+		clearTimeout(this.timers[i]);
+		clearInterval(this.timers[i]);
+	}
+	clearTimeout(this.timeoutTimer);
+	var out = this.out.join("");
+	var err = this.err.join("");
+	currentJob = null;
+	send(this.exitValue + " " + out.length + " " + err.length + "\n" + out + err);
+	nextFrame();
+};
+
+function newContext(job, file) {
+	var sandbox = {
+		console : console,
+		process : process,
+		Buffer : Buffer,
+		require : Module.createRequire ? Module.createRequire(file) : require,
+		module : {
+			exports : {}
+		},
+		__filename : file,
+		__dirname : path.dirname(file),
+		setTimeout : function(fn, delay) {
+			var args = Array.prototype.slice.call(arguments, 2);
+			var handle = job.addTimer(setTimeout(function() {
+				job.call(fn, args);
+				job.removeTimer(handle);
+			}, delay));
+			return handle;
+		},
+		setInterval : function(fn, delay) {
+			var args = Array.prototype.slice.call(arguments, 2);
+			return job.addTimer(setInterval(function() {
+				job.call(fn, args);
+			}, delay));
+		},
+		setImmediate : function(fn) {
+			var args = Array.prototype.slice.call(arguments, 1);
+			var handle = job.addTimer(setTimeout(function() {
+				job.call(fn, args);
+				job.removeTimer(handle);
+			}, 0));
+			return handle;
+		},
+		clearTimeout : function(handle) {
+			clearTimeout(handle);
+			job.removeTimer(handle);
+		},
+		clearInterval : function(handle) {
+			clearInterval(handle);
+			job.removeTimer(handle);
+		}
+	};
+	sandbox.exports = sandbox.module.exports;
+	sandbox.clearImmediate = sandbox.clearTimeout;
+	var context = vm.createContext(sandbox);
+	sandbox.global = vm.runInContext("this", context);
+	return context;
+}
+
+function run(file, timeout) {
+	var job = currentJob = new Job(file, timeout);
+	var options = timeout > 0 ? {
+		timeout : timeout
+	} : {};
+	try {
+		var context = newContext(job, file);
+		if (stjsScript) {
+			stjsScript.runInContext(context, options);
+		}
+		var source = fs.readFileSync(file, "utf8").replace(/^#!/, "//");
+		new vm.Script(source, {
+			filename : file
+		}).runInContext(context, options);
+	} catch (e) {
+		job.fail(e);
+		return;
+	}
+	job.checkDone();
+}
+
+function readFrame() {
+	var headerEnd = input.indexOf("\n");
+	if (headerEnd < 0) {
+		return null;
+	}
+	var header = input.substring(0, headerEnd).split(" ");
+	var length = parseInt(header[2], 10);
+	if (input.length < headerEnd + 1 + length) {
+		return null;
+	}
+	var payload = input.substring(headerEnd + 1, headerEnd + 1 + length);
+	input = input.substring(headerEnd + 1 + length);
+	return {
+		kind : header[0],
+		arg : parseInt(header[1], 10),
+		payload : payload
+	};
+}
+
+function nextFrame() {
+	while (!currentJob && waitingFrames.length > 0) {
+		var frame = waitingFrames.shift();
+		if (frame.kind === "init") {
+			stjsScript = new vm.Script(frame.payload, {
+				filename : "stjs.js"
+			});
+		} else if (frame.kind === "run") {
+			run(frame.payload, frame.arg);
+		} else {
+			log("Unknown frame in node worker: " + frame.kind + "\n");
+			exit(2);
+		}
+	}
+}
+
+process.stdin.setEncoding("utf8");
+process.stdin.on("data", function(data) {
+	input += data;
+	for (var frame = readFrame(); frame; frame = readFrame()) {
+		waitingFrames.push(frame);
+	}
+	nextFrame();
+});
+process.stdin.on("end", function() {
+	exit(0);
+});
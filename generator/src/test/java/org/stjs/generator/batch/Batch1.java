@@ -0,0 +1,9 @@
+package org.stjs.generator.batch;
+
+public class Batch1 {
+	protected int value;
+
+	public int getValue() {
+		return value;
+	}
+}
@@ -0,0 +1,7 @@
+package org.stjs.generator.batch;
+
+public class Batch2 extends Batch1 {
+	public int sum(Batch1 other) {
+		return getValue() + other.getValue();
+	}
+}
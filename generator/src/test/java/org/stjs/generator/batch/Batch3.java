@@ -0,0 +1,5 @@
+package org.stjs.generator.batch;
+
+public class Batch3 {
+	private Batch1[] forbiddenArray;
+}
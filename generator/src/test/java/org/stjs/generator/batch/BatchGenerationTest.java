@@ -0,0 +1,104 @@
+package org.stjs.generator.batch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.stjs.generator.ClassWithJavascript;
+import org.stjs.generator.GenerationDirectory;
+import org.stjs.generator.Generator;
+import org.stjs.generator.GeneratorConfiguration;
+import org.stjs.generator.GeneratorConfigurationBuilder;
+import org.stjs.generator.JavascriptFileGenerationException;
+import org.stjs.generator.STJSClass;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+public class BatchGenerationTest {
+	private static final File SOURCE_FOLDER = new File("src/test/java");
+	private static final List<String> CLASSES = Arrays.asList(Batch1.class.getName(), Batch2.class.getName());
+
+	private Generator generator;
+	private ClassLoader classLoader;
+
+	@Before
+	public void setUp() {
+		classLoader = Thread.currentThread().getContextClassLoader();
+		generator = new Generator();
+		generator.init(classLoader, Charsets.UTF_8.name());
+	}
+
+	@After
+	public void tearDown() {
+		generator.close();
+	}
+
+	private static GeneratorConfiguration configuration(int batchSize) {
+		return new GeneratorConfigurationBuilder().allowedPackage("org.stjs.javascript").allowedPackage("org.stjs.generator")
+				.batchSize(batchSize).build();
+	}
+
+	private static GenerationDirectory generationFolder(String name) {
+		return new GenerationDirectory(new File("target/batch-generated-js/" + name), new File(name), new File(""));
+	}
+
+	private static File targetFolder(String name) {
+		return new File("target/batch-classes/" + name);
+	}
+
+	private static String readJavascript(GenerationDirectory folder, String className) throws IOException {
+		return Files.toString(new File(folder.getAbsolutePath(), className.replace('.', '/') + ".js"), Charsets.UTF_8);
+	}
+
+	@Test
+	public void testBatchGeneratesTheSameCodeAsSingleFiles() throws IOException {
+		GenerationDirectory singleFolder = generationFolder("single");
+		GenerationDirectory batchFolder = generationFolder("batch");
+
+		List<ClassWithJavascript> batchClasses = generator.generateJavascript(classLoader, CLASSES, SOURCE_FOLDER, batchFolder,
+				targetFolder("batch"), configuration(CLASSES.size()));
+		for (int i = 0; i < CLASSES.size(); ++i) {
+			String className = CLASSES.get(i);
+			ClassWithJavascript singleClass = generator.generateJavascript(classLoader, className, SOURCE_FOLDER, singleFolder,
+					targetFolder("single"), configuration(1));
+
+			assertEquals(className, batchClasses.get(i).getClassName());
+			assertEquals(readJavascript(singleFolder, className), readJavascript(batchFolder, className));
+			assertEquals(((STJSClass) singleClass).getDependencies(), ((STJSClass) batchClasses.get(i)).getDependencies());
+		}
+	}
+
+	@Test
+	public void testErrorReportedOnlyForItsClass() throws InterruptedException {
+		List<String> classNames = Arrays.asList(Batch1.class.getName(), Batch3.class.getName(), Batch2.class.getName());
+		List<Future<ClassWithJavascript>> results = generator.submitJavascriptGeneration(classLoader, classNames, SOURCE_FOLDER,
+				generationFolder("errors"), targetFolder("errors"), configuration(classNames.size()));
+
+		assertEquals(classNames.size(), results.size());
+		for (int i = 0; i < classNames.size(); ++i) {
+			try {
+				assertEquals(classNames.get(i), results.get(i).get().getClassName());
+				assertTrue("Batch3 should not be generated", i != 1);
+			}
+			catch (ExecutionException e) {
+				assertEquals(1, i);
+				if (!(e.getCause() instanceof JavascriptFileGenerationException)) {
+					fail("Unexpected error:" + e.getCause());
+				}
+				JavascriptFileGenerationException error = (JavascriptFileGenerationException) e.getCause();
+				assertEquals("Batch3.java", error.getSourcePosition().getFile().getName());
+			}
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package org.stjs.generator.check.expression;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import org.junit.Test;
+import org.stjs.generator.GenerationContext;
+
+import com.google.common.collect.Multimap;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.TreeScanner;
+
+/**
+ * the variables found by {@link GenerationContext#getDeclaredVariables(MethodTree)}, that may hide a global field in
+ * the generated function
+ */
+public class DeclaredVariablesTest {
+	private static final String SOURCE = "public class Sample {\n" //
+			+ "  void m(int a, String b) {\n" //
+			+ "    int c = a;\n" //
+			+ "    if (c > 0) {\n" //
+			+ "      int d = c;\n" //
+			+ "      for (int e = 0; e < d; ++e) {\n" //
+			+ "        int f = e;\n" //
+			+ "      }\n" //
+			+ "    } else {\n" //
+			+ "      int d = -c;\n" //
+			+ "    }\n" //
+			+ "    class Local {\n" //
+			+ "      int g;\n" //
+			+ "    }\n" //
+			+ "    int h = 0;\n" //
+			+ "  }\n" //
+			+ "}\n";
+
+	private static MethodTree parseMethod() throws IOException {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		SimpleJavaFileObject file = new SimpleJavaFileObject(URI.create("string:///Sample.java"), SimpleJavaFileObject.Kind.SOURCE) {
+			@Override
+			public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+				return SOURCE;
+			}
+		};
+		JavacTask task = (JavacTask) compiler.getTask(null, null, null, null, null, Collections.singletonList(file));
+		CompilationUnitTree cu = task.parse().iterator().next();
+		final List<MethodTree> methods = new ArrayList<MethodTree>();
+		new TreeScanner<Void, Void>() {
+			@Override
+			public Void visitMethod(MethodTree tree, Void p) {
+				methods.add(tree);
+				return super.visitMethod(tree, p);
+			}
+		}.scan(cu, null);
+		return methods.get(0);
+	}
+
+	private static Multimap<String, VariableTree> getDeclaredVariables(MethodTree method) {
+		return new GenerationContext<Void>(null, null, null, null, null, null, null).getDeclaredVariables(method);
+	}
+
+	@Test
+	public void testParameters() throws IOException {
+		MethodTree method = parseMethod();
+		Multimap<String, VariableTree> variables = getDeclaredVariables(method);
+		assertSame(method.getParameters().get(0), variables.get("a").iterator().next());
+		assertSame(method.getParameters().get(1), variables.get("b").iterator().next());
+	}
+
+	@Test
+	public void testNestedBlocks() throws IOException {
+		Multimap<String, VariableTree> variables = getDeclaredVariables(parseMethod());
+		assertEquals(1, variables.get("c").size());
+		// all the variables end up in the scope of the generated function, whatever the Java block declaring them
+		assertEquals(2, variables.get("d").size());
+		assertEquals(1, variables.get("e").size());
+		assertEquals(1, variables.get("f").size());
+	}
+
+	@Test
+	public void testStopAtLocalClass() throws IOException {
+		// the scan stops at the first type declared in the method, as the check always did
+		Multimap<String, VariableTree> variables = getDeclaredVariables(parseMethod());
+		assertTrue(variables.get("g").isEmpty());
+		assertTrue(variables.get("h").isEmpty());
+		assertEquals(7, variables.size());
+	}
+
+	@Test
+	public void testMethodScannedOnce() throws IOException {
+		MethodTree method = parseMethod();
+		GenerationContext<Void> context = new GenerationContext<Void>(null, null, null, null, null, null, null);
+		assertSame(context.getDeclaredVariables(method), context.getDeclaredVariables(method));
+	}
+}
@@ -0,0 +1,142 @@
+package org.stjs.generator.check.expression;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import org.stjs.generator.GenerationContext;
+
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.MemberSelectTree;
+import com.sun.source.tree.MethodTree;
+import com.sun.source.tree.VariableTree;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.TreeScanner;
+
+/**
+ * A single method of 5000 statements reads 50 global fields, so {@link IdentifierGlobalScopeNameClashCheck} looks for
+ * clashing local variables about 5000 times in the same method. This prints the time per method of a full scan for each
+ * use, as the check did before, and of the index built by {@link GenerationContext#getDeclaredVariables(MethodTree)},
+ * which is built again in each run so its cost is included.
+ */
+public final class GlobalScopeNameClashCheckBenchmark {
+	private static final int STATEMENTS = 5000;
+	private static final int GLOBALS = 50;
+	private static final int WARMUP = 2;
+	private static final int RUNS = 5;
+
+	private GlobalScopeNameClashCheckBenchmark() {
+		//
+	}
+
+	@SuppressWarnings("PMD.SystemPrintln")
+	public static void main(String[] args) throws IOException {
+		CompilationUnitTree cu = parse(generateSource());
+		final MethodTree[] method = new MethodTree[1];
+		final List<String> uses = new ArrayList<String>();
+		new TreeScanner<Void, Void>() {
+			@Override
+			public Void visitMethod(MethodTree tree, Void p) {
+				method[0] = tree;
+				return super.visitMethod(tree, p);
+			}
+
+			@Override
+			public Void visitMemberSelect(MemberSelectTree tree, Void p) {
+				uses.add(tree.getIdentifier().toString());
+				return super.visitMemberSelect(tree, p);
+			}
+		}.scan(cu, null);
+
+		long found = 0;
+		for (int i = 0; i < WARMUP; ++i) {
+			found += lookupByScan(method[0], uses) + lookupByIndex(method[0], uses);
+		}
+
+		long scanTime = 0;
+		long indexTime = 0;
+		for (int i = 0; i < RUNS; ++i) {
+			long t0 = System.nanoTime();
+			found += lookupByScan(method[0], uses);
+			long t1 = System.nanoTime();
+			found += lookupByIndex(method[0], uses);
+			long t2 = System.nanoTime();
+			scanTime += t1 - t0;
+			indexTime += t2 - t1;
+		}
+
+		System.out.println("Statements:" + STATEMENTS + ", uses of global fields:" + uses.size() + ", clashes found:" + found);
+		System.out.println("Scan per use:" + scanTime / (RUNS * 1000000L) + " ms/method");
+		System.out.println("Index per method:" + indexTime / (RUNS * 1000000L) + " ms/method");
+		System.out.println("Speedup:" + (double) scanTime / indexTime);
+	}
+
+	private static String generateSource() {
+		StringBuilder s = new StringBuilder("public class Large {\n");
+		s.append("  int m(int p) {\n");
+		s.append("    int v0 = p;\n");
+		s.append("    int g0 = 0;\n");
+		for (int i = 1; i < STATEMENTS; ++i) {
+			s.append("    int v").append(i).append(" = Globals.g").append(i % GLOBALS).append(" + v").append(i - 1).append(";\n");
+		}
+		return s.append("    return v").append(STATEMENTS - 1).append(";\n  }\n}\n").toString();
+	}
+
+	private static CompilationUnitTree parse(final String source) throws IOException {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		SimpleJavaFileObject file = new SimpleJavaFileObject(URI.create("string:///Large.java"), SimpleJavaFileObject.Kind.SOURCE) {
+			@Override
+			public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+				return source;
+			}
+		};
+		JavacTask task = (JavacTask) compiler.getTask(null, null, null, null, null, Collections.singletonList(file));
+		return task.parse().iterator().next();
+	}
+
+	private static long lookupByIndex(MethodTree method, List<String> uses) {
+		// a new context, so the index is built again in each run
+		GenerationContext<Void> context = new GenerationContext<Void>(null, null, null, null, null, null, null);
+		long found = 0;
+		for (String name : uses) {
+			found += context.getDeclaredVariables(method).get(name).size();
+		}
+		return found;
+	}
+
+	/**
+	 * the lookup as it was done before the index: the whole method is scanned for each use
+	 */
+	private static long lookupByScan(MethodTree method, List<String> uses) {
+		long found = 0;
+		for (final String name : uses) {
+			final long[] count = new long[1];
+			method.accept(new TreeScanner<Void, Void>() {
+				private boolean checkStopped;
+
+				@Override
+				public Void visitClass(ClassTree tree, Void p) {
+					checkStopped = true;
+					return super.visitClass(tree, p);
+				}
+
+				@Override
+				public Void visitVariable(VariableTree var, Void p) {
+					if (!checkStopped && var.getName().toString().equals(name)) {
+						count[0]++;
+					}
+					return super.visitVariable(var, p);
+				}
+			}, null);
+			found += count[0];
+		}
+		return found;
+	}
+}
@@ -0,0 +1,48 @@
+package org.stjs.generator.daemon;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.stjs.generator.GenerationDirectory;
+import org.stjs.generator.GeneratorConfiguration;
+import org.stjs.generator.GeneratorConfigurationBuilder;
+
+public class GenerationRequestTest {
+	@Test
+	public void testWriteAndRead() throws IOException {
+		GeneratorConfiguration configuration = new GeneratorConfigurationBuilder().allowedPackage("org.stjs.javascript")
+				.generateSourceMap(true).sourceEncoding("UTF-8").batchSize(3).singlePass(true).textBuilder(true).build();
+		GenerationRequest request = new GenerationRequest(Arrays.asList("a.jar", "classes"), Collections.singletonList("org.A"),
+				new File("src"), new GenerationDirectory(new File("target/js"), new File("js"), new File("")), new File("target"),
+				configuration);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		request.write(out);
+		out.flush();
+		GenerationRequest read = GenerationRequest.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+		assertEquals(request.getClasspath(), read.getClasspath());
+		assertEquals(request.getClassNames(), read.getClassNames());
+		assertEquals(request.getSourceFolder(), read.getSourceFolder());
+		assertEquals(request.getGenerationFolder().getAbsolutePath(), read.getGenerationFolder().getAbsolutePath());
+		assertEquals(request.getTargetFolder(), read.getTargetFolder());
+		GeneratorConfiguration readConfiguration = read.getConfiguration();
+		assertTrue(readConfiguration.getAllowedPackages().contains("org.stjs.javascript"));
+		assertTrue(readConfiguration.isGenerateSourceMap());
+		assertEquals("UTF-8", readConfiguration.getSourceEncoding());
+		assertEquals(3, readConfiguration.getBatchSize());
+		assertTrue(readConfiguration.isSinglePass());
+		assertTrue(readConfiguration.isTextBuilder());
+	}
+}
@@ -7,6 +7,10 @@ import static org.junit.Assert.fail;
 import static org.stjs.generator.utils.GeneratorTestHelper.generate;
 import static org.stjs.generator.utils.GeneratorTestHelper.stjsClass;
 
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import org.junit.Test;
@@ -45,6 +49,63 @@ public class DependencyTest {
 		DependencyCollection.DEPENDENCY_COMPARATOR.compare(Err1.class, Err2.class);
 	}
 
+	@Test
+	public void testOrderFollowsTheComparator() {
+		List<ClassWithJavascript> order = new DependencyCollection(root(Dep5.class, Dep3.class, Dep2.class, Dep4.class, Dep1.class))
+				.orderAllDependencies(new CountingClassLoader());
+
+		// Dep1 comes first as the others extend it or one of its inner classes, the visit order is kept otherwise
+		assertEquals(Arrays.asList(Dep1.class.getName(), Dep3.class.getName(), Dep2.class.getName(), Dep4.class.getName(),
+				Dep5.class.getName()), names(order));
+		for (int i = 0; i < order.size(); ++i) {
+			for (int j = i + 1; j < order.size(); ++j) {
+				assertTrue(DependencyCollection.DEPENDENCY_COMPARATOR.compare(load(order.get(i)), load(order.get(j))) <= 0);
+			}
+		}
+	}
+
+	@Test(
+			expected = IllegalArgumentException.class)
+	public void testContradictoryOrder() {
+		new DependencyCollection(root(Dep5.class, Err1.class, Err2.class)).orderAllDependencies(new CountingClassLoader());
+	}
+
+	@Test
+	public void testOrderCachedForTheSameRoots() {
+		CountingClassLoader classLoader = new CountingClassLoader();
+		List<String> order = names(new DependencyCollection(root(Dep5.class, Dep2.class, Dep1.class)).orderAllDependencies(classLoader));
+		int loadedClasses = classLoader.loadedClasses;
+		assertTrue(loadedClasses > 0);
+
+		assertEquals(order, names(new DependencyCollection(root(Dep5.class, Dep2.class, Dep1.class)).orderAllDependencies(classLoader)));
+		assertEquals(loadedClasses, classLoader.loadedClasses);
+	}
+
+	private static ClassWithJavascript root(Class<?> rootClass, Class<?>... dependencies) {
+		List<ClassWithJavascript> deps = new ArrayList<ClassWithJavascript>();
+		for (Class<?> dependency : dependencies) {
+			deps.add(new TestClass(dependency, Collections.<ClassWithJavascript>emptyList()));
+		}
+		return new TestClass(rootClass, deps);
+	}
+
+	private static List<String> names(List<ClassWithJavascript> classes) {
+		List<String> names = new ArrayList<String>();
+		for (ClassWithJavascript c : classes) {
+			names.add(c.getClassName());
+		}
+		return names;
+	}
+
+	private static Class<?> load(ClassWithJavascript c) {
+		try {
+			return Class.forName(c.getClassName());
+		}
+		catch (ClassNotFoundException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
 	@Test
 	public void testGlobalScopeDep() {
 		generate(Dep5.class);
@@ -64,4 +125,46 @@ public class DependencyTest {
 
 		fail("Could not find the class:" + clz + " in the dependency list:" + directDependencies);
 	}
+
+	private static final class TestClass implements ClassWithJavascript {
+		private final Class<?> clazz;
+		private final List<ClassWithJavascript> dependencies;
+
+		private TestClass(Class<?> clazz, List<ClassWithJavascript> dependencies) {
+			this.clazz = clazz;
+			this.dependencies = dependencies;
+		}
+
+		@Override
+		public String getClassName() {
+			return clazz.getName();
+		}
+
+		@Override
+		public List<URI> getJavascriptFiles() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public List<ClassWithJavascript> getDirectDependencies() {
+			return dependencies;
+		}
+	}
+
+	/**
+	 * a new class loader, so the orders it caches start empty, counting the classes it's asked for
+	 */
+	private static final class CountingClassLoader extends ClassLoader {
+		private int loadedClasses;
+
+		private CountingClassLoader() {
+			super(DependencyTest.class.getClassLoader());
+		}
+
+		@Override
+		protected synchronized Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+			++loadedClasses;
+			return super.loadClass(name, resolve);
+		}
+	}
 }
@@ -0,0 +1,95 @@
+package org.stjs.generator.executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+/**
+ * checks that the node worker and the node process started for each file give the same results. These tests are
+ * skipped when node is not installed.
+ */
+public class NodeJSExecutorTest {
+	private static final File FOLDER = new File("target/node-executor");
+	private static final long TIMEOUT_MILLIS = 2000;
+
+	@Before
+	public void setUp() {
+		Assume.assumeTrue(isNodeInstalled());
+		FOLDER.mkdirs();
+	}
+
+	private static boolean isNodeInstalled() {
+		try {
+			return new ProcessBuilder("node", "--version").start().waitFor() == 0;
+		}
+		catch (IOException e) {
+			return false;
+		}
+		catch (InterruptedException e) {
+			return false;
+		}
+	}
+
+	private static ExecutionResult run(String name, String source, boolean useWorker) throws IOException {
+		File file = new File(FOLDER, name + ".js");
+		Files.write(source, file, Charsets.UTF_8);
+		return new NodeJSExecutor(TIMEOUT_MILLIS, useWorker).run(file);
+	}
+
+	@Test
+	public void testStjsDefined() throws IOException {
+		for (boolean useWorker : new boolean[]{ true, false }) {
+			ExecutionResult result = run("stjs", "var local = 1; console.log(typeof stjs + ' ' + typeof global.local);", useWorker);
+			assertEquals(0, result.getExitValue());
+			assertEquals("object number\n", result.getStdOut());
+		}
+	}
+
+	@Test
+	public void testLargeOutput() throws IOException {
+		for (boolean useWorker : new boolean[]{ true, false }) {
+			ExecutionResult result = run("large", "for (var i = 0; i < 20000; ++i) { console.log('line ' + i + ' of a large output'); }",
+					useWorker);
+			assertEquals(0, result.getExitValue());
+			String[] lines = result.getStdOut().split("\n");
+			assertEquals(20000, lines.length);
+			assertEquals("line 19999 of a large output", lines[lines.length - 1]);
+		}
+	}
+
+	@Test
+	public void testTimeout() throws IOException {
+		for (boolean useWorker : new boolean[]{ true, false }) {
+			ExecutionResult result = run("loop", "console.log('started'); while (true) {}", useWorker);
+			assertEquals(NodeJSExecutor.TIMEOUT_EXIT_VALUE, result.getExitValue());
+			assertTrue(result.getStdErr(), result.getStdErr().startsWith("Timeout:"));
+		}
+	}
+
+	@Test
+	public void testExitValue() throws IOException {
+		for (boolean useWorker : new boolean[]{ true, false }) {
+			ExecutionResult result = run("exit", "console.log('before'); process.exit(3); console.log('after');", useWorker);
+			assertEquals(3, result.getExitValue());
+			assertEquals("before\n", result.getStdOut());
+		}
+	}
+
+	@Test
+	public void testUncaughtException() throws IOException {
+		for (boolean useWorker : new boolean[]{ true, false }) {
+			ExecutionResult result = run("error", "throw new Error('boom');", useWorker);
+			assertEquals(1, result.getExitValue());
+			assertTrue(result.getStdErr(), result.getStdErr().contains("boom"));
+		}
+	}
+}
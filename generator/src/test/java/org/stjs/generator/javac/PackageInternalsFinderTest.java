@@ -0,0 +1,74 @@
+package org.stjs.generator.javac;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.StandardLocation;
+import javax.tools.ToolProvider;
+
+import org.junit.Test;
+
+import com.google.common.collect.ImmutableList;
+
+public class PackageInternalsFinderTest {
+	private static File getRoot(Class<?> clazz) throws URISyntaxException {
+		return new File(clazz.getProtectionDomain().getCodeSource().getLocation().toURI());
+	}
+
+	private static Set<String> listWithFinder(File root, String packageName, boolean recursive) throws IOException {
+		URLClassLoader classLoader = new URLClassLoader(new URL[] { root.toURI().toURL() }, null);
+		Set<String> names = new TreeSet<String>();
+		for (JavaFileObject file : new PackageInternalsFinder(classLoader).find(packageName, recursive)) {
+			names.add(((CustomJavaFileObject) file).binaryName());
+		}
+		return names;
+	}
+
+	private static Set<String> listWithJavac(File root, String packageName, boolean recursive) throws IOException {
+		StandardJavaFileManager fileManager = ToolProvider.getSystemJavaCompiler().getStandardFileManager(null, null, null);
+		try {
+			fileManager.setLocation(StandardLocation.CLASS_PATH, Collections.singletonList(root));
+			Set<String> names = new TreeSet<String>();
+			for (JavaFileObject file : fileManager.list(StandardLocation.CLASS_PATH, packageName, EnumSet.of(JavaFileObject.Kind.CLASS),
+					recursive)) {
+				names.add(fileManager.inferBinaryName(StandardLocation.CLASS_PATH, file));
+			}
+			return names;
+		}
+		finally {
+			fileManager.close();
+		}
+	}
+
+	private static void assertSameListing(File root, String packageName, boolean recursive) throws IOException {
+		Set<String> expected = listWithJavac(root, packageName, recursive);
+		assertFalse(expected.isEmpty());
+		assertEquals(expected, listWithFinder(root, packageName, recursive));
+	}
+
+	@Test
+	public void testJarListing() throws IOException, URISyntaxException {
+		File jar = getRoot(ImmutableList.class);
+		assertSameListing(jar, "com.google.common.collect", false);
+		assertSameListing(jar, "com.google.common", true);
+	}
+
+	@Test
+	public void testFolderListing() throws IOException, URISyntaxException {
+		File folder = getRoot(PackageInternalsFinder.class);
+		assertSameListing(folder, "org.stjs.generator.javac", false);
+		assertSameListing(folder, "org.stjs.generator", true);
+	}
+}
@@ -0,0 +1,130 @@
+package org.stjs.generator.manifest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.stjs.generator.ClassWithJavascript;
+import org.stjs.generator.DependencyResolver;
+import org.stjs.generator.ModuleManifest;
+import org.stjs.generator.STJSClass;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Closeables;
+import com.google.common.io.Files;
+
+public class ModuleManifestTest {
+	private static final File TEST_FOLDER = new File("target/manifest-test");
+
+	private static final DependencyResolver NO_RESOLVER = new DependencyResolver() {
+		@Override
+		public ClassWithJavascript resolve(String className) {
+			throw new UnsupportedOperationException();
+		}
+	};
+
+	@Before
+	public void setUp() {
+		if (!TEST_FOLDER.mkdirs() && !TEST_FOLDER.isDirectory()) {
+			throw new IllegalStateException("Cannot create " + TEST_FOLDER);
+		}
+	}
+
+	private static List<ModuleManifest.Entry> entries(String suffix) {
+		return Arrays.asList(new ModuleManifest.Entry("org.test.B", "/org/test/B.js", Arrays.asList("org.test.A" + suffix)),
+				new ModuleManifest.Entry("org.test.A", "/org/test/A.js", Collections.<String>emptyList()), new ModuleManifest.Entry(
+						"org.test.été", null, Arrays.asList("org.test.A", "org.test.B")));
+	}
+
+	private static void assertEntry(ModuleManifest.Entry expected, ModuleManifest.Entry actual) {
+		assertNotNull(actual);
+		assertEquals(expected.getClassName(), actual.getClassName());
+		assertEquals(expected.getJavascriptFile(), actual.getJavascriptFile());
+		assertEquals(expected.getDependencies(), actual.getDependencies());
+	}
+
+	@Test
+	public void testWriteAndFind() throws IOException {
+		File file = new File(TEST_FOLDER, "write/" + ModuleManifest.MANIFEST_FILE);
+		List<ModuleManifest.Entry> entries = entries("");
+		ModuleManifest.write(file, entries);
+
+		ModuleManifest manifest = ModuleManifest.open(file);
+		assertEquals(entries.size(), manifest.size());
+		for (ModuleManifest.Entry entry : entries) {
+			assertEntry(entry, manifest.find(entry.getClassName()));
+		}
+		assertNull(manifest.find("org.test.C"));
+		assertNull(manifest.find("org.test"));
+
+		// sorted by name
+		List<ModuleManifest.Entry> all = manifest.getEntries();
+		assertEntry(entries.get(1), all.get(0));
+		assertEntry(entries.get(0), all.get(1));
+		assertEntry(entries.get(2), all.get(2));
+	}
+
+	@Test
+	public void testReplaceOpenManifest() throws IOException {
+		File file = new File(TEST_FOLDER, "replace/" + ModuleManifest.MANIFEST_FILE);
+		ModuleManifest.write(file, entries(""));
+		ModuleManifest manifest = ModuleManifest.open(file);
+
+		// replaced like the maven plugin does
+		File tempFile = new File(file.getPath() + ".tmp");
+		ModuleManifest.write(tempFile, entries("2"));
+		assertEquals(true, file.delete());
+		assertEquals(true, tempFile.renameTo(file));
+
+		assertEquals(Arrays.asList("org.test.A"), manifest.find("org.test.B").getDependencies());
+		assertEquals(Arrays.asList("org.test.A2"), ModuleManifest.open(file).find("org.test.B").getDependencies());
+	}
+
+	@Test
+	public void testOnlyJarManifestsAreUsed() throws IOException {
+		// a folder with an old manifest, where B was generated again since
+		File folder = new File(TEST_FOLDER, "folder");
+		ModuleManifest.write(new File(folder, ModuleManifest.MANIFEST_FILE), entries(""));
+		File stjsFile = new File(folder, "org/test/B.stjs");
+		Files.createParentDirs(stjsFile);
+		Files.write("js=/org/test/B.js\ndependencies=[org.test.A2]\n", stjsFile, Charsets.UTF_8);
+
+		// a jar with the manifest of other classes
+		File jar = new File(TEST_FOLDER, "lib.jar");
+		File jarManifest = new File(TEST_FOLDER, "jar-manifest");
+		ModuleManifest.write(jarManifest, Collections.singletonList(new ModuleManifest.Entry("org.lib.L", "/org/lib/L.js", Arrays
+				.asList("org.lib.M"))));
+		JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+		try {
+			out.putNextEntry(new ZipEntry(ModuleManifest.MANIFEST_FILE));
+			Files.copy(jarManifest, out);
+			out.closeEntry();
+		}
+		finally {
+			Closeables.closeQuietly(out);
+		}
+
+		URLClassLoader classLoader = new URLClassLoader(new URL[] { folder.toURI().toURL(), jar.toURI().toURL() }, null);
+		assertNull(ModuleManifest.find(classLoader, "org.test.B"));
+		assertEquals(Arrays.asList("org.lib.M"), ModuleManifest.find(classLoader, "org.lib.L").getDependencies());
+
+		STJSClass stjsClass = new STJSClass(NO_RESOLVER, classLoader, "org.test.B");
+		assertEquals(Arrays.asList("org.test.A2"), stjsClass.getDependencies());
+		STJSClass libClass = new STJSClass(NO_RESOLVER, classLoader, "org.lib.L");
+		assertEquals(Arrays.asList("org.lib.M"), libClass.getDependencies());
+		assertEquals("/org/lib/L.js", libClass.getJavascriptFiles().get(0).toString());
+	}
+}
@@ -0,0 +1,54 @@
+package org.stjs.generator.metrics;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+
+import org.junit.Test;
+import org.stjs.generator.BridgeClass;
+import org.stjs.generator.GenerationDirectory;
+import org.stjs.generator.Generator;
+import org.stjs.generator.GeneratorConfiguration;
+import org.stjs.generator.GeneratorConfigurationBuilder;
+
+import com.google.common.base.Charsets;
+
+public class GenerationMetricsTest {
+	private static final String BRIDGE = "org.stjs.javascript.Array";
+
+	private static GenerationMetrics generateBridge(ClassLoader classLoader) {
+		Generator generator = new Generator();
+		generator.init(classLoader, Charsets.UTF_8.name());
+		GenerationMetrics metrics = new GenerationMetrics();
+		generator.addListener(metrics);
+		try {
+			GeneratorConfiguration configuration = new GeneratorConfigurationBuilder().allowedPackage("org.stjs.javascript").build();
+			GenerationDirectory generationFolder = new GenerationDirectory(new File("target/metrics-js"), new File("metrics-js"),
+					new File(""));
+			assertEquals(BridgeClass.class, generator.generateJavascript(classLoader, BRIDGE, new File("src/test/java"), generationFolder,
+					new File("target", "test-classes"), configuration).getClass());
+		}
+		finally {
+			generator.close();
+		}
+		return metrics;
+	}
+
+	@Test
+	public void testBridgeLookupsCountedForEachGenerator() {
+		// a new class loader, so the shared bridge cache starts empty
+		ClassLoader classLoader = new ClassLoader(Thread.currentThread().getContextClassLoader()) {
+			//
+		};
+		GenerationMetrics first = generateBridge(classLoader);
+		assertEquals(0, first.getBridgeCacheHits());
+		assertEquals(1, first.getBridgeCacheMisses());
+
+		// the second generator finds the bridge in the cache, the lookup is only counted by its own metrics
+		GenerationMetrics second = generateBridge(classLoader);
+		assertEquals(1, second.getBridgeCacheHits());
+		assertEquals(0, second.getBridgeCacheMisses());
+		assertEquals(0, first.getBridgeCacheHits());
+		assertEquals(1, first.getBridgeCacheMisses());
+	}
+}
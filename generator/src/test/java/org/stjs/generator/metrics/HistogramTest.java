@@ -0,0 +1,43 @@
+package org.stjs.generator.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HistogramTest {
+	@Test
+	public void testBuckets() {
+		for (long value = 0; value < 100000; ++value) {
+			int bucket = Histogram.getBucket(value);
+			assertTrue(value <= Histogram.getBucketMax(bucket));
+			if (bucket > 0) {
+				assertTrue(value > Histogram.getBucketMax(bucket - 1));
+			}
+		}
+		assertEquals(Long.MAX_VALUE, Histogram.getBucketMax(Histogram.getBucket(Long.MAX_VALUE)));
+	}
+
+	@Test
+	public void testPercentiles() {
+		Histogram h = new Histogram();
+		for (int i = 1; i <= 1000; ++i) {
+			h.record(i * 1000L);
+		}
+		assertEquals(1000, h.getCount());
+		assertEquals(1000, h.getMin());
+		assertEquals(1000000, h.getMax());
+		assertEquals(500500, h.getMean());
+
+		long p50 = h.getPercentile(50);
+		assertTrue(p50 >= 500000 && p50 <= 500000 * 5 / 4);
+		assertEquals(1000000, h.getPercentile(100));
+	}
+
+	@Test
+	public void testEmpty() {
+		Histogram h = new Histogram();
+		assertEquals(0, h.getMin());
+		assertEquals(0, h.getPercentile(99));
+	}
+}
@@ -0,0 +1,7 @@
+package org.stjs.generator.parallel;
+
+public class Parallel4 extends SharedParent {
+	public int next() {
+		return value + 4;
+	}
+}
@@ -0,0 +1,7 @@
+package org.stjs.generator.parallel;
+
+public class Parallel6 extends SharedParent {
+	public int next() {
+		return value + 6;
+	}
+}
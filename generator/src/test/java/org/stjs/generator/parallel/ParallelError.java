@@ -0,0 +1,5 @@
+package org.stjs.generator.parallel;
+
+public class ParallelError extends SharedParent {
+	private SharedParent[] forbiddenArray;
+}
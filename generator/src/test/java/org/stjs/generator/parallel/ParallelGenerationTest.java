@@ -0,0 +1,166 @@
+package org.stjs.generator.parallel;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+import org.stjs.generator.ClassWithJavascript;
+import org.stjs.generator.GenerationDirectory;
+import org.stjs.generator.Generator;
+import org.stjs.generator.GeneratorConfiguration;
+import org.stjs.generator.GeneratorConfigurationBuilder;
+import org.stjs.generator.metrics.GenerationListener;
+import org.stjs.generator.metrics.GenerationPhase;
+import org.stjs.generator.utils.ClassUtils;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+
+/**
+ * generates classes sharing a parent class with several workers, resolving their dependencies at the same time
+ */
+public class ParallelGenerationTest {
+	private static final File SOURCE_FOLDER = new File("src/test/java");
+	// the .stjs files must be found by the class loader, so a generated dependency is not generated again
+	private static final File TARGET_FOLDER = new File("target/test-classes");
+	private static final List<String> CLASSES = Arrays.asList(Parallel1.class.getName(), Parallel2.class.getName(),
+			ParallelError.class.getName(), Parallel3.class.getName(), Parallel4.class.getName(), Parallel5.class.getName(),
+			Parallel6.class.getName());
+	private static final int THREADS = 4;
+
+	private static class GenerationCounter implements GenerationListener {
+		private final ConcurrentMap<String, AtomicInteger> counts = Maps.newConcurrentMap();
+
+		@Override
+		public void phaseEnded(GenerationPhase phase, List<String> classNames, long nanos) {
+			//
+		}
+
+		@Override
+		public void classGenerated(String className, long visitedNodes, long writtenBytes) {
+			counts.putIfAbsent(className, new AtomicInteger());
+			counts.get(className).incrementAndGet();
+		}
+
+		@Override
+		public void bridgeLookedUp(boolean cacheHit) {
+			//
+		}
+
+		int getCount(String className) {
+			AtomicInteger count = counts.get(className);
+			return count == null ? 0 : count.get();
+		}
+	}
+
+	private static void deleteGeneratedProperties() {
+		new File(TARGET_FOLDER, ClassUtils.getPropertiesFileName(SharedParent.class.getName())).delete();
+		for (String className : CLASSES) {
+			new File(TARGET_FOLDER, ClassUtils.getPropertiesFileName(className)).delete();
+		}
+	}
+
+	/**
+	 * generates the classes, then resolves their dependencies from several threads at once
+	 *
+	 * @return the error message of each class, null for the generated classes
+	 */
+	private static List<String> generate(int threads, GenerationCounter counter) throws Exception {
+		deleteGeneratedProperties();
+		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+		Generator generator = new Generator();
+		generator.init(classLoader, Charsets.UTF_8.name(), threads);
+		generator.addListener(counter);
+		GeneratorConfiguration configuration = new GeneratorConfigurationBuilder().allowedPackage("org.stjs.javascript")
+				.allowedPackage("org.stjs.generator").build();
+		GenerationDirectory generationFolder = new GenerationDirectory(new File("target/parallel-js/" + threads), new File("parallel-js"),
+				new File(""));
+		ExecutorService resolvers = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<ClassWithJavascript>> results = generator.submitJavascriptGeneration(classLoader, CLASSES, SOURCE_FOLDER,
+					generationFolder, TARGET_FOLDER, configuration);
+			assertEquals(CLASSES.size(), results.size());
+
+			List<String> errors = new ArrayList<String>();
+			final List<ClassWithJavascript> generated = new ArrayList<ClassWithJavascript>();
+			for (int i = 0; i < CLASSES.size(); ++i) {
+				try {
+					ClassWithJavascript result = results.get(i).get();
+					// the results come back in the order of the class names
+					assertEquals(CLASSES.get(i), result.getClassName());
+					generated.add(result);
+					errors.add(null);
+				}
+				catch (ExecutionException e) {
+					errors.add(e.getCause().getMessage());
+				}
+			}
+
+			// the shared parent, that is not in the list, is needed by all the classes at the same time
+			final CountDownLatch start = new CountDownLatch(1);
+			List<Future<List<ClassWithJavascript>>> dependencies = new ArrayList<Future<List<ClassWithJavascript>>>();
+			for (final ClassWithJavascript result : generated) {
+				dependencies.add(resolvers.submit(new Callable<List<ClassWithJavascript>>() {
+					@Override
+					public List<ClassWithJavascript> call() throws InterruptedException {
+						start.await();
+						return result.getDirectDependencies();
+					}
+				}));
+			}
+			start.countDown();
+			for (Future<List<ClassWithJavascript>> classDependencies : dependencies) {
+				List<String> names = new ArrayList<String>();
+				for (ClassWithJavascript dependency : classDependencies.get()) {
+					names.add(dependency.getClassName());
+				}
+				assertTrue(names.toString(), names.contains(SharedParent.class.getName()));
+			}
+			return errors;
+		}
+		finally {
+			resolvers.shutdown();
+			generator.close();
+			deleteGeneratedProperties();
+		}
+	}
+
+	@Test
+	public void testEachClassGeneratedOnce() throws Exception {
+		GenerationCounter counter = new GenerationCounter();
+		generate(THREADS, counter);
+		assertEquals(1, counter.getCount(SharedParent.class.getName()));
+		for (String className : CLASSES) {
+			assertEquals(className, className.equals(ParallelError.class.getName()) ? 0 : 1, counter.getCount(className));
+		}
+	}
+
+	@Test
+	public void testSameErrorsAsOneThread() throws Exception {
+		List<String> errors = generate(THREADS, new GenerationCounter());
+		assertEquals(generate(1, new GenerationCounter()), errors);
+		int errorIndex = CLASSES.indexOf(ParallelError.class.getName());
+		for (int i = 0; i < errors.size(); ++i) {
+			if (i == errorIndex) {
+				assertNotNull(errors.get(i));
+			} else {
+				assertNull(errors.get(i));
+			}
+		}
+	}
+}
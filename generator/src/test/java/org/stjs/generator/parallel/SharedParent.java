@@ -0,0 +1,9 @@
+package org.stjs.generator.parallel;
+
+public class SharedParent {
+	protected int value;
+
+	public int getValue() {
+		return value;
+	}
+}
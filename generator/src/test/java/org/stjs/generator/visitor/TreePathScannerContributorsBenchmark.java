@@ -0,0 +1,233 @@
+package org.stjs.generator.visitor;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.tools.JavaCompiler;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.ToolProvider;
+
+import com.sun.source.tree.BinaryTree;
+import com.sun.source.tree.CompilationUnitTree;
+import com.sun.source.tree.IdentifierTree;
+import com.sun.source.tree.MethodInvocationTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.JavacTask;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.TreeScanner;
+
+/**
+ * Compares two ways of dispatching the nodes of a generated class of 3000 methods to the same contributors and filters:
+ * the kind table of a frozen {@link TreePathScannerContributors}, and the reflective lookup of the node's interface
+ * followed by a new filter chain per node, as it was done before. Both scanners allocate the same {@link TreePath} for
+ * each node, so the printed difference is the cost of the dispatch alone.
+ */
+public final class TreePathScannerContributorsBenchmark {
+	private static final int METHODS = 3000;
+	private static final int WARMUP = 20;
+	private static final int RUNS = 50;
+
+	private TreePathScannerContributorsBenchmark() {
+		//
+	}
+
+	@SuppressWarnings("PMD.SystemPrintln")
+	public static void main(String[] args) throws IOException {
+		CompilationUnitTree cu = parse(generateSource());
+
+		BenchmarkVisitor visitor = new BenchmarkVisitor();
+		visitor.setContinueScanning(true);
+		CountingContributor<MethodInvocationTree> invocations = new CountingContributor<MethodInvocationTree>();
+		CountingContributor<BinaryTree> binaries = new CountingContributor<BinaryTree>();
+		CountingContributor<IdentifierTree> identifiers = new CountingContributor<IdentifierTree>();
+		visitor.contribute(invocations, MethodInvocationTree.class);
+		visitor.contribute(binaries, BinaryTree.class);
+		visitor.contribute(identifiers, IdentifierTree.class);
+		visitor.addFilter(new PassFilter<MethodInvocationTree>(), MethodInvocationTree.class);
+		visitor.addFilter(new PassFilter<IdentifierTree>(), IdentifierTree.class);
+		visitor.addFilter(new PassFilter<IdentifierTree>(), IdentifierTree.class);
+		// the kind table is only used by frozen visitors, as the generator's visitors are
+		visitor.freeze();
+
+		ReflectiveDispatchScanner reference = new ReflectiveDispatchScanner(visitor);
+		reference.put(MethodInvocationTree.class, invocations);
+		reference.put(BinaryTree.class, binaries);
+		reference.put(IdentifierTree.class, identifiers);
+		reference.filterCounts.put(MethodInvocationTree.class, 1);
+		reference.filterCounts.put(IdentifierTree.class, 2);
+
+		long nodes = countNodes(cu);
+		for (int i = 0; i < WARMUP; ++i) {
+			visitor.scan(cu, new PathHolder());
+			reference.scan(cu, new PathHolder());
+		}
+
+		long referenceTime = 0;
+		long tableTime = 0;
+		for (int i = 0; i < RUNS; ++i) {
+			long t0 = System.nanoTime();
+			reference.scan(cu, new PathHolder());
+			long t1 = System.nanoTime();
+			visitor.scan(cu, new PathHolder());
+			long t2 = System.nanoTime();
+			referenceTime += t1 - t0;
+			tableTime += t2 - t1;
+		}
+
+		System.out.println("Nodes per scan:" + nodes + ", contributor calls:" + (invocations.count + binaries.count + identifiers.count));
+		System.out.println("Reflective dispatch:" + referenceTime / (RUNS * nodes) + " ns/node");
+		System.out.println("Kind table dispatch:" + tableTime / (RUNS * nodes) + " ns/node");
+		System.out.println("Speedup:" + (double) referenceTime / tableTime);
+	}
+
+	private static String generateSource() {
+		StringBuilder s = new StringBuilder("public class Large {\n");
+		for (int i = 0; i < METHODS; ++i) {
+			s.append("  int m").append(i).append("(int a, int b) {\n");
+			s.append("    int c = a * ").append(i).append(" + b - (a / 2);\n");
+			s.append("    if (c > b && a != ").append(i).append(") { c = m").append(i).append("(b, c) + Math.max(a, b); }\n");
+			s.append("    for (int i = 0; i < a; ++i) { c += i % 3 == 0 ? i : -i; }\n");
+			s.append("    return c;\n  }\n");
+		}
+		return s.append("}\n").toString();
+	}
+
+	private static CompilationUnitTree parse(final String source) throws IOException {
+		JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+		SimpleJavaFileObject file = new SimpleJavaFileObject(URI.create("string:///Large.java"), SimpleJavaFileObject.Kind.SOURCE) {
+			@Override
+			public CharSequence getCharContent(boolean ignoreEncodingErrors) {
+				return source;
+			}
+		};
+		JavacTask task = (JavacTask) compiler.getTask(null, null, null, null, null, Collections.singletonList(file));
+		return task.parse().iterator().next();
+	}
+
+	private static long countNodes(CompilationUnitTree cu) {
+		final long[] count = new long[1];
+		new TreeScanner<Void, Void>() {
+			@Override
+			public Void scan(Tree tree, Void p) {
+				if (tree != null) {
+					count[0]++;
+				}
+				return super.scan(tree, p);
+			}
+		}.scan(cu, null);
+		return count[0];
+	}
+
+	private static class PathHolder implements TreePathHolder {
+		private TreePath path;
+
+		@Override
+		public void setCurrentPath(TreePath path) {
+			this.path = path;
+		}
+
+		@Override
+		public TreePath getCurrentPath() {
+			return path;
+		}
+	}
+
+	private static class BenchmarkVisitor extends TreePathScannerContributors<Void, PathHolder, BenchmarkVisitor> {
+		//
+	}
+
+	private static class CountingContributor<T extends Tree> implements VisitorContributor<T, Void, PathHolder, BenchmarkVisitor> {
+		private long count;
+
+		@Override
+		public Void visit(BenchmarkVisitor visitor, T tree, PathHolder p) {
+			count++;
+			return null;
+		}
+	}
+
+	private static class PassFilter<T extends Tree> implements VisitorFilterContributor<T, Void, PathHolder, BenchmarkVisitor> {
+		@Override
+		public Void visit(BenchmarkVisitor visitor, T tree, PathHolder p, VisitorContributor<T, Void, PathHolder, BenchmarkVisitor> chain) {
+			return chain.visit(visitor, tree, p);
+		}
+	}
+
+	/**
+	 * the dispatch as it was done before the table: the node's interface is found with reflection and a filter chain is
+	 * allocated for each node that has filters.
+	 */
+	private static class ReflectiveDispatchScanner extends TreeScanner<Void, PathHolder> {
+		private final BenchmarkVisitor visitor;
+		private final Map<Class<?>, VisitorContributor<Tree, Void, PathHolder, BenchmarkVisitor>> contributors = new HashMap<Class<?>, VisitorContributor<Tree, Void, PathHolder, BenchmarkVisitor>>();
+		private final Map<Class<?>, Integer> filterCounts = new HashMap<Class<?>, Integer>();
+
+		public ReflectiveDispatchScanner(BenchmarkVisitor visitor) {
+			this.visitor = visitor;
+		}
+
+		@SuppressWarnings({ "unchecked", "rawtypes" })
+		private void put(Class<?> nodeClass, VisitorContributor contributor) {
+			contributors.put(nodeClass, contributor);
+		}
+
+		@Override
+		public Void scan(Tree tree, PathHolder p) {
+			if (tree == null) {
+				return null;
+			}
+			TreePath prev = p.getCurrentPath();
+			p.setCurrentPath(new TreePath(prev, tree));
+			try {
+				Class<?> iface = getTreeInteface(tree.getClass());
+				VisitorContributor<Tree, Void, PathHolder, BenchmarkVisitor> contributor = contributors.get(iface);
+				if (contributor != null) {
+					Integer filters = filterCounts.get(iface);
+					if (filters == null) {
+						contributor.visit(visitor, tree, p);
+					} else {
+						new Chain(contributor, filters).visit(visitor, tree, p);
+					}
+				}
+				return tree.accept(this, p);
+			}
+			finally {
+				p.setCurrentPath(prev);
+			}
+		}
+
+		private Class<?> getTreeInteface(Class<?> clazz) {
+			for (Type iface : clazz.getGenericInterfaces()) {
+				if (iface instanceof Class<?> && Tree.class.isAssignableFrom((Class<?>) iface)) {
+					return (Class<?>) iface;
+				}
+			}
+			return null;
+		}
+	}
+
+	private static class Chain implements VisitorContributor<Tree, Void, PathHolder, BenchmarkVisitor> {
+		private final VisitorContributor<Tree, Void, PathHolder, BenchmarkVisitor> contributor;
+		private final PassFilter<Tree> filter = new PassFilter<Tree>();
+		private final int filters;
+		private int nextFilter;
+
+		public Chain(VisitorContributor<Tree, Void, PathHolder, BenchmarkVisitor> contributor, int filters) {
+			this.contributor = contributor;
+			this.filters = filters;
+		}
+
+		@Override
+		public Void visit(BenchmarkVisitor visitor, Tree tree, PathHolder p) {
+			if (nextFilter < filters) {
+				nextFilter++;
+				return filter.visit(visitor, tree, p, this);
+			}
+			return contributor.visit(visitor, tree, p);
+		}
+	}
+}
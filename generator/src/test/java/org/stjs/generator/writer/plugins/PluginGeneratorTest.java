@@ -1,8 +1,11 @@
 package org.stjs.generator.writer.plugins;
 
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 import static org.stjs.generator.utils.GeneratorTestHelper.assertCodeContains;
 
 import org.junit.Test;
+import org.stjs.generator.plugin.GenerationPlugins;
 
 public class PluginGeneratorTest {
 	@Test
@@ -14,4 +17,21 @@ public class PluginGeneratorTest {
 	public void testFilter() {
 		assertCodeContains(Plugins2.class, "return ((a + 10) + 20)");
 	}
+
+	@Test
+	public void testPluginsKeptInAnnotationOrder() {
+		GenerationPlugins<Object> plugins = new GenerationPlugins<Object>();
+		assertSame(plugins.forClass(Plugins3.class), plugins.forClass(Plugins3.class));
+		assertNotSame(plugins.forClass(Plugins3.class), plugins.forClass(Plugins4.class));
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testSharedVisitorIsFrozen() {
+		new GenerationPlugins<Object>().getWriterVisitor().contribute(new ReplaceBinaryWriter<Object>());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testSharedPluginVisitorIsFrozen() {
+		new GenerationPlugins<Object>().forClass(Plugins2.class).getWriterVisitor().contribute(new ReplaceBinaryWriter<Object>());
+	}
 }
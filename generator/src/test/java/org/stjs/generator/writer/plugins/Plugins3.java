@@ -0,0 +1,10 @@
+package org.stjs.generator.writer.plugins;
+
+import org.stjs.javascript.annotation.UsePlugin;
+
+@UsePlugin({ "filter", "contributor" })
+public class Plugins3 {
+	int method(int a) {
+		return a + 10;
+	}
+}
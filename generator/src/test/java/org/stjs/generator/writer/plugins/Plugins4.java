@@ -0,0 +1,10 @@
+package org.stjs.generator.writer.plugins;
+
+import org.stjs.javascript.annotation.UsePlugin;
+
+@UsePlugin({ "contributor", "filter" })
+public class Plugins4 {
+	int method(int a) {
+		return a + 10;
+	}
+}
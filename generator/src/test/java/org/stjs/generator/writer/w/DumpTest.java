@@ -1,7 +1,7 @@
 package org.stjs.generator.writer.w;
 
 import org.junit.Test;
-import org.stjs.generator.utils.Timers;
+import org.stjs.generator.utils.GeneratorTestHelper;
 
 public class DumpTest {
 
@@ -13,7 +13,9 @@ public class DumpTest {
 				while (true) {
 					try {
 						sleep(1000);
-						Timers.dump();
+						for (String line : GeneratorTestHelper.getMetrics().getSummary(10)) {
+							System.out.println(line);
+						}
 					}
 					catch (InterruptedException e) {
 						// TODO Auto-generated catch block
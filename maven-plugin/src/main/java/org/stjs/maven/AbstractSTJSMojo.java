@@ -15,26 +15,26 @@
  */
 package org.stjs.maven;
 
-import java.io.BufferedOutputStream;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.OutputStream;
 import java.io.Writer;
 import java.net.URL;
 import java.net.URLClassLoader;
-import java.nio.charset.Charset;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.apache.maven.artifact.DependencyResolutionRequiredException;
 import org.apache.maven.plugin.AbstractMojo;
@@ -46,11 +46,6 @@ import org.codehaus.plexus.compiler.util.scan.SourceInclusionScanner;
 import org.codehaus.plexus.compiler.util.scan.mapping.SourceMapping;
 import org.codehaus.plexus.compiler.util.scan.mapping.SuffixMapping;
 import org.codehaus.plexus.util.DirectoryScanner;
-import org.jgrapht.DirectedGraph;
-import org.jgrapht.alg.CycleDetector;
-import org.jgrapht.graph.DefaultDirectedGraph;
-import org.jgrapht.graph.DefaultEdge;
-import org.jgrapht.traverse.TopologicalOrderIterator;
 import org.sonatype.plexus.build.incremental.BuildContext;
 import org.stjs.generator.ClassWithJavascript;
 import org.stjs.generator.GenerationDirectory;
@@ -58,15 +53,16 @@ import org.stjs.generator.Generator;
 import org.stjs.generator.GeneratorConfiguration;
 import org.stjs.generator.GeneratorConfigurationBuilder;
 import org.stjs.generator.JavascriptFileGenerationException;
+import org.stjs.generator.ModuleManifest;
 import org.stjs.generator.MultipleFileGenerationException;
 import org.stjs.generator.STJSClass;
+import org.stjs.generator.daemon.DaemonClient;
+import org.stjs.generator.daemon.GenerationRequest;
+import org.stjs.generator.metrics.GenerationMetrics;
 
+import com.google.common.base.Charsets;
 import com.google.common.io.Closeables;
 import com.google.common.io.Files;
-import com.google.debugging.sourcemap.SourceMapFormat;
-import com.google.debugging.sourcemap.SourceMapGenerator;
-import com.google.debugging.sourcemap.SourceMapGeneratorFactory;
-import com.google.debugging.sourcemap.SourceMapSection;
 
 /**
  * This is the Maven plugin that launches the Javascript generator. The plugin needs a list of packages containing the
@@ -80,6 +76,7 @@ import com.google.debugging.sourcemap.SourceMapSection;
 abstract public class AbstractSTJSMojo extends AbstractMojo {
 
 	private static final Object PACKAGE_INFO_JAVA = "package-info.java";
+	private static final int METRICS_SLOWEST_CLASSES = 10;
 
 	/**
 	 * @parameter expression="${project}"
@@ -149,6 +146,85 @@ abstract public class AbstractSTJSMojo extends AbstractMojo {
 	 */
 	private String sourceEncoding;
 
+	/**
+	 * The number of threads used to generate the JavaScript files. With the default value the files are generated one
+	 * after the other. The errors are reported in the same order regardless of this value.
+	 * 
+	 * @parameter expression="${threads}" default-value="1"
+	 */
+	protected int threads;
+
+	/**
+	 * Experimental: the maximum number of Java files parsed and analyzed together by the same javac task. Bigger batches
+	 * avoid rebuilding the symbol tables for each file, but need more memory. In a batch the classes see each other as
+	 * source code instead of compiled classes: the generator treats the elements declared in another file of the batch
+	 * as compiled elements when it looks for their tree, but the other lookups are not adapted, so the generated code is
+	 * not guaranteed to be the same as with single files. With the default value each file is parsed alone.
+	 * 
+	 * @parameter expression="${batchSize}" default-value="1"
+	 */
+	protected int batchSize;
+
+	/**
+	 * If true, the checks of the Java code are done while the JavaScript code is written, in a single traversal of each
+	 * file, instead of a separate traversal before. The same errors are reported.
+	 * 
+	 * @parameter expression="${singlePass}" default-value="false"
+	 */
+	protected boolean singlePass;
+
+	/**
+	 * If true, the JavaScript code is built as text fragments written directly to the output files, instead of building
+	 * first a Rhino synthax tree. The generated code is the same.
+	 * 
+	 * @parameter expression="${textBuilder}" default-value="false"
+	 */
+	protected boolean textBuilder;
+
+	/**
+	 * If true, the hash of each Java source file and the dependencies of each generated class are kept in a build index
+	 * in the build directory. Only the classes whose source (or the generator configuration) changed and the classes that
+	 * depend on them are then generated again. All the classes are generated again when the configuration, the generator
+	 * or a library of the classpath changes. Otherwise the timestamps of the .class files are used.
+	 * 
+	 * @parameter expression="${useBuildIndex}" default-value="true"
+	 */
+	protected boolean useBuildIndex;
+
+	/**
+	 * If true, a binary module manifest (META-INF/stjs.manifest) holding the information of all the .stjs files is
+	 * written in the build output directory. The generator looks up the classes in this manifest first, so a library
+	 * built with this option is read with a single file instead of one .stjs file per class.
+	 * 
+	 * @parameter expression="${generateManifest}" default-value="false"
+	 */
+	protected boolean generateManifest;
+
+	/**
+	 * If true, the generation is delegated to a generator daemon (started with the st-js-daemon command of the command
+	 * line distribution) that keeps the generator warm between builds. If the daemon cannot be reached, the files are
+	 * generated by the plugin.
+	 * 
+	 * @parameter expression="${useDaemon}" default-value="false"
+	 */
+	protected boolean useDaemon;
+
+	/**
+	 * The file where the generator daemon wrote its port.
+	 * 
+	 * @parameter expression="${daemonInfoFile}" default-value="${user.home}/.stjs/daemon.properties"
+	 */
+	protected File daemonInfoFile;
+
+	/**
+	 * If true, the time spent in each phase of the generation and for each class is measured. A summary is logged and all
+	 * the measures are written in a JSON file in the build directory (stjs/&lt;output directory&gt;-metrics.json). The
+	 * classes generated by the daemon are not measured.
+	 * 
+	 * @parameter expression="${generationMetrics}" default-value="false"
+	 */
+	protected boolean generationMetrics;
+
 	abstract protected List<String> getCompileSourceRoots();
 
 	abstract protected GenerationDirectory getGeneratedSourcesDirectory();
@@ -184,6 +260,9 @@ abstract public class AbstractSTJSMojo extends AbstractMojo {
 		GeneratorConfigurationBuilder configBuilder = new GeneratorConfigurationBuilder();
 		configBuilder.generateArrayHasOwnProperty(generateArrayHasOwnProperty);
 		configBuilder.generateSourceMap(generateSourceMap);
+		configBuilder.batchSize(batchSize);
+		configBuilder.singlePass(singlePass);
+		configBuilder.textBuilder(textBuilder);
 		if (sourceEncoding != null) {
 			configBuilder.sourceEncoding(sourceEncoding);
 		}
@@ -204,10 +283,25 @@ abstract public class AbstractSTJSMojo extends AbstractMojo {
 
 		GeneratorConfiguration configuration = configBuilder.build();
 		Generator generator = new Generator();
-		generator.init(builtProjectClassLoader, sourceEncoding);
+		generator.init(builtProjectClassLoader, sourceEncoding, threads);
+		GenerationMetrics metrics = null;
+		if (generationMetrics) {
+			metrics = new GenerationMetrics();
+			generator.addListener(metrics);
+		}
 
+		DaemonClient daemonClient = useDaemon ? findDaemon() : null;
 		int generatedFiles = 0;
 		boolean hasFailures = false;
+		List<PendingGeneration> pendingGenerations = new ArrayList<PendingGeneration>();
+		BuildIndex buildIndex = null;
+		Map<String, String> sourceHashes = new HashMap<String, String>();
+		Map<String, List<File>> changedSources = null;
+		Map<String, STJSClass> generatedClasses = new HashMap<String, STJSClass>();
+		if (useBuildIndex) {
+			buildIndex = loadBuildIndex(configuration);
+			changedSources = accumulateChangedSources(buildIndex, gendir, sourceHashes);
+		}
 		// scan the modified sources
 		for (String sourceRoot : getCompileSourceRoots()) {
 			File sourceDir = new File(sourceRoot);
@@ -215,7 +309,13 @@ abstract public class AbstractSTJSMojo extends AbstractMojo {
 			SourceMapping mapping = new SuffixMapping(".java", ".js");
 			SourceMapping stjsMapping = new SuffixMapping(".java", ".stjs");
 
-			sources = accumulateSources(gendir, sourceDir, mapping, stjsMapping, staleMillis);
+			if (changedSources != null) {
+				sources = changedSources.get(sourceRoot);
+			} else {
+				sources = accumulateSources(gendir, sourceDir, mapping, stjsMapping, staleMillis);
+			}
+			List<File> absoluteSources = new ArrayList<File>();
+			List<String> classNames = new ArrayList<String>();
 			for (File source : sources) {
 				if (source.getName().equals(PACKAGE_INFO_JAVA)) {
 					getLog().debug("Skipping " + source);
@@ -233,38 +333,80 @@ abstract public class AbstractSTJSMojo extends AbstractMojo {
 						getLog().error("Cannot create output directory:" + absoluteTarget.getParentFile());
 						continue;
 					}
-					String className = getClassNameForSource(source.getPath());
-					generator
-							.generateJavascript(builtProjectClassLoader, className, sourceDir, gendir, getBuildOutputDirectory(), configuration);
-					++generatedFiles;
+					absoluteSources.add(absoluteSource);
+					classNames.add(getClassNameForSource(source.getPath()));
 
 				} catch (InclusionScanException e) {
+					generator.close();
 					throw new MojoExecutionException("Cannot scan the source directory:" + e, e);
-				} catch (MultipleFileGenerationException e) {
-					for (JavascriptFileGenerationException jse : e.getExceptions()) {
-						buildContext.addMessage(jse.getSourcePosition().getFile(), jse.getSourcePosition().getLine(), jse.getSourcePosition()
-								.getColumn(), jse.getMessage(), BuildContext.SEVERITY_ERROR, null);
+				}
+			}
+			List<Future<ClassWithJavascript>> results = null;
+			if (daemonClient != null) {
+				try {
+					results = daemonClient.submitJavascriptGeneration(generator, builtProjectClassLoader, new GenerationRequest(
+							getClasspath(), classNames, sourceDir, gendir, getBuildOutputDirectory(), configuration));
+				} catch (IOException e) {
+					getLog().warn("Cannot use the generator daemon, the files are generated by the plugin:" + e);
+					daemonClient = null;
+				}
+			}
+			if (results == null) {
+				results = generator.submitJavascriptGeneration(builtProjectClassLoader, classNames, sourceDir, gendir, getBuildOutputDirectory(),
+						configuration);
+			}
+			for (int i = 0; i < results.size(); ++i) {
+				pendingGenerations.add(new PendingGeneration(absoluteSources.get(i), classNames.get(i), results.get(i)));
+			}
+		}
+
+		// the results are collected in the order the files were scanned, so the messages do not depend on the number of
+		// threads
+		for (PendingGeneration pending : pendingGenerations) {
+			try {
+				ClassWithJavascript generated = pending.getResult().get();
+				++generatedFiles;
+				if (generated instanceof STJSClass) {
+					generatedClasses.put(pending.getClassName(), (STJSClass) generated);
+				}
+				if (buildIndex != null) {
+					String className = pending.getClassName();
+					if (generated instanceof STJSClass) {
+						buildIndex.update(className, sourceHashes.get(className), false, ((STJSClass) generated).getDependencies());
+					} else {
+						buildIndex.update(className, sourceHashes.get(className), true, Collections.<String>emptyList());
 					}
-					hasFailures = true;
-					// continue with the next file
-				} catch (JavascriptFileGenerationException e) {
-					buildContext.addMessage(e.getSourcePosition().getFile(), e.getSourcePosition().getLine(), e.getSourcePosition().getColumn(),
-							e.getMessage(), BuildContext.SEVERITY_ERROR, null);
-					hasFailures = true;
-					// continue with the next file
-				} catch (Exception e) {
-					// TODO - maybe should filter more here
-					buildContext.addMessage(absoluteSource, 1, 1, e.toString(), BuildContext.SEVERITY_ERROR, e);
-					hasFailures = true;
-					// throw new MojoExecutionException("Error generating javascript:" + e, e);
 				}
+			} catch (InterruptedException e) {
+				generator.close();
+				Thread.currentThread().interrupt();
+				throw new MojoExecutionException("Interrupted while generating JavaScript", e);
+			} catch (ExecutionException e) {
+				if (buildIndex != null) {
+					// try again next time
+					buildIndex.remove(pending.getClassName());
+				}
+				reportGenerationError(pending.getSource(), e.getCause());
+				hasFailures = true;
+				// continue with the next file
 			}
 		}
 		generator.close();
+		if (buildIndex != null) {
+			storeBuildIndex(buildIndex);
+		}
+		File manifestFile = new File(getBuildOutputDirectory(), ModuleManifest.MANIFEST_FILE);
+		if (generateManifest && (generatedFiles > 0 || !manifestFile.exists())) {
+			writeModuleManifest(manifestFile, generatedClasses);
+		}
 		long t2 = System.currentTimeMillis();
 		getLog().info("Generated " + generatedFiles + " JavaScript files in " + (t2 - t1) + " ms");
+		if (metrics != null) {
+			reportMetrics(metrics);
+		}
 		if (generatedFiles > 0) {
 			filesGenerated(generator, gendir);
+			packFiles(gendir, generatedClasses, buildIndex);
 		}
 
 		if (hasFailures) {
@@ -272,118 +414,349 @@ abstract public class AbstractSTJSMojo extends AbstractMojo {
 		}
 	}
 
+	private DaemonClient findDaemon() {
+		try {
+			DaemonClient client = DaemonClient.find(daemonInfoFile);
+			if (client == null) {
+				getLog().warn("No generator daemon found in " + daemonInfoFile + ", the files are generated by the plugin");
+			}
+			return client;
+		} catch (IOException e) {
+			getLog().warn("Cannot read the generator daemon file " + daemonInfoFile + ":" + e);
+			return null;
+		}
+	}
+
 	/**
-	 * packs all the files in a single file
-	 * 
-	 * @param generator
-	 * @param gendir
-	 * @throws MojoFailureException
-	 * @throws MojoExecutionException
+	 * @return the elements of the classpath, except the build output directory, that changes with each compilation
 	 */
-	protected void packFiles(Generator generator, GenerationDirectory gendir) throws MojoFailureException, MojoExecutionException {
-		if (!pack) {
-			return;
+	private List<File> getLibraries() throws MojoExecutionException {
+		List<File> libraries = new ArrayList<File>();
+		File outputDirectory = getBuildOutputDirectory().getAbsoluteFile();
+		for (String element : getClasspath()) {
+			File library = new File(element).getAbsoluteFile();
+			if (!library.equals(outputDirectory)) {
+				libraries.add(library);
+			}
 		}
-		OutputStream allSourcesFile = null;
-		Writer packMapStream = null;
-		ClassLoader builtProjectClassLoader = getBuiltProjectClassLoader();
-		Map<String, File> currentProjectsFiles = new HashMap<String, File>();
+		return libraries;
+	}
 
-		// pack the files
+	private List<String> getClasspath() throws MojoExecutionException {
 		try {
-			DirectedGraph<String, DefaultEdge> dependencyGraph = new DefaultDirectedGraph<String, DefaultEdge>(DefaultEdge.class);
-			File outputFile = new File(gendir.getAbsolutePath(), project.getArtifactId() + ".js");
-			allSourcesFile = new BufferedOutputStream(new FileOutputStream(outputFile));
-			for (String sourceRoot : getCompileSourceRoots()) {
-				File sourceDir = new File(sourceRoot);
-				List<File> sources = new ArrayList<File>();
-				SourceMapping mapping = new SuffixMapping(".java", ".js");
-				SourceMapping stjsMapping = new SuffixMapping(".java", ".stjs");
+			return getClasspathElements();
+		} catch (DependencyResolutionRequiredException e) {
+			throw new MojoExecutionException("Cannot get the classpath:" + e, e);
+		}
+	}
 
-				// take all the files
-				sources = accumulateSources(gendir, sourceDir, mapping, stjsMapping, Integer.MIN_VALUE);
-				for (File source : sources) {
+	protected File getMetricsFile() {
+		return new File(project.getBuild().getDirectory(), "stjs/" + getBuildOutputDirectory().getName() + "-metrics.json");
+	}
 
-					File absoluteTarget = (File) mapping.getTargetFiles(gendir.getAbsolutePath(), source.getPath()).iterator().next();
+	private void reportMetrics(GenerationMetrics metrics) {
+		for (String line : metrics.getSummary(METRICS_SLOWEST_CLASSES)) {
+			getLog().info(line);
+		}
+		File metricsFile = getMetricsFile();
+		Writer writer = null;
+		try {
+			if (!metricsFile.getParentFile().mkdirs() && !metricsFile.getParentFile().isDirectory()) {
+				throw new IOException("Cannot create the folder " + metricsFile.getParentFile());
+			}
+			writer = Files.newWriter(metricsFile, Charsets.UTF_8);
+			metrics.writeJson(writer);
+			writer.flush();
+			getLog().info("The generation metrics were written in " + metricsFile);
+		} catch (IOException e) {
+			getLog().warn("Cannot write the generation metrics in " + metricsFile + ":" + e);
+		} finally {
+			Closeables.closeQuietly(writer);
+		}
+	}
+
+	protected File getBuildIndexFile() {
+		return new File(project.getBuild().getDirectory(), "stjs/" + getBuildOutputDirectory().getName() + ".index");
+	}
+
+	private BuildIndex loadBuildIndex(GeneratorConfiguration configuration) throws MojoExecutionException {
+		try {
+			return BuildIndex.load(getBuildIndexFile(), configuration, getLibraries());
+		} catch (IOException e) {
+			throw new MojoExecutionException("Cannot read the build index " + getBuildIndexFile() + ":" + e, e);
+		}
+	}
+
+	private void storeBuildIndex(BuildIndex buildIndex) {
+		try {
+			buildIndex.store();
+		} catch (IOException e) {
+			// the next build will simply generate more files
+			getLog().warn("Cannot write the build index " + getBuildIndexFile() + ":" + e);
+		}
+	}
+
+	/**
+	 * @return for each source root, the Java source files that changed since the last generation, plus the files
+	 *         depending on them. The returned files are relative to their source root. The hash of each source file is
+	 *         added to the given map.
+	 */
+	private Map<String, List<File>> accumulateChangedSources(BuildIndex buildIndex, GenerationDirectory gendir,
+			Map<String, String> sourceHashes) throws MojoExecutionException {
+		Map<String, List<File>> allSources = new LinkedHashMap<String, List<File>>();
+		Set<String> changedClasses = new HashSet<String>();
+
+		for (String sourceRoot : getCompileSourceRoots()) {
+			File sourceDir = new File(sourceRoot);
+			// take all the files, whatever the timestamps of their generated files
+			List<File> sources = new ArrayList<File>();
+			if (sourceDir.exists()) {
+				for (String source : scanAllSources(sourceDir)) {
+					sources.add(new File(source));
+				}
+			}
+			allSources.put(sourceRoot, sources);
+			for (File source : sources) {
+				String className = getClassNameForSource(source.getPath());
+				String hash;
+				try {
+					hash = BuildIndex.hashFile(new File(sourceDir, source.getPath()));
+				} catch (IOException e) {
+					throw new MojoExecutionException("Cannot read the source file " + source + ":" + e, e);
+				}
+				sourceHashes.put(className, hash);
+				if (!buildIndex.isUpToDate(className, hash) || !buildIndex.isBridge(className) && !hasGeneratedFiles(gendir, className)) {
+					changedClasses.add(className);
+				}
+			}
+		}
+
+		buildIndex.retainAll(sourceHashes.keySet());
+		Set<String> affectedClasses = buildIndex.withDependents(changedClasses);
+
+		Map<String, List<File>> result = new HashMap<String, List<File>>();
+		for (Map.Entry<String, List<File>> entry : allSources.entrySet()) {
+			List<File> sources = new ArrayList<File>();
+			for (File source : entry.getValue()) {
+				if (affectedClasses.contains(getClassNameForSource(source.getPath()))) {
+					sources.add(source);
+				}
+			}
+			result.put(entry.getKey(), sources);
+		}
+		return result;
+	}
+
+	/**
+	 * writes the manifest with all the .stjs files found in the build output directory. The information of the classes
+	 * that were not generated now is taken from the previous manifest, or from their .stjs file.
+	 */
+	private void writeModuleManifest(File manifestFile, Map<String, STJSClass> generatedClasses) throws MojoExecutionException {
+		try {
+			// the previous manifest is read in memory, as it's going to be replaced
+			ModuleManifest previous = manifestFile.exists() ? ModuleManifest.open(manifestFile) : null;
+
+			DirectoryScanner ds = new DirectoryScanner();
+			ds.setBasedir(getBuildOutputDirectory());
+			ds.setIncludes(new String[] { "**/*.stjs" });
+			ds.scan();
+
+			List<ModuleManifest.Entry> entries = new ArrayList<ModuleManifest.Entry>();
+			for (String stjsFile : ds.getIncludedFiles()) {
+				String className = stjsFile.substring(0, stjsFile.length() - ".stjs".length()).replace(File.separatorChar, '.');
+				STJSClass generated = generatedClasses.get(className);
+				ModuleManifest.Entry entry = null;
+				if (generated != null) {
+					entry = generated.toManifestEntry();
+				} else if (previous != null) {
+					entry = previous.find(className);
+				}
+				if (entry == null) {
+					entry = STJSClass.loadManifestEntry(new File(getBuildOutputDirectory(), stjsFile), className);
+				}
+				entries.add(entry);
+			}
+
+			File tempFile = new File(manifestFile.getPath() + ".tmp");
+			ModuleManifest.write(tempFile, entries);
+			if (manifestFile.exists() && !manifestFile.delete() || !tempFile.renameTo(manifestFile)) {
+				throw new IOException("Cannot replace the file " + manifestFile);
+			}
+			getLog().debug("Wrote the manifest of " + entries.size() + " classes in " + manifestFile);
+		} catch (IOException e) {
+			throw new MojoExecutionException("Cannot write the module manifest " + manifestFile + ":" + e, e);
+		}
+	}
+
+	private boolean hasGeneratedFiles(GenerationDirectory gendir, String className) {
+		String path = className.replace('.', File.separatorChar);
+		return new File(gendir.getAbsolutePath(), path + ".js").exists() && new File(getBuildOutputDirectory(), path + ".stjs").exists();
+	}
+
+	private void reportGenerationError(File absoluteSource, Throwable error) {
+		if (error instanceof Error) {
+			throw (Error) error;
+		}
+		if (error instanceof MultipleFileGenerationException) {
+			for (JavascriptFileGenerationException jse : ((MultipleFileGenerationException) error).getExceptions()) {
+				buildContext.addMessage(jse.getSourcePosition().getFile(), jse.getSourcePosition().getLine(), jse.getSourcePosition()
+						.getColumn(), jse.getMessage(), BuildContext.SEVERITY_ERROR, null);
+			}
+		} else if (error instanceof JavascriptFileGenerationException) {
+			JavascriptFileGenerationException e = (JavascriptFileGenerationException) error;
+			buildContext.addMessage(e.getSourcePosition().getFile(), e.getSourcePosition().getLine(), e.getSourcePosition().getColumn(),
+					e.getMessage(), BuildContext.SEVERITY_ERROR, null);
+		} else {
+			// TODO - maybe should filter more here
+			buildContext.addMessage(absoluteSource, 1, 1, error.toString(), BuildContext.SEVERITY_ERROR, error);
+		}
+	}
 
-					String className = getClassNameForSource(source.getPath());
-					if (!absoluteTarget.exists()) {
+	/**
+	 * packs all the generated files of the project in a single file, each class being written after the classes it
+	 * depends on. The dependencies come from the classes generated now, or from the build index or the .stjs files of
+	 * the classes that did not change.
+	 */
+	protected void packFiles(GenerationDirectory gendir, Map<String, STJSClass> generatedClasses, BuildIndex buildIndex)
+			throws MojoFailureException {
+		if (!pack) {
+			return;
+		}
+		PackWriter packWriter = null;
+		try {
+			Map<String, File> projectFiles = new LinkedHashMap<String, File>();
+			for (String sourceRoot : getCompileSourceRoots()) {
+				File sourceDir = new File(sourceRoot);
+				if (!sourceDir.exists()) {
+					continue;
+				}
+				for (String source : scanAllSources(sourceDir)) {
+					String className = getClassNameForSource(source);
+					File targetFile = new File(gendir.getAbsolutePath(), source.substring(0, source.length() - ".java".length()) + ".js");
+					if (!targetFile.exists()) {
 						getLog().debug(className + " is a bridge. Don't add it to the pack file");
 						continue;
 					}
-					// add this file to the hashmap to know that this class is part of the project
-					currentProjectsFiles.put(className, absoluteTarget);
-					ClassWithJavascript cjs = generator.getExistingStjsClass(builtProjectClassLoader,
-							builtProjectClassLoader.loadClass(className));
-					dependencyGraph.addVertex(className);
-					for (ClassWithJavascript dep : cjs.getDirectDependencies()) {
-						if (dep instanceof STJSClass) {
-							dependencyGraph.addVertex(dep.getClassName());
-							dependencyGraph.addEdge(dep.getClassName(), className);
-						}
-					}
-
+					projectFiles.put(className, targetFile);
 				}
 			}
 
-			// check for cycles
-			Set<String> cycles = new CycleDetector<String, DefaultEdge>(dependencyGraph).findCycles();
-			if (!cycles.isEmpty()) {
-				throw new Exception("Cycles are detected in the dependency graph:\n" + cycles.toString().replace(',', '\n')
-						+ "\n Please fix the problem before continuing or disable the packing");
+			Map<String, Collection<String>> dependencies = new HashMap<String, Collection<String>>();
+			for (String className : projectFiles.keySet()) {
+				dependencies.put(className, getDependencies(className, generatedClasses, buildIndex));
 			}
+
 			// dump all the files in the dependency order in the pack file
-			List<SourceMapSection> sourceMapSections = new ArrayList<SourceMapSection>();
-
-			int currentLine = 0;
-			Iterator<String> it = new TopologicalOrderIterator<String, DefaultEdge>(dependencyGraph);
-			while (it.hasNext()) {
-				File targetFile = currentProjectsFiles.get(it.next());
-				if (targetFile != null) {
-					// for this project's files
-					if (generateSourceMap) {
-						currentLine = appendFileSkipSourceMap(targetFile, outputFile, allSourcesFile, currentLine, sourceMapSections);
-					} else {
-						Files.copy(targetFile, allSourcesFile);
-					}
-					allSourcesFile.write('\n');
-					allSourcesFile.flush();
-				}
+			File outputFile = new File(gendir.getAbsolutePath(), project.getArtifactId() + ".js");
+			packWriter = new PackWriter(outputFile, generateSourceMap);
+			for (String className : sortByDependencies(projectFiles.keySet(), dependencies)) {
+				packWriter.append(projectFiles.get(className));
 			}
+			packWriter.close();
 
 			if (generateSourceMap) {
-				SourceMapGenerator packSourceMap = SourceMapGeneratorFactory.getInstance(SourceMapFormat.V3);
-				File packMapFile = new File(gendir.getAbsolutePath(), project.getArtifactId() + ".map");
-				packMapStream = new BufferedWriter(new FileWriter(packMapFile));
-				packSourceMap.appendIndexMapTo(packMapStream, outputFile.getName(), sourceMapSections);
+				packWriter.writeIndexMap(new File(gendir.getAbsolutePath(), project.getArtifactId() + ".map"));
 			}
-
-		} catch (Exception ex) {
+		} catch (IOException ex) {
 			throw new MojoFailureException("Error when packing files:" + ex.getMessage(), ex);
 		} finally {
-			Closeables.closeQuietly(allSourcesFile);
-			Closeables.closeQuietly(packMapStream);
+			Closeables.closeQuietly(packWriter);
 		}
+	}
+
+	/**
+	 * @return all the Java source files of the given folder, relative to this folder
+	 */
+	private List<String> scanAllSources(File sourceDir) {
+		DirectoryScanner ds = new DirectoryScanner();
+		ds.setBasedir(sourceDir);
+		ds.setIncludes(includes.isEmpty() ? new String[] { "**/*.java" } : includes.toArray(new String[includes.size()]));
+		ds.setExcludes(excludes.toArray(new String[excludes.size()]));
+		ds.addDefaultExcludes();
+		ds.scan();
 
+		List<String> sources = new ArrayList<String>();
+		for (String file : ds.getIncludedFiles()) {
+			if (file.endsWith(".java") && !new File(file).getName().equals(PACKAGE_INFO_JAVA)) {
+				sources.add(file);
+			}
+		}
+		return sources;
 	}
 
-	private int appendFileSkipSourceMap(File targetFile, File packFile, OutputStream allSourcesFile, int currentLine,
-			List<SourceMapSection> sections) throws IOException {
-		List<String> lines = Files.readLines(targetFile, sourceEncoding != null ? Charset.forName(sourceEncoding) : Charset.defaultCharset());
-		// remove the @SourceMap stuff
-		for (int i = 0; i < lines.size() - 1; ++i) {
-			allSourcesFile.write(lines.get(i).getBytes());
-			allSourcesFile.write('\n');
+	private Collection<String> getDependencies(String className, Map<String, STJSClass> generatedClasses, BuildIndex buildIndex)
+			throws IOException {
+		STJSClass generated = generatedClasses.get(className);
+		if (generated != null) {
+			return generated.getDependencies();
 		}
+		if (buildIndex != null) {
+			Collection<String> dependencies = buildIndex.getDependencies(className);
+			if (dependencies != null) {
+				return dependencies;
+			}
+		}
+		File stjsFile = new File(getBuildOutputDirectory(), className.replace('.', File.separatorChar) + ".stjs");
+		return STJSClass.loadManifestEntry(stjsFile, className).getDependencies();
+	}
 
-		sections.add(SourceMapSection.forMap(getRelativeSourceMapFileName(targetFile, packFile), currentLine, 0));
-		return currentLine + lines.size() - 1;
+	/**
+	 * @return the given classes, each class coming after the classes of the same collection it depends on. The order
+	 *         of the classes that do not depend on each other is kept.
+	 * @throws MojoFailureException
+	 *             if the classes depend on each other in a cycle
+	 */
+	private List<String> sortByDependencies(Collection<String> classNames, Map<String, Collection<String>> dependencies)
+			throws MojoFailureException {
+		List<String> sorted = new ArrayList<String>(classNames.size());
+		Set<String> done = new HashSet<String>();
+		// the classes being visited, with the dependencies that are still to be visited
+		Set<String> visiting = new HashSet<String>();
+		Deque<String> path = new ArrayDeque<String>();
+		Deque<Iterator<String>> pendingDependencies = new ArrayDeque<Iterator<String>>();
+		for (String className : classNames) {
+			if (done.contains(className)) {
+				continue;
+			}
+			visiting.add(className);
+			path.push(className);
+			pendingDependencies.push(dependencies.get(className).iterator());
+			while (!path.isEmpty()) {
+				Iterator<String> it = pendingDependencies.peek();
+				if (it.hasNext()) {
+					String dep = it.next();
+					if (visiting.contains(dep)) {
+						throw new MojoFailureException("Error when packing files: a cycle is detected in the dependency graph:\n"
+								+ getCycle(path, dep) + "\n Please fix the problem before continuing or disable the packing");
+					}
+					if (dependencies.containsKey(dep) && !done.contains(dep)) {
+						visiting.add(dep);
+						path.push(dep);
+						pendingDependencies.push(dependencies.get(dep).iterator());
+					}
+				} else {
+					String current = path.pop();
+					pendingDependencies.pop();
+					visiting.remove(current);
+					done.add(current);
+					sorted.add(current);
+				}
+			}
+		}
+		return sorted;
 	}
 
-	private String getRelativeSourceMapFileName(File targetFile, File packFile) {
-		// remove the common folder name from the target file name
-		String relativeName = targetFile.getAbsolutePath().substring(packFile.getParentFile().getAbsolutePath().length() + 1);
-		return relativeName.replace(".js", ".map");
+	private static String getCycle(Deque<String> path, String start) {
+		StringBuilder s = new StringBuilder();
+		boolean inCycle = false;
+		for (Iterator<String> it = path.descendingIterator(); it.hasNext();) {
+			String className = it.next();
+			inCycle = inCycle || className.equals(start);
+			if (inCycle) {
+				s.append(className).append(" -> ");
+			}
+		}
+		return s.append(start).toString();
 	}
 
 	protected void filesGenerated(Generator generator, GenerationDirectory gendir) throws MojoFailureException, MojoExecutionException {
@@ -393,9 +766,6 @@ abstract public class AbstractSTJSMojo extends AbstractMojo {
 		} catch (Exception ex) {
 			throw new MojoFailureException("Error when copying support files:" + ex.getMessage(), ex);
 		}
-
-		packFiles(generator, gendir);
-
 	}
 
 	/**
@@ -490,4 +860,31 @@ abstract public class AbstractSTJSMojo extends AbstractMojo {
 		return scanner;
 	}
 
+	/**
+	 * a Java source file for which the generation was submitted
+	 */
+	private static class PendingGeneration {
+		private final File source;
+		private final String className;
+		private final Future<ClassWithJavascript> result;
+
+		public PendingGeneration(File source, String className, Future<ClassWithJavascript> result) {
+			this.source = source;
+			this.className = className;
+			this.result = result;
+		}
+
+		public File getSource() {
+			return source;
+		}
+
+		public String getClassName() {
+			return className;
+		}
+
+		public Future<ClassWithJavascript> getResult() {
+			return result;
+		}
+	}
+
 }
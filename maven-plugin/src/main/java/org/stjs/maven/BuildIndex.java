@@ -0,0 +1,303 @@
+/**
+ *  Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.stjs.maven;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.net.URISyntaxException;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.stjs.generator.Generator;
+import org.stjs.generator.GeneratorConfiguration;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
+import com.google.common.io.Closeables;
+import com.google.common.io.Files;
+
+/**
+ * This class keeps, between two builds, the hash of each Java source file that was generated, the hash of the generator
+ * configuration used and the classes each generated class depends on. It is used to regenerate only the classes whose
+ * source changed and the classes that depend on them (directly or not), as a change in a class may change the code
+ * generated for its users (templates, inlined constants etc). The index is dropped when the configuration, the
+ * generator or one of the libraries of the classpath changes, as they can change the code generated for any class.
+ */
+public class BuildIndex {
+	private static final String CONFIGURATION_KEY = ".configuration";
+	private static final String BRIDGE = "B";
+	private static final String GENERATED = "G";
+	private static final char SEPARATOR = ';';
+	private static final char HEX[] = "0123456789abcdef".toCharArray();
+
+	private final File file;
+	private final String configurationHash;
+	private final Map<String, Entry> entries = new HashMap<String, Entry>();
+
+	private BuildIndex(File file, String configurationHash) {
+		this.file = file;
+		this.configurationHash = configurationHash;
+	}
+
+	/**
+	 * loads the index of a build without libraries, see {@link #load(File, GeneratorConfiguration, Collection)}
+	 */
+	public static BuildIndex load(File file, GeneratorConfiguration configuration) throws IOException {
+		return load(file, configuration, Collections.<File>emptyList());
+	}
+
+	/**
+	 * loads the index from the given file. If the file does not exist or was built with another configuration, another
+	 * generator or other versions of the given libraries (jars or folders), an empty index is returned.
+	 */
+	public static BuildIndex load(File file, GeneratorConfiguration configuration, Collection<File> libraries) throws IOException {
+		BuildIndex index = new BuildIndex(file, hashConfiguration(configuration, libraries));
+		if (!file.exists()) {
+			return index;
+		}
+		Properties props = new Properties();
+		InputStream input = null;
+		try {
+			input = Files.newInputStreamSupplier(file).getInput();
+			props.load(input);
+		}
+		finally {
+			Closeables.closeQuietly(input);
+		}
+		if (!index.configurationHash.equals(props.getProperty(CONFIGURATION_KEY))) {
+			// everything has to be generated again
+			return index;
+		}
+		for (String className : props.stringPropertyNames()) {
+			if (!className.equals(CONFIGURATION_KEY)) {
+				index.entries.put(className, Entry.parse(props.getProperty(className)));
+			}
+		}
+		return index;
+	}
+
+	public void store() throws IOException {
+		Properties props = new Properties();
+		props.setProperty(CONFIGURATION_KEY, configurationHash);
+		for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+			props.setProperty(entry.getKey(), entry.getValue().toString());
+		}
+		if (!file.getParentFile().mkdirs() && !file.getParentFile().isDirectory()) {
+			throw new IOException("Cannot create the folder of the build index " + file);
+		}
+		Writer writer = null;
+		try {
+			writer = Files.newWriter(file, Charsets.UTF_8);
+			props.store(writer, "Generated by STJS");
+		}
+		finally {
+			Closeables.closeQuietly(writer);
+		}
+	}
+
+	/**
+	 * @return true if the class was generated from a source with the given hash, with the same configuration
+	 */
+	public boolean isUpToDate(String className, String sourceHash) {
+		Entry entry = entries.get(className);
+		return entry != null && entry.sourceHash.equals(sourceHash);
+	}
+
+	public boolean isBridge(String className) {
+		Entry entry = entries.get(className);
+		return entry != null && entry.bridge;
+	}
+
+	/**
+	 * @return the classes the given class depended on when it was generated, or null if the class is not in the index
+	 */
+	public Collection<String> getDependencies(String className) {
+		Entry entry = entries.get(className);
+		return entry == null ? null : entry.dependencies;
+	}
+
+	/**
+	 * @return the given classes and all the classes that depend on them, directly or not
+	 */
+	public Set<String> withDependents(Collection<String> classNames) {
+		Map<String, Set<String>> dependents = new HashMap<String, Set<String>>();
+		for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+			for (String dep : entry.getValue().dependencies) {
+				Set<String> users = dependents.get(dep);
+				if (users == null) {
+					users = new HashSet<String>();
+					dependents.put(dep, users);
+				}
+				users.add(entry.getKey());
+			}
+		}
+
+		Set<String> result = new LinkedHashSet<String>(classNames);
+		Deque<String> toVisit = new ArrayDeque<String>(classNames);
+		while (!toVisit.isEmpty()) {
+			Set<String> users = dependents.get(toVisit.pop());
+			if (users != null) {
+				for (String user : users) {
+					if (result.add(user)) {
+						toVisit.push(user);
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	public void update(String className, String sourceHash, boolean bridge, Collection<String> dependencies) {
+		entries.put(className, new Entry(sourceHash, bridge, dependencies));
+	}
+
+	public void remove(String className) {
+		entries.remove(className);
+	}
+
+	/**
+	 * removes the classes that are not in the given collection (i.e. their source files were deleted)
+	 */
+	public void retainAll(Collection<String> classNames) {
+		entries.keySet().retainAll(classNames);
+	}
+
+	public static String hashFile(File file) throws IOException {
+		return toHex(Files.getDigest(file, newDigest()));
+	}
+
+	/**
+	 * all the options of the configuration are hashed, as any of them may change the generated files
+	 */
+	static String hashConfiguration(GeneratorConfiguration configuration, Collection<File> libraries) {
+		StringBuilder s = new StringBuilder();
+		appendStamp(s, getGeneratorLocation());
+		for (File library : libraries) {
+			appendStamp(s, library);
+		}
+		s.append(new TreeSet<String>(configuration.getAllowedPackages())).append(SEPARATOR);
+		s.append(new TreeSet<String>(configuration.getAllowedJavaLangClasses())).append(SEPARATOR);
+		s.append(configuration.isGenerateArrayHasOwnProperty()).append(SEPARATOR);
+		s.append(configuration.isGenerateSourceMap()).append(SEPARATOR);
+		s.append(configuration.getSourceEncoding()).append(SEPARATOR);
+		s.append(configuration.getBatchSize()).append(SEPARATOR);
+		s.append(configuration.isSinglePass()).append(SEPARATOR);
+		s.append(configuration.isTextBuilder());
+		return toHex(newDigest().digest(s.toString().getBytes(Charsets.UTF_8)));
+	}
+
+	/**
+	 * @return the jar (or the folder) the generator was loaded from, null if it's unknown
+	 */
+	private static File getGeneratorLocation() {
+		CodeSource codeSource = Generator.class.getProtectionDomain().getCodeSource();
+		if (codeSource == null || codeSource.getLocation() == null) {
+			return null;
+		}
+		try {
+			return new File(codeSource.getLocation().toURI());
+		}
+		catch (URISyntaxException e) {
+			return null;
+		}
+		catch (IllegalArgumentException e) {
+			// not a file URL
+			return null;
+		}
+	}
+
+	/**
+	 * appends the path, the size and the modification time of the file or, for a folder, of all the files it contains
+	 */
+	private static void appendStamp(StringBuilder s, File file) {
+		if (file == null) {
+			return;
+		}
+		s.append(file.getAbsolutePath()).append('=');
+		appendContentStamp(s, file);
+		s.append(SEPARATOR);
+	}
+
+	private static void appendContentStamp(StringBuilder s, File file) {
+		File[] children = file.listFiles();
+		if (children == null) {
+			s.append(file.length()).append('@').append(file.lastModified()).append(',');
+			return;
+		}
+		Arrays.sort(children);
+		for (File child : children) {
+			s.append(child.getName()).append(':');
+			appendContentStamp(s, child);
+		}
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("MD5");
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static String toHex(byte[] bytes) {
+		char[] chars = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; ++i) {
+			chars[2 * i] = HEX[(bytes[i] >> 4) & 0xf];
+			chars[2 * i + 1] = HEX[bytes[i] & 0xf];
+		}
+		return new String(chars);
+	}
+
+	private static final class Entry {
+		private final String sourceHash;
+		private final boolean bridge;
+		private final Collection<String> dependencies;
+
+		public Entry(String sourceHash, boolean bridge, Collection<String> dependencies) {
+			this.sourceHash = sourceHash;
+			this.bridge = bridge;
+			this.dependencies = dependencies;
+		}
+
+		public static Entry parse(String value) {
+			String[] parts = value.split(String.valueOf(SEPARATOR), -1);
+			List<String> dependencies = parts[2].length() == 0 ? Collections.<String>emptyList() : Arrays.asList(parts[2].split(","));
+			return new Entry(parts[0], BRIDGE.equals(parts[1]), dependencies);
+		}
+
+		@Override
+		public String toString() {
+			return sourceHash + SEPARATOR + (bridge ? BRIDGE : GENERATED) + SEPARATOR + Joiner.on(',').join(dependencies);
+		}
+	}
+}
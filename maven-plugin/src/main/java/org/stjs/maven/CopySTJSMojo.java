@@ -18,16 +18,30 @@ package org.stjs.maven;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
-import java.net.URL;
+import java.io.InputStream;
+import java.io.Writer;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.jar.JarInputStream;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.project.MavenProject;
 import org.sonatype.plexus.build.incremental.BuildContext;
+import org.stjs.generator.ModuleManifest;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Closeables;
+import com.google.common.io.Files;
 
 /**
  * This Maven plugin copies the Javascript (generated or bridged) from dependencies to the final artifact
@@ -41,6 +55,10 @@ import org.sonatype.plexus.build.incremental.BuildContext;
 public class CopySTJSMojo extends AbstractMojo {
 
 	private static final String STJS_LIBRARY_ENTRY = "STJS-Library";
+	private static final String DESTINATION_KEY = ".destination";
+	private static final String LIBRARY = "L";
+	private static final String NOT_LIBRARY = "N";
+	private static final char SEPARATOR = ';';
 
 	/**
 	 * @parameter expression="${project}"
@@ -71,43 +89,180 @@ public class CopySTJSMojo extends AbstractMojo {
 	 */
 	private File generatedSourcesDirectory;
 
+	/**
+	 * If true, the size and the modification time of each jar of the classpath are kept in the build directory, and the
+	 * jars that did not change since the previous build are not opened again. In the libraries that changed, only the
+	 * files that differ from the ones already copied are written.
+	 *
+	 * @parameter expression="${incrementalCopy}" default-value="true"
+	 */
+	protected boolean incrementalCopy;
+
+	/**
+	 * The number of libraries copied at the same time.
+	 *
+	 * @parameter expression="${threads}" default-value="1"
+	 */
+	protected int threads;
+
 	@Override
 	public void execute() throws MojoExecutionException, MojoFailureException {
 		getLog().info("Copying javascript files from dependencies to this artifact");
 
-		try {
-			FilenameFilter skipClasses = new FilenameFilter() {
-				public boolean accept(File dir, String name) {
-					name = name.toLowerCase();
-					return !name.endsWith(".class");
+		File indexFile = getCopyIndexFile();
+		Properties previousIndex = incrementalCopy ? loadCopyIndex(indexFile) : new Properties();
+		if (!generatedSourcesDirectory.getAbsolutePath().equals(previousIndex.getProperty(DESTINATION_KEY))
+				|| !generatedSourcesDirectory.isDirectory()) {
+			// the files may have to be copied again
+			previousIndex.clear();
+		}
+		Properties index = new Properties();
+		index.setProperty(DESTINATION_KEY, generatedSourcesDirectory.getAbsolutePath());
+
+		List<File> libraries = new ArrayList<File>();
+		int unchanged = 0;
+		for (String element : getCompileClasspathElements()) {
+			File jar = new File(element);
+			if (!element.endsWith(".jar") || !jar.isFile()) {// TODO: is this enough !?
+				continue;
+			}
+			String fingerprint = getFingerprint(jar);
+			String previous = previousIndex.getProperty(jar.getAbsolutePath());
+			if (previous != null && previous.startsWith(fingerprint)) {
+				index.setProperty(jar.getAbsolutePath(), previous);
+				++unchanged;
+				continue;
+			}
+			try {
+				if (isStjsLibrary(jar)) {
+					libraries.add(jar);
+				} else {
+					index.setProperty(jar.getAbsolutePath(), fingerprint + NOT_LIBRARY);
 				}
-			};
+			} catch (IOException notfound) {
+				// skip to the next
+			}
+		}
 
-			@SuppressWarnings("unchecked")
-			List<String> runtimeClasspathElements = project.getCompileClasspathElements();
-			for (int i = 0; i < runtimeClasspathElements.size(); i++) {
-				String element = runtimeClasspathElements.get(i);
-				URL dep = new File(element).toURI().toURL();
-				try {
-					if (dep.getPath().endsWith(".jar")) {// TODO: is this enough !?
-						Manifest manifest = new JarInputStream(dep.openStream()).getManifest();
-						if (manifest != null) {
-							String isStjsLibrary = manifest.getMainAttributes().getValue(STJS_LIBRARY_ENTRY);
-							if ("true".equals(isStjsLibrary)) {
-								// these are directories relative to the jar's root
-								URL jsDirectoryURL = new URL("jar:" + dep + "!/");
-								getLog().info("Copy directory:" + jsDirectoryURL);
-								FileCopier.copyResourcesRecursively(jsDirectoryURL, generatedSourcesDirectory, skipClasses);
-							}
-						}
+		copyLibraries(libraries, index);
+		if (unchanged > 0) {
+			getLog().info("Skipped " + unchanged + " unchanged jars");
+		}
+		if (incrementalCopy) {
+			storeCopyIndex(indexFile, index);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private List<String> getCompileClasspathElements() throws MojoExecutionException {
+		try {
+			return project.getCompileClasspathElements();
+		} catch (DependencyResolutionRequiredException ex) {
+			throw new MojoExecutionException("Cannot get the classpath:" + ex, ex);
+		}
+	}
+
+	/**
+	 * copies the files of the given libraries, using the configured number of threads. The libraries that were copied
+	 * are added to the index.
+	 */
+	private void copyLibraries(List<File> libraries, Properties index) throws MojoExecutionException {
+		final FilenameFilter skipClasses = new FilenameFilter() {
+			public boolean accept(File dir, String name) {
+				name = name.toLowerCase();
+				return !name.endsWith(".class");
+			}
+		};
+
+		// without the index, all the files are written again
+		final long granularityMillis = incrementalCopy ? staleMillis : -1;
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, libraries.size())));
+		try {
+			List<Future<Integer>> results = new ArrayList<Future<Integer>>(libraries.size());
+			for (final File jar : libraries) {
+				results.add(executor.submit(new Callable<Integer>() {
+					@Override
+					public Integer call() throws IOException {
+						return FileCopier.extractJar(jar, generatedSourcesDirectory, skipClasses, granularityMillis);
 					}
-				} catch (IOException notfound) {
-					// skip to the next
+				}));
+			}
+
+			for (int i = 0; i < libraries.size(); ++i) {
+				File jar = libraries.get(i);
+				try {
+					int written = results.get(i).get();
+					getLog().info("Copied " + written + " files from " + jar);
+					index.setProperty(jar.getAbsolutePath(), getFingerprint(jar) + LIBRARY);
+				} catch (ExecutionException e) {
+					// it will be copied again next time
+					getLog().warn("Cannot copy the files of " + jar + ":" + e.getCause());
 				}
 			}
-		} catch (Exception ex) {
-			throw new MojoExecutionException("Cannot get builtProjectClassLoader:" + ex, ex);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Interrupted while copying the libraries", e);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static String getFingerprint(File jar) {
+		return jar.length() + String.valueOf(SEPARATOR) + jar.lastModified() + SEPARATOR;
+	}
+
+	protected File getCopyIndexFile() {
+		return new File(project.getBuild().getDirectory(), "stjs/copy-js.index");
+	}
+
+	private Properties loadCopyIndex(File indexFile) {
+		Properties index = new Properties();
+		if (!indexFile.exists()) {
+			return index;
+		}
+		InputStream input = null;
+		try {
+			input = Files.newInputStreamSupplier(indexFile).getInput();
+			index.load(input);
+		} catch (IOException e) {
+			getLog().warn("Cannot read " + indexFile + ", all the libraries are copied:" + e);
+			index.clear();
+		} finally {
+			Closeables.closeQuietly(input);
+		}
+		return index;
+	}
+
+	private void storeCopyIndex(File indexFile, Properties index) {
+		Writer writer = null;
+		try {
+			if (!indexFile.getParentFile().mkdirs() && !indexFile.getParentFile().isDirectory()) {
+				throw new IOException("Cannot create the folder " + indexFile.getParentFile());
+			}
+			writer = Files.newWriter(indexFile, Charsets.UTF_8);
+			index.store(writer, "Generated by STJS");
+		} catch (IOException e) {
+			// the next build will simply copy all the libraries
+			getLog().warn("Cannot write " + indexFile + ":" + e);
+		} finally {
+			Closeables.closeQuietly(writer);
 		}
+	}
 
+	/**
+	 * @return true if the jar was built by STJS: it contains the module manifest or it's marked as a STJS library in its
+	 *         MANIFEST.MF
+	 */
+	private boolean isStjsLibrary(File jar) throws IOException {
+		JarFile jarFile = new JarFile(jar);
+		try {
+			if (jarFile.getEntry(ModuleManifest.MANIFEST_FILE) != null) {
+				return true;
+			}
+			Manifest manifest = jarFile.getManifest();
+			return manifest != null && "true".equals(manifest.getMainAttributes().getValue(STJS_LIBRARY_ENTRY));
+		} finally {
+			jarFile.close();
+		}
 	}
 }
@@ -25,6 +25,15 @@ import org.codehaus.plexus.util.StringUtils;
  * 
  */
 public class FileCopier {
+	private static final int EXTRACT_BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * the folder whose files are found in most of the jars (MANIFEST.MF, maven descriptors). Its files are extracted by
+	 * one jar at a time, so the jars extracted in parallel do not write the same file at the same time.
+	 */
+	private static final String SHARED_FOLDER = "META-INF/";
+	private static final Object SHARED_FOLDER_LOCK = new Object();
+
 	public static boolean copyFile(final File toCopy, final File destFile) {
 		try {
 			return copyStream(new FileInputStream(toCopy), new FileOutputStream(destFile));
@@ -90,6 +99,85 @@ public class FileCopier {
 		return true;
 	}
 
+	/**
+	 * extracts the files of the given jar accepted by the filter to the destination folder. The files that were already
+	 * extracted (same size and same modification time, within the given granularity) are not written again. Several
+	 * jars can be extracted at the same time in the same folder.
+	 * 
+	 * @return the number of written files
+	 */
+	public static int extractJar(final File jar, final File destDir, FilenameFilter filter, long granularityMillis) throws IOException {
+		final String destPath = destDir.getCanonicalPath() + File.separator;
+		final byte[] buf = new byte[EXTRACT_BUFFER_SIZE];
+		int written = 0;
+		final JarFile jarFile = new JarFile(jar);
+		try {
+			for (final Enumeration<JarEntry> e = jarFile.entries(); e.hasMoreElements();) {
+				final JarEntry entry = e.nextElement();
+				if (entry.isDirectory() || !filter.accept(destDir, entry.getName())) {
+					continue;
+				}
+				final File f = new File(destDir, entry.getName());
+				if (!f.getCanonicalPath().startsWith(destPath)) {
+					throw new IOException("The entry " + entry.getName() + " of " + jar + " is outside the destination folder");
+				}
+				boolean extracted;
+				if (entry.getName().startsWith(SHARED_FOLDER)) {
+					synchronized (SHARED_FOLDER_LOCK) {
+						extracted = extractEntry(jarFile, entry, f, buf, granularityMillis);
+					}
+				} else {
+					extracted = extractEntry(jarFile, entry, f, buf, granularityMillis);
+				}
+				if (extracted) {
+					++written;
+				}
+			}
+		}
+		finally {
+			jarFile.close();
+		}
+		return written;
+	}
+
+	/**
+	 * @return true if the entry was written, false if it was already extracted
+	 */
+	private static boolean extractEntry(JarFile jarFile, JarEntry entry, File f, byte[] buf, long granularityMillis)
+			throws IOException {
+		if (isExtracted(f, entry, granularityMillis)) {
+			return false;
+		}
+		if (!ensureDirectoryExists(f.getParentFile())) {
+			throw new IOException("Could not create directory: " + f.getParentFile().getAbsolutePath());
+		}
+		final InputStream is = jarFile.getInputStream(entry);
+		try {
+			final OutputStream os = new FileOutputStream(f);
+			try {
+				int len = 0;
+				while ((len = is.read(buf)) > 0) {
+					os.write(buf, 0, len);
+				}
+			}
+			finally {
+				os.close();
+			}
+		}
+		finally {
+			is.close();
+		}
+		if (entry.getTime() > 0) {
+			f.setLastModified(entry.getTime());
+		}
+		return true;
+	}
+
+	private static boolean isExtracted(File f, JarEntry entry, long granularityMillis) {
+		return f.isFile() && entry.getSize() == f.length() && entry.getTime() > 0
+				&& Math.abs(f.lastModified() - entry.getTime()) <= granularityMillis;
+	}
+
 	public static boolean copyResourcesRecursively( //
 			final URL originUrl, final File destination, FilenameFilter filter) {
 		try {
@@ -135,7 +223,8 @@ public class FileCopier {
 	}
 
 	private static boolean ensureDirectoryExists(final File f) {
-		return f.exists() || f.mkdirs();
+		// another thread may create the folder at the same time
+		return f.mkdirs() || f.isDirectory();
 	}
 
 	public static String removeStart(String str, String remove) {
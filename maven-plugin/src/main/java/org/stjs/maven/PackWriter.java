@@ -0,0 +1,193 @@
+/**
+ *  Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.stjs.maven;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Closeables;
+import com.google.common.io.Files;
+import com.google.debugging.sourcemap.SourceMapFormat;
+import com.google.debugging.sourcemap.SourceMapGeneratorFactory;
+import com.google.debugging.sourcemap.SourceMapSection;
+
+/**
+ * This class writes the generated JavaScript files of a project, one after the other, in a single pack file. The files
+ * are copied by the file system channels and are never loaded in memory. When the source maps are generated, the
+ * sourceMappingURL line ending each file is left out and the line where each file starts in the pack is kept for the
+ * index map of the pack: each file is read once to count its lines.
+ */
+public class PackWriter implements Closeable {
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final byte NEW_LINE = '\n';
+	private static final byte[][] SOURCE_MAP_LINE_PREFIXES = { "//@ sourceMappingURL=".getBytes(Charsets.US_ASCII),
+			"//# sourceMappingURL=".getBytes(Charsets.US_ASCII) };
+
+	private final File packFile;
+	private final boolean sourceMap;
+	private final FileOutputStream output;
+	private final FileChannel outputChannel;
+	private final ByteBuffer buffer;
+	private final List<SourceMapSection> sections = new ArrayList<SourceMapSection>();
+	private int currentLine;
+
+	public PackWriter(File packFile, boolean sourceMap) throws IOException {
+		this.packFile = packFile;
+		this.sourceMap = sourceMap;
+		this.output = new FileOutputStream(packFile);
+		this.outputChannel = output.getChannel();
+		this.buffer = ByteBuffer.allocate(BUFFER_SIZE);
+	}
+
+	/**
+	 * appends the given file to the pack, followed by an empty line
+	 */
+	public void append(File jsFile) throws IOException {
+		FileInputStream input = new FileInputStream(jsFile);
+		try {
+			FileChannel inputChannel = input.getChannel();
+			long length = inputChannel.size();
+			if (sourceMap) {
+				sections.add(SourceMapSection.forURL(getRelativeSourceMapFileName(jsFile), currentLine, 0));
+				length = scanLines(inputChannel, length);
+			}
+			long position = 0;
+			while (position < length) {
+				position += inputChannel.transferTo(position, length - position, outputChannel);
+			}
+			writeNewLine();
+		}
+		finally {
+			Closeables.closeQuietly(input);
+		}
+	}
+
+	/**
+	 * counts the lines of the file that are copied to the pack.
+	 *
+	 * @return the length of the file without its last line, if it's the sourceMappingURL line
+	 */
+	private long scanLines(FileChannel inputChannel, long size) throws IOException {
+		byte[] bytes = buffer.array();
+		int newLines = 0;
+		long lineStart = 0;
+		long previousLineStart = 0;
+		long position = 0;
+		while (position < size) {
+			buffer.clear();
+			int read = inputChannel.read(buffer, position);
+			if (read < 0) {
+				break;
+			}
+			for (int i = 0; i < read; ++i) {
+				if (bytes[i] == NEW_LINE) {
+					++newLines;
+					previousLineStart = lineStart;
+					lineStart = position + i + 1;
+				}
+			}
+			position += read;
+		}
+
+		long lastLineStart = lineStart;
+		int newLinesBeforeLastLine = newLines;
+		if (lineStart == position && newLines > 0) {
+			// the file ends with a new line
+			lastLineStart = previousLineStart;
+			--newLinesBeforeLastLine;
+		}
+		if (isSourceMapLine(inputChannel, lastLineStart, position)) {
+			currentLine += newLinesBeforeLastLine;
+			return lastLineStart;
+		}
+		currentLine += newLines;
+		return position;
+	}
+
+	private boolean isSourceMapLine(FileChannel inputChannel, long lineStart, long size) throws IOException {
+		buffer.clear();
+		buffer.limit((int) Math.min(SOURCE_MAP_LINE_PREFIXES[0].length, size - lineStart));
+		while (buffer.hasRemaining() && inputChannel.read(buffer, lineStart + buffer.position()) > 0) {
+			// read the beginning of the line
+		}
+		byte[] bytes = buffer.array();
+		for (byte[] prefix : SOURCE_MAP_LINE_PREFIXES) {
+			if (startsWith(bytes, buffer.position(), prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean startsWith(byte[] bytes, int length, byte[] prefix) {
+		if (length < prefix.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; ++i) {
+			if (bytes[i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void writeNewLine() throws IOException {
+		buffer.clear();
+		buffer.put(NEW_LINE);
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			outputChannel.write(buffer);
+		}
+		++currentLine;
+	}
+
+	private String getRelativeSourceMapFileName(File jsFile) {
+		// remove the common folder name from the file name
+		String relativeName = jsFile.getAbsolutePath().substring(packFile.getAbsoluteFile().getParentFile().getAbsolutePath().length() + 1);
+		if (relativeName.endsWith(".js")) {
+			relativeName = relativeName.substring(0, relativeName.length() - ".js".length()) + ".map";
+		}
+		return relativeName.replace(File.separatorChar, '/');
+	}
+
+	/**
+	 * writes the V3 index map of the pack, pointing to the source map of each file appended to the pack
+	 */
+	public void writeIndexMap(File mapFile) throws IOException {
+		Writer writer = Files.newWriter(mapFile, Charsets.UTF_8);
+		try {
+			SourceMapGeneratorFactory.getInstance(SourceMapFormat.V3).appendIndexMapTo(writer, packFile.getName(), sections);
+			writer.flush();
+		}
+		finally {
+			Closeables.closeQuietly(writer);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		output.close();
+	}
+}
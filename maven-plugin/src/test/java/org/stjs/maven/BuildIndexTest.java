@@ -0,0 +1,146 @@
+package org.stjs.maven;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.stjs.generator.GeneratorConfiguration;
+import org.stjs.generator.GeneratorConfigurationBuilder;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+public class BuildIndexTest {
+	private static final File INDEX_FILE = new File("target/build-index-test/classes.index");
+
+	private final GeneratorConfiguration configuration = new GeneratorConfigurationBuilder().allowedPackage("org.test").build();
+
+	@Before
+	public void setUp() {
+		if (!INDEX_FILE.getParentFile().mkdirs() && !INDEX_FILE.getParentFile().isDirectory()) {
+			throw new IllegalStateException("Cannot create " + INDEX_FILE.getParentFile());
+		}
+		if (INDEX_FILE.exists() && !INDEX_FILE.delete()) {
+			throw new IllegalStateException("Cannot delete " + INDEX_FILE);
+		}
+	}
+
+	private BuildIndex storeIndex(GeneratorConfiguration config) throws IOException {
+		BuildIndex index = BuildIndex.load(INDEX_FILE, config);
+		index.update("org.test.A", "hashA", false, Collections.<String>emptyList());
+		index.update("org.test.B", "hashB", false, Arrays.asList("org.test.A"));
+		index.update("org.test.C", "hashC", false, Arrays.asList("org.test.B", "org.test.Bridge"));
+		index.update("org.test.D", "hashD", false, Collections.<String>emptyList());
+		index.update("org.test.Bridge", "hashBridge", true, Collections.<String>emptyList());
+		index.store();
+		return index;
+	}
+
+	@Test
+	public void testChangedSource() throws IOException {
+		storeIndex(configuration);
+		BuildIndex index = BuildIndex.load(INDEX_FILE, configuration);
+
+		assertTrue(index.isUpToDate("org.test.A", "hashA"));
+		assertFalse(index.isUpToDate("org.test.A", "newHashA"));
+		assertFalse(index.isUpToDate("org.test.New", "hashNew"));
+		assertTrue(index.isBridge("org.test.Bridge"));
+		assertFalse(index.isBridge("org.test.A"));
+	}
+
+	@Test
+	public void testChangedDependent() throws IOException {
+		storeIndex(configuration);
+		BuildIndex index = BuildIndex.load(INDEX_FILE, configuration);
+
+		assertEquals(new HashSet<String>(Arrays.asList("org.test.A", "org.test.B", "org.test.C")),
+				index.withDependents(Collections.singleton("org.test.A")));
+		assertEquals(new HashSet<String>(Arrays.asList("org.test.Bridge", "org.test.C")),
+				index.withDependents(Collections.singleton("org.test.Bridge")));
+		assertEquals(Collections.singleton("org.test.D"), index.withDependents(Collections.singleton("org.test.D")));
+		assertEquals(Arrays.asList("org.test.B", "org.test.Bridge"), index.getDependencies("org.test.C"));
+	}
+
+	@Test
+	public void testDeletedSource() throws IOException {
+		BuildIndex index = storeIndex(configuration);
+		index.retainAll(Arrays.asList("org.test.A", "org.test.B", "org.test.C", "org.test.Bridge"));
+		index.store();
+
+		index = BuildIndex.load(INDEX_FILE, configuration);
+		assertNull(index.getDependencies("org.test.D"));
+		assertFalse(index.isUpToDate("org.test.D", "hashD"));
+		assertTrue(index.isUpToDate("org.test.A", "hashA"));
+	}
+
+	@Test
+	public void testConfigurationChange() throws IOException {
+		storeIndex(configuration);
+
+		GeneratorConfiguration textBuilder = new GeneratorConfigurationBuilder().allowedPackage("org.test").textBuilder(true).build();
+		assertFalse(BuildIndex.load(INDEX_FILE, textBuilder).isUpToDate("org.test.A", "hashA"));
+
+		GeneratorConfiguration singlePass = new GeneratorConfigurationBuilder().allowedPackage("org.test").singlePass(true).build();
+		assertFalse(BuildIndex.load(INDEX_FILE, singlePass).isUpToDate("org.test.A", "hashA"));
+
+		GeneratorConfiguration batch = new GeneratorConfigurationBuilder().allowedPackage("org.test").batchSize(10).build();
+		assertFalse(BuildIndex.load(INDEX_FILE, batch).isUpToDate("org.test.A", "hashA"));
+
+		GeneratorConfiguration otherPackages = new GeneratorConfigurationBuilder().allowedPackage("org.other").build();
+		assertFalse(BuildIndex.load(INDEX_FILE, otherPackages).isUpToDate("org.test.A", "hashA"));
+
+		GeneratorConfiguration same = new GeneratorConfigurationBuilder().allowedPackage("org.test").build();
+		assertTrue(BuildIndex.load(INDEX_FILE, same).isUpToDate("org.test.A", "hashA"));
+	}
+
+	@Test
+	public void testLibraryChange() throws IOException {
+		File jar = new File(INDEX_FILE.getParentFile(), "lib.jar");
+		Files.write("version 1", jar, Charsets.UTF_8);
+		File folder = new File(INDEX_FILE.getParentFile(), "lib-classes");
+		File classFile = new File(folder, "org/lib/L.class");
+		Files.createParentDirs(classFile);
+		Files.write("version 1", classFile, Charsets.UTF_8);
+		File otherClassFile = new File(folder, "org/lib/M.class");
+		if (otherClassFile.exists() && !otherClassFile.delete()) {
+			throw new IllegalStateException("Cannot delete " + otherClassFile);
+		}
+		List<File> libraries = Arrays.asList(jar, folder);
+
+		BuildIndex index = BuildIndex.load(INDEX_FILE, configuration, libraries);
+		index.update("org.test.A", "hashA", false, Collections.<String>emptyList());
+		index.store();
+		assertTrue(BuildIndex.load(INDEX_FILE, configuration, libraries).isUpToDate("org.test.A", "hashA"));
+		assertFalse(BuildIndex.load(INDEX_FILE, configuration, Arrays.asList(jar)).isUpToDate("org.test.A", "hashA"));
+
+		Files.write("version 2 of the jar", jar, Charsets.UTF_8);
+		assertFalse(BuildIndex.load(INDEX_FILE, configuration, libraries).isUpToDate("org.test.A", "hashA"));
+
+		index = BuildIndex.load(INDEX_FILE, configuration, libraries);
+		index.update("org.test.A", "hashA", false, Collections.<String>emptyList());
+		index.store();
+		Files.write("new class", otherClassFile, Charsets.UTF_8);
+		assertFalse(BuildIndex.load(INDEX_FILE, configuration, libraries).isUpToDate("org.test.A", "hashA"));
+	}
+
+	@Test
+	public void testHashFile() throws IOException {
+		File source = new File(INDEX_FILE.getParentFile(), "A.java");
+		Files.write("class A {}", source, Charsets.UTF_8);
+		String hash = BuildIndex.hashFile(source);
+		assertEquals(hash, BuildIndex.hashFile(source));
+
+		Files.write("class A { int a; }", source, Charsets.UTF_8);
+		assertFalse(hash.equals(BuildIndex.hashFile(source)));
+	}
+}
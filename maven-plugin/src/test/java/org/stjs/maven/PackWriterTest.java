@@ -0,0 +1,89 @@
+package org.stjs.maven;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+public class PackWriterTest {
+	private static final File FOLDER = new File("target/pack-writer-test");
+	private static final File PACK_FILE = new File(FOLDER, "pack.js");
+	private static final File MAP_FILE = new File(FOLDER, "pack.map");
+	private static final Pattern LINE_OFFSET = Pattern.compile("\"line\"\\s*:\\s*(\\d+)");
+	private static final Pattern URL = Pattern.compile("\"url\"\\s*:\\s*\"([^\"]*)\"");
+
+	private List<File> files;
+
+	@Before
+	public void setUp() throws IOException {
+		if (!FOLDER.mkdirs() && !FOLDER.isDirectory()) {
+			throw new IllegalStateException("Cannot create " + FOLDER);
+		}
+		files = Arrays.asList(//
+				write("a.js", "var a = 1;\nvar b = 2;\n//# sourceMappingURL=a.map\n"),//
+				write("b.js", "var c = 3;\n//@ sourceMappingURL=b.map"),//
+				write("c.js", "var d = 4;"),//
+				write("d.js", "var e;\n"),//
+				write("e.js", ""));
+	}
+
+	private static File write(String name, String content) throws IOException {
+		File file = new File(FOLDER, name);
+		Files.write(content, file, Charsets.UTF_8);
+		return file;
+	}
+
+	private void writePack(boolean sourceMap) throws IOException {
+		PackWriter writer = new PackWriter(PACK_FILE, sourceMap);
+		try {
+			for (File file : files) {
+				writer.append(file);
+			}
+			if (sourceMap) {
+				writer.writeIndexMap(MAP_FILE);
+			}
+		}
+		finally {
+			writer.close();
+		}
+	}
+
+	private static List<String> findAll(Pattern pattern, String text) {
+		List<String> found = new ArrayList<String>();
+		Matcher matcher = pattern.matcher(text);
+		while (matcher.find()) {
+			found.add(matcher.group(1));
+		}
+		return found;
+	}
+
+	@Test
+	public void testPackWithoutSourceMap() throws IOException {
+		writePack(false);
+		assertEquals("var a = 1;\nvar b = 2;\n//# sourceMappingURL=a.map\n\n" + "var c = 3;\n//@ sourceMappingURL=b.map\n"
+				+ "var d = 4;\n" + "var e;\n\n" + "\n", Files.toString(PACK_FILE, Charsets.UTF_8));
+	}
+
+	@Test
+	public void testPackWithSourceMap() throws IOException {
+		writePack(true);
+		// the sourceMappingURL lines are left out, with or without a new line at the end of the file
+		assertEquals("var a = 1;\nvar b = 2;\n\n" + "var c = 3;\n\n" + "var d = 4;\n" + "var e;\n\n" + "\n",
+				Files.toString(PACK_FILE, Charsets.UTF_8));
+
+		String indexMap = Files.toString(MAP_FILE, Charsets.UTF_8);
+		assertEquals(Arrays.asList("a.map", "b.map", "c.map", "d.map", "e.map"), findAll(URL, indexMap));
+		assertEquals(Arrays.asList("0", "3", "5", "6", "8"), findAll(LINE_OFFSET, indexMap));
+	}
+}
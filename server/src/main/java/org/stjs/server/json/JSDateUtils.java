@@ -16,15 +16,151 @@
 package org.stjs.server.json;
 
 import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
 
 import org.stjs.javascript.Date;
 
+/**
+ * Formats and parses the dates exchanged with the client, in the "yyyy-MM-dd HH:mm:ss" format of the default time zone
+ * (the format expected by stjs.converters.Date), optionally followed by a fraction of second when parsing. Instead of a
+ * new SimpleDateFormat for each date, each thread reuses its own calendar and buffer.
+ */
 public class JSDateUtils {
 	private final static String DEFAULT_DATE_PATTERN = "yyyy-MM-dd HH:mm:ss";
+	private static final int NORMALIZED_LENGTH = 19;
+	private static final int MILLIS_DIGITS = 3;
+
+	private static final ThreadLocal<Formatter> FORMATTERS = new ThreadLocal<Formatter>() {
+		@Override
+		protected Formatter initialValue() {
+			return new Formatter();
+		}
+	};
 
 	public static String toNormalizedString(Date d) {
-		// TODO - improve perf here
-		return new SimpleDateFormat(DEFAULT_DATE_PATTERN).format(new java.util.Date((long) d.getTime()));
+		return FORMATTERS.get().format((long) d.getTime());
 	}
 
+	/**
+	 * parses a date in the normalized format, with an optional fraction of second ("yyyy-MM-dd HH:mm:ss.SSS"). The
+	 * other strings are parsed like {@link Date#Date(String)} does.
+	 */
+	public static Date parse(String s) {
+		if (s == null) {
+			return new Date(s);
+		}
+		long millis = FORMATTERS.get().parse(s);
+		if (millis == Long.MIN_VALUE) {
+			return new Date(s);
+		}
+		return new Date(millis);
+	}
+
+	/**
+	 * the calendar and the buffer of one thread
+	 */
+	private static final class Formatter {
+		private final Calendar calendar = new GregorianCalendar();
+		private final char[] buffer = new char[NORMALIZED_LENGTH];
+		private TimeZone zone = calendar.getTimeZone();
+
+		private void updateTimeZone() {
+			// the default time zone can be changed at any time
+			TimeZone defaultZone = TimeZone.getDefault();
+			if (!defaultZone.getID().equals(zone.getID())) {
+				zone = defaultZone;
+				calendar.setTimeZone(zone);
+			}
+		}
+
+		public String format(long millis) {
+			updateTimeZone();
+			calendar.setTimeInMillis(millis);
+			int year = calendar.get(Calendar.YEAR);
+			if (year > 9999 || calendar.get(Calendar.ERA) == GregorianCalendar.BC) {
+				// not in the fixed size format
+				SimpleDateFormat format = new SimpleDateFormat(DEFAULT_DATE_PATTERN);
+				format.setTimeZone(zone);
+				return format.format(new java.util.Date(millis));
+			}
+			put(0, year, 4);
+			buffer[4] = '-';
+			put(5, calendar.get(Calendar.MONTH) + 1, 2);
+			buffer[7] = '-';
+			put(8, calendar.get(Calendar.DAY_OF_MONTH), 2);
+			buffer[10] = ' ';
+			put(11, calendar.get(Calendar.HOUR_OF_DAY), 2);
+			buffer[13] = ':';
+			put(14, calendar.get(Calendar.MINUTE), 2);
+			buffer[16] = ':';
+			put(17, calendar.get(Calendar.SECOND), 2);
+			return new String(buffer);
+		}
+
+		private void put(int offset, int value, int digits) {
+			int v = value;
+			for (int i = offset + digits - 1; i >= offset; --i) {
+				buffer[i] = (char) ('0' + v % 10);
+				v /= 10;
+			}
+		}
+
+		/**
+		 * @return the time in milliseconds, or Long.MIN_VALUE if the string is not in the normalized format
+		 */
+		public long parse(String s) {
+			if (s.length() < NORMALIZED_LENGTH || s.charAt(4) != '-' || s.charAt(7) != '-' || s.charAt(10) != ' '
+					|| s.charAt(13) != ':' || s.charAt(16) != ':') {
+				return Long.MIN_VALUE;
+			}
+			int year = digits(s, 0, 4);
+			int month = digits(s, 5, 2);
+			int day = digits(s, 8, 2);
+			int hours = digits(s, 11, 2);
+			int minutes = digits(s, 14, 2);
+			int seconds = digits(s, 17, 2);
+			int millis = 0;
+			if (s.length() > NORMALIZED_LENGTH) {
+				if (s.charAt(NORMALIZED_LENGTH) != '.') {
+					return Long.MIN_VALUE;
+				}
+				int fraction = s.length() - NORMALIZED_LENGTH - 1;
+				// the digits after the milliseconds are ignored
+				millis = digits(s, NORMALIZED_LENGTH + 1, Math.min(fraction, MILLIS_DIGITS));
+				for (int i = fraction; i < MILLIS_DIGITS; ++i) {
+					millis *= 10;
+				}
+				for (int i = NORMALIZED_LENGTH + 1 + MILLIS_DIGITS; i < s.length(); ++i) {
+					if (s.charAt(i) < '0' || s.charAt(i) > '9') {
+						return Long.MIN_VALUE;
+					}
+				}
+			}
+			if (year < 0 || month < 0 || day < 0 || hours < 0 || minutes < 0 || seconds < 0 || millis < 0) {
+				return Long.MIN_VALUE;
+			}
+			updateTimeZone();
+			calendar.clear();
+			calendar.set(year, month - 1, day, hours, minutes, seconds);
+			calendar.set(Calendar.MILLISECOND, millis);
+			return calendar.getTimeInMillis();
+		}
+
+		/**
+		 * @return the value of the given digits, or -1 if one of the characters is not a digit
+		 */
+		private static int digits(String s, int offset, int count) {
+			int value = 0;
+			for (int i = offset; i < offset + count; ++i) {
+				char c = s.charAt(i);
+				if (c < '0' || c > '9') {
+					return -1;
+				}
+				value = value * 10 + c - '0';
+			}
+			return value;
+		}
+	}
 }
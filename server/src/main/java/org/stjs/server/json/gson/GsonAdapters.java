@@ -15,16 +15,37 @@
  */
 package org.stjs.server.json.gson;
 
-import org.stjs.javascript.Array;
+import java.lang.reflect.GenericArrayType;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.WildcardType;
+
 import org.stjs.javascript.Date;
-import org.stjs.javascript.Map;
 
 import com.google.gson.GsonBuilder;
 
 public class GsonAdapters {
 	public static void addAll(GsonBuilder builder) {
-		builder.registerTypeAdapter(Map.class, new JSMapAdapter());
-		builder.registerTypeAdapter(Array.class, new JSArrayAdapter());
+		builder.registerTypeAdapterFactory(new JSMapAdapter());
+		builder.registerTypeAdapterFactory(new JSArrayAdapter());
 		builder.registerTypeAdapter(Date.class, new JSDateAdapter());
 	}
+
+	/**
+	 * @return the type argument at the given position in the given type, Object if the type is raw or the argument
+	 *         cannot be resolved
+	 */
+	static Type getTypeArgument(Type type, int index) {
+		if (!(type instanceof ParameterizedType)) {
+			return Object.class;
+		}
+		Type argument = ((ParameterizedType) type).getActualTypeArguments()[index];
+		if (argument instanceof WildcardType) {
+			argument = ((WildcardType) argument).getUpperBounds()[0];
+		}
+		if (argument instanceof Class || argument instanceof ParameterizedType || argument instanceof GenericArrayType) {
+			return argument;
+		}
+		return Object.class;
+	}
 }
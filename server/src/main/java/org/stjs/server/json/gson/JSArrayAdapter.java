@@ -15,48 +15,69 @@
  */
 package org.stjs.server.json.gson;
 
-import java.lang.reflect.ParameterizedType;
+import java.io.IOException;
 import java.lang.reflect.Type;
 
 import org.stjs.javascript.Array;
 import org.stjs.javascript.JSCollections;
 
-import com.google.gson.JsonArray;
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonNull;
-import com.google.gson.JsonParseException;
-import com.google.gson.JsonSerializationContext;
-import com.google.gson.JsonSerializer;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
-public class JSArrayAdapter implements JsonSerializer<Array<?>>, JsonDeserializer<Array<?>> {
+/**
+ * Reads and writes the {@link Array}s directly from/to the JSON stream. The adapter of the elements is resolved once for
+ * each array type, and each element is written with the adapter of its runtime class (see {@link RuntimeTypeAdapter}).
+ */
+public class JSArrayAdapter implements TypeAdapterFactory {
 
+	@SuppressWarnings({ "unchecked", "rawtypes" })
 	@Override
-	public Array<?> deserialize(JsonElement elem, Type type, JsonDeserializationContext ctx) throws JsonParseException {
-		if (elem == null) {
+	public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> typeToken) {
+		if (typeToken.getRawType() != Array.class) {
 			return null;
 		}
-		JsonArray js = elem.getAsJsonArray();
-		Type elementType = (type instanceof ParameterizedType) ? ((ParameterizedType) type).getActualTypeArguments()[0] : Object.class;
-		Array<Object> array = JSCollections.$array();
-		for (int i = 0; i < js.size(); ++i) {
-			array.push(ctx.deserialize(js.get(i), elementType));
-		}
-
-		return array;
+		Type elementType = GsonAdapters.getTypeArgument(typeToken.getType(), 0);
+		return (TypeAdapter<T>) new Adapter(new RuntimeTypeAdapter(gson, elementType));
 	}
 
-	@Override
-	public JsonElement serialize(Array<?> array, Type type, JsonSerializationContext ctx) {
-		if (array == null) {
-			return new JsonNull();
+	private static final class Adapter<V> extends TypeAdapter<Array<V>> {
+		private final TypeAdapter<V> elementAdapter;
+
+		public Adapter(TypeAdapter<V> elementAdapter) {
+			this.elementAdapter = elementAdapter;
 		}
-		JsonArray js = new JsonArray();
-		for (String i : array) {
-			js.add(ctx.serialize(array.$get(i)));
+
+		@Override
+		public Array<V> read(JsonReader in) throws IOException {
+			if (in.peek() == JsonToken.NULL) {
+				in.nextNull();
+				return null;
+			}
+			Array<V> array = JSCollections.$array();
+			in.beginArray();
+			while (in.hasNext()) {
+				array.$set(array.$length(), elementAdapter.read(in));
+			}
+			in.endArray();
+			return array;
 		}
-		return js;
-	}
 
+		@Override
+		public void write(JsonWriter out, Array<V> array) throws IOException {
+			if (array == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginArray();
+			for (int i = 0; i < array.$length(); ++i) {
+				elementAdapter.write(out, array.$get(i));
+			}
+			out.endArray();
+		}
+	}
 }
@@ -37,7 +37,7 @@ public class JSDateAdapter implements JsonSerializer<Date>, JsonDeserializer<Dat
 		if (elem == null) {
 			return null;
 		}
-		return new Date(elem.getAsString());
+		return JSDateUtils.parse(elem.getAsString());
 	}
 
 	@Override
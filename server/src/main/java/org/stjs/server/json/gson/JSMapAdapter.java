@@ -15,49 +15,71 @@
  */
 package org.stjs.server.json.gson;
 
-import java.lang.reflect.ParameterizedType;
+import java.io.IOException;
 import java.lang.reflect.Type;
 
 import org.stjs.javascript.JSCollections;
 import org.stjs.javascript.Map;
 
-import com.google.gson.JsonDeserializationContext;
-import com.google.gson.JsonDeserializer;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonNull;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParseException;
-import com.google.gson.JsonSerializationContext;
-import com.google.gson.JsonSerializer;
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.TypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
 
-public class JSMapAdapter implements JsonSerializer<Map<?, ?>>, JsonDeserializer<Map<?, ?>> {
+/**
+ * Reads and writes the {@link Map}s directly from/to the JSON stream. The adapter of the values is resolved once for
+ * each map type, and each value is written with the adapter of its runtime class (see {@link RuntimeTypeAdapter}).
+ */
+public class JSMapAdapter implements TypeAdapterFactory {
 
+	@SuppressWarnings({ "unchecked", "rawtypes" })
 	@Override
-	public Map<?, ?> deserialize(JsonElement elem, Type type, JsonDeserializationContext ctx) throws JsonParseException {
-		if (elem == null) {
+	public <T> TypeAdapter<T> create(Gson gson, TypeToken<T> typeToken) {
+		if (typeToken.getRawType() != Map.class) {
 			return null;
 		}
-		JsonObject js = elem.getAsJsonObject();
-		Type valueType = (type instanceof ParameterizedType) ? ((ParameterizedType) type).getActualTypeArguments()[1] : Object.class;
-		Map<String, Object> map = JSCollections.$map();
-		for (java.util.Map.Entry<String, JsonElement> entry : js.entrySet()) {
-			map.$put(entry.getKey(), ctx.deserialize(entry.getValue(), valueType));
-		}
-
-		return map;
+		Type valueType = GsonAdapters.getTypeArgument(typeToken.getType(), 1);
+		return (TypeAdapter<T>) new Adapter(new RuntimeTypeAdapter(gson, valueType));
 	}
 
-	@SuppressWarnings("unchecked")
-	@Override
-	public JsonElement serialize(Map<?, ?> map, Type typeOfSrc, JsonSerializationContext ctx) {
-		if (map == null) {
-			return new JsonNull();
+	private static final class Adapter<V> extends TypeAdapter<Map<String, V>> {
+		private final TypeAdapter<V> valueAdapter;
+
+		public Adapter(TypeAdapter<V> valueAdapter) {
+			this.valueAdapter = valueAdapter;
 		}
-		JsonObject js = new JsonObject();
-		for (Object k : map) {
-			js.add(k.toString(), ctx.serialize(((Map) map).$get(k.toString())));
+
+		@Override
+		public Map<String, V> read(JsonReader in) throws IOException {
+			if (in.peek() == JsonToken.NULL) {
+				in.nextNull();
+				return null;
+			}
+			Map<String, V> map = JSCollections.$map();
+			in.beginObject();
+			while (in.hasNext()) {
+				String key = in.nextName();
+				map.$put(key, valueAdapter.read(in));
+			}
+			in.endObject();
+			return map;
 		}
-		return js;
-	}
 
+		@Override
+		public void write(JsonWriter out, Map<String, V> map) throws IOException {
+			if (map == null) {
+				out.nullValue();
+				return;
+			}
+			out.beginObject();
+			for (String key : map) {
+				out.name(key);
+				valueAdapter.write(out, map.$get(key));
+			}
+			out.endObject();
+		}
+	}
 }
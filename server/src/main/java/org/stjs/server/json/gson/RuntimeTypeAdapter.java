@@ -0,0 +1,91 @@
+/**
+ *  Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.stjs.server.json.gson;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+
+import com.google.gson.Gson;
+import com.google.gson.TypeAdapter;
+import com.google.gson.internal.bind.ReflectiveTypeAdapterFactory;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * Writes each value with the adapter of its runtime class when it is more specific than the declared type, so the
+ * fields of the subclasses are not lost, like Gson does for the fields and its own collections. As in Gson, the adapter
+ * of a declared type registered by the user wins over the reflective adapter of the runtime class. The adapter of the
+ * last runtime class is kept, as the elements of an array usually have the same class. Values are read with the
+ * adapter of the declared type.
+ */
+final class RuntimeTypeAdapter<T> extends TypeAdapter<T> {
+	private final Gson gson;
+	private final Type declaredType;
+	private final TypeAdapter<T> declaredAdapter;
+	private volatile RuntimeAdapter<T> lastRuntimeAdapter;
+
+	RuntimeTypeAdapter(Gson gson, Type declaredType) {
+		this.gson = gson;
+		this.declaredType = declaredType;
+		this.declaredAdapter = getAdapter(gson, declaredType);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> TypeAdapter<T> getAdapter(Gson gson, Type type) {
+		return (TypeAdapter<T>) gson.getAdapter(TypeToken.get(type));
+	}
+
+	@Override
+	public T read(JsonReader in) throws IOException {
+		return declaredAdapter.read(in);
+	}
+
+	@Override
+	public void write(JsonWriter out, T value) throws IOException {
+		getWriteAdapter(value).write(out, value);
+	}
+
+	private TypeAdapter<T> getWriteAdapter(T value) {
+		if (value == null || !(declaredType instanceof Class || declaredType instanceof TypeVariable)
+				|| value.getClass() == declaredType) {
+			return declaredAdapter;
+		}
+		RuntimeAdapter<T> last = lastRuntimeAdapter;
+		if (last != null && last.runtimeClass == value.getClass()) {
+			return last.adapter;
+		}
+		TypeAdapter<T> runtimeAdapter = getAdapter(gson, value.getClass());
+		TypeAdapter<T> chosen = runtimeAdapter;
+		if (runtimeAdapter instanceof ReflectiveTypeAdapterFactory.Adapter
+				&& !(declaredAdapter instanceof ReflectiveTypeAdapterFactory.Adapter)) {
+			chosen = declaredAdapter;
+		}
+		lastRuntimeAdapter = new RuntimeAdapter<T>(value.getClass(), chosen);
+		return chosen;
+	}
+
+	private static final class RuntimeAdapter<T> {
+		private final Class<?> runtimeClass;
+		private final TypeAdapter<T> adapter;
+
+		private RuntimeAdapter(Class<?> runtimeClass, TypeAdapter<T> adapter) {
+			this.runtimeClass = runtimeClass;
+			this.adapter = adapter;
+		}
+	}
+}
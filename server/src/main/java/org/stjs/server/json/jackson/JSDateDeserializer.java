@@ -22,12 +22,13 @@ import org.codehaus.jackson.JsonProcessingException;
 import org.codehaus.jackson.map.DeserializationContext;
 import org.codehaus.jackson.map.JsonDeserializer;
 import org.stjs.javascript.Date;
+import org.stjs.server.json.JSDateUtils;
 
 public class JSDateDeserializer extends JsonDeserializer<Date> {
 
 	@Override
 	public Date deserialize(JsonParser jp, DeserializationContext ctxt) throws IOException, JsonProcessingException {
-		return new Date(jp.getText());
+		return JSDateUtils.parse(jp.getText());
 	}
 
 }
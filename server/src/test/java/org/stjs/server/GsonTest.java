@@ -59,6 +59,55 @@ public class GsonTest {
 		assertEquals("{\"A\":{\"n\":1}}", s);
 	}
 
+	@Test
+	public void testSerializeArrayPolymorphic() {
+		GsonBuilder gsonBuilder = new GsonBuilder();
+		GsonAdapters.addAll(gsonBuilder);
+		Gson gson = gsonBuilder.create();
+		Type arrayType = new TypeToken<Array<Pojo>>() {
+		}.getType();
+
+		String s = gson.toJson(JSCollections.$array(new Pojo(1), new SubPojo(2, "b"), null), arrayType);
+		assertEquals("[{\"n\":1},{\"name\":\"b\",\"n\":2},null]", s);
+	}
+
+	@Test
+	public void testSerializeMapPolymorphic() {
+		GsonBuilder gsonBuilder = new GsonBuilder();
+		GsonAdapters.addAll(gsonBuilder);
+		Gson gson = gsonBuilder.create();
+		Type mapType = new TypeToken<Map<String, Pojo>>() {
+		}.getType();
+
+		String s = gson.toJson(JSCollections.$map("A", new SubPojo(1, "a"), "B", new Pojo(2)), mapType);
+		assertEquals("{\"A\":{\"name\":\"a\",\"n\":1},\"B\":{\"n\":2}}", s);
+	}
+
+	@Test
+	public void testSerializeGenericArrayField() {
+		GsonBuilder gsonBuilder = new GsonBuilder();
+		GsonAdapters.addAll(gsonBuilder);
+		Gson gson = gsonBuilder.create();
+
+		// the type variable of the field is resolved to Object: the elements are written with their runtime class
+		String s = gson.toJson(new PojoBox<Pojo>(JSCollections.$array(new Pojo(1), new SubPojo(2, "b"))));
+		assertEquals("{\"items\":[{\"n\":1},{\"name\":\"b\",\"n\":2}]}", s);
+	}
+
+	@Test
+	public void testDeserializeGenericArrayField() {
+		GsonBuilder gsonBuilder = new GsonBuilder();
+		GsonAdapters.addAll(gsonBuilder);
+		Gson gson = gsonBuilder.create();
+		Type boxType = new TypeToken<PojoBox<Pojo>>() {
+		}.getType();
+
+		PojoBox<Pojo> box = gson.fromJson("{\"items\":[{\"n\":1},{\"n\":2}]}", boxType);
+		assertNotNull(box.getItems());
+		assertEquals(2, box.getItems().$length());
+		assertEquals(2, box.getItems().$get(1).getN());
+	}
+
 	@Test
 	public void testSerializeDate() throws JsonGenerationException, JsonMappingException, IOException {
 		GsonBuilder gsonBuilder = new GsonBuilder();
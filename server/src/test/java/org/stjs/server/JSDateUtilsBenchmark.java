@@ -0,0 +1,96 @@
+package org.stjs.server;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+
+import org.stjs.javascript.Date;
+import org.stjs.server.json.JSDateUtils;
+
+/**
+ * Formats and parses 100000 dates spread over about 3000 years, first with a new SimpleDateFormat for each date as it
+ * was done before, then with {@link JSDateUtils}, and prints the time per date of each. The dates are formatted in the
+ * default time zone, so the results depend on the zone of the machine.
+ */
+public final class JSDateUtilsBenchmark {
+	private static final String PATTERN = "yyyy-MM-dd HH:mm:ss";
+	private static final int DATES = 100000;
+	private static final int WARMUP = 10;
+	private static final int RUNS = 20;
+
+	private JSDateUtilsBenchmark() {
+		//
+	}
+
+	@SuppressWarnings("PMD.SystemPrintln")
+	public static void main(String[] args) throws ParseException {
+		Date[] dates = new Date[DATES];
+		String[] strings = new String[DATES];
+		for (int i = 0; i < DATES; ++i) {
+			dates[i] = new Date(1300000000000L + i * 987654321L);
+			strings[i] = JSDateUtils.toNormalizedString(dates[i]);
+		}
+
+		long check = 0;
+		for (int i = 0; i < WARMUP; ++i) {
+			check += formatWithSimpleDateFormat(dates) + formatWithUtils(dates);
+			check += parseWithSimpleDateFormat(strings) + parseWithUtils(strings);
+		}
+
+		long[] times = new long[4];
+		for (int i = 0; i < RUNS; ++i) {
+			long t0 = System.nanoTime();
+			check += formatWithSimpleDateFormat(dates);
+			long t1 = System.nanoTime();
+			check += formatWithUtils(dates);
+			long t2 = System.nanoTime();
+			check += parseWithSimpleDateFormat(strings);
+			long t3 = System.nanoTime();
+			check += parseWithUtils(strings);
+			long t4 = System.nanoTime();
+			times[0] += t1 - t0;
+			times[1] += t2 - t1;
+			times[2] += t3 - t2;
+			times[3] += t4 - t3;
+		}
+
+		long count = (long) RUNS * DATES;
+		System.out.println("Format, new SimpleDateFormat:" + times[0] / count + " ns/date");
+		System.out.println("Format, JSDateUtils:" + times[1] / count + " ns/date");
+		System.out.println("Parse, new SimpleDateFormat:" + times[2] / count + " ns/date");
+		System.out.println("Parse, JSDateUtils:" + times[3] / count + " ns/date");
+		System.out.println("Speedup format:" + (double) times[0] / times[1] + ", parse:" + (double) times[2] / times[3]
+				+ " (checksum " + check + ")");
+	}
+
+	private static long formatWithSimpleDateFormat(Date[] dates) {
+		long length = 0;
+		for (Date d : dates) {
+			length += new SimpleDateFormat(PATTERN).format(new java.util.Date((long) d.getTime())).length();
+		}
+		return length;
+	}
+
+	private static long formatWithUtils(Date[] dates) {
+		long length = 0;
+		for (Date d : dates) {
+			length += JSDateUtils.toNormalizedString(d).length();
+		}
+		return length;
+	}
+
+	private static long parseWithSimpleDateFormat(String[] strings) throws ParseException {
+		long sum = 0;
+		for (String s : strings) {
+			sum += new SimpleDateFormat(PATTERN).parse(s).getTime() & 0xff;
+		}
+		return sum;
+	}
+
+	private static long parseWithUtils(String[] strings) {
+		long sum = 0;
+		for (String s : strings) {
+			sum += (long) JSDateUtils.parse(s).getTime() & 0xff;
+		}
+		return sum;
+	}
+}
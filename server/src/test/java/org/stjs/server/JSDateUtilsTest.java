@@ -0,0 +1,75 @@
+package org.stjs.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.text.SimpleDateFormat;
+import java.util.TimeZone;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.stjs.javascript.Date;
+import org.stjs.server.json.JSDateUtils;
+
+public class JSDateUtilsTest {
+	private TimeZone defaultTimeZone;
+
+	@Before
+	public void saveTimeZone() {
+		defaultTimeZone = TimeZone.getDefault();
+	}
+
+	@After
+	public void restoreTimeZone() {
+		TimeZone.setDefault(defaultTimeZone);
+	}
+
+	@Test
+	public void testFormat() {
+		TimeZone.setDefault(TimeZone.getTimeZone("Europe/Berlin"));
+		assertEquals("2011-11-09 17:10:05", JSDateUtils.toNormalizedString(new Date(2011, 10, 9, 17, 10, 5, 0)));
+		assertEquals("0099-01-02 03:04:05", JSDateUtils.toNormalizedString(new Date(99, 0, 2, 3, 4, 5, 0)));
+	}
+
+	@Test
+	public void testFormatLikeSimpleDateFormat() {
+		TimeZone.setDefault(TimeZone.getTimeZone("America/New_York"));
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+		for (long millis = -100000000000L; millis < 2000000000000L; millis += 7654321987L) {
+			assertEquals(format.format(new java.util.Date(millis)), JSDateUtils.toNormalizedString(new Date(millis)));
+		}
+	}
+
+	@Test
+	public void testFormatFollowsDefaultTimeZone() {
+		TimeZone.setDefault(TimeZone.getTimeZone("GMT"));
+		assertEquals("1970-01-01 00:00:00", JSDateUtils.toNormalizedString(new Date(0)));
+		TimeZone.setDefault(TimeZone.getTimeZone("Europe/Berlin"));
+		assertEquals("1970-01-01 01:00:00", JSDateUtils.toNormalizedString(new Date(0)));
+	}
+
+	@Test
+	public void testParse() {
+		TimeZone.setDefault(TimeZone.getTimeZone("Europe/Berlin"));
+		Date d = JSDateUtils.parse("2011-11-10 10:00:00");
+		assertEquals(10, (int) d.getDate());
+		assertEquals(9, (int) d.getUTCHours());
+		assertEquals(new Date("2011-11-10 10:00:00").getTime(), d.getTime(), 0);
+	}
+
+	@Test
+	public void testParseFraction() {
+		TimeZone.setDefault(TimeZone.getTimeZone("Europe/Berlin"));
+		assertEquals(250, (int) JSDateUtils.parse("2011-11-10 10:00:00.25").getMilliseconds());
+		assertEquals(123, (int) JSDateUtils.parse("2011-11-10 10:00:00.123456").getMilliseconds());
+		assertEquals(0, (int) JSDateUtils.parse("2011-11-10 10:00:00.").getMilliseconds());
+	}
+
+	@Test
+	public void testParseOtherFormats() {
+		TimeZone.setDefault(TimeZone.getTimeZone("Europe/Berlin"));
+		assertEquals(new Date("2011-1-9 7:10:00").getTime(), JSDateUtils.parse("2011-1-9 7:10:00").getTime(), 0);
+		assertTrue(Double.isNaN(JSDateUtils.parse("abc").getTime()));
+	}
+}
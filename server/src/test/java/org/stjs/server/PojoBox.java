@@ -0,0 +1,24 @@
+package org.stjs.server;
+
+import org.stjs.javascript.Array;
+
+public class PojoBox<T> {
+	private Array<T> items;
+
+	public PojoBox() {
+		//
+	}
+
+	public PojoBox(Array<T> items) {
+		this.items = items;
+	}
+
+	public Array<T> getItems() {
+		return items;
+	}
+
+	public void setItems(Array<T> items) {
+		this.items = items;
+	}
+
+}
@@ -0,0 +1,23 @@
+package org.stjs.server;
+
+public class SubPojo extends Pojo {
+	private String name;
+
+	public SubPojo() {
+		//
+	}
+
+	public SubPojo(int n, String name) {
+		super(n);
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+}
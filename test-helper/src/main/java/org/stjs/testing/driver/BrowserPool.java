@@ -0,0 +1,165 @@
+/**
+ *  Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.stjs.testing.driver;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.stjs.testing.driver.browser.Browser;
+import org.stjs.testing.driver.browser.LongPollingBrowser;
+import org.stjs.testing.driver.browser.RhinoEngineBrowser;
+
+/**
+ * A group of browsers of the same type sharing the tests, used when the sharding is enabled (see
+ * {@link DriverConfiguration#isShardingEnabled()}). Instead of receiving every test, the browsers of the pool pick up the
+ * tests from a common queue when they are ready to execute a new one, so each test is executed by one browser of the
+ * pool, the first one that is free. Only the {@link LongPollingBrowser}s can share tests, any other browser is alone in
+ * its pool and receives its tests one at a time, except the {@link RhinoEngineBrowser} that queues them itself. When the
+ * last browser of a pool is dead, the tests waiting in the queue are failed.
+ */
+public class BrowserPool {
+	private static final long POLL_MILLIS = 500;
+
+	private final List<Browser> browsers;
+	private final BlockingQueue<MultiTestMethod> tests = new LinkedBlockingQueue<MultiTestMethod>();
+	private volatile boolean noMoreTests = false;
+
+	private BrowserPool(List<Browser> browsers) {
+		this.browsers = browsers;
+	}
+
+	/**
+	 * groups the given browsers by type
+	 */
+	public static List<BrowserPool> build(List<Browser> browsers) {
+		Map<Class<?>, List<Browser>> browsersByType = new LinkedHashMap<Class<?>, List<Browser>>();
+		List<BrowserPool> pools = new ArrayList<BrowserPool>();
+		for (Browser browser : browsers) {
+			if (!(browser instanceof LongPollingBrowser)) {
+				List<Browser> single = new ArrayList<Browser>(1);
+				single.add(browser);
+				pools.add(new BrowserPool(single));
+				continue;
+			}
+			List<Browser> sameType = browsersByType.get(browser.getClass());
+			if (sameType == null) {
+				sameType = new ArrayList<Browser>();
+				browsersByType.put(browser.getClass(), sameType);
+			}
+			sameType.add(browser);
+		}
+		for (List<Browser> sameType : browsersByType.values()) {
+			BrowserPool pool = new BrowserPool(sameType);
+			for (Browser browser : sameType) {
+				((LongPollingBrowser) browser).setPool(pool);
+			}
+			pools.add(pool);
+		}
+		return pools;
+	}
+
+	public List<Browser> getBrowsers() {
+		return browsers;
+	}
+
+	/**
+	 * Queues the specified test for the first browser of the pool that is free. This method does not wait for the test
+	 * to be picked up.
+	 */
+	public void executeTest(MultiTestMethod method) {
+		Browser browser = browsers.get(0);
+		if (!(browser instanceof LongPollingBrowser)) {
+			if (browser instanceof RhinoEngineBrowser) {
+				browser.executeTest(method);
+				return;
+			}
+			// the tests are sent by several threads, but the browser expects them one at a time
+			synchronized (this) {
+				browser.executeTest(method);
+			}
+			return;
+		}
+		if (isDead()) {
+			reportAsDead(method);
+			return;
+		}
+		tests.add(method);
+		if (isDead()) {
+			// the last browser died meanwhile, so nobody picks up the test
+			failQueuedTests();
+		}
+	}
+
+	/**
+	 * Called by the browsers of the pool when they are marked as dead. When the last one is dead, the tests waiting in
+	 * the queue are failed.
+	 */
+	public void browserDied() {
+		if (isDead()) {
+			failQueuedTests();
+		}
+	}
+
+	private void failQueuedTests() {
+		for (MultiTestMethod method = tests.poll(); method != null; method = tests.poll()) {
+			reportAsDead(method);
+		}
+	}
+
+	private void reportAsDead(MultiTestMethod method) {
+		method.notifyExecutionResult(new TestResult(browsers.get(0).getClass().getSimpleName(), "All the browsers are dead", null,
+				false));
+	}
+
+	/**
+	 * Called by the browsers of the pool when they are ready to execute a new test. Blocks until a test is available or
+	 * there are no more tests.
+	 *
+	 * @return The next test to execute, or null if there isn't any
+	 */
+	public MultiTestMethod awaitNextTest() throws InterruptedException {
+		while (true) {
+			MultiTestMethod method = tests.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+			if (method != null || noMoreTests) {
+				return method;
+			}
+		}
+	}
+
+	/**
+	 * Notifies the browsers of the pool that there are no more tests to execute.
+	 */
+	public void notifyNoMoreTests() {
+		noMoreTests = true;
+		if (!(browsers.get(0) instanceof LongPollingBrowser)) {
+			browsers.get(0).notifyNoMoreTests();
+		}
+	}
+
+	private boolean isDead() {
+		for (Browser browser : browsers) {
+			if (!((LongPollingBrowser) browser).isDead()) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -34,6 +34,7 @@ import org.stjs.testing.driver.browser.HeadlessFirefoxBrowser;
 import org.stjs.testing.driver.browser.PhantomjsBrowser;
 import org.stjs.testing.driver.browser.RemoteBrowser;
 import org.stjs.testing.driver.browser.RhinoBrowser;
+import org.stjs.testing.driver.browser.RhinoEngineBrowser;
 
 import com.google.common.io.Closeables;
 
@@ -54,6 +55,12 @@ public class DriverConfiguration {
 	private static final String PROP_BROWSERS = "stjs.test.browsers";
 	private static final String PROP_TEST_TIMEOUT = "stjs.test.testTimeout";
 	private static final String PROP_DEBUG = "stjs.test.debug";
+	private static final String PROP_SHARDING = "stjs.test.sharding";
+
+	/**
+	 * the query parameter added to the URLs of the scripts included in the test pages
+	 */
+	public static final String RESOURCE_VERSION_PARAM = "v";
 
 	private int port = 8055;
 	private int waitForBrowser = 10;
@@ -61,7 +68,9 @@ public class DriverConfiguration {
 	private boolean startBrowser = true;
 	private int testTimeout = 2;
 	private boolean debugEnabled = false;
+	private boolean shardingEnabled = false;
 	private List<Browser> browsers;
+	private final String resourceVersion = Long.toString(System.currentTimeMillis(), Character.MAX_RADIX);
 
 	private final ClassLoader classLoader;
 
@@ -106,6 +115,9 @@ public class DriverConfiguration {
 		if (props.get(PROP_DEBUG) != null) {
 			debugEnabled = Boolean.parseBoolean(props.getProperty(PROP_DEBUG));
 		}
+		if (props.get(PROP_SHARDING) != null) {
+			shardingEnabled = Boolean.parseBoolean(props.getProperty(PROP_SHARDING));
+		}
 		classLoader = new WebAppClassLoader(new URL[] {}, klass.getClassLoader(), debugEnabled);
 
 		// load browsers last
@@ -191,6 +203,26 @@ public class DriverConfiguration {
 		this.debugEnabled = debugEnabled;
 	}
 
+	/**
+	 * @return true if the browsers of the same type share the tests (each test is executed by one browser of each type),
+	 *         false if each browser executes all the tests
+	 */
+	public boolean isShardingEnabled() {
+		return shardingEnabled;
+	}
+
+	public void setShardingEnabled(boolean shardingEnabled) {
+		this.shardingEnabled = shardingEnabled;
+	}
+
+	/**
+	 * @return a value that is different for each test session. It's added to the URLs of the scripts, so the browsers
+	 *         can keep the scripts for the whole session, but never use the ones of a previous session.
+	 */
+	public String getResourceVersion() {
+		return resourceVersion;
+	}
+
 	public ClassLoader getClassLoader() {
 		return classLoader;
 	}
@@ -219,7 +251,8 @@ public class DriverConfiguration {
 		HEADLESS_FIREFOX("headlessFirefox", HeadlessFirefoxBrowser.class), //
 		HEADLESS_CHROME("headlessChrome", HeadlessChromeBrowser.class), //
 		REMOTE("remote", RemoteBrowser.class), //
-		RHINO("rhino", RhinoBrowser.class);
+		RHINO("rhino", RhinoBrowser.class), //
+		RHINO_ENGINE("rhinoEngine", RhinoEngineBrowser.class);
 
 		String name;
 		Class<? extends Browser> clazz;
@@ -1,18 +1,14 @@
 package org.stjs.testing.driver;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
 import java.net.InetSocketAddress;
 import java.net.URISyntaxException;
 import java.net.URLDecoder;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
 import java.util.HashMap;
-import java.util.Locale;
 import java.util.Map;
-import java.util.TimeZone;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
@@ -22,6 +18,7 @@ import org.junit.runners.model.InitializationError;
 import org.stjs.testing.driver.browser.LongPollingBrowser;
 
 import com.google.common.base.Charsets;
+import com.sun.net.httpserver.Headers;
 import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
@@ -37,16 +34,24 @@ public class HttpLongPollingServer implements AsyncProcess {
 	public static final String NEXT_TEST_URI = "/getNextTest";
 	public static final String BLANK_URI = "/about:blank";
 
+	/**
+	 * the resources requested with the version of the current session never change
+	 */
+	private static final String VERSIONED_CACHE_CONTROL = "public, max-age=31536000";
+	private static final String CACHE_CONTROL = "no-cache";
+
 	private final DriverConfiguration config;
 	private final HttpServer httpServer;
 	private final Map<Long, LongPollingBrowser> browsers = new ConcurrentHashMap<Long, LongPollingBrowser>();
 	private final Map<Long, Long> selfAssignedBrowserIds = new ConcurrentHashMap<Long, Long>();
+	private final ResourceCache resourceCache;
 
 	/**
 	 * Configures and starts the HTTP server
 	 */
 	public HttpLongPollingServer(DriverConfiguration config) throws InitializationError {
 		this.config = config;
+		this.resourceCache = new ResourceCache(config.getClassLoader());
 		// create the HttpServer
 		InetSocketAddress address = new InetSocketAddress(config.getPort());
 		try {
@@ -107,9 +112,7 @@ public class HttpLongPollingServer implements AsyncProcess {
 
 			try {
 
-				// add some common response headers
-				exchange.getResponseHeaders().add("Date", formatDateHeader(new Date()));
-				exchange.getResponseHeaders().add("Last-Modified", formatDateHeader(new Date()));
+				// add some common response headers (the Date header is added by the HttpServer)
 				exchange.getResponseHeaders().add("Connection", "Keep-Alive");
 				exchange.getResponseHeaders().add("Server", "STJS");
 
@@ -121,7 +124,7 @@ public class HttpLongPollingServer implements AsyncProcess {
 				} else if (BLANK_URI.equals(path)) {
 					handleAboutBlank(exchange);
 				} else {
-					handleResource(path, exchange);
+					handleResource(path, params, exchange);
 				}
 			} catch (Exception ex) {
 				System.err.println("Error processing request:" + ex);
@@ -228,18 +231,50 @@ public class HttpLongPollingServer implements AsyncProcess {
 			throw new RuntimeException("More browser connections than configured browsers");
 		}
 
-		private synchronized void handleResource(String path, HttpExchange exchange) throws IOException,
+		/**
+		 * Sends a class path resource. The resources are served from the {@link ResourceCache}, gzipped if the browser
+		 * accepts it. A browser sending the ETag of the resource it already has receives only a "not modified"
+		 * response, and the resources requested with the version of the session (see
+		 * {@link DriverConfiguration#getResourceVersion()}) are not requested again at all.
+		 */
+		private void handleResource(String path, Map<String, String> params, HttpExchange exchange) throws IOException,
 				URISyntaxException {
-			if (path.endsWith(".js")) {
-				exchange.getResponseHeaders().add("Content-Type", "text/javascript");
-			} else if (path.endsWith(".html")) {
-				exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
-			}
 			// XXX: legacy fix
 			String cleanPath = path.replaceFirst("file:/+target", "target");
-			if (!StreamUtils.copy(config.getClassLoader(), cleanPath, exchange)) {
+			ResourceCache.Resource resource = resourceCache.get(cleanPath);
+			if (resource == null) {
 				System.err.println(cleanPath + " was not found in classpath");
+				exchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_FOUND, -1);
+				return;
+			}
+
+			Headers headers = exchange.getResponseHeaders();
+			if (resource.getContentType() != null) {
+				headers.add("Content-Type", resource.getContentType());
 			}
+			headers.add("ETag", resource.getETag());
+			headers.add("Last-Modified", resource.getLastModified());
+			headers.add("Vary", "Accept-Encoding");
+			boolean versioned = config.getResourceVersion().equals(params.get(DriverConfiguration.RESOURCE_VERSION_PARAM));
+			headers.add("Cache-Control", versioned ? VERSIONED_CACHE_CONTROL : CACHE_CONTROL);
+
+			String ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+			if (ifNoneMatch != null && ifNoneMatch.contains(resource.getETag())) {
+				resourceCache.notModified();
+				exchange.sendResponseHeaders(HttpURLConnection.HTTP_NOT_MODIFIED, -1);
+				return;
+			}
+
+			byte[] response = resource.getBytes();
+			String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+			if (resource.getGzippedBytes() != null && acceptEncoding != null && acceptEncoding.contains("gzip")) {
+				headers.add("Content-Encoding", "gzip");
+				response = resource.getGzippedBytes();
+			}
+			exchange.sendResponseHeaders(HttpURLConnection.HTTP_OK, response.length);
+			OutputStream out = exchange.getResponseBody();
+			out.write(response);
+			out.flush();
 		}
 
 		private Map<String, String> parseQueryString(String query) {
@@ -262,12 +297,6 @@ public class HttpLongPollingServer implements AsyncProcess {
 			return params;
 		}
 
-		private String formatDateHeader(Date date) {
-			DateFormat df = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss ZZZ", Locale.ENGLISH);
-			df.setTimeZone(TimeZone.getTimeZone("GMT"));
-			return df.format(date);
-		}
-
 		private long parseLong(String s, long defaultValue) {
 			if (s == null) {
 				return defaultValue;
@@ -283,5 +312,8 @@ public class HttpLongPollingServer implements AsyncProcess {
 	@Override
 	public void stop() {
 		this.httpServer.stop(5);
+		if (config.isDebugEnabled()) {
+			System.out.println(resourceCache.getStatistics());
+		}
 	}
 }
@@ -1,18 +1,24 @@
 package org.stjs.testing.driver;
 
+import java.io.IOException;
 import java.io.PrintStream;
 import java.lang.reflect.Constructor;
+import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.junit.runners.model.FrameworkMethod;
 import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.TestClass;
 import org.stjs.testing.driver.browser.Browser;
+import org.stjs.testing.driver.browser.RhinoEngineBrowser;
 
 /**
  * Represents one session of unit testing that may span multiple tests in multiple classes, and performs startup and
@@ -28,14 +34,29 @@ import org.stjs.testing.driver.browser.Browser;
  */
 public class JUnitSession {
 
+	/**
+	 * the test classes are executed one after the other, so only the fixtures of the last ones are kept
+	 */
+	private static final int MAX_TEST_FIXTURES = 16;
+
 	private static JUnitSession instance = null;
 
 	private DriverConfiguration config;
 	private volatile boolean initFailed = false;
 
 	private List<Browser> browsers;
+	private List<BrowserPool> browserPools;
 	private HashMap<Class<? extends AsyncProcess>, AsyncProcess> sharedDependencies = new HashMap<Class<? extends AsyncProcess>, AsyncProcess>();
 
+	private final Map<Class<?>, TestFixture> testFixtures = new LinkedHashMap<Class<?>, TestFixture>(MAX_TEST_FIXTURES, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Class<?>, TestFixture> eldest) {
+			return size() > MAX_TEST_FIXTURES;
+		}
+	};
+
 	public static JUnitSession getInstance() {
 		if (instance == null) {
 			instance = new JUnitSession();
@@ -98,6 +119,9 @@ public class JUnitSession {
 
 	private void initBrowsers() {
 		browsers = new ArrayList<Browser>(config.getBrowsers());
+		if (config.isShardingEnabled()) {
+			browserPools = BrowserPool.build(browsers);
+		}
 	}
 
 	private void initBrowserDependencies() throws InitializationError {
@@ -186,6 +210,12 @@ public class JUnitSession {
 	private void reset() {
 		config = null;
 
+		if (browserPools != null) {
+			for (BrowserPool pool : browserPools) {
+				pool.notifyNoMoreTests();
+			}
+			browserPools = null;
+		}
 		for (Browser browser : browsers) {
 			try {
 				browser.notifyNoMoreTests();
@@ -204,6 +234,10 @@ public class JUnitSession {
 			}
 		}
 		sharedDependencies.clear();
+
+		synchronized (testFixtures) {
+			testFixtures.clear();
+		}
 	}
 
 	/**
@@ -253,10 +287,54 @@ public class JUnitSession {
 		return this.config;
 	}
 
+	/**
+	 * Returns the HTML page executing the tests of the given class. The page is built by the first browser asking for it
+	 * and then shared by all the browsers, for all the test methods of the class.
+	 */
+	public TestFixture getTestFixture(TestClass testClass) throws IOException, URISyntaxException {
+		synchronized (testFixtures) {
+			TestFixture fixture = testFixtures.get(testClass.getJavaClass());
+			if (fixture == null) {
+				fixture = TestFixture.build(config, testClass);
+				testFixtures.put(testClass.getJavaClass(), fixture);
+			}
+			return fixture;
+		}
+	}
+
 	public List<Browser> getBrowsers() {
 		return this.browsers;
 	}
 
+	/**
+	 * @return the groups of browsers sharing the tests, or null if the sharding is not enabled
+	 */
+	public List<BrowserPool> getBrowserPools() {
+		return this.browserPools;
+	}
+
+	/**
+	 * @return the number of tests that can be executed at the same time: with sharding, the size of the largest browser
+	 *         pool. Without sharding, the browsers receive the tests one at a time, unless they are all Rhino engine
+	 *         browsers.
+	 */
+	public int getParallelTestCount() {
+		int count = 1;
+		if (browserPools != null) {
+			for (BrowserPool pool : browserPools) {
+				count = Math.max(count, pool.getBrowsers().size());
+			}
+		}
+		for (Browser browser : browsers) {
+			if (browser instanceof RhinoEngineBrowser) {
+				count = Math.max(count, ((RhinoEngineBrowser) browser).getEngineCount());
+			} else if (browserPools == null) {
+				return 1;
+			}
+		}
+		return count;
+	}
+
 	@SuppressWarnings("unchecked")
 	public <T> T getDependency(Class<T> depencencyType) {
 		return (T) this.sharedDependencies.get(depencencyType);
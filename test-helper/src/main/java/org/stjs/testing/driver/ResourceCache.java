@@ -0,0 +1,187 @@
+/**
+ *  Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.stjs.testing.driver;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.DateFormat;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import com.google.common.collect.Maps;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Closeables;
+
+/**
+ * The class path resources served by the {@link HttpLongPollingServer} (the STJS runtime, the generated JavaScript
+ * files, the HTML fixtures etc). Each resource is read once from the class path and kept in memory with its ETag and,
+ * when it's worth it, its gzipped bytes. The class path does not change during a test session, so the resources are
+ * never reloaded.
+ */
+final class ResourceCache {
+	/**
+	 * the smallest resource that is compressed
+	 */
+	private static final int MIN_GZIP_SIZE = 512;
+
+	private final ClassLoader classLoader;
+	private final ConcurrentMap<String, Resource> resources = Maps.newConcurrentMap();
+
+	private final AtomicLong requests = new AtomicLong();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong notModified = new AtomicLong();
+
+	public ResourceCache(ClassLoader classLoader) {
+		this.classLoader = classLoader;
+	}
+
+	/**
+	 * @return the resource at the given path of the class path, or null if it does not exist
+	 */
+	public Resource get(String url) throws IOException, URISyntaxException {
+		URI uri = new URI(url);
+		if (uri.getPath() == null) {
+			throw new IllegalArgumentException("Wrong path in uri:" + url);
+		}
+		String path = uri.getPath().substring(1);
+
+		requests.incrementAndGet();
+		Resource resource = resources.get(path);
+		if (resource != null) {
+			hits.incrementAndGet();
+			return resource;
+		}
+
+		InputStream is = classLoader.getResourceAsStream(path);
+		if (is == null) {
+			return null;
+		}
+		try {
+			resource = new Resource(path, ByteStreams.toByteArray(is));
+		} finally {
+			Closeables.closeQuietly(is);
+		}
+		Resource existing = resources.putIfAbsent(path, resource);
+		return existing != null ? existing : resource;
+	}
+
+	/**
+	 * called when a resource was not sent because the browser already has it
+	 */
+	public void notModified() {
+		notModified.incrementAndGet();
+	}
+
+	public String getStatistics() {
+		long requestCount = requests.get();
+		long hitCount = hits.get();
+		return "Resource cache: " + resources.size() + " resources, " + requestCount + " requests, " + hitCount + " hits ("
+				+ (requestCount == 0 ? 0 : hitCount * 100 / requestCount) + "%), " + notModified.get() + " not modified";
+	}
+
+	public static final class Resource {
+		private final String contentType;
+		private final byte[] bytes;
+		private final byte[] gzippedBytes;
+		private final String etag;
+		private final String lastModified;
+
+		Resource(String path, byte[] bytes) throws IOException {
+			this.contentType = getContentType(path);
+			this.bytes = bytes;
+			this.gzippedBytes = bytes.length >= MIN_GZIP_SIZE ? gzip(bytes) : null;
+			this.etag = '"' + toHex(md5(bytes)) + '"';
+			this.lastModified = formatDateHeader(new Date());
+		}
+
+		/**
+		 * @return the content type to send, or null if it's not known
+		 */
+		public String getContentType() {
+			return contentType;
+		}
+
+		public byte[] getBytes() {
+			return bytes;
+		}
+
+		/**
+		 * @return the gzipped bytes of the resource, or null if the resource is not worth compressing
+		 */
+		public byte[] getGzippedBytes() {
+			return gzippedBytes;
+		}
+
+		public String getETag() {
+			return etag;
+		}
+
+		public String getLastModified() {
+			return lastModified;
+		}
+
+		private static String getContentType(String path) {
+			if (path.endsWith(".js")) {
+				return "text/javascript";
+			}
+			if (path.endsWith(".html")) {
+				return "text/html; charset=UTF-8";
+			}
+			return null;
+		}
+
+		private static byte[] gzip(byte[] bytes) throws IOException {
+			ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 3);
+			GZIPOutputStream gzip = new GZIPOutputStream(out);
+			gzip.write(bytes);
+			gzip.close();
+			byte[] gzipped = out.toByteArray();
+			return gzipped.length < bytes.length ? gzipped : null;
+		}
+
+		private static byte[] md5(byte[] bytes) {
+			try {
+				return MessageDigest.getInstance("MD5").digest(bytes);
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+		private static String toHex(byte[] bytes) {
+			StringBuilder s = new StringBuilder(bytes.length * 2);
+			for (byte b : bytes) {
+				s.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+			}
+			return s.toString();
+		}
+
+		private static String formatDateHeader(Date date) {
+			DateFormat df = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.ENGLISH);
+			df.setTimeZone(TimeZone.getTimeZone("GMT"));
+			return df.format(date);
+		}
+	}
+}
@@ -17,11 +17,17 @@ package org.stjs.testing.driver;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.runner.notification.RunNotifier;
 import org.junit.runners.BlockJUnit4ClassRunner;
 import org.junit.runners.model.FrameworkMethod;
 import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.RunnerScheduler;
 import org.junit.runners.model.Statement;
 import org.stjs.generator.GeneratorConstants;
 import org.stjs.javascript.annotation.STJSBridge;
@@ -38,7 +44,13 @@ public class STJSTestDriverRunner extends BlockJUnit4ClassRunner {
 
 	public STJSTestDriverRunner(Class<?> klass) throws InitializationError, IOException {
 		super(klass);
-		JUnitSession.getInstance().runnerInstantiated(this);
+		JUnitSession session = JUnitSession.getInstance();
+		session.runnerInstantiated(this);
+		int parallelTests = session.getParallelTestCount();
+		if (parallelTests > 1) {
+			// with sharding, the tests of the class are sent at the same time to the free browsers of each pool
+			setScheduler(new ParallelScheduler(parallelTests));
+		}
 	}
 
 	@Override
@@ -59,11 +71,18 @@ public class STJSTestDriverRunner extends BlockJUnit4ClassRunner {
 					System.out.println("Executing Statement for " + method.getMethod().toString());
 				}
 
-				MultiTestMethod aMethod = new MultiTestMethod(getTestClass(), method, session.getConfig()
-						.getBrowserCount());
-
-				for (Browser browser : session.getBrowsers()) {
-					browser.executeTest(aMethod);
+				MultiTestMethod aMethod;
+				if (session.getBrowserPools() != null) {
+					// each browser pool executes the test once
+					aMethod = new MultiTestMethod(getTestClass(), method, session.getBrowserPools().size());
+					for (BrowserPool pool : session.getBrowserPools()) {
+						pool.executeTest(aMethod);
+					}
+				} else {
+					aMethod = new MultiTestMethod(getTestClass(), method, session.getConfig().getBrowserCount());
+					for (Browser browser : session.getBrowsers()) {
+						browser.executeTest(aMethod);
+					}
 				}
 
 				TestResultCollection results = aMethod.awaitExecutionResult();
@@ -76,4 +95,40 @@ public class STJSTestDriverRunner extends BlockJUnit4ClassRunner {
 			}
 		};
 	}
+
+	/**
+	 * runs the tests of the class in a fixed number of threads and waits for all of them to finish
+	 */
+	static final class ParallelScheduler implements RunnerScheduler {
+		private final ExecutorService executor;
+
+		public ParallelScheduler(int threads) {
+			executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+				private final AtomicInteger i = new AtomicInteger(0);
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r);
+					t.setName("testRunner-" + i.incrementAndGet());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+
+		@Override
+		public void schedule(Runnable childStatement) {
+			executor.execute(childStatement);
+		}
+
+		@Override
+		public void finished() {
+			executor.shutdown();
+			try {
+				executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	}
 }
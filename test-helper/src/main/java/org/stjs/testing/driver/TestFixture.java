@@ -0,0 +1,248 @@
+/**
+ *  Copyright 2011 Alexandru Craciun, Eyal Kaspi
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.stjs.testing.driver;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.TestClass;
+import org.stjs.generator.BridgeClass;
+import org.stjs.generator.ClassWithJavascript;
+import org.stjs.generator.DependencyCollection;
+import org.stjs.generator.Generator;
+import org.stjs.testing.annotation.HTMLFixture;
+import org.stjs.testing.annotation.Scripts;
+import org.stjs.testing.annotation.ScriptsAfter;
+import org.stjs.testing.annotation.ScriptsBefore;
+
+import com.google.common.base.Strings;
+
+/**
+ * The HTML page sent to the browsers to execute the tests of a test class. The scripts of the page (the test class and
+ * all its dependencies), its body and the calls of the before and after methods are the same for all the test methods of
+ * the class, so they are built once (see {@link JUnitSession#getTestFixture(TestClass)}) and only the part calling the
+ * test method is added for each test.
+ */
+public final class TestFixture {
+	private final String testedClassName;
+	private final List<String> scripts;
+	private final String body;
+	private final String head;
+	private final String beforeMethods;
+	private final String afterMethods;
+	private final String end;
+
+	private TestFixture(String testedClassName, List<String> scripts, String body, String version, String beforeMethods,
+			String afterMethods) {
+		this.testedClassName = testedClassName;
+		this.scripts = Collections.unmodifiableList(scripts);
+		this.body = body;
+		this.beforeMethods = beforeMethods;
+		this.afterMethods = afterMethods;
+
+		StringBuilder headBuilder = new StringBuilder(8192);
+		headBuilder.append("<html>\n");
+		headBuilder.append("<head>\n");
+		appendScriptTag(headBuilder, "/stjs.js", version);
+		appendScriptTag(headBuilder, "/junit.js", version);
+		headBuilder.append("<script language='javascript'>stjs.mainCallDisabled=true;</script>\n");
+		for (String script : scripts) {
+			appendScriptTag(headBuilder, script, version);
+		}
+		headBuilder.append("<script language='javascript'>\n");
+		headBuilder.append("  window.onload=function(){\n");
+		this.head = headBuilder.toString();
+
+		this.end = "  }\n</script>\n</head>\n<body>\n" + body + "</body>\n</html>\n";
+	}
+
+	@SuppressWarnings("deprecation")
+	public static TestFixture build(DriverConfiguration config, TestClass testClass) throws IOException, URISyntaxException {
+		Class<?> javaClass = testClass.getJavaClass();
+		ClassWithJavascript stjsClass = new Generator().getExistingStjsClass(config.getClassLoader(), javaClass);
+
+		HTMLFixture htmlFixture = javaClass.getAnnotation(HTMLFixture.class);
+		Scripts addedScripts = javaClass.getAnnotation(Scripts.class);
+		ScriptsBefore addedScriptsBefore = javaClass.getAnnotation(ScriptsBefore.class);
+		ScriptsAfter addedScriptsAfter = javaClass.getAnnotation(ScriptsAfter.class);
+
+		List<String> scripts = new ArrayList<String>();
+		// scripts added explicitly
+		if (addedScripts != null) {
+			for (String script : addedScripts.value()) {
+				scripts.add(cleanScript(script));
+			}
+		}
+		// scripts before - new style
+		if (addedScriptsBefore != null) {
+			for (String script : addedScriptsBefore.value()) {
+				scripts.add(cleanScript(script));
+			}
+		}
+
+		Set<URI> jsFiles = new LinkedHashSet<URI>();
+		for (ClassWithJavascript dep : new DependencyCollection(stjsClass).orderAllDependencies(config.getClassLoader())) {
+
+			if (addedScripts != null && dep instanceof BridgeClass) {
+				// bridge dependencies are not added when using @Scripts
+				System.out
+						.println("WARNING: You're using @Scripts deprecated annotation that disables the automatic inclusion of the Javascript files of the bridges you're using! "
+								+ "Please consider using @ScriptsBefore and/or @ScriptsAfter instead.");
+				continue;
+			}
+			for (URI file : dep.getJavascriptFiles()) {
+				jsFiles.add(file);
+			}
+		}
+
+		for (URI file : jsFiles) {
+			scripts.add(cleanScript(file.toString()));
+		}
+
+		// scripts after - new style
+		if (addedScriptsAfter != null) {
+			for (String script : addedScriptsAfter.value()) {
+				scripts.add(cleanScript(script));
+			}
+		}
+
+		StringBuilder before = new StringBuilder();
+		before.append("    try{\n");
+		// call before methods
+		for (FrameworkMethod beforeMethod : testClass.getAnnotatedMethods(Before.class)) {
+			before.append("      stjsTest." + beforeMethod.getName() + "();\n");
+		}
+
+		StringBuilder after = new StringBuilder();
+		after.append("      if(expectedException){\n");
+		after.append("        stjsResult = 'Expected an exception, but none was thrown';\n");
+		after.append("      }\n");
+		after.append("    }catch(ex){\n");
+
+		// an exception was caught while executing the test method
+		after.append("      if(!expectedException){\n");
+		after.append("        stjsResult = ex;\n");
+		after.append("      } else if (!stjs.isInstanceOf(ex.constructor,expectedException)){\n");
+		after.append("        stjsResult = ex;\n");
+		after.append("      }\n");
+		after.append("    }finally{\n");
+		// call after methods
+		for (FrameworkMethod afterMethod : testClass.getAnnotatedMethods(After.class)) {
+			after.append("     stjsTest." + afterMethod.getName() + "();\n");
+		}
+		after.append("      parent.reportResultAndRunNextTest(stjsResult, stjsResult.location);\n");
+		after.append("     }\n");
+
+		String body = "";
+		if (htmlFixture != null) {
+			if (!Strings.isNullOrEmpty(htmlFixture.value())) {
+				body = htmlFixture.value();
+
+			} else if (!Strings.isNullOrEmpty(htmlFixture.url())) {
+				StringWriter writer = new StringWriter();
+				StreamUtils.copy(config.getClassLoader(), htmlFixture.url(), writer);
+				body = writer.toString();
+			}
+		}
+
+		return new TestFixture(javaClass.getSimpleName(), scripts, body, config.getResourceVersion(), before.toString(),
+				after.toString());
+	}
+
+	private static String cleanScript(String script) {
+		// remove wrong leading classpath://
+		return script.replace("classpath://", "/");
+	}
+
+	private static void appendScriptTag(StringBuilder builder, String script, String version) {
+		String src = script;
+		if (src.startsWith("/") && !src.startsWith("//") && src.indexOf('?') < 0) {
+			// served by the test server, the browser can keep it for the whole session
+			src += "?" + DriverConfiguration.RESOURCE_VERSION_PARAM + "=" + version;
+		}
+		// add a slash to prevent the browser to interpret the scheme
+		builder.append("<script src='" + src + "'></script>\n");
+	}
+
+	private static String getTypeName(Class<?> clazz) {
+		// TODO have it inject it here
+		// NameProvider names = new DefaultNameProvider();
+		// TypeWrapper type = TypeWrappers.wrap(clazz);
+		return clazz.getSimpleName();
+	}
+
+	/**
+	 * @return the scripts to load before executing a test, after stjs.js and junit.js. The scripts served by the test
+	 *         server start with a slash.
+	 */
+	public List<String> getScripts() {
+		return scripts;
+	}
+
+	/**
+	 * @return the HTML body of the page
+	 */
+	public String getBody() {
+		return body;
+	}
+
+	/**
+	 * @return the page executing the given test method of the class
+	 */
+	public String getPage(FrameworkMethod method) {
+		String testScript = getTestScript(method);
+		StringBuilder page = new StringBuilder(head.length() + testScript.length() + end.length());
+		page.append(head);
+		page.append(testScript);
+		page.append(end);
+		return page.toString();
+	}
+
+	/**
+	 * @return the statements executing the given test method, once all the scripts are loaded. They report the result
+	 *         by calling parent.reportResultAndRunNextTest(result, location).
+	 */
+	public String getTestScript(FrameworkMethod method) {
+		String methodName = method.getName();
+		Test test = method.getAnnotation(Test.class);
+
+		StringBuilder script = new StringBuilder(beforeMethods.length() + afterMethods.length() + 256);
+		// Adapter between generated assert (not global) and JS-test-driver assert (which is a
+		// set of global methods)
+		script.append("    Assert=window;\n");
+		script.append("    parent.startingTest('").append(testedClassName).append("', '").append(methodName).append("');");
+		script.append("    var stjsTest = new ").append(testedClassName).append("();\n");
+		script.append("    var stjsResult = 'OK';\n");
+		script.append("    var expectedException = ").append(test.expected() != Test.None.class ? getTypeName(test.expected()) : null)
+				.append(";\n");
+		script.append(beforeMethods);
+		// call the test's method
+		script.append("      stjsTest.").append(methodName).append("();\n");
+		script.append(afterMethods);
+		return script.toString();
+	}
+}
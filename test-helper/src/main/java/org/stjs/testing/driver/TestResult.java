@@ -38,6 +38,13 @@ public class TestResult {
 		return userAgent;
 	}
 
+	/**
+	 * @return the same result, coming from the given user agent
+	 */
+	public TestResult withUserAgent(String newUserAgent) {
+		return new TestResult(newUserAgent, message, location, isAssert);
+	}
+
 	public boolean isOk() {
 		return "OK".equals(message);
 	}
@@ -45,8 +52,10 @@ public class TestResult {
 	public Throwable buildException(ClassLoader testClassLoader) {
 		Throwable ex = isAssert ? new AssertionError(message + ", user agent: " + userAgent) : new RuntimeException(
 				message + ", user agent: " + userAgent);
-		StackTraceElement[] stackTrace = new JavascriptToJava(testClassLoader).buildStacktrace(location, ";");
-		ex.setStackTrace(stackTrace);
+		if (location != null) {
+			StackTraceElement[] stackTrace = new JavascriptToJava(testClassLoader).buildStacktrace(location, ";");
+			ex.setStackTrace(stackTrace);
+		}
 		return ex;
 	}
 
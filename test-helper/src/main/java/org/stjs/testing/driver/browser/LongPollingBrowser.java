@@ -1,38 +1,22 @@
 package org.stjs.testing.driver.browser;
 
 import java.io.IOException;
-import java.io.StringWriter;
-import java.lang.reflect.Method;
-import java.net.URI;
-import java.util.LinkedHashSet;
-import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Exchanger;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
-import org.junit.After;
-import org.junit.Before;
-import org.junit.Test;
-import org.junit.runners.model.FrameworkMethod;
 import org.junit.runners.model.InitializationError;
-import org.stjs.generator.BridgeClass;
-import org.stjs.generator.ClassWithJavascript;
-import org.stjs.generator.DependencyCollection;
-import org.stjs.generator.Generator;
-import org.stjs.testing.annotation.HTMLFixture;
-import org.stjs.testing.annotation.Scripts;
-import org.stjs.testing.annotation.ScriptsAfter;
-import org.stjs.testing.annotation.ScriptsBefore;
 import org.stjs.testing.driver.AsyncProcess;
+import org.stjs.testing.driver.BrowserPool;
 import org.stjs.testing.driver.DriverConfiguration;
 import org.stjs.testing.driver.HttpLongPollingServer;
 import org.stjs.testing.driver.JUnitSession;
 import org.stjs.testing.driver.MultiTestMethod;
-import org.stjs.testing.driver.StreamUtils;
+import org.stjs.testing.driver.TestFixture;
 import org.stjs.testing.driver.TestResult;
 
-import com.google.common.base.Strings;
 import com.sun.net.httpserver.HttpExchange;
 
 /**
@@ -54,6 +38,7 @@ public abstract class LongPollingBrowser extends AbstractBrowser {
 	private volatile MultiTestMethod methodUnderExecution = null;
 	private long id;
 	private volatile boolean isDead = false;
+	private volatile BrowserPool pool = null;
 
 	public LongPollingBrowser(DriverConfiguration config) {
 		super(config);
@@ -67,8 +52,20 @@ public abstract class LongPollingBrowser extends AbstractBrowser {
 		return getConfig().getServerURL() + getStartPageUri(browserId, persistent);
 	}
 
+	/**
+	 * Makes this browser pick up its tests from the given pool, shared with other browsers, instead of receiving each
+	 * test from the JUnit runner.
+	 */
+	public void setPool(BrowserPool pool) {
+		this.pool = pool;
+	}
+
 	protected void registerWithLongPollingServer() {
-		this.id = JUnitSession.getInstance().getDependency(HttpLongPollingServer.class).registerBrowserSession(this);
+		registerWithLongPollingServer(JUnitSession.getInstance().getDependency(HttpLongPollingServer.class));
+	}
+
+	protected void registerWithLongPollingServer(HttpLongPollingServer server) {
+		this.id = server.registerBrowserSession(this);
 		if (getConfig().isDebugEnabled()) {
 			System.out.println("Browser " + id + " is " + this.getClass().getSimpleName());
 		}
@@ -117,7 +114,7 @@ public abstract class LongPollingBrowser extends AbstractBrowser {
 			// there is no need to put a timeout here, because if JUnit fails to deliver a new test,
 			// this means that something really bad has happened and that the JUnit JVM will probably terminate very
 			// soon, executing all cleanup actions.
-			methodUnderExecution = exchanger.exchange(null);
+			methodUnderExecution = pool != null ? pool.awaitNextTest() : exchanger.exchange(null);
 
 			if (getConfig().isDebugEnabled()) {
 				if (methodUnderExecution != null) {
@@ -181,7 +178,8 @@ public abstract class LongPollingBrowser extends AbstractBrowser {
 	 */
 	@Override
 	public void notifyNoMoreTests() {
-		if (this.isDead) {
+		if (this.isDead || this.pool != null) {
+			// the pool notifies its browsers
 			return;
 		}
 		try {
@@ -206,11 +204,14 @@ public abstract class LongPollingBrowser extends AbstractBrowser {
 		return methodUnderExecution;
 	}
 
-	private String getTypeName(Class<?> clazz) {
-		// TODO have it inject it here
-		// NameProvider names = new DefaultNameProvider();
-		// TypeWrapper type = TypeWrappers.wrap(clazz);
-		return clazz.getSimpleName();
+	@Override
+	public TestResult buildResult(Map<String, String> queryStringParameters, HttpExchange exchange) {
+		TestResult result = super.buildResult(queryStringParameters, exchange);
+		if (pool == null) {
+			return result;
+		}
+		// the browsers of a pool have the same user agent, so tell which one executed the test
+		return result.withUserAgent(result.getUserAgent() + " (browser " + id + ")");
 	}
 
 	/**
@@ -225,122 +226,8 @@ public abstract class LongPollingBrowser extends AbstractBrowser {
 	 *            contains the HTTP response that must be written to
 	 */
 	public void sendTestFixture(MultiTestMethod meth, HttpExchange exchange) throws Exception {
-		Class<?> testClass = meth.getTestClass().getJavaClass();
-		Method method = meth.getMethod().getMethod();
-		ClassWithJavascript stjsClass = new Generator().getExistingStjsClass(getConfig().getClassLoader(), testClass);
-
-		List<FrameworkMethod> beforeMethods = meth.getTestClass().getAnnotatedMethods(Before.class);
-		List<FrameworkMethod> afterMethods = meth.getTestClass().getAnnotatedMethods(After.class);
-
-		final HTMLFixture htmlFixture = testClass.getAnnotation(HTMLFixture.class);
-
-		final Scripts addedScripts = testClass.getAnnotation(Scripts.class);
-		final ScriptsBefore addedScriptsBefore = testClass.getAnnotation(ScriptsBefore.class);
-		final ScriptsAfter addedScriptsAfter = testClass.getAnnotation(ScriptsAfter.class);
-		final Test test = meth.getMethod().getAnnotation(Test.class);
-
-		StringBuilder resp = new StringBuilder(8192);
-		resp.append("<html>\n");
-		resp.append("<head>\n");
-		appendScriptTag(resp, "/stjs.js");
-		appendScriptTag(resp, "/junit.js");
-
-		resp.append("<script language='javascript'>stjs.mainCallDisabled=true;</script>\n");
-
-		// scripts added explicitly
-		if (addedScripts != null) {
-			for (String script : addedScripts.value()) {
-				appendScriptTag(resp, script);
-			}
-		}
-		// scripts before - new style
-		if (addedScriptsBefore != null) {
-			for (String script : addedScriptsBefore.value()) {
-				appendScriptTag(resp, script);
-			}
-		}
-
-		Set<URI> jsFiles = new LinkedHashSet<URI>();
-		for (ClassWithJavascript dep : new DependencyCollection(stjsClass).orderAllDependencies(getConfig().getClassLoader())) {
-
-			if (addedScripts != null && dep instanceof BridgeClass) {
-				// bridge dependencies are not added when using @Scripts
-				System.out
-						.println("WARNING: You're using @Scripts deprecated annotation that disables the automatic inclusion of the Javascript files of the bridges you're using! "
-								+ "Please consider using @ScriptsBefore and/or @ScriptsAfter instead.");
-				continue;
-			}
-			for (URI file : dep.getJavascriptFiles()) {
-				jsFiles.add(file);
-			}
-		}
-
-		for (URI file : jsFiles) {
-			appendScriptTag(resp, file.toString());
-		}
-
-		// scripts after - new style
-		if (addedScriptsAfter != null) {
-			for (String script : addedScriptsAfter.value()) {
-				appendScriptTag(resp, script);
-			}
-		}
-		resp.append("<script language='javascript'>\n");
-		resp.append("  window.onload=function(){\n");
-		// resp.append("    console.error(document.getElementsByTagName('html')[0].innerHTML);\n");
-
-		// Adapter between generated assert (not global) and JS-test-driver assert (which is a
-		// set of global methods)
-		resp.append("    Assert=window;\n");
-
-		String testedClassName = testClass.getSimpleName();
-		resp.append("    parent.startingTest('" + testedClassName + "', '" + method.getName() + "');");
-		resp.append("    var stjsTest = new " + testedClassName + "();\n");
-		resp.append("    var stjsResult = 'OK';\n");
-		resp.append("    var expectedException = " + (test.expected() != Test.None.class ? getTypeName(test.expected()) : null) + ";\n");
-		resp.append("    try{\n");
-		// call before methods
-		for (FrameworkMethod beforeMethod : beforeMethods) {
-			resp.append("      stjsTest." + beforeMethod.getName() + "();\n");
-		}
-		// call the test's method
-		resp.append("      stjsTest." + method.getName() + "();\n");
-		resp.append("      if(expectedException){\n");
-		resp.append("        stjsResult = 'Expected an exception, but none was thrown';\n");
-		resp.append("      }\n");
-		resp.append("    }catch(ex){\n");
-
-		// an exception was caught while executing the test method
-		resp.append("      if(!expectedException){\n");
-		resp.append("        stjsResult = ex;\n");
-		resp.append("      } else if (!stjs.isInstanceOf(ex.constructor,expectedException)){\n");
-		resp.append("        stjsResult = ex;\n");
-		resp.append("      }\n");
-		resp.append("    }finally{\n");
-		// call after methods
-		for (FrameworkMethod afterMethod : afterMethods) {
-			resp.append("     stjsTest." + afterMethod.getName() + "();\n");
-		}
-		resp.append("      parent.reportResultAndRunNextTest(stjsResult, stjsResult.location);\n");
-		resp.append("     }\n");
-		resp.append("  }\n");
-		resp.append("</script>\n");
-		resp.append("</head>\n");
-		resp.append("<body>\n");
-		if (htmlFixture != null) {
-			if (!Strings.isNullOrEmpty(htmlFixture.value())) {
-				resp.append(htmlFixture.value());
-
-			} else if (!Strings.isNullOrEmpty(htmlFixture.url())) {
-				StringWriter writer = new StringWriter();
-				StreamUtils.copy(getConfig().getClassLoader(), htmlFixture.url(), writer);
-				resp.append(writer.toString());
-			}
-		}
-		resp.append("</body>\n");
-		resp.append("</html>\n");
-
-		sendResponse(resp.toString(), exchange);
+		TestFixture fixture = JUnitSession.getInstance().getTestFixture(meth.getTestClass());
+		sendResponse(fixture.getPage(meth.getMethod()), exchange);
 	}
 
 	/**
@@ -365,11 +252,24 @@ public abstract class LongPollingBrowser extends AbstractBrowser {
 
 	protected void markAsDead() {
 		this.isDead = true;
+		notifyPool();
+	}
+
+	public boolean isDead() {
+		return this.isDead;
 	}
 
 	public void markAsDead(Throwable throwable, String userAgent) {
 		this.isDead = true;
 		this.methodUnderExecution.notifyExecutionResult(new TestResult(userAgent, throwable.getMessage(), null, false));
+		notifyPool();
+	}
+
+	private void notifyPool() {
+		if (pool != null) {
+			// the pool fails its queued tests when all its browsers are dead
+			pool.browserDied();
+		}
 	}
 
 	public long getId() {
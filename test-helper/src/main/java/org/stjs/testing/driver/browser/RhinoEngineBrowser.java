@@ -0,0 +1,326 @@
+package org.stjs.testing.driver.browser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.URISyntaxException;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.TestClass;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.ContextFactory;
+import org.mozilla.javascript.RhinoException;
+import org.mozilla.javascript.Script;
+import org.mozilla.javascript.Scriptable;
+import org.mozilla.javascript.ScriptableObject;
+import org.stjs.testing.driver.AsyncProcess;
+import org.stjs.testing.driver.DriverConfiguration;
+import org.stjs.testing.driver.JUnitSession;
+import org.stjs.testing.driver.MultiTestMethod;
+import org.stjs.testing.driver.TestFixture;
+import org.stjs.testing.driver.TestResult;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Maps;
+import com.google.common.io.Closeables;
+
+/**
+ * This browser executes the tests inside the virtual machine, like {@link RhinoBrowser}, but without the long-polling
+ * protocol: a fixed number of Rhino engines (the "rhinoEngine.count" property, by default the number of processors)
+ * take the tests from a common queue and execute them directly. Each engine loads env.js, stjs.js and junit.js once; each
+ * test is executed in a new scope having the engine's scope as prototype, so the variables and functions declared by a
+ * test are dropped at its end. The content of the document is parsed again before each test, so a test does not see the
+ * elements added or removed by the previous ones. The other objects of the engine's scope are shared by its tests
+ * though: the namespaces created with stjs.ns, the properties set through window and the listeners added to window or
+ * document by a test are seen by the next tests of the same engine. The scripts are compiled once and shared by all the
+ * engines. A test running longer than the test timeout (see
+ * {@link DriverConfiguration#getTestTimeout()}) is stopped and failed.
+ */
+public class RhinoEngineBrowser extends AbstractBrowser {
+	public static final String PROP_ENGINE_COUNT = "rhinoEngine.count";
+
+	private static final String[] ENGINE_SCRIPTS = { "/env.rhino.js", "/stjs.js", "/junit.js" };
+	private static final long POLL_MILLIS = 500;
+	private static final String OK = "OK";
+	private static final int INSTRUCTION_OBSERVER_THRESHOLD = 10000;
+
+	/**
+	 * a line of a Rhino stack trace: "\tat /org/stjs/TestClass.js:12 (method)"
+	 */
+	private static final Pattern RHINO_STACK_LINE = Pattern.compile("\\s*at\\s+(.+):(\\d+)(?:\\s+\\((\\w+)\\))?\\s*");
+
+	private final ContextFactory contextFactory = new TimedContextFactory();
+	private final ConcurrentMap<String, Script> compiledScripts = Maps.newConcurrentMap();
+	private final BlockingQueue<MultiTestMethod> tests = new LinkedBlockingQueue<MultiTestMethod>();
+	private volatile boolean noMoreTests = false;
+	private final int engineCount;
+	private Thread[] engines;
+
+	public RhinoEngineBrowser(DriverConfiguration config) {
+		super(config);
+		this.engineCount = Integer.parseInt(config.getProperty(PROP_ENGINE_COUNT,
+				Integer.toString(Runtime.getRuntime().availableProcessors())));
+	}
+
+	/**
+	 * @return the number of tests this browser executes at the same time
+	 */
+	public int getEngineCount() {
+		return engineCount;
+	}
+
+	@Override
+	public void start() throws InitializationError {
+		engines = new Thread[engineCount];
+		for (int i = 0; i < engineCount; ++i) {
+			engines[i] = new Thread(new Engine("Rhino engine " + (i + 1)), "rhino-engine-" + (i + 1));
+			engines[i].setDaemon(true);
+			engines[i].start();
+		}
+	}
+
+	/**
+	 * Queues the specified test for the first engine that is free. This method does not wait for the test to be
+	 * executed.
+	 */
+	@Override
+	public void executeTest(MultiTestMethod method) {
+		tests.add(method);
+	}
+
+	@Override
+	public void notifyNoMoreTests() {
+		noMoreTests = true;
+	}
+
+	@Override
+	public void stop() {
+		noMoreTests = true;
+		if (engines != null) {
+			for (Thread engine : engines) {
+				engine.interrupt();
+			}
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public Set<Class<? extends AsyncProcess>> getSharedDependencies() {
+		// no HTTP server is needed
+		return processSet();
+	}
+
+	/**
+	 * @return the page of the given test class, shared with the other browsers of the session
+	 */
+	protected TestFixture getTestFixture(TestClass testClass) throws IOException, URISyntaxException {
+		return JUnitSession.getInstance().getTestFixture(testClass);
+	}
+
+	/**
+	 * @return the compiled script at the given class path location. The script is compiled in interpreted mode, so it
+	 *         can be shared by all the engines.
+	 */
+	private Script getScript(Context cx, String path) throws IOException {
+		Script script = compiledScripts.get(path);
+		if (script != null) {
+			return script;
+		}
+		if (!path.startsWith("/") || path.startsWith("//")) {
+			throw new IOException("Only the scripts of the class path can be loaded, not " + path);
+		}
+		String cleanPath = path.replaceFirst("^/file:/+target", "/target");
+		InputStream in = getConfig().getClassLoader().getResourceAsStream(cleanPath.substring(1));
+		if (in == null) {
+			throw new IOException(cleanPath + " was not found in classpath");
+		}
+		Reader reader = new InputStreamReader(in, Charsets.UTF_8);
+		try {
+			script = cx.compileReader(reader, cleanPath, 1, null);
+		}
+		finally {
+			Closeables.closeQuietly(reader);
+		}
+		Script existing = compiledScripts.putIfAbsent(path, script);
+		return existing != null ? existing : script;
+	}
+
+	/**
+	 * converts the stack trace of a Rhino error to the format of stacktrace.js, expected by {@link TestResult}
+	 */
+	private static String toLocation(Object stack) {
+		if (!(stack instanceof CharSequence)) {
+			return null;
+		}
+		StringBuilder location = new StringBuilder();
+		for (String line : stack.toString().split("\n")) {
+			Matcher m = RHINO_STACK_LINE.matcher(line);
+			if (!m.matches()) {
+				continue;
+			}
+			if (location.length() > 0) {
+				location.append(';');
+			}
+			String method = m.group(3) != null ? m.group(3) : "anonymous";
+			location.append("at ").append(method).append(" (http://localhost").append(m.group(1)).append(':').append(m.group(2))
+					.append(":0)");
+		}
+		return location.length() == 0 ? null : location.toString();
+	}
+
+	/**
+	 * one engine, executing the tests in its own thread
+	 */
+	private final class Engine implements Runnable {
+		private final String userAgent;
+
+		public Engine(String userAgent) {
+			this.userAgent = userAgent;
+		}
+
+		@Override
+		public void run() {
+			Context cx = contextFactory.enterContext();
+			try {
+				cx.setOptimizationLevel(-1);
+				cx.setLanguageVersion(Context.VERSION_1_5);
+				ScriptableObject engineScope = cx.initStandardObjects();
+				cx.evaluateString(engineScope, "function print(message) {java.lang.System.out.println(message);}", "print", 1,
+						null);
+				for (String path : ENGINE_SCRIPTS) {
+					getScript(cx, path).exec(cx, engineScope);
+				}
+				cx.evaluateString(engineScope, "stjs.mainCallDisabled=true;", "init", 1, null);
+
+				while (!noMoreTests || !tests.isEmpty()) {
+					MultiTestMethod method = tests.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+					if (method != null) {
+						method.notifyExecutionResult(execute(cx, engineScope, method));
+					}
+				}
+			}
+			catch (InterruptedException e) {
+				// the browser is stopped
+			}
+			catch (IOException e) {
+				failRemainingTests(e);
+			}
+			catch (RhinoException e) {
+				failRemainingTests(e);
+			}
+			finally {
+				Context.exit();
+			}
+		}
+
+		private TestResult execute(Context cx, Scriptable engineScope, MultiTestMethod method) {
+			TimedContext timedContext = (TimedContext) cx;
+			timedContext.deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(getConfig().getTestTimeout());
+			try {
+				TestFixture fixture = getTestFixture(method.getTestClass());
+
+				// the scope of the test: the variables it declares are dropped at the end of the test
+				Scriptable scope = cx.newObject(engineScope);
+				scope.setPrototype(engineScope);
+				scope.setParentScope(null);
+
+				ScriptableObject.putProperty(scope, "stjsFixtureBody", fixture.getBody());
+				// a new document tree for each test, the elements added by the previous tests are dropped
+				cx.evaluateString(scope, "while(document.firstChild){document.removeChild(document.firstChild);}"
+						+ "HTMLParser.parseDocument('<html><head><title></title></head><body>' + stjsFixtureBody"
+						+ " + '</body></html>', document);", "fixture", 1, null);
+				// defined directly in the scope: a "var parent" would call the setter of window.parent instead
+				Scriptable parent = (Scriptable) cx.evaluateString(scope, "({startingTest : function(){},"
+						+ " reportResultAndRunNextTest : function(result){this.result = result;}})", "parent", 1, null);
+				((ScriptableObject) scope).defineProperty("parent", parent, ScriptableObject.EMPTY);
+				for (String path : fixture.getScripts()) {
+					getScript(cx, path).exec(cx, scope);
+				}
+				cx.evaluateString(scope, "(function(){\n" + fixture.getTestScript(method.getMethod()) + "})();", method
+						.getTestClass().getName(), 1, null);
+
+				return buildResult(ScriptableObject.getProperty(parent, "result"));
+			}
+			catch (Exception e) {
+				return new TestResult(userAgent, e.toString(), null, false);
+			}
+			catch (TestTimeoutError e) {
+				return new TestResult(userAgent, "The test did not finish in " + getConfig().getTestTimeout() + " seconds", null,
+						false);
+			}
+			finally {
+				timedContext.deadline = Long.MAX_VALUE;
+			}
+		}
+
+		private TestResult buildResult(Object result) {
+			String message = Context.toString(result);
+			if (OK.equals(message) || !(result instanceof Scriptable)) {
+				return new TestResult(userAgent, message, null, false);
+			}
+			Scriptable error = (Scriptable) result;
+			boolean isAssert = "AssertError".equals(ScriptableObject.getProperty(error, "name"));
+			return new TestResult(userAgent, message, toLocation(ScriptableObject.getProperty(error, "stack")), isAssert);
+		}
+
+		private void failRemainingTests(Exception e) {
+			System.err.println("Cannot initialize the Rhino engine:" + e);
+			while (!noMoreTests || !tests.isEmpty()) {
+				try {
+					MultiTestMethod method = tests.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+					if (method != null) {
+						method.notifyExecutionResult(new TestResult(userAgent, "Cannot initialize the Rhino engine:" + e, null,
+								false));
+					}
+				}
+				catch (InterruptedException ie) {
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * the context of an engine, with the time when the current test must be stopped
+	 */
+	private static final class TimedContext extends Context {
+		private volatile long deadline = Long.MAX_VALUE;
+
+		private TimedContext(ContextFactory factory) {
+			super(factory);
+		}
+	}
+
+	/**
+	 * creates contexts that stop the script they execute after the deadline of the context. The scripts are
+	 * interpreted, so the instructions are counted.
+	 */
+	private static final class TimedContextFactory extends ContextFactory {
+		@Override
+		protected Context makeContext() {
+			TimedContext cx = new TimedContext(this);
+			cx.setInstructionObserverThreshold(INSTRUCTION_OBSERVER_THRESHOLD);
+			return cx;
+		}
+
+		@Override
+		protected void observeInstructionCount(Context cx, int instructionCount) {
+			if (System.currentTimeMillis() > ((TimedContext) cx).deadline) {
+				// an Error cannot be caught by the JavaScript code of the test
+				throw new TestTimeoutError();
+			}
+		}
+	}
+
+	private static final class TestTimeoutError extends Error {
+		private static final long serialVersionUID = 1L;
+	}
+}
@@ -0,0 +1,269 @@
+package org.stjs.testing.driver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.InitializationError;
+import org.junit.runners.model.TestClass;
+import org.stjs.testing.driver.browser.Browser;
+import org.stjs.testing.driver.browser.LongPollingBrowser;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.CharStreams;
+import com.google.common.io.Closeables;
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * shares tests between fake browsers that long-poll the server the same way the test page does
+ */
+@SuppressWarnings("restriction")
+public class BrowserPoolTest {
+	private static final String BLOCKING_TEST = "testBlocking";
+
+	private static DriverConfiguration config;
+	private static HttpLongPollingServer server;
+
+	/**
+	 * the test methods sent to the browsers, they are never executed
+	 */
+	public static class Sample {
+		@Test
+		public void testBlocking() {
+			//
+		}
+
+		@Test
+		public void test1() {
+			//
+		}
+
+		@Test
+		public void test2() {
+			//
+		}
+
+		@Test
+		public void test3() {
+			//
+		}
+
+		@Test
+		public void test4() {
+			//
+		}
+	}
+
+	/**
+	 * a browser whose page only reports that the test passed. It keeps the test {@link #BLOCKING_TEST} until it's
+	 * released.
+	 */
+	private static class FakeBrowser extends LongPollingBrowser {
+		private final List<String> executedTests = Collections.synchronizedList(new ArrayList<String>());
+		private final CountDownLatch blockingStarted;
+		private final CountDownLatch blockingReleased;
+		private Thread page;
+
+		public FakeBrowser(CountDownLatch blockingStarted, CountDownLatch blockingReleased) {
+			super(config);
+			this.blockingStarted = blockingStarted;
+			this.blockingReleased = blockingReleased;
+		}
+
+		@Override
+		protected void doStart() throws InitializationError {
+			registerWithLongPollingServer(server);
+			page = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						String params = "browserId=" + getId();
+						for (String test = getNextTest(params); test != null; test = getNextTest(params)) {
+							executedTests.add(test);
+							if (BLOCKING_TEST.equals(test)) {
+								blockingStarted.countDown();
+								blockingReleased.await();
+							}
+							params = "browserId=" + getId() + "&result=OK";
+						}
+					}
+					catch (Exception e) {
+						throw new RuntimeException(e);
+					}
+				}
+			});
+			page.start();
+		}
+
+		/**
+		 * @return the name of the next test, or null if there are no more tests
+		 */
+		private String getNextTest(String params) throws IOException {
+			HttpURLConnection connection = (HttpURLConnection) new URL(config.getServerURL() + "getNextTest?" + params).openConnection();
+			connection.setRequestProperty("User-Agent", "Fake");
+			String response = CharStreams.toString(new InputStreamReader(connection.getInputStream(), Charsets.UTF_8));
+			return response.contains("Tests completed") ? null : response;
+		}
+
+		@Override
+		public void sendTestFixture(MultiTestMethod meth, HttpExchange exchange) throws Exception {
+			sendResponse(meth.getMethod().getName(), exchange);
+		}
+
+		public void die() {
+			markAsDead();
+		}
+
+		public void awaitPageClosed() throws InterruptedException {
+			page.join();
+		}
+	}
+
+	@BeforeClass
+	public static void startServer() throws Exception {
+		config = new DriverConfiguration(BrowserPoolTest.class);
+		ServerSocket socket = new ServerSocket(0);
+		config.setPort(socket.getLocalPort());
+		Closeables.closeQuietly(socket);
+		config.setShardingEnabled(true);
+		server = new HttpLongPollingServer(config);
+		server.start();
+	}
+
+	@AfterClass
+	public static void stopServer() {
+		server.stop();
+	}
+
+	private static MultiTestMethod newTest(String name) throws Exception {
+		TestClass testClass = new TestClass(Sample.class);
+		return new MultiTestMethod(testClass, new FrameworkMethod(Sample.class.getMethod(name)), 1);
+	}
+
+	private static BrowserPool buildPool(Browser... browsers) {
+		List<BrowserPool> pools = BrowserPool.build(Arrays.asList(browsers));
+		assertEquals(1, pools.size());
+		return pools.get(0);
+	}
+
+	private static Runnable execute(final BrowserPool pool, final MultiTestMethod test) {
+		// what the runner does for each test method
+		return new Runnable() {
+			@Override
+			public void run() {
+				pool.executeTest(test);
+				test.awaitExecutionResult();
+			}
+		};
+	}
+
+	@Test(timeout = 20000)
+	public void testNextFreeBrowser() throws Exception {
+		CountDownLatch blockingStarted = new CountDownLatch(1);
+		CountDownLatch blockingReleased = new CountDownLatch(1);
+		FakeBrowser first = new FakeBrowser(blockingStarted, blockingReleased);
+		FakeBrowser second = new FakeBrowser(blockingStarted, blockingReleased);
+		BrowserPool pool = buildPool(first, second);
+		first.start();
+		second.start();
+
+		MultiTestMethod blocking = newTest(BLOCKING_TEST);
+		pool.executeTest(blocking);
+		blockingStarted.await();
+		FakeBrowser busy = first.executedTests.contains(BLOCKING_TEST) ? first : second;
+		FakeBrowser free = busy == first ? second : first;
+
+		// the other tests are executed by the free browser while the first test is still running
+		STJSTestDriverRunner.ParallelScheduler scheduler = new STJSTestDriverRunner.ParallelScheduler(2);
+		List<MultiTestMethod> tests = Arrays.asList(newTest("test1"), newTest("test2"), newTest("test3"));
+		for (MultiTestMethod test : tests) {
+			scheduler.schedule(execute(pool, test));
+		}
+		for (MultiTestMethod test : tests) {
+			assertTrue(test.awaitExecutionResult().isOk());
+		}
+		assertEquals(Arrays.asList("test1", "test2", "test3"), sorted(free.executedTests));
+		assertEquals(Arrays.asList(BLOCKING_TEST), busy.executedTests);
+
+		blockingReleased.countDown();
+		scheduler.finished();
+		assertTrue(blocking.awaitExecutionResult().isOk());
+		pool.notifyNoMoreTests();
+		first.awaitPageClosed();
+		second.awaitPageClosed();
+	}
+
+	@Test(timeout = 20000)
+	public void testResultOfEachBrowser() throws Exception {
+		FakeBrowser first = new FakeBrowser(new CountDownLatch(1), new CountDownLatch(0));
+		FakeBrowser second = new FakeBrowser(new CountDownLatch(1), new CountDownLatch(0));
+		BrowserPool pool = buildPool(first, second);
+		first.start();
+		second.start();
+
+		STJSTestDriverRunner.ParallelScheduler scheduler = new STJSTestDriverRunner.ParallelScheduler(2);
+		List<MultiTestMethod> tests = Arrays.asList(newTest("test1"), newTest("test2"), newTest("test3"), newTest("test4"));
+		for (MultiTestMethod test : tests) {
+			scheduler.schedule(execute(pool, test));
+		}
+		scheduler.finished();
+		pool.notifyNoMoreTests();
+		first.awaitPageClosed();
+		second.awaitPageClosed();
+
+		assertEquals(tests.size(), first.executedTests.size() + second.executedTests.size());
+		for (MultiTestMethod test : tests) {
+			TestResultCollection results = test.awaitExecutionResult();
+			assertEquals(1, results.size());
+			String name = test.getMethod().getName();
+			FakeBrowser browser = first.executedTests.contains(name) ? first : second;
+			assertEquals("Fake (browser " + browser.getId() + ")", results.getResult(0).getUserAgent());
+		}
+	}
+
+	@Test(timeout = 20000)
+	public void testDeadPool() throws Exception {
+		// the browsers are not started, so the tests stay in the queue
+		FakeBrowser first = new FakeBrowser(new CountDownLatch(1), new CountDownLatch(0));
+		FakeBrowser second = new FakeBrowser(new CountDownLatch(1), new CountDownLatch(0));
+		BrowserPool pool = buildPool(first, second);
+		MultiTestMethod test1 = newTest("test1");
+		MultiTestMethod test2 = newTest("test2");
+		pool.executeTest(test1);
+		pool.executeTest(test2);
+
+		first.die();
+		// the last browser dies: the queued tests fail instead of waiting forever
+		second.die();
+		for (MultiTestMethod test : Arrays.asList(test1, test2)) {
+			TestResultCollection results = test.awaitExecutionResult();
+			assertFalse(results.isOk());
+			assertEquals("All the browsers are dead", results.getResult(0).getMessage());
+		}
+
+		MultiTestMethod test3 = newTest("test3");
+		pool.executeTest(test3);
+		assertFalse(test3.awaitExecutionResult().isOk());
+	}
+
+	private static List<String> sorted(List<String> list) {
+		List<String> copy = new ArrayList<String>(list);
+		Collections.sort(copy);
+		return copy;
+	}
+}
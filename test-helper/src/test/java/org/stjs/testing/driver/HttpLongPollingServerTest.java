@@ -0,0 +1,118 @@
+package org.stjs.testing.driver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.io.Closeables;
+
+/**
+ * checks the caching headers and the compression of the resources sent by the server
+ */
+public class HttpLongPollingServerTest {
+	private static DriverConfiguration config;
+	private static HttpLongPollingServer server;
+
+	@BeforeClass
+	public static void startServer() throws Exception {
+		config = new DriverConfiguration(HttpLongPollingServerTest.class);
+		ServerSocket socket = new ServerSocket(0);
+		config.setPort(socket.getLocalPort());
+		socket.close();
+		server = new HttpLongPollingServer(config);
+		server.start();
+	}
+
+	@AfterClass
+	public static void stopServer() {
+		server.stop();
+	}
+
+	private HttpURLConnection open(String uri) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + config.getPort() + uri).openConnection();
+		connection.setUseCaches(false);
+		return connection;
+	}
+
+	private static byte[] read(InputStream in) throws IOException {
+		try {
+			return ByteStreams.toByteArray(in);
+		}
+		finally {
+			Closeables.closeQuietly(in);
+		}
+	}
+
+	@Test
+	public void testNotModified() throws Exception {
+		HttpURLConnection first = open("/stjs.js");
+		assertEquals(HttpURLConnection.HTTP_OK, first.getResponseCode());
+		String etag = first.getHeaderField("ETag");
+		assertNotNull(etag);
+		assertNotNull(first.getHeaderField("Last-Modified"));
+		read(first.getInputStream());
+
+		HttpURLConnection second = open("/stjs.js");
+		second.setRequestProperty("If-None-Match", etag);
+		assertEquals(HttpURLConnection.HTTP_NOT_MODIFIED, second.getResponseCode());
+		assertEquals(etag, second.getHeaderField("ETag"));
+
+		HttpURLConnection changed = open("/stjs.js");
+		changed.setRequestProperty("If-None-Match", "\"other\"");
+		assertEquals(HttpURLConnection.HTTP_OK, changed.getResponseCode());
+		read(changed.getInputStream());
+	}
+
+	@Test
+	public void testGzip() throws Exception {
+		HttpURLConnection plain = open("/stjs.js");
+		assertNull(plain.getHeaderField("Content-Encoding"));
+		byte[] bytes = read(plain.getInputStream());
+
+		HttpURLConnection gzipped = open("/stjs.js");
+		gzipped.setRequestProperty("Accept-Encoding", "gzip, deflate");
+		assertEquals("gzip", gzipped.getHeaderField("Content-Encoding"));
+		assertEquals("Accept-Encoding", gzipped.getHeaderField("Vary"));
+		assertEquals("text/javascript", gzipped.getContentType());
+		assertArrayEquals(bytes, read(new GZIPInputStream(gzipped.getInputStream())));
+
+		// too small to be compressed
+		HttpURLConnection small = open("/org/stjs/testing/driver/small.js");
+		small.setRequestProperty("Accept-Encoding", "gzip");
+		assertNull(small.getHeaderField("Content-Encoding"));
+		assertEquals("var small = 1;\n", new String(read(small.getInputStream()), "UTF-8"));
+	}
+
+	@Test
+	public void testVersionedCacheControl() throws Exception {
+		HttpURLConnection versioned = open("/stjs.js?" + DriverConfiguration.RESOURCE_VERSION_PARAM + "=" + config.getResourceVersion());
+		assertEquals("public, max-age=31536000", versioned.getHeaderField("Cache-Control"));
+		read(versioned.getInputStream());
+
+		HttpURLConnection previousSession = open("/stjs.js?" + DriverConfiguration.RESOURCE_VERSION_PARAM + "=old");
+		assertEquals("no-cache", previousSession.getHeaderField("Cache-Control"));
+		read(previousSession.getInputStream());
+
+		HttpURLConnection unversioned = open("/stjs.js");
+		assertEquals("no-cache", unversioned.getHeaderField("Cache-Control"));
+		read(unversioned.getInputStream());
+	}
+
+	@Test
+	public void testNotFound() throws Exception {
+		assertEquals(HttpURLConnection.HTTP_NOT_FOUND, open("/missing.js").getResponseCode());
+	}
+}
@@ -0,0 +1,38 @@
+package org.stjs.testing.driver;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.stjs.testing.annotation.HTMLFixture;
+import org.stjs.testing.annotation.ScriptsAfter;
+import org.stjs.testing.annotation.ScriptsBefore;
+
+/**
+ * a test class whose page has all the parts built once per class: scripts, HTML body and before/after methods
+ */
+@HTMLFixture("<div id='sample'></div>")
+@ScriptsBefore({ "/before.js", "classpath://org/stjs/testing/driver/lib.js" })
+@ScriptsAfter({ "http://example.com/after.js" })
+public class PageSample {
+	public int value;
+
+	@Before
+	public void setUp() {
+		value = 1;
+	}
+
+	@After
+	public void tearDown() {
+		value = 0;
+	}
+
+	@Test
+	public void testFirst() {
+		value++;
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void testSecond() {
+		throw new RuntimeException("expected");
+	}
+}
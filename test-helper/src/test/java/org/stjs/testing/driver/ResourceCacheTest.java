@@ -0,0 +1,54 @@
+package org.stjs.testing.driver;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+
+public class ResourceCacheTest {
+	private final ResourceCache cache = new ResourceCache(Thread.currentThread().getContextClassLoader());
+
+	@Test
+	public void testResourceReadOnce() throws Exception {
+		ResourceCache.Resource resource = cache.get("/stjs.js");
+		assertNotNull(resource);
+		assertSame(resource, cache.get("/stjs.js?v=1"));
+		assertEquals("text/javascript", resource.getContentType());
+		assertTrue(cache.getStatistics(), cache.getStatistics().contains("1 resources, 2 requests, 1 hits"));
+	}
+
+	@Test
+	public void testMissingResource() throws Exception {
+		assertNull(cache.get("/missing.js"));
+	}
+
+	@Test
+	public void testGzip() throws Exception {
+		ResourceCache.Resource resource = cache.get("/stjs.js");
+		assertNotNull(resource.getGzippedBytes());
+		assertTrue(resource.getGzippedBytes().length < resource.getBytes().length);
+		byte[] unzipped = ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(resource.getGzippedBytes())));
+		assertArrayEquals(resource.getBytes(), unzipped);
+
+		// not worth compressing
+		assertNull(cache.get("/org/stjs/testing/driver/small.js").getGzippedBytes());
+	}
+
+	@Test
+	public void testETag() throws Exception {
+		String etag = cache.get("/stjs.js").getETag();
+		assertTrue(etag, etag.matches("\"[0-9a-f]{32}\""));
+		// the same content has the same ETag, even when read by another cache
+		assertEquals(etag, new ResourceCache(Thread.currentThread().getContextClassLoader()).get("/stjs.js").getETag());
+		assertTrue(!etag.equals(cache.get("/org/stjs/testing/driver/small.js").getETag()));
+	}
+}
@@ -0,0 +1,148 @@
+package org.stjs.testing.driver;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.TestClass;
+import org.stjs.generator.ClassWithJavascript;
+import org.stjs.generator.DependencyCollection;
+import org.stjs.generator.GenerationDirectory;
+import org.stjs.generator.Generator;
+import org.stjs.generator.GeneratorConfigurationBuilder;
+import org.stjs.testing.annotation.HTMLFixture;
+import org.stjs.testing.annotation.ScriptsAfter;
+import org.stjs.testing.annotation.ScriptsBefore;
+
+import com.google.common.base.Charsets;
+
+/**
+ * checks that the page built once per test class is the same as the page that was built for each test method
+ */
+public class TestFixtureTest {
+	private static DriverConfiguration config;
+
+	@BeforeClass
+	public static void generateSample() throws Exception {
+		config = new DriverConfiguration(PageSample.class);
+		Generator generator = new Generator();
+		generator.init(config.getClassLoader(), Charsets.UTF_8.name());
+		try {
+			generator.generateJavascript(config.getClassLoader(), PageSample.class.getName(), new File("src/test/java"),
+					new GenerationDirectory(new File("target/fixture-js"), new File("fixture-js"), new File("")), new File("target",
+							"test-classes"), new GeneratorConfigurationBuilder().allowedPackage("org.junit")
+							.allowedPackage("org.stjs.testing").build());
+		}
+		finally {
+			generator.close();
+		}
+	}
+
+	private static String getScriptTag(String script, String version) {
+		String src = script.replace("classpath://", "/");
+		if (src.startsWith("/") && !src.startsWith("//") && src.indexOf('?') < 0) {
+			src += "?" + DriverConfiguration.RESOURCE_VERSION_PARAM + "=" + version;
+		}
+		return "<script src='" + src + "'></script>\n";
+	}
+
+	/**
+	 * the page as it was built by LongPollingBrowser.sendTestFixture for each test method, with the version added to the
+	 * served scripts as it is now done by the cache of the resources
+	 */
+	@SuppressWarnings("deprecation")
+	private static String buildPagePerMethod(TestClass testClass, FrameworkMethod method, String version) {
+		Class<?> javaClass = testClass.getJavaClass();
+		ClassWithJavascript stjsClass = new Generator().getExistingStjsClass(config.getClassLoader(), javaClass);
+		StringBuilder resp = new StringBuilder();
+		resp.append("<html>\n");
+		resp.append("<head>\n");
+		resp.append(getScriptTag("/stjs.js", version));
+		resp.append(getScriptTag("/junit.js", version));
+		resp.append("<script language='javascript'>stjs.mainCallDisabled=true;</script>\n");
+		for (String script : javaClass.getAnnotation(ScriptsBefore.class).value()) {
+			resp.append(getScriptTag(script, version));
+		}
+		Set<URI> jsFiles = new LinkedHashSet<URI>();
+		for (ClassWithJavascript dep : new DependencyCollection(stjsClass).orderAllDependencies(config.getClassLoader())) {
+			jsFiles.addAll(dep.getJavascriptFiles());
+		}
+		for (URI file : jsFiles) {
+			resp.append(getScriptTag(file.toString(), version));
+		}
+		for (String script : javaClass.getAnnotation(ScriptsAfter.class).value()) {
+			resp.append(getScriptTag(script, version));
+		}
+		resp.append("<script language='javascript'>\n");
+		resp.append("  window.onload=function(){\n");
+		resp.append("    Assert=window;\n");
+		String testedClassName = javaClass.getSimpleName();
+		Test test = method.getAnnotation(Test.class);
+		resp.append("    parent.startingTest('" + testedClassName + "', '" + method.getName() + "');");
+		resp.append("    var stjsTest = new " + testedClassName + "();\n");
+		resp.append("    var stjsResult = 'OK';\n");
+		resp.append("    var expectedException = "
+				+ (test.expected() != Test.None.class ? test.expected().getSimpleName() : null) + ";\n");
+		resp.append("    try{\n");
+		for (FrameworkMethod beforeMethod : testClass.getAnnotatedMethods(Before.class)) {
+			resp.append("      stjsTest." + beforeMethod.getName() + "();\n");
+		}
+		resp.append("      stjsTest." + method.getName() + "();\n");
+		resp.append("      if(expectedException){\n");
+		resp.append("        stjsResult = 'Expected an exception, but none was thrown';\n");
+		resp.append("      }\n");
+		resp.append("    }catch(ex){\n");
+		resp.append("      if(!expectedException){\n");
+		resp.append("        stjsResult = ex;\n");
+		resp.append("      } else if (!stjs.isInstanceOf(ex.constructor,expectedException)){\n");
+		resp.append("        stjsResult = ex;\n");
+		resp.append("      }\n");
+		resp.append("    }finally{\n");
+		for (FrameworkMethod afterMethod : testClass.getAnnotatedMethods(After.class)) {
+			resp.append("     stjsTest." + afterMethod.getName() + "();\n");
+		}
+		resp.append("      parent.reportResultAndRunNextTest(stjsResult, stjsResult.location);\n");
+		resp.append("     }\n");
+		resp.append("  }\n");
+		resp.append("</script>\n");
+		resp.append("</head>\n");
+		resp.append("<body>\n");
+		resp.append(javaClass.getAnnotation(HTMLFixture.class).value());
+		resp.append("</body>\n");
+		resp.append("</html>\n");
+		return resp.toString();
+	}
+
+	@Test
+	public void testSamePagesAsPerMethod() throws Exception {
+		TestClass testClass = new TestClass(PageSample.class);
+		TestFixture fixture = TestFixture.build(config, testClass);
+		List<FrameworkMethod> methods = testClass.getAnnotatedMethods(Test.class);
+		assertEquals(2, methods.size());
+		for (FrameworkMethod method : methods) {
+			assertEquals(buildPagePerMethod(testClass, method, config.getResourceVersion()), fixture.getPage(method));
+		}
+	}
+
+	@Test
+	public void testScripts() throws Exception {
+		TestFixture fixture = TestFixture.build(config, new TestClass(PageSample.class));
+		List<String> scripts = new ArrayList<String>(fixture.getScripts());
+		assertEquals(4, scripts.size());
+		assertEquals("/before.js", scripts.get(0));
+		assertEquals("/org/stjs/testing/driver/lib.js", scripts.get(1));
+		assertEquals("/org/stjs/testing/driver/PageSample.js", scripts.get(2));
+		assertEquals("http://example.com/after.js", scripts.get(3));
+		assertEquals("<div id='sample'></div>", fixture.getBody());
+	}
+}
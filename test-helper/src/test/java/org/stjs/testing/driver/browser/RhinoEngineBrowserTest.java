@@ -0,0 +1,112 @@
+package org.stjs.testing.driver.browser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runners.model.FrameworkMethod;
+import org.junit.runners.model.TestClass;
+import org.stjs.generator.GenerationDirectory;
+import org.stjs.generator.Generator;
+import org.stjs.generator.GeneratorConfigurationBuilder;
+import org.stjs.testing.driver.DriverConfiguration;
+import org.stjs.testing.driver.MultiTestMethod;
+import org.stjs.testing.driver.TestFixture;
+import org.stjs.testing.driver.TestResult;
+
+import com.google.common.base.Charsets;
+
+/**
+ * executes the tests of {@link RhinoSample} with a single engine, so they share its scope
+ */
+public class RhinoEngineBrowserTest {
+	private static DriverConfiguration config;
+	private static RhinoEngineBrowser browser;
+
+	@BeforeClass
+	public static void startBrowser() throws Exception {
+		System.setProperty(RhinoEngineBrowser.PROP_ENGINE_COUNT, "1");
+		try {
+			config = new DriverConfiguration(RhinoSample.class);
+		}
+		finally {
+			System.clearProperty(RhinoEngineBrowser.PROP_ENGINE_COUNT);
+		}
+		config.setTestTimeout(1);
+
+		// the scripts of the page are loaded from the class path
+		Generator generator = new Generator();
+		generator.init(config.getClassLoader(), Charsets.UTF_8.name());
+		try {
+			generator.generateJavascript(config.getClassLoader(), RhinoSample.class.getName(), new File("src/test/java"),
+					new GenerationDirectory(new File("target/test-classes"), new File(""), new File("")), new File("target",
+							"test-classes"), new GeneratorConfigurationBuilder().allowedPackage("org.junit")
+							.allowedPackage("org.stjs.testing").build());
+		}
+		finally {
+			generator.close();
+		}
+
+		browser = new RhinoEngineBrowser(config) {
+			@Override
+			protected TestFixture getTestFixture(TestClass testClass) throws IOException, URISyntaxException {
+				// no JUnit session
+				return TestFixture.build(config, testClass);
+			}
+		};
+		assertEquals(1, browser.getEngineCount());
+		browser.start();
+	}
+
+	@AfterClass
+	public static void stopBrowser() {
+		browser.notifyNoMoreTests();
+		browser.stop();
+	}
+
+	private static TestResult execute(String methodName) throws Exception {
+		MultiTestMethod method = new MultiTestMethod(new TestClass(RhinoSample.class), new FrameworkMethod(
+				RhinoSample.class.getMethod(methodName)), 1);
+		browser.executeTest(method);
+		return method.awaitExecutionResult().getResult(0);
+	}
+
+	@Test(timeout = 30000)
+	public void testPass() throws Exception {
+		TestResult result = execute("testPass");
+		assertTrue(result.toString(), result.isOk());
+		assertEquals("Rhino engine 1", result.getUserAgent());
+	}
+
+	@Test(timeout = 30000)
+	public void testAssertFailure() throws Exception {
+		TestResult result = execute("testAssertFailure");
+		assertFalse(result.isOk());
+		assertEquals("AssertError: expected 1 but was 2", result.getMessage());
+		Throwable exception = result.buildException(config.getClassLoader());
+		assertTrue(exception.toString(), exception instanceof AssertionError);
+	}
+
+	@Test(timeout = 30000)
+	public void testTimeout() throws Exception {
+		TestResult result = execute("testTimeout");
+		assertEquals("The test did not finish in 1 seconds", result.getMessage());
+
+		// the engine executes the next tests
+		assertTrue(execute("testPass").isOk());
+	}
+
+	@Test(timeout = 30000)
+	public void testOwnDocument() throws Exception {
+		assertTrue(execute("testChangeDocument").isOk());
+		TestResult result = execute("testDocumentUnchanged");
+		assertTrue(result.toString(), result.isOk());
+	}
+}
@@ -0,0 +1,42 @@
+package org.stjs.testing.driver.browser;
+
+import static org.stjs.javascript.JSObjectAdapter.$js;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.stjs.testing.annotation.HTMLFixture;
+
+/**
+ * the tests executed by the Rhino engine
+ */
+@HTMLFixture("<div id='sample'></div>")
+public class RhinoSample {
+	@Test
+	public void testPass() {
+		Assert.assertEquals(2, 1 + 1);
+	}
+
+	@Test
+	public void testAssertFailure() {
+		Assert.assertEquals(1, 2);
+	}
+
+	@Test
+	public void testTimeout() {
+		$js("while(true){}");
+	}
+
+	@Test
+	public void testChangeDocument() {
+		Assert.assertEquals(1, $js("document.getElementsByTagName('div').length"));
+		$js("document.getElementById('sample').appendChild(document.createElement('span'))");
+		$js("document.getElementsByTagName('head')[0].appendChild(document.createElement('style'))");
+	}
+
+	@Test
+	public void testDocumentUnchanged() {
+		Assert.assertEquals(1, $js("document.getElementsByTagName('div').length"));
+		Assert.assertEquals(0, $js("document.getElementById('sample').childNodes.length"));
+		Assert.assertEquals(0, $js("document.getElementsByTagName('style').length"));
+	}
+}
@@ -0,0 +1 @@
+var small = 1;